@@ -15,9 +15,9 @@ def main():
         line = file.readline()
         while line:
             if (line.startswith("GET")):
-                gets.append(int(line[4:].strip()))
+                gets.append(int(line.split()[1]))
             else:
-                posts.append(int(line[5:].strip()))
+                posts.append(int(line.split()[1]))
             line = file.readline()
 
     print("POST Mean: ", numpy.mean(posts))
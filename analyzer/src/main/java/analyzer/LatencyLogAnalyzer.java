@@ -0,0 +1,142 @@
+package analyzer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summarizes the latency log our LiftRideServlet writes (with logLatency), or compares the logs of
+ * two runs. For each operation it reports the request count, mean, p50/p90/p99/p99.9 and max
+ * latency and the throughput, followed by the throughput for each minute of the run. Older logs
+ * without timestamps get latencies only. Percentiles are nearest-rank over 1ms buckets.
+ */
+public class LatencyLogAnalyzer {
+  private static final double[] PERCENTILES = {0.50, 0.90, 0.99, 0.999};
+  private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p99.9"};
+
+  /**
+   * Entry point of our analyzer.
+   * @param args is our command line arguments, either [log] to summarize a log or
+   *             [-c baselineLog candidateLog] to compare two
+   * @throws IOException if a log could not be read
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length == 1) {
+      summarize(LogStats.analyze(Paths.get(args[0])));
+    } else if (args.length == 3 && args[0].equals("-c")) {
+      Path baseline = Paths.get(args[1]);
+      Path candidate = Paths.get(args[2]);
+      compare(LogStats.analyze(baseline), LogStats.analyze(candidate));
+    } else {
+      System.err.println("Usage: LatencyLogAnalyzer log | LatencyLogAnalyzer -c baselineLog "
+              + "candidateLog");
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Prints a log's latencies and per-minute throughput
+   * @param stats is the log's latencies
+   */
+  private static void summarize(LogStats stats) {
+    printOperation("POST", stats.getPosts());
+    printOperation("GET", stats.getGets());
+    System.out.println("Skipped lines: " + stats.getSkippedLines());
+
+    MinuteSeries posts = stats.getPosts().getMinutes();
+    MinuteSeries gets = stats.getGets().getMinutes();
+    long first = firstMinute(posts, gets);
+    if (first < 0) {
+      System.out.println("No timestamps, so no per-minute throughput");
+      return;
+    }
+    long last = Math.max(posts.getLastMinute(), gets.getLastMinute());
+    System.out.println();
+    System.out.println("Minute (UTC)            POST/s    GET/s");
+    for (long minute = first; minute <= last; minute++) {
+      System.out.printf("%-20s %9.1f %8.1f%n",
+              Instant.ofEpochMilli(TimeUnit.MINUTES.toMillis(minute))
+                      .truncatedTo(ChronoUnit.MINUTES).toString(),
+              posts.getCount(minute) / 60.0, gets.getCount(minute) / 60.0);
+    }
+  }
+
+  /**
+   * Prints one operation's latencies
+   * @param name is the name of the operation
+   * @param latencies is its latencies
+   */
+  private static void printOperation(String name, OperationLatencies latencies) {
+    StringBuilder line = new StringBuilder();
+    line.append(name).append(": ").append(latencies.getCount()).append(" requests");
+    line.append(String.format(", mean %.2f ms", latencies.getMeanMillis()));
+    for (int i = 0; i < PERCENTILES.length; i++) {
+      line.append(", ").append(PERCENTILE_NAMES[i]).append(' ')
+              .append(latencies.percentile(PERCENTILES[i]));
+    }
+    line.append(", max ").append(latencies.getMaxMillis()).append(" ms");
+    if (latencies.getThroughput() > 0) {
+      line.append(String.format(", %.1f requests/s", latencies.getThroughput()));
+    }
+    System.out.println(line);
+  }
+
+  /**
+   * Prints the latencies of two runs side by side with the candidate's change from the baseline
+   * @param baseline is the baseline run's latencies
+   * @param candidate is the candidate run's latencies
+   */
+  private static void compare(LogStats baseline, LogStats candidate) {
+    System.out.println("                     baseline  candidate   change");
+    compareOperation("POST", baseline.getPosts(), candidate.getPosts());
+    compareOperation("GET", baseline.getGets(), candidate.getGets());
+  }
+
+  /**
+   * Prints one operation's latencies in two runs side by side
+   * @param name is the name of the operation
+   * @param baseline is its latencies in the baseline run
+   * @param candidate is its latencies in the candidate run
+   */
+  private static void compareOperation(String name, OperationLatencies baseline,
+                                       OperationLatencies candidate) {
+    printRow(name + " requests", baseline.getCount(), candidate.getCount());
+    printRow(name + " requests/s", baseline.getThroughput(), candidate.getThroughput());
+    printRow(name + " mean ms", baseline.getMeanMillis(), candidate.getMeanMillis());
+    for (int i = 0; i < PERCENTILES.length; i++) {
+      printRow(name + " " + PERCENTILE_NAMES[i] + " ms", baseline.percentile(PERCENTILES[i]),
+              candidate.percentile(PERCENTILES[i]));
+    }
+    printRow(name + " max ms", baseline.getMaxMillis(), candidate.getMaxMillis());
+  }
+
+  /**
+   * Prints one row of a comparison
+   * @param metric is the name of the metric
+   * @param baseline is its value in the baseline run
+   * @param candidate is its value in the candidate run
+   */
+  private static void printRow(String metric, double baseline, double candidate) {
+    String change = baseline != 0
+            ? String.format("%+.1f%%", 100 * (candidate - baseline) / baseline) : "-";
+    System.out.printf("%-18s %11.2f %10.2f %8s%n", metric, baseline, candidate, change);
+  }
+
+  /**
+   * Finds the first minute with requests of either operation
+   * @param posts is the POSTs per minute
+   * @param gets is the GETs per minute
+   * @return the first minute (since the epoch) with requests, or -1 if there were none
+   */
+  private static long firstMinute(MinuteSeries posts, MinuteSeries gets) {
+    long firstPost = posts.getFirstMinute();
+    long firstGet = gets.getFirstMinute();
+    if (firstPost < 0 || firstGet < 0) {
+      return Math.max(firstPost, firstGet);
+    }
+    return Math.min(firstPost, firstGet);
+  }
+}
@@ -0,0 +1,172 @@
+package analyzer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses the latency lines ("GET 12", "POST 12 1700000000000") starting in a byte range of a log.
+ * Ranges larger than a chunk are split in two and parsed in parallel; a chunk is memory mapped and
+ * scanned byte by byte in place, so parsing a line allocates nothing. A line belongs to the chunk
+ * it starts in, so each chunk skips the tail of the line before it and reads past its end to
+ * finish its last line.
+ */
+class LogChunkTask extends RecursiveTask<LogStats> {
+  private static final long CHUNK_BYTES = 32 * 1024 * 1024;
+  // latency lines are far shorter than this, so reading this far past a chunk finishes its last
+  private static final int MAX_LINE_BYTES = 256;
+  private final FileChannel channel;
+  private final long fileSize;
+  private final long start;
+  private final long end;
+
+  /**
+   * Creates a task for the lines starting in a range of a log
+   * @param channel is the open log
+   * @param fileSize is the size of the log in bytes
+   * @param start is the offset of the first byte of the range
+   * @param end is the offset just past the range
+   */
+  LogChunkTask(FileChannel channel, long fileSize, long start, long end) {
+    this.channel = channel;
+    this.fileSize = fileSize;
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Parses our range, splitting it if it's more than a chunk
+   * @return the latencies of the lines starting in our range
+   */
+  @Override
+  protected LogStats compute() {
+    if (end - start > CHUNK_BYTES) {
+      long middle = start + (end - start) / 2;
+      LogChunkTask second = new LogChunkTask(channel, fileSize, middle, end);
+      second.fork();
+      LogStats stats = new LogChunkTask(channel, fileSize, start, middle).compute();
+      stats.merge(second.join());
+      return stats;
+    }
+    try {
+      return parseChunk();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Maps our chunk (from the byte before it, to tell whether it starts a line) and parses it
+   * @return the latencies of the lines starting in our chunk
+   * @throws IOException if the chunk could not be mapped
+   */
+  private LogStats parseChunk() throws IOException {
+    LogStats stats = new LogStats();
+    long mapStart = Math.max(0, start - 1);
+    long mapEnd = Math.min(fileSize, end + MAX_LINE_BYTES);
+    if (mapEnd <= mapStart) {
+      return stats;
+    }
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart,
+            mapEnd - mapStart);
+    int limit = buffer.limit();
+    int chunkEnd = (int) (end - mapStart);
+    int pos = 0;
+    if (start > 0) {
+      // skip to just past the newline ending the previous chunk's last line
+      while (pos < limit && buffer.get(pos) != '\n') {
+        pos++;
+      }
+      pos++;
+    }
+    while (pos < chunkEnd && pos < limit) {
+      int lineEnd = pos;
+      while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+        lineEnd++;
+      }
+      if (lineEnd == limit && mapEnd < fileSize) {
+        // a line too long to be a latency, running past what we mapped
+        stats.skipLine();
+        break;
+      }
+      parseLine(buffer, pos, lineEnd, stats);
+      pos = lineEnd + 1;
+    }
+    return stats;
+  }
+
+  /**
+   * Parses one line and records it if it's a latency
+   * @param buffer is the mapped chunk
+   * @param pos is the index the line starts at
+   * @param lineEnd is the index of the newline ending it (or the end of the log)
+   * @param stats receives the line's latency
+   */
+  private static void parseLine(MappedByteBuffer buffer, int pos, int lineEnd, LogStats stats) {
+    if (lineEnd > pos && buffer.get(lineEnd - 1) == '\r') {
+      lineEnd--;
+    }
+    if (lineEnd == pos) {
+      return;
+    }
+    OperationLatencies operation;
+    if (startsWith(buffer, pos, lineEnd, "GET ")) {
+      operation = stats.getGets();
+      pos += 4;
+    } else if (startsWith(buffer, pos, lineEnd, "POST ")) {
+      operation = stats.getPosts();
+      pos += 5;
+    } else {
+      stats.skipLine();
+      return;
+    }
+    long latency = 0;
+    int digits = pos;
+    while (pos < lineEnd && buffer.get(pos) >= '0' && buffer.get(pos) <= '9') {
+      latency = latency * 10 + (buffer.get(pos++) - '0');
+    }
+    if (pos == digits || pos - digits > 18) {
+      stats.skipLine();
+      return;
+    }
+    long timestamp = -1;
+    if (pos < lineEnd) {
+      if (buffer.get(pos++) != ' ') {
+        stats.skipLine();
+        return;
+      }
+      timestamp = 0;
+      digits = pos;
+      while (pos < lineEnd && buffer.get(pos) >= '0' && buffer.get(pos) <= '9') {
+        timestamp = timestamp * 10 + (buffer.get(pos++) - '0');
+      }
+      if (pos != lineEnd || pos == digits || pos - digits > 18) {
+        stats.skipLine();
+        return;
+      }
+    }
+    operation.record(latency, timestamp);
+  }
+
+  /**
+   * Checks whether a line starts with an ASCII prefix
+   * @param buffer is the mapped chunk
+   * @param pos is the index the line starts at
+   * @param lineEnd is the index just past the line
+   * @param prefix is the prefix to look for
+   * @return true if the line starts with the prefix, false otherwise
+   */
+  private static boolean startsWith(MappedByteBuffer buffer, int pos, int lineEnd, String prefix) {
+    if (lineEnd - pos < prefix.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (buffer.get(pos + i) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,72 @@
+package analyzer;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The GET and POST latencies of a whole latency log, and the number of lines that weren't
+ * latencies (e.g. other log messages). Logs are analyzed by memory mapping them and parsing
+ * chunks in parallel on the common fork/join pool.
+ */
+public class LogStats {
+  private final OperationLatencies posts = new OperationLatencies();
+  private final OperationLatencies gets = new OperationLatencies();
+  private long skippedLines;
+
+  /**
+   * Analyzes a latency log
+   * @param log is the path of the log
+   * @return the log's latencies
+   * @throws IOException if the log could not be read
+   */
+  public static LogStats analyze(Path log) throws IOException {
+    try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+      long size = channel.size();
+      return ForkJoinPool.commonPool().invoke(new LogChunkTask(channel, size, 0, size));
+    }
+  }
+
+  /**
+   * Adds another chunk's latencies to ours
+   * @param other is the stats to add
+   */
+  public void merge(LogStats other) {
+    posts.merge(other.posts);
+    gets.merge(other.gets);
+    skippedLines += other.skippedLines;
+  }
+
+  /**
+   * Counts a line that wasn't a latency
+   */
+  void skipLine() {
+    skippedLines++;
+  }
+
+  /**
+   * Simple getter for the POST latencies
+   * @return the POST latencies
+   */
+  public OperationLatencies getPosts() {
+    return posts;
+  }
+
+  /**
+   * Simple getter for the GET latencies
+   * @return the GET latencies
+   */
+  public OperationLatencies getGets() {
+    return gets;
+  }
+
+  /**
+   * Simple getter for the number of lines that weren't latencies
+   * @return the number of skipped lines
+   */
+  public long getSkippedLines() {
+    return skippedLines;
+  }
+}
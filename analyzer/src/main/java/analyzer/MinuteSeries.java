@@ -0,0 +1,117 @@
+package analyzer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts requests per wall clock minute. Counts are held in a dense array indexed from the first
+ * minute seen, which grows in either direction as earlier or later minutes turn up, so counting a
+ * request allocates nothing once the run's span has been seen.
+ */
+public class MinuteSeries {
+  // about two years of minutes, a wider span means a line's timestamp is garbage
+  private static final long MAX_SPAN_MINUTES = 1 << 20;
+  private long firstMinute;
+  private long[] counts;
+
+  /**
+   * Counts a request finished at the given time
+   * @param timestamp is the time (in ms since the epoch) the request finished
+   * @return true if it was counted, false if it is implausibly far from the other requests
+   */
+  public boolean add(long timestamp) {
+    return add(TimeUnit.MILLISECONDS.toMinutes(timestamp), 1);
+  }
+
+  /**
+   * Adds a number of requests to a minute
+   * @param minute is the minute (since the epoch) to add to
+   * @param count is the number of requests to add
+   * @return true if they were counted, false if the minute is implausibly far from the others
+   */
+  private boolean add(long minute, long count) {
+    if (counts == null) {
+      firstMinute = minute;
+      counts = new long[64];
+    }
+    long index = minute - firstMinute;
+    if (index < 0) {
+      long end = firstMinute + counts.length;
+      if (end - minute > MAX_SPAN_MINUTES) {
+        return false;
+      }
+      // grow towards earlier minutes, leaving room for more
+      long[] grown = new long[(int) Math.min(MAX_SPAN_MINUTES, 2 * (end - minute))];
+      int shift = grown.length - counts.length;
+      System.arraycopy(counts, 0, grown, shift, counts.length);
+      counts = grown;
+      firstMinute -= shift;
+      index = minute - firstMinute;
+    } else if (index >= counts.length) {
+      if (index >= MAX_SPAN_MINUTES) {
+        return false;
+      }
+      long[] grown = new long[(int) Math.min(MAX_SPAN_MINUTES, 2 * (index + 1))];
+      System.arraycopy(counts, 0, grown, 0, counts.length);
+      counts = grown;
+    }
+    counts[(int) index] += count;
+    return true;
+  }
+
+  /**
+   * Adds another series' counts to ours
+   * @param other is the series to add
+   */
+  public void merge(MinuteSeries other) {
+    if (other.counts == null) {
+      return;
+    }
+    for (int i = 0; i < other.counts.length; i++) {
+      if (other.counts[i] != 0) {
+        add(other.firstMinute + i, other.counts[i]);
+      }
+    }
+  }
+
+  /**
+   * Simple getter for the first minute with any requests
+   * @return the first minute (since the epoch) with requests, or -1 if there were none
+   */
+  public long getFirstMinute() {
+    if (counts != null) {
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] != 0) {
+          return firstMinute + i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Simple getter for the last minute with any requests
+   * @return the last minute (since the epoch) with requests, or -1 if there were none
+   */
+  public long getLastMinute() {
+    if (counts != null) {
+      for (int i = counts.length - 1; i >= 0; i--) {
+        if (counts[i] != 0) {
+          return firstMinute + i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Gets the number of requests finished in a minute
+   * @param minute is the minute (since the epoch)
+   * @return the number of requests finished in it
+   */
+  public long getCount(long minute) {
+    if (counts == null || minute < firstMinute || minute - firstMinute >= counts.length) {
+      return 0;
+    }
+    return counts[(int) (minute - firstMinute)];
+  }
+}
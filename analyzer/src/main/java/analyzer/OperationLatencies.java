@@ -0,0 +1,123 @@
+package analyzer;
+
+/**
+ * The latencies logged for one operation (GET or POST): a 1ms bucket histogram, exact count, sum
+ * and max, the span of the requests' timestamps and their per-minute counts.
+ */
+public class OperationLatencies {
+  /**
+   * Latencies of this many ms or more are counted as overflow rather than in a bucket
+   */
+  public static final int MAX_MILLIS = 60000;
+  private final long[] histogram = new long[MAX_MILLIS];
+  private final MinuteSeries minutes = new MinuteSeries();
+  private long count;
+  private long overflow;
+  private long sumMillis;
+  private long maxMillis;
+  private long timed;
+  private long firstTimestamp = Long.MAX_VALUE;
+  private long lastTimestamp = Long.MIN_VALUE;
+
+  /**
+   * Records one logged request
+   * @param latencyMillis is the request's latency in ms
+   * @param timestamp is the time (in ms since the epoch) it finished, or -1 if it wasn't logged
+   */
+  public void record(long latencyMillis, long timestamp) {
+    count++;
+    sumMillis += latencyMillis;
+    maxMillis = Math.max(maxMillis, latencyMillis);
+    if (latencyMillis < MAX_MILLIS) {
+      histogram[(int) latencyMillis]++;
+    } else {
+      overflow++;
+    }
+    if (timestamp >= 0 && minutes.add(timestamp)) {
+      timed++;
+      firstTimestamp = Math.min(firstTimestamp, timestamp);
+      lastTimestamp = Math.max(lastTimestamp, timestamp);
+    }
+  }
+
+  /**
+   * Adds another chunk's latencies to ours
+   * @param other is the latencies to add
+   */
+  public void merge(OperationLatencies other) {
+    for (int i = 0; i < MAX_MILLIS; i++) {
+      histogram[i] += other.histogram[i];
+    }
+    minutes.merge(other.minutes);
+    count += other.count;
+    overflow += other.overflow;
+    sumMillis += other.sumMillis;
+    maxMillis = Math.max(maxMillis, other.maxMillis);
+    timed += other.timed;
+    firstTimestamp = Math.min(firstTimestamp, other.firstTimestamp);
+    lastTimestamp = Math.max(lastTimestamp, other.lastTimestamp);
+  }
+
+  /**
+   * Finds the latency that the given percentile of requests fall at or under
+   * @param fraction is the percentile to find as a fraction (e.g. 0.99)
+   * @return the latency in ms of the percentile, or MAX_MILLIS if it overflowed
+   */
+  public long percentile(double fraction) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(count * fraction);
+    long seen = 0;
+    for (int i = 0; i < MAX_MILLIS; i++) {
+      seen += histogram[i];
+      if (seen >= rank) {
+        return i;
+      }
+    }
+    return MAX_MILLIS;
+  }
+
+  /**
+   * Simple getter for the number of requests logged
+   * @return the number of requests
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Simple getter for the mean latency
+   * @return the mean latency in ms, 0 if there were no requests
+   */
+  public double getMeanMillis() {
+    return count > 0 ? (double) sumMillis / count : 0;
+  }
+
+  /**
+   * Simple getter for the slowest request's latency
+   * @return the max latency in ms
+   */
+  public long getMaxMillis() {
+    return maxMillis;
+  }
+
+  /**
+   * Computes the throughput over the span of the logged timestamps
+   * @return the requests per second, or 0 if too few requests had timestamps
+   */
+  public double getThroughput() {
+    if (timed < 2 || lastTimestamp <= firstTimestamp) {
+      return 0;
+    }
+    return timed * 1000.0 / (lastTimestamp - firstTimestamp);
+  }
+
+  /**
+   * Simple getter for the per-minute request counts
+   * @return the counts of requests with timestamps by the minute they finished in
+   */
+  public MinuteSeries getMinutes() {
+    return minutes;
+  }
+}
@@ -0,0 +1,116 @@
+package daos;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+
+/**
+ * An in-memory H2 stand-in for our Upic MySQL database. The schema is loaded from the same
+ * upicDB.txt script we use to set up the real database, so our DAOs run unchanged against it.
+ */
+public class EmbeddedDatabase {
+  private static final String SCHEMA = "/upicDB.txt";
+  private final String url;
+  private final JdbcDataSource dataSource;
+
+  /**
+   * Creates (or attaches to) the named in-memory database and loads our schema into it. The
+   * database lives for as long as the JVM does.
+   * @param name is the unique name of the in-memory database
+   * @throws SQLException if the schema could not be loaded
+   */
+  public EmbeddedDatabase(String name) throws SQLException {
+    this.url = "jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+    this.dataSource = new JdbcDataSource();
+    dataSource.setURL(url);
+    loadSchema();
+  }
+
+  /**
+   * Simple getter for the JDBC URL of this database
+   * @return the String JDBC URL that connects to this database
+   */
+  public String getUrl() {
+    return url;
+  }
+
+  /**
+   * Simple getter for an (unpooled) data source connected to this database
+   * @return the data source connected to this database
+   */
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
+  /**
+   * Runs each statement of our upicDB.txt script against this database. CREATE DATABASE has no
+   * H2 equivalent so it is skipped, and string literals are switched to single quotes.
+   * @throws SQLException if a statement of the script failed
+   */
+  private void loadSchema() throws SQLException {
+    String script;
+    try (InputStream in = EmbeddedDatabase.class.getResourceAsStream(SCHEMA)) {
+      if (in == null) {
+        throw new SQLException("Schema " + SCHEMA + " not found on classpath");
+      }
+      script = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))
+              .lines().collect(Collectors.joining("\n"));
+    } catch (IOException e) {
+      throw new SQLException("Failed reading schema", e);
+    }
+    try (Connection conn = dataSource.getConnection();
+         Statement statement = conn.createStatement()) {
+      for (String sql : script.split(";")) {
+        sql = sql.trim();
+        if (sql.isEmpty() || sql.toUpperCase().startsWith("CREATE DATABASE")) {
+          continue;
+        }
+        // MySQL accepts "..." string literals, H2 treats them as identifiers
+        sql = sql.replace('"', '\'');
+        if (sql.toUpperCase().startsWith("INSERT INTO RESORTS")) {
+          sql = sql.replaceFirst("(?i)INSERT INTO", "MERGE INTO");
+        }
+        statement.execute(sql);
+      }
+    }
+  }
+
+  /**
+   * Inserts a number of random lift rides spread over the given number of skiers
+   * @param numRides is the total number of rides to insert
+   * @param numSkiers is the number of distinct skiers (IDs 1..numSkiers) the rides belong to
+   * @param numLifts is the number of distinct lifts (IDs 1..numLifts) the rides use
+   * @throws SQLException if the rides could not be inserted
+   */
+  public void insertRandomRides(int numRides, int numSkiers, int numLifts) throws SQLException {
+    Random random = new Random(numRides);
+    String insert = "INSERT INTO liftrides (skierID, resortID, tID, liftID) VALUES (?,?,?,?)";
+    try (Connection conn = dataSource.getConnection();
+         PreparedStatement prepStatement = conn.prepareStatement(insert)) {
+      conn.setAutoCommit(false);
+      for (int i = 0; i < numRides; i++) {
+        prepStatement.setInt(1, random.nextInt(numSkiers) + 1);
+        prepStatement.setInt(2, random.nextInt(5) + 1);
+        prepStatement.setInt(3, random.nextInt(420) + 1);
+        prepStatement.setInt(4, random.nextInt(numLifts) + 1);
+        prepStatement.addBatch();
+        if (i % 1000 == 999) {
+          prepStatement.executeBatch();
+        }
+      }
+      prepStatement.executeBatch();
+      conn.commit();
+    }
+  }
+}
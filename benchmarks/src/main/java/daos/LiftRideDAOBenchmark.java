@@ -0,0 +1,72 @@
+package daos;
+
+import org.openjdk.jmh.annotations.*;
+import servlethelpers.LiftRide;
+import servlethelpers.LiftRideList;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks LiftRideDAO queries and result mapping against an embedded in-memory database, so
+ * the numbers measure our JDBC and mapping code rather than the network to MySQL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LiftRideDAOBenchmark {
+  private static final int NUM_SKIERS = 1000;
+
+  @Param({"1000", "10000"})
+  public int numRides;
+
+  private EmbeddedDatabase database;
+  private LiftRideDAO dao;
+  private Connection conn;
+  private PreparedStatement allRides;
+
+  @Setup(Level.Trial)
+  public void setup() throws SQLException {
+    database = new EmbeddedDatabase("bench" + numRides);
+    database.insertRandomRides(numRides, NUM_SKIERS, 40);
+    dao = new LiftRideDAO(database.getDataSource());
+    conn = database.getDataSource().getConnection();
+    allRides = conn.prepareStatement("SELECT * FROM liftrides");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws SQLException {
+    allRides.close();
+    conn.close();
+  }
+
+  @Benchmark
+  public LiftRideList getSkierRides() {
+    return dao.getSkierRides(NUM_SKIERS / 2);
+  }
+
+  @Benchmark
+  public Object getLiftRide() {
+    return dao.getLiftRide(numRides / 2);
+  }
+
+  @Benchmark
+  public LiftRideList getAllLiftRides() {
+    return dao.getAllLiftRides();
+  }
+
+  @Benchmark
+  public List<LiftRide> mapAllRides() throws SQLException {
+    // only the ResultSet to LiftRide mapping, the statement is prepared once
+    try (ResultSet queryResult = allRides.executeQuery()) {
+      return dao.mapRides(queryResult, 0);
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package harness;
+
+import client.RunReport;
+import client.SkierClientMultiThreaded;
+import daos.EmbeddedDatabase;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+import servlets.LiftRideServlet;
+import servlets.RateLimitFilter;
+import servlets.ReadinessServlet;
+import servlets.ResortServlet;
+import servlets.SkierServlet;
+import servlets.WarmupListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+
+/**
+ * A self-contained end-to-end benchmark: starts our LiftRideServlet, ResortServlet and
+ * SkierServlet in an embedded Tomcat on localhost, backed by an in-memory database loaded from
+ * upicDB.txt, drives them with the SkierClientMultiThreaded load engine, and writes a JSON report
+ * of the results.
+ * No MySQL instance, deployed Tomcat, or catalina.properties is needed.
+ */
+public class EndToEndHarness {
+  private static final String APP_PATH = "/A3_war";
+  private static final String DB_NAME = "upic";
+
+  /**
+   * Entry point of our harness.
+   * @param args is our command line arguments. It expects the arguments to be of form (in any order):
+   *             [-t numThreads -s numSkiers -l numLifts -d testTimeSecs -p port -n numShards
+   *             -i inFlight -o reportFile]. All are optional, a port of 0 picks any free port,
+   *             more than one shard spreads liftrides over that many embedded databases, an
+   *             inFlight above 0 drives the load with numThreads async HttpClients each keeping
+   *             that many sessions in flight, and the report is printed to stdout if no report
+   *             file is given
+   * @throws Exception if the server could not be started or the run was interrupted
+   */
+  public static void main(String[] args) throws Exception {
+    int numThreads = 32;
+    int numSkiers = 20000;
+    int numLifts = 40;
+    int testTimeSecs = 30;
+    int port = 0;
+    int numShards = 1;
+    int inFlight = 0;
+    String reportFile = null;
+    for (int i = 0; i < args.length - 1; i++) {
+      switch (args[i]) {
+        case "-t":
+          numThreads = Integer.parseInt(args[i+1]);
+          break;
+        case "-s":
+          numSkiers = Integer.parseInt(args[i+1]);
+          break;
+        case "-l":
+          numLifts = Integer.parseInt(args[i+1]);
+          break;
+        case "-d":
+          testTimeSecs = Integer.parseInt(args[i+1]);
+          break;
+        case "-p":
+          port = Integer.parseInt(args[i+1]);
+          break;
+        case "-n":
+          numShards = Integer.parseInt(args[i+1]);
+          break;
+        case "-i":
+          inFlight = Integer.parseInt(args[i+1]);
+          break;
+        case "-o":
+          reportFile = args[i+1];
+          break;
+      }
+    }
+
+    EmbeddedDatabase database = new EmbeddedDatabase(DB_NAME);
+    configureServer(database);
+    if (numShards > 1) {
+      configureShards(numShards);
+    }
+    Tomcat tomcat = startServer(port);
+    int localPort = tomcat.getConnector().getLocalPort();
+    System.out.println("Embedded server listening on localhost:" + localPort + APP_PATH);
+
+    RunReport report;
+    try {
+      awaitReady(localPort);
+      report = SkierClientMultiThreaded.run("localhost", localPort, numThreads, numSkiers,
+              numLifts, testTimeSecs, inFlight);
+    } finally {
+      tomcat.stop();
+      tomcat.destroy();
+    }
+    writeReport(report, reportFile);
+    // the client's timer and HTTP threads are not daemons
+    System.exit(0);
+  }
+
+  /**
+   * Sets the system properties our servlets and connection pool normally read from
+   * catalina.properties, pointing the pool at our embedded database
+   * @param database is the embedded database the servlets should use
+   */
+  private static void configureServer(EmbeddedDatabase database) {
+    System.setProperty("DB_URL", database.getUrl());
+    System.setProperty("POST_USR", "admin");
+    System.setProperty("POST_PWD", "admin");
+    System.setProperty("SERVER_LOG", System.getProperty("SERVER_LOG", "FALSE"));
+  }
+
+  /**
+   * Creates an embedded database for each liftrides shard and points our DAOs at them
+   * @param numShards is the number of shards to create
+   * @throws SQLException if a shard's schema could not be loaded
+   */
+  private static void configureShards(int numShards) throws SQLException {
+    StringBuilder urls = new StringBuilder();
+    for (int i = 0; i < numShards; i++) {
+      EmbeddedDatabase shard = new EmbeddedDatabase(DB_NAME + "_shard" + i);
+      urls.append(i == 0 ? "" : ",").append(shard.getUrl());
+    }
+    System.setProperty("DB_SHARD_URLS", urls.toString());
+  }
+
+  /**
+   * Starts an embedded Tomcat serving our servlets under our application path
+   * @param port is the port to listen on, or 0 to pick any free port
+   * @return the started Tomcat server
+   * @throws IOException if the server's temporary base directory could not be created
+   * @throws LifecycleException if the server failed to start
+   */
+  private static Tomcat startServer(int port) throws IOException, LifecycleException {
+    Path baseDir = Files.createTempDirectory("a3-harness");
+    baseDir.toFile().deleteOnExit();
+    Tomcat tomcat = new Tomcat();
+    tomcat.setBaseDir(baseDir.toString());
+    tomcat.setPort(port);
+    tomcat.getConnector();
+
+    Context ctx = tomcat.addContext(APP_PATH, new File(".").getAbsolutePath());
+    // an embedded context doesn't scan for annotations, so mirror @WebListener/@WebFilter and
+    // loadOnStartup
+    ctx.addApplicationListener(WarmupListener.class.getName());
+    Tomcat.addServlet(ctx, "LiftRideServlet", new LiftRideServlet()).setLoadOnStartup(1);
+    ctx.addServletMappingDecoded("/liftrides", "LiftRideServlet");
+    ctx.addServletMappingDecoded("/liftrides/*", "LiftRideServlet");
+    // the resorts' live ride streams use async I/O
+    Wrapper resorts = Tomcat.addServlet(ctx, "ResortServlet", new ResortServlet());
+    resorts.setAsyncSupported(true);
+    resorts.setLoadOnStartup(1);
+    ctx.addServletMappingDecoded("/resorts", "ResortServlet");
+    ctx.addServletMappingDecoded("/resorts/*", "ResortServlet");
+    Tomcat.addServlet(ctx, "SkierServlet", new SkierServlet()).setLoadOnStartup(1);
+    ctx.addServletMappingDecoded("/skiers/*", "SkierServlet");
+    Tomcat.addServlet(ctx, "ReadinessServlet", new ReadinessServlet());
+    ctx.addServletMappingDecoded("/ready", "ReadinessServlet");
+    FilterDef rateLimit = new FilterDef();
+    rateLimit.setFilterName("RateLimitFilter");
+    rateLimit.setFilter(new RateLimitFilter());
+    rateLimit.setAsyncSupported("true");
+    ctx.addFilterDef(rateLimit);
+    FilterMap rateLimitMap = new FilterMap();
+    rateLimitMap.setFilterName("RateLimitFilter");
+    for (String pattern : new String[] {"/liftrides", "/liftrides/*", "/resorts", "/resorts/*",
+            "/skiers/*"}) {
+      rateLimitMap.addURLPatternDecoded(pattern);
+    }
+    ctx.addFilterMap(rateLimitMap);
+    tomcat.start();
+    return tomcat;
+  }
+
+  /**
+   * Waits for the server to finish warming up, as a load balancer would before sending it traffic
+   * @param port is the port the server listens on
+   * @throws IOException if the readiness endpoint could not be reached
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private static void awaitReady(int port) throws IOException, InterruptedException {
+    long startTime = System.currentTimeMillis();
+    HttpClient client = HttpClient.newHttpClient();
+    HttpRequest ready = HttpRequest.newBuilder(
+            URI.create("http://localhost:" + port + APP_PATH + "/ready")).build();
+    while (client.send(ready, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+      Thread.sleep(100);
+    }
+    System.out.println("Server ready after " + (System.currentTimeMillis() - startTime) + " ms");
+  }
+
+  /**
+   * Writes the JSON form of our run report to the given file, or stdout if no file was given
+   * @param report is the report of our finished run
+   * @param reportFile is the path of the file to write to or null for stdout
+   * @throws IOException if the report file could not be written
+   */
+  private static void writeReport(RunReport report, String reportFile) throws IOException {
+    String json = report.toJson();
+    if (reportFile == null) {
+      System.out.println(json);
+    } else {
+      Files.write(Paths.get(reportFile), json.getBytes(StandardCharsets.UTF_8));
+      System.out.println("Report written to " + reportFile);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package requestlog;
+
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the per-request cost of logging from four request threads: LiftRideServlet's
+ * logLatency line through log4j, against recording into a RequestLog. At these rates the
+ * RequestLog writer can't keep up, so many records take the (cheaper still) dropped path; the
+ * counts are printed at the end of the run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class RequestLogBenchmark {
+  private File dir;
+  private Logger log;
+  private RequestLog requestLog;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory("request-log-bench").toFile();
+    // the servlet's log4j.properties, writing to our temp folder
+    Properties config = new Properties();
+    config.setProperty("log4j.rootLogger", "DEBUG, FILE");
+    config.setProperty("log4j.appender.FILE", "org.apache.log4j.FileAppender");
+    config.setProperty("log4j.appender.FILE.File", new File(dir, "latency.out").getPath());
+    config.setProperty("log4j.appender.FILE.layout", "org.apache.log4j.PatternLayout");
+    config.setProperty("log4j.appender.FILE.layout.conversionPattern", "%m%n");
+    PropertyConfigurator.configure(config);
+    log = Logger.getLogger(RequestLogBenchmark.class);
+    requestLog = new RequestLog(true, 65536, dir, 64L * 1024 * 1024);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    requestLog.close();
+    System.out.println("RequestLog written " + requestLog.getWritten() + ", dropped "
+            + requestLog.getDropped());
+  }
+
+  @Benchmark
+  public void log4jLatencyLine() {
+    long startTime = System.currentTimeMillis();
+    long endTime = System.currentTimeMillis();
+    log.info("POST " + (endTime - startTime) + " " + endTime);
+  }
+
+  @Benchmark
+  public void requestLogRecord() {
+    long requestStart = requestLog.start();
+    requestLog.record(Endpoint.LIFTRIDES_POST, 201, requestStart, RequestIds.newId());
+  }
+}
@@ -0,0 +1,62 @@
+package servlethelpers;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for our list helpers: building a LiftRideList through addRide (which checks every
+ * existing ride for a duplicate ID) and looking resorts up in a ResortList.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CollectionsBenchmark {
+  @Param({"10", "100", "1000"})
+  public int size;
+
+  private LiftRide[] rides;
+  private ResortList resorts;
+  private int lastResortID;
+  private String lastResortName;
+
+  @Setup
+  public void setup() {
+    rides = new LiftRide[size];
+    resorts = new ResortList();
+    for (int i = 0; i < size; i++) {
+      rides[i] = new LiftRide(i + 1, i + 1, 1, i % 40 + 1, i % 420 + 1);
+      resorts.addResort(new Resort("Resort-" + (i + 1), i + 1));
+    }
+    // lookups scan the list, so the last entry is the worst case
+    lastResortID = size;
+    lastResortName = "Resort-" + size;
+  }
+
+  @Benchmark
+  public LiftRideList liftRideListAddRide() {
+    LiftRideList list = new LiftRideList();
+    for (LiftRide ride : rides) {
+      list.addRide(ride);
+    }
+    return list;
+  }
+
+  @Benchmark
+  public boolean resortExistsById() {
+    return resorts.resortExists(lastResortID);
+  }
+
+  @Benchmark
+  public boolean resortExistsByName() {
+    return resorts.resortExists(lastResortName);
+  }
+
+  @Benchmark
+  public int resortGetID() {
+    return resorts.getID(lastResortName);
+  }
+}
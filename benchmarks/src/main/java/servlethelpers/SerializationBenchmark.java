@@ -0,0 +1,71 @@
+package servlethelpers;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gson round-trips of our request and response bodies, comparing the reflective Gson our servlets
+ * used to run with the codecs registered by JsonCodecs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+  @Param({"1", "100", "10000"})
+  public int numRides;
+
+  @Param({"reflective", "codecs"})
+  public String gsonKind;
+
+  private Gson gson;
+  private LiftRideInput input;
+  private String inputJson;
+  private LiftRideList rideList;
+  private String rideListJson;
+
+  @Setup
+  public void setup() {
+    gson = gsonKind.equals("codecs") ? JsonCodecs.gson() : new Gson();
+    input = new LiftRideInput(12345, 1, 27, 300);
+    inputJson = gson.toJson(input);
+    rideList = new LiftRideList();
+    for (int i = 1; i <= numRides; i++) {
+      rideList.rides.add(new LiftRide(i, i % 5000 + 1, 1, i % 40 + 1, i % 420 + 1));
+    }
+    rideListJson = gson.toJson(rideList);
+  }
+
+  @Benchmark
+  public LiftRideInput liftRideInputRoundTrip() {
+    return gson.fromJson(gson.toJson(input), LiftRideInput.class);
+  }
+
+  @Benchmark
+  public LiftRideInput liftRideInputParse() {
+    return gson.fromJson(inputJson, LiftRideInput.class);
+  }
+
+  @Benchmark
+  public LiftRideList liftRideListRoundTrip() {
+    return gson.fromJson(gson.toJson(rideList), LiftRideList.class);
+  }
+
+  @Benchmark
+  public LiftRideList liftRideListParse() {
+    return gson.fromJson(rideListJson, LiftRideList.class);
+  }
+
+  @Benchmark
+  public StringWriter liftRideListWrite() {
+    // mirrors our servlets streaming straight into the response writer
+    StringWriter writer = new StringWriter(rideListJson.length());
+    gson.toJson(rideList, LiftRideList.class, writer);
+    return writer;
+  }
+}
@@ -0,0 +1,60 @@
+package servlets;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the path handling LiftRideServlet.doGet runs on every /liftrides/{id} request:
+ * the old approach of splitting the path, validating it, then parsing the ride ID again, against
+ * matching it in place with a PathRouter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LiftRidePathBenchmark {
+  @Param({"/123456", "/abc", "/1/2"})
+  public String path;
+  private final PathRouter router = new PathRouter().route("/{rideID}", (req, resp, p) -> { });
+  private final int[] params = new int[1];
+
+  /**
+   * The validation LiftRideServlet did before routing: a path of "" and an integer
+   * @param parts is the various parts of the URL normally separated by "/"
+   * @return true if the URL is of a valid form, false otherwise
+   */
+  private static boolean isValid(String[] parts) {
+    if (parts.length == 2) {
+      try {
+        Integer.parseInt(parts[1]);
+      } catch (NumberFormatException e) {
+        return false;
+      }
+      return true;
+    }
+    return false;
+  }
+
+  @Benchmark
+  public void splitAndValidate(Blackhole bh) {
+    String[] parts = path.split("/");
+    if (isValid(parts)) {
+      bh.consume(Integer.parseInt(parts[1]));
+    } else {
+      bh.consume(parts);
+    }
+  }
+
+  @Benchmark
+  public void routerMatch(Blackhole bh) {
+    if (router.match(path, params) >= 0) {
+      bh.consume(params[0]);
+    } else {
+      bh.consume(-1);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package aggregates;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Count-Min sketch estimating how often each integer key was added, in a fixed depth x width
+ * table of counters. Estimates never undercount and overcount by at most a small fraction of the
+ * total count with high probability. Adds are lock-free and sketches of the same shape merge by
+ * summing their counters.
+ */
+public class CountMinSketch {
+  private final int depth;
+  private final int width;
+  private final AtomicLongArray counters;
+
+  /**
+   * Creates an empty sketch
+   * @param depth is the number of hashed rows (more rows, lower chance of a bad estimate)
+   * @param width is the number of counters per row (wider rows, smaller overcounts)
+   * @throws IllegalArgumentException if the depth or width is not positive
+   */
+  public CountMinSketch(int depth, int width) throws IllegalArgumentException {
+    if (depth < 1 || width < 1) {
+      throw new IllegalArgumentException("Depth and width must be positive");
+    }
+    this.depth = depth;
+    this.width = width;
+    this.counters = new AtomicLongArray(depth * width);
+  }
+
+  /**
+   * Finds the counter a key maps to in a row
+   * @param row is the row of the table
+   * @param key is the key being counted
+   * @return the index of the key's counter in our table
+   */
+  private int slot(int row, int key) {
+    long h = HyperLogLog.hash(((long) row << 32) | (key & 0xFFFFFFFFL));
+    return row * width + (int) Math.floorMod(h, (long) width);
+  }
+
+  /**
+   * Adds occurrences of a key to this sketch
+   * @param key is the key to count
+   * @param count is the number of occurrences to add
+   */
+  public void add(int key, long count) {
+    for (int row = 0; row < depth; row++) {
+      counters.addAndGet(slot(row, key), count);
+    }
+  }
+
+  /**
+   * Estimates how often a key was added
+   * @param key is the key to estimate
+   * @return the estimated count, never less than the true count
+   */
+  public long estimate(int key) {
+    long min = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      min = Math.min(min, counters.get(slot(row, key)));
+    }
+    return min;
+  }
+
+  /**
+   * Merges another sketch into this one by summing counters
+   * @param other is the sketch to merge in
+   * @throws IllegalArgumentException if the sketches' shapes differ
+   */
+  public void merge(CountMinSketch other) throws IllegalArgumentException {
+    if (other.depth != depth || other.width != width) {
+      throw new IllegalArgumentException("Cannot merge sketches of different shape");
+    }
+    for (int i = 0; i < counters.length(); i++) {
+      long count = other.counters.get(i);
+      if (count != 0) {
+        counters.addAndGet(i, count);
+      }
+    }
+  }
+
+  /**
+   * Resets every counter to 0
+   */
+  public void clear() {
+    for (int i = 0; i < counters.length(); i++) {
+      counters.set(i, 0);
+    }
+  }
+
+  /**
+   * Serializes this sketch so it can be sent to and merged on another node
+   * @return the depth and width followed by every counter
+   */
+  public byte[] toBytes() {
+    ByteBuffer buffer = ByteBuffer.allocate(8 + counters.length() * 8);
+    buffer.putInt(depth).putInt(width);
+    for (int i = 0; i < counters.length(); i++) {
+      buffer.putLong(counters.get(i));
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Deserializes a sketch produced by toBytes
+   * @param bytes is the serialized sketch
+   * @return the sketch
+   * @throws IllegalArgumentException if the bytes are not a serialized sketch
+   */
+  public static CountMinSketch fromBytes(byte[] bytes) throws IllegalArgumentException {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    if (bytes.length < 8) {
+      throw new IllegalArgumentException("Sketch too short");
+    }
+    CountMinSketch sketch = new CountMinSketch(buffer.getInt(), buffer.getInt());
+    if (buffer.remaining() != sketch.counters.length() * 8) {
+      throw new IllegalArgumentException("Sketch length does not match its shape");
+    }
+    for (int i = 0; i < sketch.counters.length(); i++) {
+      sketch.counters.set(i, buffer.getLong());
+    }
+    return sketch;
+  }
+}
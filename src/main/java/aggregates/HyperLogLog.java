@@ -0,0 +1,145 @@
+package aggregates;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A HyperLogLog sketch estimating the number of distinct integer IDs added to it in a fixed
+ * 2^precision registers (relative error about 1.04 / sqrt(2^precision)). Adds are lock-free and
+ * sketches with the same precision merge losslessly, so each server can keep its own and an
+ * aggregator can combine them.
+ */
+public class HyperLogLog {
+  private final int precision;
+  private final AtomicIntegerArray registers;
+
+  /**
+   * Creates an empty sketch
+   * @param precision is the number of index bits (4-18), giving 2^precision registers
+   * @throws IllegalArgumentException if the precision is out of range
+   */
+  public HyperLogLog(int precision) throws IllegalArgumentException {
+    if (precision < 4 || precision > 18) {
+      throw new IllegalArgumentException("Precision must be between 4 and 18");
+    }
+    this.precision = precision;
+    this.registers = new AtomicIntegerArray(1 << precision);
+  }
+
+  /**
+   * Mixes an integer ID into a well distributed 64 bit hash (murmur3 finalizer)
+   * @param id is the ID to hash
+   * @return the 64 bit hash of the ID
+   */
+  static long hash(long id) {
+    long h = id;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * Simple getter for the precision of this sketch
+   * @return the number of index bits
+   */
+  public int getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Adds an ID to this sketch
+   * @param id is the ID to add
+   */
+  public void add(int id) {
+    long h = hash(id);
+    int index = (int) (h >>> (64 - precision));
+    // the guard bit caps the rank when the remaining bits are all 0
+    int rank = Long.numberOfLeadingZeros((h << precision) | (1L << (precision - 1))) + 1;
+    raise(index, rank);
+  }
+
+  /**
+   * Raises a register to the given value if it is currently lower
+   * @param index is the register to raise
+   * @param value is the value to raise it to
+   */
+  private void raise(int index, int value) {
+    int current = registers.get(index);
+    while (value > current && !registers.compareAndSet(index, current, value)) {
+      current = registers.get(index);
+    }
+  }
+
+  /**
+   * @return the estimated number of distinct IDs added to this sketch
+   */
+  public long estimate() {
+    int m = registers.length();
+    double sum = 0;
+    int zeros = 0;
+    for (int i = 0; i < m; i++) {
+      int value = registers.get(i);
+      sum += 1.0 / (1L << value);
+      if (value == 0) {
+        zeros++;
+      }
+    }
+    double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+    double estimate = alpha * m * m / sum;
+    // linear counting is more accurate while many registers are still empty
+    if (estimate <= 2.5 * m && zeros > 0) {
+      estimate = m * Math.log((double) m / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  /**
+   * Merges another sketch into this one, after which this sketch estimates the distinct IDs
+   * added to either
+   * @param other is the sketch to merge in
+   * @throws IllegalArgumentException if the sketches' precisions differ
+   */
+  public void merge(HyperLogLog other) throws IllegalArgumentException {
+    if (other.precision != precision) {
+      throw new IllegalArgumentException("Cannot merge sketches of different precision");
+    }
+    for (int i = 0; i < registers.length(); i++) {
+      raise(i, other.registers.get(i));
+    }
+  }
+
+  /**
+   * Serializes this sketch so it can be sent to and merged on another node
+   * @return the precision followed by one byte per register
+   */
+  public byte[] toBytes() {
+    byte[] bytes = new byte[registers.length() + 1];
+    bytes[0] = (byte) precision;
+    for (int i = 0; i < registers.length(); i++) {
+      bytes[i + 1] = (byte) registers.get(i);
+    }
+    return bytes;
+  }
+
+  /**
+   * Deserializes a sketch produced by toBytes
+   * @param bytes is the serialized sketch
+   * @return the sketch
+   * @throws IllegalArgumentException if the bytes are not a serialized sketch
+   */
+  public static HyperLogLog fromBytes(byte[] bytes) throws IllegalArgumentException {
+    if (bytes.length == 0) {
+      throw new IllegalArgumentException("Empty sketch");
+    }
+    HyperLogLog sketch = new HyperLogLog(bytes[0]);
+    if (bytes.length != sketch.registers.length() + 1) {
+      throw new IllegalArgumentException("Sketch length does not match its precision");
+    }
+    for (int i = 0; i < sketch.registers.length(); i++) {
+      sketch.registers.set(i, bytes[i + 1]);
+    }
+    return sketch;
+  }
+}
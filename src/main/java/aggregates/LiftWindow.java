@@ -0,0 +1,150 @@
+package aggregates;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Lift popularity over a sliding window of the last N minutes, as a ring of one-minute buckets
+ * each holding a CountMinSketch of rides per lift and SpaceSaving summaries of candidate busiest
+ * lifts. A bucket is cleared when the ring comes back around to it, so memory is fixed no matter
+ * how many rides or lifts there are. A ride racing with its bucket being cleared may be lost,
+ * which is within the sketches' error anyway.
+ * The sketch is lock-free, but a SpaceSaving summary takes a lock, so each bucket has a stripe of
+ * summaries picked by the ingesting thread: concurrent POSTs to the same resort rarely share a
+ * lock. Every lift over 1/CANDIDATES of the bucket's rides is over that share of some stripe's
+ * rides, so the stripes' candidates together still hold every busiest lift.
+ */
+class LiftWindow {
+  private static final int SKETCH_DEPTH = 4;
+  private static final int SKETCH_WIDTH = 512;
+  private static final int CANDIDATES = 64;
+  private static final int MAX_STRIPES = 32;
+  private static final int STRIPES = stripes();
+  private final Bucket[] buckets;
+
+  /**
+   * One minute of the window
+   */
+  private static class Bucket {
+    private volatile long minute = -1;
+    private final CountMinSketch rides = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+    private final SpaceSaving[] candidates = new SpaceSaving[STRIPES];
+
+    /**
+     * Creates an empty bucket
+     */
+    private Bucket() {
+      for (int i = 0; i < STRIPES; i++) {
+        candidates[i] = new SpaceSaving(CANDIDATES);
+      }
+    }
+  }
+
+  /**
+   * Creates an empty window
+   * @param minutes is the length of the window in minutes
+   */
+  LiftWindow(int minutes) {
+    buckets = new Bucket[minutes];
+    for (int i = 0; i < minutes; i++) {
+      buckets[i] = new Bucket();
+    }
+  }
+
+  /**
+   * @return the number of summaries per bucket, a power of two at least twice our cores
+   */
+  private static int stripes() {
+    int stripes = 1;
+    while (stripes < 2 * Runtime.getRuntime().availableProcessors() && stripes < MAX_STRIPES) {
+      stripes <<= 1;
+    }
+    return stripes;
+  }
+
+  /**
+   * @return the current minute since the epoch
+   */
+  private static long currentMinute() {
+    return System.currentTimeMillis() / 60000;
+  }
+
+  /**
+   * @return the maximum number of lifts topLifts can return
+   */
+  static int maxTop() {
+    return CANDIDATES;
+  }
+
+  /**
+   * Counts a ride on a lift in the current minute
+   * @param liftID is the integer ID of the lift
+   */
+  void add(int liftID) {
+    long minute = currentMinute();
+    Bucket bucket = buckets[(int) (minute % buckets.length)];
+    if (bucket.minute != minute) {
+      synchronized (bucket) {
+        if (bucket.minute != minute) {
+          bucket.rides.clear();
+          for (SpaceSaving stripe : bucket.candidates) {
+            stripe.clear();
+          }
+          bucket.minute = minute;
+        }
+      }
+    }
+    bucket.rides.add(liftID, 1);
+    bucket.candidates[(int) Thread.currentThread().getId() & (STRIPES - 1)].offer(liftID, 1);
+  }
+
+  /**
+   * Sums the window's buckets into a single sketch and candidate set
+   * @param candidates is the set to add the window's candidate lifts to
+   * @return the sketch of rides per lift over the whole window
+   */
+  CountMinSketch snapshot(Set<Integer> candidates) {
+    long now = currentMinute();
+    CountMinSketch total = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+    for (Bucket bucket : buckets) {
+      if (now - bucket.minute < buckets.length) {
+        total.merge(bucket.rides);
+        for (SpaceSaving stripe : bucket.candidates) {
+          stripe.addCandidatesTo(candidates);
+        }
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Finds the busiest lifts of the window
+   * @param k is the maximum number of lifts to return
+   * @param rides is the window's sketch (see snapshot)
+   * @param candidates is the window's candidate lifts (see snapshot)
+   * @return up to k {liftID, estimated rides} pairs, busiest first
+   */
+  static List<long[]> topLifts(int k, CountMinSketch rides, Set<Integer> candidates) {
+    List<long[]> top = new ArrayList<>();
+    for (int liftID : candidates) {
+      long estimate = rides.estimate(liftID);
+      if (estimate > 0) {
+        top.add(new long[]{liftID, estimate});
+      }
+    }
+    top.sort((a, b) -> a[1] != b[1] ? Long.compare(b[1], a[1]) : Long.compare(a[0], b[0]));
+    return top.size() > k ? new ArrayList<>(top.subList(0, k)) : top;
+  }
+
+  /**
+   * Convenience for snapshot then topLifts
+   * @param k is the maximum number of lifts to return
+   * @return up to k {liftID, estimated rides} pairs, busiest first
+   */
+  List<long[]> topLifts(int k) {
+    Set<Integer> candidates = new HashSet<>();
+    return topLifts(k, snapshot(candidates), candidates);
+  }
+}
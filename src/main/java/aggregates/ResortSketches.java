@@ -0,0 +1,163 @@
+package aggregates;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import servlethelpers.LiftCount;
+import servlethelpers.LiftRide;
+import servlethelpers.ResortStats;
+import servlets.LiftRideListener;
+
+/**
+ * Approximate per-resort statistics fed from ingested lift rides, in bounded memory: a
+ * HyperLogLog of distinct skiers per resort per day (today and yesterday are kept, with
+ * 2^STATS_HLL_PRECISION registers each) and a sliding LiftWindow of the last
+ * STATS_WINDOW_MINUTES minutes of rides per lift for finding the busiest lifts.
+ * Each server only sees its own rides; ResortStats with sketches from every server can be
+ * combined with merge.
+ */
+public class ResortSketches implements LiftRideListener {
+  private final int precision;
+  private final int windowMinutes;
+  // (resortID << 32 | day since 1970-01-01) -> distinct skiers, on RideAggregates' day scale
+  private final ConcurrentHashMap<Long, HyperLogLog> skiers = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Integer, LiftWindow> lifts = new ConcurrentHashMap<>();
+
+  /**
+   * Creates empty sketches
+   * @param precision is the HyperLogLog precision of each resort-day's unique skier sketch
+   * @param windowMinutes is the length (in minutes) of the busiest lifts window
+   */
+  public ResortSketches(int precision, int windowMinutes) {
+    this.precision = precision;
+    this.windowMinutes = windowMinutes;
+  }
+
+  /**
+   * Gets our shared sketches, configured from the STATS_HLL_PRECISION (14 by default) and
+   * STATS_WINDOW_MINUTES (10 by default) system properties
+   * @return the sketches our servlets update and read
+   */
+  public static ResortSketches getInstance() {
+    return InstanceHolder.INSTANCE;
+  }
+
+  /**
+   * Lazily builds our shared sketches the first time a servlet needs them
+   */
+  private static class InstanceHolder {
+    private static final ResortSketches INSTANCE = new ResortSketches(
+            Integer.getInteger("STATS_HLL_PRECISION", 14),
+            Integer.getInteger("STATS_WINDOW_MINUTES", 10));
+  }
+
+  /**
+   * Counts a newly ingested lift ride towards its resort's sketches
+   * @param ride is the newly written lift ride
+   */
+  @Override
+  public void onLiftRideCreated(LiftRide ride) {
+    long key = ((long) ride.getResort() << 32) | RideAggregates.currentDay();
+    HyperLogLog sketch = skiers.get(key);
+    if (sketch == null) {
+      sketch = skiers.computeIfAbsent(key, k -> new HyperLogLog(precision));
+      // a new day has started for this resort, so drop the days we no longer keep
+      skiers.keySet().removeIf(k -> !RideAggregates.isRetained((int) (long) k));
+    }
+    sketch.add(ride.getSkier());
+    lifts.computeIfAbsent(ride.getResort(), k -> new LiftWindow(windowMinutes))
+            .add(ride.getLiftID());
+  }
+
+  /**
+   * @return the maximum number of busiest lifts getStats can return
+   */
+  public static int maxTop() {
+    return LiftWindow.maxTop();
+  }
+
+  /**
+   * Gets a resort's approximate statistics
+   * @param resortID is the integer ID of the resort
+   * @param dayID is the day of the year to count unique skiers for, meaning its most recent
+   *              occurrence
+   * @param k is the maximum number of busiest lifts to return
+   * @param withSketches is whether to include the serialized sketches for merging
+   * @return the resort's statistics
+   */
+  public ResortStats getStats(int resortID, int dayID, int k, boolean withSketches) {
+    HyperLogLog sketch = skiers.get(((long) resortID << 32) | RideAggregates.storedDay(dayID));
+    if (sketch == null) {
+      sketch = new HyperLogLog(precision);
+    }
+    LiftWindow window = lifts.get(resortID);
+    if (window == null) {
+      window = new LiftWindow(windowMinutes);
+    }
+    Set<Integer> candidates = new HashSet<>();
+    CountMinSketch rides = window.snapshot(candidates);
+    Base64.Encoder encoder = Base64.getEncoder();
+    return new ResortStats(resortID, dayID, sketch.estimate(), windowMinutes,
+            toLiftCounts(LiftWindow.topLifts(k, rides, candidates)),
+            withSketches ? encoder.encodeToString(sketch.toBytes()) : null,
+            withSketches ? encoder.encodeToString(rides.toBytes()) : null);
+  }
+
+  /**
+   * Merges the statistics (with sketches) each server returned for the same resort and day into
+   * the statistics of all of their rides together
+   * @param nodeStats is the statistics from each server, all including sketches
+   * @param k is the maximum number of busiest lifts to return
+   * @return the merged statistics, including the merged sketches
+   * @throws IllegalArgumentException if no statistics were given or any lacks its sketches
+   */
+  public static ResortStats merge(List<ResortStats> nodeStats, int k)
+          throws IllegalArgumentException {
+    if (nodeStats.isEmpty()) {
+      throw new IllegalArgumentException("Nothing to merge");
+    }
+    Base64.Decoder decoder = Base64.getDecoder();
+    HyperLogLog skierSketch = null;
+    CountMinSketch liftSketch = null;
+    Set<Integer> candidates = new HashSet<>();
+    for (ResortStats stats : nodeStats) {
+      if (stats.getSkierSketch() == null || stats.getLiftSketch() == null) {
+        throw new IllegalArgumentException("Stats to merge must include their sketches");
+      }
+      HyperLogLog skiers = HyperLogLog.fromBytes(decoder.decode(stats.getSkierSketch()));
+      CountMinSketch rides = CountMinSketch.fromBytes(decoder.decode(stats.getLiftSketch()));
+      if (skierSketch == null) {
+        skierSketch = skiers;
+        liftSketch = rides;
+      } else {
+        skierSketch.merge(skiers);
+        liftSketch.merge(rides);
+      }
+      for (LiftCount lift : stats.getTopLifts()) {
+        candidates.add(lift.getLiftID());
+      }
+    }
+    Base64.Encoder encoder = Base64.getEncoder();
+    ResortStats first = nodeStats.get(0);
+    return new ResortStats(first.getResortID(), first.getDayID(), skierSketch.estimate(),
+            first.getWindowMinutes(), toLiftCounts(LiftWindow.topLifts(k, liftSketch, candidates)),
+            encoder.encodeToString(skierSketch.toBytes()),
+            encoder.encodeToString(liftSketch.toBytes()));
+  }
+
+  /**
+   * Converts {liftID, rides} pairs into LiftCounts
+   * @param pairs is the pairs to convert
+   * @return the LiftCounts in the same order
+   */
+  private static List<LiftCount> toLiftCounts(List<long[]> pairs) {
+    List<LiftCount> counts = new ArrayList<>(pairs.size());
+    for (long[] pair : pairs) {
+      counts.add(new LiftCount((int) pair[0], pair[1]));
+    }
+    return counts;
+  }
+}
@@ -0,0 +1,331 @@
+package aggregates;
+
+import daos.AggregateDAO;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import servlethelpers.LiftHourCounts;
+import servlethelpers.LiftRide;
+import servlethelpers.SkierDayTotal;
+import servlets.LiftRideListener;
+
+/**
+ * Per-skier day totals (ride count and vertical) and per-lift hourly ride counts, updated in
+ * memory as each lift ride is ingested so reading one is a single map lookup rather than a scan of
+ * the liftrides table. Today's and yesterday's aggregates are kept in memory, seeded from the
+ * database at startup; older days are read from the database.
+ * Every AGGREGATE_CHECKPOINT_SECS (60 by default) the change since the last checkpoint is added
+ * to the skierdaytotals and lifthourcounts tables, so several servers can checkpoint into the
+ * same tables. A server's in-memory totals start from the checkpointed values it loaded at startup
+ * and add only its own rides since, so other servers' later checkpoints aren't reflected.
+ * The checkpoint period can be changed at runtime over JMX.
+ * Days are read by day of the year (UTC), meaning its most recent occurrence, and stored with
+ * their year (see AggregateDAO); hours are lift times 1-60, 61-120, and so on.
+ */
+public class RideAggregates implements LiftRideListener, RideAggregatesMXBean {
+  private static final int MINUTES_PER_HOUR = 60;
+  private final AggregateDAO dao;
+  private final Map<Long, Integer> liftVerticals;
+  // skier-day key -> packed (rides << 32 | vertical), see AggregateDAO
+  private final ConcurrentHashMap<Long, AtomicLong> skierDays = new ConcurrentHashMap<>();
+  // lift-day key -> rides in each hour
+  private final ConcurrentHashMap<Long, AtomicIntegerArray> liftHours = new ConcurrentHashMap<>();
+  // what the database held for each key as of our last checkpoint (or startup)
+  private final Map<Long, Long> skierDaysSaved = new HashMap<>();
+  private final Map<Long, int[]> liftHoursSaved = new HashMap<>();
+  // guards our checkpoint schedule, apart from checkpoint so rescheduling never waits on one
+  private final Object scheduleLock = new Object();
+  private ScheduledExecutorService checkpointer;
+  private ScheduledFuture<?> checkpoints;
+  private volatile long checkpointSecs;
+  private volatile int lastCheckpointRows;
+  private volatile long lastCheckpointMillis;
+  private volatile long failedCheckpoints;
+
+  /**
+   * Creates our aggregates, loading lift verticals and seeding today's and yesterday's
+   * aggregates from the given DAO
+   * @param dao is the DAO holding our lift verticals and checkpointed aggregates
+   */
+  public RideAggregates(AggregateDAO dao) {
+    this.dao = dao;
+    this.liftVerticals = dao.getLiftVerticals();
+    LocalDate today = LocalDate.now(ZoneOffset.UTC);
+    for (LocalDate day : new LocalDate[]{today.minusDays(1), today}) {
+      int dayID = (int) day.toEpochDay();
+      for (Map.Entry<Long, Long> saved : dao.getSkierDayTotals(dayID).entrySet()) {
+        skierDays.put(saved.getKey(), new AtomicLong(saved.getValue()));
+        skierDaysSaved.put(saved.getKey(), saved.getValue());
+      }
+      for (Map.Entry<Long, int[]> saved : dao.getLiftHourCounts(dayID).entrySet()) {
+        liftHours.put(saved.getKey(), new AtomicIntegerArray(saved.getValue()));
+        liftHoursSaved.put(saved.getKey(), saved.getValue());
+      }
+    }
+  }
+
+  /**
+   * Gets our shared aggregates, creating them and starting their checkpoints on first use
+   * @return the aggregates our servlets update and read
+   */
+  public static RideAggregates getInstance() {
+    return InstanceHolder.INSTANCE;
+  }
+
+  /**
+   * Lazily builds our shared aggregates the first time a servlet needs them
+   */
+  private static class InstanceHolder {
+    private static final RideAggregates INSTANCE = create();
+
+    /**
+     * Builds our shared aggregates over our connection pool and schedules their checkpoints
+     * @return the shared aggregates
+     */
+    private static RideAggregates create() {
+      RideAggregates aggregates = new RideAggregates(new AggregateDAO());
+      aggregates.checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "aggregate-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+      });
+      aggregates.setCheckpointSecs(Long.getLong("AGGREGATE_CHECKPOINT_SECS", 60L));
+      return aggregates;
+    }
+  }
+
+  /**
+   * @return how often (in seconds) our counts are checkpointed to the database
+   */
+  @Override
+  public long getCheckpointSecs() {
+    return checkpointSecs;
+  }
+
+  /**
+   * Changes how often our counts are checkpointed, the next checkpoint is one new period from now
+   * @param checkpointSecs is the new period in seconds, at least 1
+   * @throws IllegalArgumentException if checkpointSecs is below 1
+   */
+  @Override
+  public void setCheckpointSecs(long checkpointSecs) throws IllegalArgumentException {
+    if (checkpointSecs < 1) {
+      throw new IllegalArgumentException("checkpointSecs must be at least 1");
+    }
+    synchronized (scheduleLock) {
+      if (checkpoints != null) {
+        checkpoints.cancel(false);
+      }
+      this.checkpointSecs = checkpointSecs;
+      checkpoints = checkpointer.scheduleWithFixedDelay(this::checkpoint, checkpointSecs,
+              checkpointSecs, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * @return the number of rows (skier days and lift days) our last checkpoint wrote
+   */
+  @Override
+  public int getLastCheckpointRows() {
+    return lastCheckpointRows;
+  }
+
+  /**
+   * @return how long (in ms) our last checkpoint took
+   */
+  @Override
+  public long getLastCheckpointMillis() {
+    return lastCheckpointMillis;
+  }
+
+  /**
+   * @return the number of checkpoints that failed to write and were retried
+   */
+  @Override
+  public long getFailedCheckpoints() {
+    return failedCheckpoints;
+  }
+
+  /**
+   * Simple getter for the current day of the year (UTC), the dayID our APIs default to. Rides are
+   * counted under the current date instead, see currentDay.
+   * @return the current day of the year, 1-366
+   */
+  public static int today() {
+    return LocalDate.now(ZoneOffset.UTC).getDayOfYear();
+  }
+
+  /**
+   * Simple getter for the current date, which ingested rides are counted under
+   * @return today's day since 1970-01-01 (UTC)
+   */
+  static int currentDay() {
+    return (int) LocalDate.now(ZoneOffset.UTC).toEpochDay();
+  }
+
+  /**
+   * Finds the most recent date (today or earlier) falling on a day of the year, so a season's
+   * days are found across the new year
+   * @param dayOfYear is the day of the year, 1-366
+   * @return the date's day since 1970-01-01 (UTC), the key our aggregates are stored under
+   */
+  static int storedDay(int dayOfYear) {
+    LocalDate today = LocalDate.now(ZoneOffset.UTC);
+    int year = dayOfYear <= today.getDayOfYear() ? today.getYear() : today.getYear() - 1;
+    // day 366 only falls in leap years
+    while (dayOfYear > LocalDate.of(year, 1, 1).lengthOfYear()) {
+      year--;
+    }
+    return (int) LocalDate.ofYearDay(year, dayOfYear).toEpochDay();
+  }
+
+  /**
+   * Looks up the vertical of a lift, defaulting to the Upic convention of 10 times the lift ID
+   * for lifts missing from the liftverticals table
+   * @param resortID is the integer ID of the resort
+   * @param liftID is the integer ID of the lift
+   * @return the vertical of one ride on the lift
+   */
+  private int verticalOf(int resortID, int liftID) {
+    Integer vertical = liftVerticals.get(((long) resortID << 32) | liftID);
+    return vertical == null ? liftID * 10 : vertical;
+  }
+
+  /**
+   * Converts a lift time into the hour of the day it falls in
+   * @param time is the lift time (minutes since the lifts opened, starting at 1)
+   * @return the hour index, clamped to the hours we track
+   */
+  private static int hourOf(int time) {
+    int hour = (time - 1) / MINUTES_PER_HOUR;
+    return Math.max(0, Math.min(AggregateDAO.HOURS_PER_DAY - 1, hour));
+  }
+
+  /**
+   * Counts a newly ingested lift ride towards today's aggregates
+   * @param ride is the newly written lift ride
+   */
+  @Override
+  public void onLiftRideCreated(LiftRide ride) {
+    int day = currentDay();
+    int vertical = verticalOf(ride.getResort(), ride.getLiftID());
+    skierDays.computeIfAbsent(AggregateDAO.skierDayKey(ride.getSkier(), day),
+            k -> new AtomicLong()).addAndGet(AggregateDAO.packTotals(1, vertical));
+    liftHours.computeIfAbsent(AggregateDAO.liftDayKey(ride.getResort(), day, ride.getLiftID()),
+            k -> new AtomicIntegerArray(AggregateDAO.HOURS_PER_DAY))
+            .incrementAndGet(hourOf(ride.getTime()));
+  }
+
+  /**
+   * Checks whether a day's aggregates are kept in memory
+   * @param day is the day, in days since 1970-01-01 (UTC)
+   * @return true if the day is today or yesterday
+   */
+  static boolean isRetained(int day) {
+    long today = LocalDate.now(ZoneOffset.UTC).toEpochDay();
+    return day == today || day == today - 1;
+  }
+
+  /**
+   * Gets a skier's totals for a day
+   * @param skierID is the integer ID of the skier
+   * @param dayID is the day of the year
+   * @return the skier's ride count and vertical for that day
+   */
+  public SkierDayTotal getSkierDayTotal(int skierID, int dayID) {
+    int day = storedDay(dayID);
+    long totals;
+    if (isRetained(day)) {
+      AtomicLong counter = skierDays.get(AggregateDAO.skierDayKey(skierID, day));
+      totals = counter == null ? 0 : counter.get();
+    } else {
+      totals = dao.getSkierDayTotal(skierID, day);
+    }
+    return new SkierDayTotal(skierID, dayID, (int) (totals >>> 32), (int) totals);
+  }
+
+  /**
+   * Gets a lift's ride counts in each hour of a day
+   * @param resortID is the integer ID of the resort
+   * @param dayID is the day of the year
+   * @param liftID is the integer ID of the lift
+   * @return the lift's hourly ride counts for that day
+   */
+  public LiftHourCounts getLiftHourCounts(int resortID, int dayID, int liftID) {
+    int day = storedDay(dayID);
+    int[] hourly = new int[AggregateDAO.HOURS_PER_DAY];
+    if (isRetained(day)) {
+      AtomicIntegerArray counts = liftHours.get(AggregateDAO.liftDayKey(resortID, day, liftID));
+      if (counts != null) {
+        for (int hour = 0; hour < hourly.length; hour++) {
+          hourly[hour] = counts.get(hour);
+        }
+      }
+    } else {
+      hourly = dao.getLiftHourCounts(resortID, day, liftID);
+    }
+    return new LiftHourCounts(resortID, dayID, liftID, hourly);
+  }
+
+  /**
+   * Adds everything counted since our last checkpoint to the database, then drops days that are
+   * no longer retained in memory. If the write fails the same changes are retried next time.
+   * @return true if the checkpoint was written (or there was nothing to write), false otherwise
+   */
+  public synchronized boolean checkpoint() {
+    long startTime = System.currentTimeMillis();
+    Map<Long, Long> skierCurrent = new HashMap<>();
+    Map<Long, Long> skierDeltas = new HashMap<>();
+    for (Map.Entry<Long, AtomicLong> entry : skierDays.entrySet()) {
+      long current = entry.getValue().get();
+      long delta = current - skierDaysSaved.getOrDefault(entry.getKey(), 0L);
+      if (delta != 0) {
+        skierCurrent.put(entry.getKey(), current);
+        skierDeltas.put(entry.getKey(), delta);
+      }
+    }
+    Map<Long, int[]> liftCurrent = new HashMap<>();
+    Map<Long, int[]> liftDeltas = new HashMap<>();
+    for (Map.Entry<Long, AtomicIntegerArray> entry : liftHours.entrySet()) {
+      int[] saved = liftHoursSaved.get(entry.getKey());
+      int[] current = new int[AggregateDAO.HOURS_PER_DAY];
+      int[] delta = new int[AggregateDAO.HOURS_PER_DAY];
+      boolean changed = false;
+      for (int hour = 0; hour < current.length; hour++) {
+        current[hour] = entry.getValue().get(hour);
+        delta[hour] = current[hour] - (saved == null ? 0 : saved[hour]);
+        changed |= delta[hour] != 0;
+      }
+      if (changed) {
+        liftCurrent.put(entry.getKey(), current);
+        liftDeltas.put(entry.getKey(), delta);
+      }
+    }
+
+    if (!skierDeltas.isEmpty() || !liftDeltas.isEmpty()) {
+      if (!dao.addDeltas(skierDeltas, liftDeltas)) {
+        failedCheckpoints++;
+        return false;
+      }
+      skierDaysSaved.putAll(skierCurrent);
+      liftHoursSaved.putAll(liftCurrent);
+    }
+
+    // the day is in the high bits of both keys
+    skierDays.keySet().removeIf(key -> !isRetained((int) (key >>> 32)));
+    skierDaysSaved.keySet().removeIf(key -> !isRetained((int) (key >>> 32)));
+    liftHours.keySet().removeIf(key -> !isRetained((int) (key >>> 48)));
+    liftHoursSaved.keySet().removeIf(key -> !isRetained((int) (key >>> 48)));
+    lastCheckpointRows = skierDeltas.size() + liftDeltas.size();
+    lastCheckpointMillis = System.currentTimeMillis() - startTime;
+    return true;
+  }
+}
@@ -0,0 +1,33 @@
+package aggregates;
+
+/**
+ * Runtime view of how often our RideAggregates are checkpointed and what each checkpoint writes
+ */
+public interface RideAggregatesMXBean {
+  /**
+   * @return how often (in seconds) counts are checkpointed to the database
+   */
+  long getCheckpointSecs();
+
+  /**
+   * Changes how often counts are checkpointed
+   * @param checkpointSecs is the new period in seconds, at least 1
+   * @throws IllegalArgumentException if checkpointSecs is below 1
+   */
+  void setCheckpointSecs(long checkpointSecs) throws IllegalArgumentException;
+
+  /**
+   * @return the number of rows (skier days and lift days) the last checkpoint wrote
+   */
+  int getLastCheckpointRows();
+
+  /**
+   * @return how long (in ms) the last checkpoint took
+   */
+  long getLastCheckpointMillis();
+
+  /**
+   * @return the number of checkpoints that failed to write and were retried
+   */
+  long getFailedCheckpoints();
+}
@@ -0,0 +1,80 @@
+package aggregates;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A Space-Saving heavy-hitters summary: tracks at most a fixed number of candidate keys, and any
+ * key occurring more than total/capacity times is guaranteed to be among them. When full, a new
+ * key evicts the candidate with the lowest count. We only use it to find candidates, whose counts
+ * are then estimated from a CountMinSketch.
+ */
+public class SpaceSaving {
+  private final int capacity;
+  private final Map<Integer, Long> counts;
+
+  /**
+   * Creates an empty summary
+   * @param capacity is the maximum number of candidate keys tracked
+   */
+  public SpaceSaving(int capacity) {
+    this.capacity = capacity;
+    this.counts = new HashMap<>(capacity * 2);
+  }
+
+  /**
+   * Counts occurrences of a key
+   * @param key is the key to count
+   * @param count is the number of occurrences
+   */
+  public synchronized void offer(int key, long count) {
+    Long current = counts.get(key);
+    if (current != null) {
+      counts.put(key, current + count);
+    } else if (counts.size() < capacity) {
+      counts.put(key, count);
+    } else {
+      // replace the weakest candidate, inheriting its count as our possible overcount
+      int minKey = 0;
+      long min = Long.MAX_VALUE;
+      for (Map.Entry<Integer, Long> entry : counts.entrySet()) {
+        if (entry.getValue() < min) {
+          min = entry.getValue();
+          minKey = entry.getKey();
+        }
+      }
+      counts.remove(minKey);
+      counts.put(key, min + count);
+    }
+  }
+
+  /**
+   * Merges another summary's candidates into this one
+   * @param other is the summary to merge in
+   */
+  public void merge(SpaceSaving other) {
+    Map<Integer, Long> otherCounts;
+    synchronized (other) {
+      otherCounts = new HashMap<>(other.counts);
+    }
+    for (Map.Entry<Integer, Long> entry : otherCounts.entrySet()) {
+      offer(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Adds our current candidate keys to the given set
+   * @param keys is the set to add our candidates to
+   */
+  public synchronized void addCandidatesTo(Set<Integer> keys) {
+    keys.addAll(counts.keySet());
+  }
+
+  /**
+   * Drops every candidate
+   */
+  public synchronized void clear() {
+    counts.clear();
+  }
+}
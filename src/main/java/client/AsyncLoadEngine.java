@@ -0,0 +1,245 @@
+package client;
+
+import com.google.gson.Gson;
+import org.apache.log4j.Logger;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import requestlog.Endpoint;
+import requestlog.RequestIds;
+import requestlog.RequestLog;
+import servlethelpers.JsonCodecs;
+import servlethelpers.LiftRideInput;
+import servlethelpers.LiftRideList;
+
+/**
+ * A non-blocking alternative to our SkierClientThreads: a small pool of shared HttpClients, each
+ * keeping a fixed number of POST-then-GET sessions in flight with sendAsync, so the number of
+ * outstanding requests is not bounded by the number of threads. Request templates (URIs, headers)
+ * are built once up front. Over HTTP/2 a client's in-flight requests share its connection;
+ * over HTTP/1.1 the client opens up to that many connections instead. Results are recorded in
+ * the same counters and histograms as SkierClientThread's.
+ */
+public class AsyncLoadEngine {
+  private static final String APP_PATH = "/A3_war";
+  private static final Logger log = Logger.getLogger(AsyncLoadEngine.class);
+  private final HttpClient[] clients;
+  private final ExecutorService executor;
+  private final int inFlight;
+  private final int firstSkierID;
+  private final int numSkiers;
+  private final int numLifts;
+  private final int liftStartTime;
+  private final int liftEndTime;
+  private final HttpRequest.Builder postTemplate;
+  private final HttpRequest.Builder getTemplate;
+  private final String getPrefix;
+  private final Gson gson = JsonCodecs.gson();
+
+  /**
+   * Creates an engine and its clients, ready to start
+   * @param hostname is the String hostname of the servlet to send requests to
+   * @param port is the integer port of the servlet to send requests to
+   * @param numClients is the number of HttpClients to share the load between
+   * @param inFlight is the number of sessions each client keeps in flight
+   * @param firstSkierID is the first of the skier IDs to send rides for
+   * @param numSkiers is the number of skier IDs (from firstSkierID on) to send rides for
+   * @param numLifts is the number of lifts (IDs 1..numLifts) to send rides for
+   * @param liftStartTime is the integer lower bound for our lift ride time
+   * @param liftEndTime is the integer upper bound for our lift ride time
+   */
+  public AsyncLoadEngine(String hostname, int port, int numClients, int inFlight,
+                         int firstSkierID, int numSkiers, int numLifts, int liftStartTime,
+                         int liftEndTime) {
+    this.inFlight = inFlight;
+    this.firstSkierID = firstSkierID;
+    this.numSkiers = numSkiers;
+    this.numLifts = numLifts;
+    this.liftStartTime = liftStartTime;
+    this.liftEndTime = liftEndTime;
+    // callbacks only parse and record, so a thread per core is enough for any number in flight
+    this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+      Thread thread = new Thread(r, "load-engine");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.clients = new HttpClient[numClients];
+    for (int i = 0; i < numClients; i++) {
+      clients[i] = HttpClient.newBuilder()
+              .version(HttpClient.Version.HTTP_2)
+              .connectTimeout(Duration.ofSeconds(15))
+              .executor(executor)
+              .build();
+    }
+    String base = "http://" + hostname + ":" + port + APP_PATH + "/liftrides";
+    this.postTemplate = HttpRequest.newBuilder()
+            .uri(URI.create(base))
+            .timeout(SkierClientThread.POST_TIMEOUT)
+            .setHeader("Content-Type", "application/json")
+            .setHeader("Authorization", SkierClientThread.AUTH_HEADER);
+    this.getTemplate = HttpRequest.newBuilder()
+            .GET()
+            .setHeader("Content-Type", "application/json");
+    this.getPrefix = base + "/";
+  }
+
+  /**
+   * Starts every client's sessions. Each session sends a POST then a GET of the ride it created,
+   * over and over until our multi-threaded client says the run is done.
+   * @return a future completed once every session has stopped
+   */
+  public CompletableFuture<Void> start() {
+    CompletableFuture<?>[] sessions = new CompletableFuture<?>[clients.length * inFlight];
+    for (int i = 0; i < sessions.length; i++) {
+      CompletableFuture<Void> finished = new CompletableFuture<>();
+      sessions[i] = finished;
+      next(clients[i % clients.length], finished);
+    }
+    return CompletableFuture.allOf(sessions).whenComplete((v, e) -> executor.shutdown());
+  }
+
+  /**
+   * Starts a session's next step (a POST and a GET) once our target rate allows, or stops the
+   * session once the run is done. Each step is started from the previous one's completion rather
+   * than chained onto it, so a long session builds no chain of futures.
+   * @param client is the client the session sends its requests with
+   * @param finished is completed once the session has stopped
+   */
+  private void next(HttpClient client, CompletableFuture<Void> finished) {
+    if (SkierClientMultiThreaded.isDone()) {
+      finished.complete(null);
+      return;
+    }
+    long waitNanos = SkierClientMultiThreaded.reserveSessionStep();
+    if (waitNanos > 0) {
+      // hold our place under the target rate without holding a thread
+      CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS, executor)
+              .execute(() -> step(client, finished));
+    } else {
+      step(client, finished);
+    }
+  }
+
+  /**
+   * Sends a session's POST and GET, then moves it on to its next step
+   * @param client is the client the session sends its requests with
+   * @param finished is completed once the session has stopped
+   */
+  private void step(HttpClient client, CompletableFuture<Void> finished) {
+    int skierID = SkierClientThread.getRandomNum(firstSkierID, firstSkierID + numSkiers);
+    int time = SkierClientThread.getRandomNum(liftStartTime, liftEndTime + 1);
+    int liftID = SkierClientThread.getRandomNum(1, numLifts + 1);
+    HttpRequest.Builder post = postTemplate.copy()
+            .POST(HttpRequest.BodyPublishers.ofString(
+                    gson.toJson(new LiftRideInput(skierID, 1, liftID, time))))
+            .setHeader("Idempotency-Key", UUID.randomUUID().toString());
+    sendPost(client, post, 1, System.currentTimeMillis())
+            .thenCompose(backoffSecs -> backoffSecs > 0
+                    ? CompletableFuture.runAsync(() -> { },
+                            CompletableFuture.delayedExecutor(backoffSecs, TimeUnit.SECONDS, executor))
+                    : CompletableFuture.completedFuture(null))
+            .whenComplete((v, e) -> next(client, finished));
+  }
+
+  /**
+   * Sends a POST (retrying timeouts under its Idempotency-Key) and records its result, then on
+   * success sends a GET of the created ride
+   * @param client is the client to send the requests with
+   * @param post is the POST request to send, each attempt is built from it with its own
+   *             X-Request-ID
+   * @param attempt is the number of this attempt, starting at 1
+   * @param startTime is the time (in ms) the first attempt was sent
+   * @return a future of the seconds the server asked us to back off for (0 if none)
+   */
+  private CompletableFuture<Long> sendPost(HttpClient client, HttpRequest.Builder post,
+                                           int attempt, long startTime) {
+    RequestLog requestLog = SkierClientMultiThreaded.getRequestLog();
+    long requestId = RequestIds.newId();
+    long attemptStart = requestLog.start();
+    HttpRequest request = post.copy()
+            .setHeader(RequestIds.HEADER, RequestIds.format(requestId))
+            .build();
+    return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+            .handle((response, error) -> {
+              requestLog.record(Endpoint.LIFTRIDES_POST,
+                      response != null ? response.statusCode() : 0,
+                      attemptStart, requestId);
+              Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+              if (cause instanceof IOException && attempt < SkierClientThread.MAX_POST_ATTEMPTS) {
+                // timed out or lost the connection, the server may still have written the ride
+                log.debug("POST attempt " + attempt + ": " + cause.getMessage());
+                return sendPost(client, post, attempt + 1, startTime);
+              }
+              int rideID = -1;
+              long backoffSecs = 0;
+              if (response != null && response.statusCode() == 201) {
+                SkierClientThread.incSuccess();
+                rideID = gson.fromJson(response.body(), LiftRideList.class).getLastRideId();
+              } else {
+                SkierClientThread.incFail();
+                if (response != null) {
+                  log.debug("POST: " + response.body());
+                  backoffSecs = Math.max(0, SkierClientThread.retryAfterSecs(response));
+                } else {
+                  log.debug("POST: " + cause.getMessage());
+                }
+              }
+              SkierClientThread.updateHistogram("POST",
+                      (int) (System.currentTimeMillis() - startTime));
+              SkierClientThread.incPost();
+              if (rideID < 1 || SkierClientMultiThreaded.isDone()) {
+                return CompletableFuture.completedFuture(backoffSecs);
+              }
+              return sendGet(client, rideID);
+            })
+            .thenCompose(next -> next);
+  }
+
+  /**
+   * Sends a GET of a ride and records its result
+   * @param client is the client to send the request with
+   * @param rideID is the integer ID of the lift ride we are querying
+   * @return a future of the seconds the server asked us to back off for (0 if none)
+   */
+  private CompletableFuture<Long> sendGet(HttpClient client, int rideID) {
+    long startTime = System.currentTimeMillis();
+    RequestLog requestLog = SkierClientMultiThreaded.getRequestLog();
+    long requestId = RequestIds.newId();
+    long requestStart = requestLog.start();
+    HttpRequest get = getTemplate.copy().uri(URI.create(getPrefix + rideID))
+            .setHeader(RequestIds.HEADER, RequestIds.format(requestId))
+            .build();
+    return client.sendAsync(get, HttpResponse.BodyHandlers.ofString())
+            .handle((response, error) -> {
+              requestLog.record(Endpoint.LIFTRIDES_GET,
+                      response != null ? response.statusCode() : 0,
+                      requestStart, requestId);
+              long backoffSecs = 0;
+              if (response != null && response.statusCode() == 200) {
+                SkierClientThread.incSuccess();
+              } else {
+                SkierClientThread.incFail();
+                if (response != null) {
+                  log.debug("GET: " + response.body());
+                  backoffSecs = Math.max(0, SkierClientThread.retryAfterSecs(response));
+                } else {
+                  log.debug("GET: " + error.getMessage());
+                }
+              }
+              SkierClientThread.updateHistogram("GET",
+                      (int) (System.currentTimeMillis() - startTime));
+              SkierClientThread.incGet();
+              return backoffSecs;
+            });
+  }
+}
@@ -0,0 +1,220 @@
+package client;
+
+import com.google.gson.Gson;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a load test too big for one JVM by splitting it across worker processes (LoadWorkers)
+ * started on this host with our own java binary and classpath. Each worker gets its own slice of
+ * the skier IDs and an equal share of the target rate, and all of them start at the same time.
+ * Once they finish, their raw counters and histograms are merged into a single RunReport, so
+ * percentiles are computed over every request rather than averaged across workers.
+ */
+public class LoadCoordinator {
+  // time for every worker JVM to start up before the shared start time
+  private static final long START_DELAY_MILLIS = 3000;
+
+  /**
+   * Entry point of our coordinator.
+   * @param args is our command line arguments. It expects the arguments to be of form (in any order):
+   *             [-w numWorkers -h hostname -p port -t numThreads -s numSkiers -l numLifts
+   *             -d testTimeSecs -i inFlight -r targetRate -o reportFile]. numThreads and
+   *             inFlight are per worker, skiers and targetRate (requests/second, 0 for no limit)
+   *             are split between workers, and the report is printed to stdout if no report file
+   *             is given
+   * @throws Exception if a worker could not be started, failed, or the run was interrupted
+   */
+  public static void main(String[] args) throws Exception {
+    int numWorkers = 2;
+    String hostname = "localhost";
+    int port = 8080;
+    int numThreads = 32;
+    int numSkiers = 20000;
+    int numLifts = 40;
+    int testTimeSecs = 60;
+    int inFlight = 0;
+    double targetRate = 0;
+    String reportFile = null;
+    for (int i = 0; i < args.length - 1; i++) {
+      switch (args[i]) {
+        case "-w":
+          numWorkers = Integer.parseInt(args[i+1]);
+          break;
+        case "-h":
+          hostname = args[i+1];
+          break;
+        case "-p":
+          port = Integer.parseInt(args[i+1]);
+          break;
+        case "-t":
+          numThreads = Integer.parseInt(args[i+1]);
+          break;
+        case "-s":
+          numSkiers = Integer.parseInt(args[i+1]);
+          break;
+        case "-l":
+          numLifts = Integer.parseInt(args[i+1]);
+          break;
+        case "-d":
+          testTimeSecs = Integer.parseInt(args[i+1]);
+          break;
+        case "-i":
+          inFlight = Integer.parseInt(args[i+1]);
+          break;
+        case "-r":
+          targetRate = Double.parseDouble(args[i+1]);
+          break;
+        case "-o":
+          reportFile = args[i+1];
+          break;
+      }
+    }
+    if (numWorkers < 1 || numSkiers < numWorkers) {
+      throw new IllegalArgumentException("Need at least one worker and one skier per worker");
+    }
+
+    long startAt = System.currentTimeMillis() + START_DELAY_MILLIS;
+    List<Process> workers = new ArrayList<>();
+    List<WorkerOutput> outputs = new ArrayList<>();
+    try {
+      for (int w = 0; w < numWorkers; w++) {
+        // worker w gets skier IDs [first, first + count)
+        int first = 1 + (int) ((long) numSkiers * w / numWorkers);
+        int count = 1 + (int) ((long) numSkiers * (w + 1) / numWorkers) - first;
+        Process worker = startWorker(hostname, port, numThreads, first, count, numLifts,
+                testTimeSecs, inFlight, targetRate / numWorkers, startAt);
+        workers.add(worker);
+        WorkerOutput output = new WorkerOutput(w, worker);
+        output.start();
+        outputs.add(output);
+      }
+      System.out.println("Started " + numWorkers + " workers, running for " + testTimeSecs
+              + " seconds...");
+
+      LoadTotals merged = null;
+      for (int w = 0; w < numWorkers; w++) {
+        int exitCode = workers.get(w).waitFor();
+        outputs.get(w).join();
+        LoadTotals totals = outputs.get(w).getTotals();
+        if (exitCode != 0 || totals == null) {
+          throw new IOException("Worker " + w + " failed with exit code " + exitCode);
+        }
+        if (merged == null) {
+          merged = totals;
+        } else {
+          merged.add(totals);
+        }
+      }
+      RunReport report = new RunReport(hostname, port, numWorkers, numThreads, inFlight, merged);
+      if (reportFile == null) {
+        System.out.println(report.toJson());
+      } else {
+        Files.write(Paths.get(reportFile), report.toJson().getBytes(StandardCharsets.UTF_8));
+        System.out.println("Report written to " + reportFile);
+      }
+    } finally {
+      // don't leave workers running if we failed part way
+      for (Process worker : workers) {
+        worker.destroy();
+      }
+    }
+  }
+
+  /**
+   * Starts a worker JVM with our java binary and classpath
+   * @param hostname is the hostname of the server to send requests to
+   * @param port is the port of the server to send requests to
+   * @param numThreads is the number of threads (or async HttpClients) the worker runs
+   * @param firstSkierID is the first of the worker's skier IDs
+   * @param numSkiers is the number of the worker's skier IDs
+   * @param numLifts is the number of ski lifts to send rides for
+   * @param testTimeSecs is the total time (in seconds) the worker should run
+   * @param inFlight is the number of sessions each async client keeps in flight, 0 for threads
+   * @param targetRate is the worker's share of the target rate, 0 for no limit
+   * @param startAt is the time (in ms since the epoch) every worker starts at
+   * @return the started worker process, its stderr merged into its stdout
+   * @throws IOException if the process could not be started
+   */
+  private static Process startWorker(String hostname, int port, int numThreads, int firstSkierID,
+                                     int numSkiers, int numLifts, int testTimeSecs, int inFlight,
+                                     double targetRate, long startAt) throws IOException {
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    List<String> command = new ArrayList<>();
+    command.add(java);
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(LoadWorker.class.getName());
+    String[] options = {"-h", hostname, "-p", String.valueOf(port),
+        "-t", String.valueOf(numThreads), "-f", String.valueOf(firstSkierID),
+        "-s", String.valueOf(numSkiers), "-l", String.valueOf(numLifts),
+        "-d", String.valueOf(testTimeSecs), "-i", String.valueOf(inFlight),
+        "-r", String.valueOf(targetRate), "-S", String.valueOf(startAt)};
+    for (String option : options) {
+      command.add(option);
+    }
+    return new ProcessBuilder(command)
+            .directory(new File(System.getProperty("user.dir")))
+            .redirectErrorStream(true)
+            .start();
+  }
+
+  /**
+   * Reads a worker's output, passing its progress lines through with the worker's number and
+   * keeping its RESULT line
+   */
+  private static class WorkerOutput extends Thread {
+    private final int worker;
+    private final Process process;
+    private volatile LoadTotals totals;
+
+    /**
+     * Creates a reader of a worker's output
+     * @param worker is the number of the worker
+     * @param process is the worker's process
+     */
+    private WorkerOutput(int worker, Process process) {
+      super("worker-output-" + worker);
+      this.worker = worker;
+      this.process = process;
+      setDaemon(true);
+    }
+
+    /**
+     * Reads the worker's output until it exits
+     */
+    @Override
+    public void run() {
+      Gson gson = new Gson();
+      try (BufferedReader reader = new BufferedReader(
+              new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.startsWith(LoadWorker.RESULT_PREFIX)) {
+            totals = gson.fromJson(line.substring(LoadWorker.RESULT_PREFIX.length()),
+                    LoadTotals.class);
+          } else {
+            System.out.println("[worker " + worker + "] " + line);
+          }
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+
+    /**
+     * Simple getter for the totals the worker reported
+     * @return the worker's totals, or null if it reported none
+     */
+    private LoadTotals getTotals() {
+      return totals;
+    }
+  }
+}
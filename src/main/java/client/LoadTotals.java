@@ -0,0 +1,141 @@
+package client;
+
+/**
+ * The raw counters and 1ms latency histograms of a load test run, which (unlike the percentiles
+ * in a RunReport) can be added together, e.g. to merge the results of several worker processes.
+ */
+public class LoadTotals {
+  private int success;
+  private int fail;
+  private int posts;
+  private int gets;
+  private int[] postHistogram;
+  private int[] getHistogram;
+  private int postOverflow;
+  private int getOverflow;
+  private long runtimeMillis;
+
+  /**
+   * Creates empty totals with histograms of the given length
+   * @param histogramSize is the number of 1ms buckets in each histogram
+   */
+  public LoadTotals(int histogramSize) {
+    this.postHistogram = new int[histogramSize];
+    this.getHistogram = new int[histogramSize];
+  }
+
+  /**
+   * Takes a copy of the totals gathered by our client threads (or async engine) in this JVM
+   * @param runtimeMillis is the wall clock duration of the run in ms
+   * @return the totals of this JVM's run
+   */
+  public static LoadTotals current(long runtimeMillis) {
+    int[] postHistogram = SkierClientThread.getPostHistogram();
+    LoadTotals totals = new LoadTotals(postHistogram.length);
+    synchronized (SkierClientThread.class) {
+      totals.success = SkierClientThread.getSuccessCount();
+      totals.fail = SkierClientThread.getFailureCount();
+      totals.posts = SkierClientThread.getTotalPosts();
+      totals.gets = SkierClientThread.getTotalGets();
+      System.arraycopy(postHistogram, 0, totals.postHistogram, 0, postHistogram.length);
+      int[] getHistogram = SkierClientThread.getGetHistogram();
+      System.arraycopy(getHistogram, 0, totals.getHistogram, 0, getHistogram.length);
+      totals.postOverflow = SkierClientThread.getPostOverflow();
+      totals.getOverflow = SkierClientThread.getGetOverflow();
+    }
+    totals.runtimeMillis = runtimeMillis;
+    return totals;
+  }
+
+  /**
+   * Adds another run's totals to these. Runs are assumed to have run side by side, so the
+   * runtime becomes the longer of the two.
+   * @param other is the totals to add
+   * @throws IllegalArgumentException if the other totals' histograms are of a different length
+   */
+  public void add(LoadTotals other) throws IllegalArgumentException {
+    if (other.postHistogram.length != postHistogram.length
+            || other.getHistogram.length != getHistogram.length) {
+      throw new IllegalArgumentException("Histograms must have the same buckets to be added");
+    }
+    success += other.success;
+    fail += other.fail;
+    posts += other.posts;
+    gets += other.gets;
+    for (int i = 0; i < postHistogram.length; i++) {
+      postHistogram[i] += other.postHistogram[i];
+      getHistogram[i] += other.getHistogram[i];
+    }
+    postOverflow += other.postOverflow;
+    getOverflow += other.getOverflow;
+    runtimeMillis = Math.max(runtimeMillis, other.runtimeMillis);
+  }
+
+  /**
+   * Simple getter for the number of successful requests (GET & POST combined)
+   * @return the integer success count
+   */
+  public int getSuccess() {
+    return success;
+  }
+
+  /**
+   * Simple getter for the number of failed requests (GET & POST combined)
+   * @return the integer failure count
+   */
+  public int getFail() {
+    return fail;
+  }
+
+  /**
+   * Simple getter for the number of POST requests issued
+   * @return the integer POST count
+   */
+  public int getPosts() {
+    return posts;
+  }
+
+  /**
+   * Simple getter for the number of GET requests issued
+   * @return the integer GET count
+   */
+  public int getGets() {
+    return gets;
+  }
+
+  /**
+   * @return the integer array holding the response times of our POST requests
+   */
+  public int[] getPostHistogram() {
+    return postHistogram;
+  }
+
+  /**
+   * @return the integer array holding the response times of our GET requests
+   */
+  public int[] getGetHistogram() {
+    return getHistogram;
+  }
+
+  /**
+   * @return the number of POST responses slower than the histogram can hold
+   */
+  public int getPostOverflow() {
+    return postOverflow;
+  }
+
+  /**
+   * @return the number of GET responses slower than the histogram can hold
+   */
+  public int getGetOverflow() {
+    return getOverflow;
+  }
+
+  /**
+   * Simple getter for the wall clock duration of the run
+   * @return the runtime in ms
+   */
+  public long getRuntimeMillis() {
+    return runtimeMillis;
+  }
+}
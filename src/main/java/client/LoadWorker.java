@@ -0,0 +1,84 @@
+package client;
+
+import com.google.gson.Gson;
+
+/**
+ * One worker process of a distributed load test, started by a LoadCoordinator. It waits for the
+ * coordinator's shared start time, runs its share of the load (its own range of skier IDs at its
+ * share of the target rate), then prints its raw totals as a single RESULT line on stdout for the
+ * coordinator to merge.
+ */
+public class LoadWorker {
+  /**
+   * Prefix of the line holding a worker's JSON LoadTotals
+   */
+  static final String RESULT_PREFIX = "RESULT ";
+
+  /**
+   * Entry point of a worker process.
+   * @param args is our command line arguments. It expects the arguments to be of form (in any order):
+   *             [-h hostname -p port -t numThreads -f firstSkierID -s numSkiers -l numLifts
+   *             -d testTimeSecs -i inFlight -r targetRate -S startAtMillis]
+   * @throws InterruptedException if the worker was interrupted while waiting or running
+   * @throws NumberFormatException if a numeric argument could not be parsed
+   */
+  public static void main(String[] args) throws InterruptedException, NumberFormatException {
+    String hostname = null;
+    int port = -1;
+    int numThreads = -1;
+    int firstSkierID = 1;
+    int numSkiers = -1;
+    int numLifts = -1;
+    int testTimeSecs = -1;
+    int inFlight = 0;
+    double targetRate = 0;
+    long startAtMillis = 0;
+    for (int i = 0; i < args.length - 1; i++) {
+      switch (args[i]) {
+        case "-h":
+          hostname = args[i+1];
+          break;
+        case "-p":
+          port = Integer.parseInt(args[i+1]);
+          break;
+        case "-t":
+          numThreads = Integer.parseInt(args[i+1]);
+          break;
+        case "-f":
+          firstSkierID = Integer.parseInt(args[i+1]);
+          break;
+        case "-s":
+          numSkiers = Integer.parseInt(args[i+1]);
+          break;
+        case "-l":
+          numLifts = Integer.parseInt(args[i+1]);
+          break;
+        case "-d":
+          testTimeSecs = Integer.parseInt(args[i+1]);
+          break;
+        case "-i":
+          inFlight = Integer.parseInt(args[i+1]);
+          break;
+        case "-r":
+          targetRate = Double.parseDouble(args[i+1]);
+          break;
+        case "-S":
+          startAtMillis = Long.parseLong(args[i+1]);
+          break;
+      }
+    }
+    // every worker starts together, so their runs overlap fully
+    long waitMillis = startAtMillis - System.currentTimeMillis();
+    if (waitMillis > 0) {
+      Thread.sleep(waitMillis);
+    }
+    long startTime = System.currentTimeMillis();
+    SkierClientMultiThreaded.run(hostname, port, numThreads, firstSkierID, numSkiers, numLifts,
+            testTimeSecs, inFlight, targetRate);
+    LoadTotals totals = LoadTotals.current(System.currentTimeMillis() - startTime);
+    System.out.println(RESULT_PREFIX + new Gson().toJson(totals));
+    System.out.flush();
+    // the client's timer and HTTP threads are not daemons
+    System.exit(0);
+  }
+}
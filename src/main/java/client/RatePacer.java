@@ -0,0 +1,39 @@
+package client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spaces out the starts of our clients' sessions so that together they run at no more than a
+ * target rate. Each caller reserves the next free slot and waits until it comes up, so the pace
+ * holds however many threads or async sessions share the pacer.
+ */
+class RatePacer {
+  private final long intervalNanos;
+  private final AtomicLong nextSlot = new AtomicLong(System.nanoTime());
+
+  /**
+   * Creates a pacer for the given rate
+   * @param permitsPerSec is the target rate of session starts per second, 0 for no limit
+   */
+  RatePacer(double permitsPerSec) {
+    this.intervalNanos = permitsPerSec > 0 ? (long) (1e9 / permitsPerSec) : 0;
+  }
+
+  /**
+   * Reserves the next slot. A caller that fell behind doesn't get to burst to catch up.
+   * @return how long (in ns) to wait before starting, 0 if the slot has already come up
+   */
+  long reserve() {
+    if (intervalNanos == 0) {
+      return 0;
+    }
+    long now = System.nanoTime();
+    long slot;
+    long next;
+    do {
+      next = nextSlot.get();
+      slot = Math.max(next, now);
+    } while (!nextSlot.compareAndSet(next, slot + intervalNanos));
+    return slot - now;
+  }
+}
@@ -0,0 +1,148 @@
+package client;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * A machine-readable summary of a load test run: request counts, throughput, and latency
+ * percentiles for each operation computed from the client's 1ms latency histograms.
+ */
+public class RunReport {
+  private final String hostname;
+  private final int port;
+  private final int numWorkers;
+  private final int numThreads;
+  private final int inFlightPerClient;
+  private final double runtimeSecs;
+  private final int success;
+  private final int fail;
+  private final double throughput;
+  private final OperationStats post;
+  private final OperationStats get;
+
+  /**
+   * Builds a report from the totals gathered by our client threads
+   * @param hostname is the hostname of the server that was tested
+   * @param port is the port of the server that was tested
+   * @param numThreads is the number of client threads (or async HttpClients) that sent requests
+   * @param inFlightPerClient is the number of sessions each async client kept in flight, or 0
+   *                          if threads sent the requests
+   * @param runtimeMillis is the wall clock duration of the run in ms
+   */
+  public RunReport(String hostname, int port, int numThreads, int inFlightPerClient,
+                   long runtimeMillis) {
+    this(hostname, port, 1, numThreads, inFlightPerClient, LoadTotals.current(runtimeMillis));
+  }
+
+  /**
+   * Builds a report from the (possibly merged) totals of one or more worker processes
+   * @param hostname is the hostname of the server that was tested
+   * @param port is the port of the server that was tested
+   * @param numWorkers is the number of processes whose totals these are
+   * @param numThreads is the number of client threads (or async HttpClients) in each process
+   * @param inFlightPerClient is the number of sessions each async client kept in flight, or 0
+   *                          if threads sent the requests
+   * @param totals is the counters and histograms of the run
+   */
+  public RunReport(String hostname, int port, int numWorkers, int numThreads,
+                   int inFlightPerClient, LoadTotals totals) {
+    this.hostname = hostname;
+    this.port = port;
+    this.numWorkers = numWorkers;
+    this.numThreads = numThreads;
+    this.inFlightPerClient = inFlightPerClient;
+    this.runtimeSecs = totals.getRuntimeMillis() / 1000.0;
+    this.success = totals.getSuccess();
+    this.fail = totals.getFail();
+    this.post = new OperationStats(totals.getPosts(), totals.getPostHistogram(),
+            totals.getPostOverflow(), runtimeSecs);
+    this.get = new OperationStats(totals.getGets(), totals.getGetHistogram(),
+            totals.getGetOverflow(), runtimeSecs);
+    this.throughput = runtimeSecs > 0 ? (post.count + get.count) / runtimeSecs : 0;
+  }
+
+  /**
+   * Simple getter for the overall requests per second of this run
+   * @return the total (GET & POST) requests per second
+   */
+  public double getThroughput() {
+    return throughput;
+  }
+
+  /**
+   * Formats this report as pretty printed JSON
+   * @return the JSON String form of this report
+   */
+  public String toJson() {
+    Gson gson = new GsonBuilder().setPrettyPrinting().serializeSpecialFloatingPointValues().create();
+    return gson.toJson(this);
+  }
+
+  /**
+   * Latency and throughput statistics of a single operation (GET or POST)
+   */
+  static class OperationStats {
+    private final int count;
+    private final double throughput;
+    private final double meanMillis;
+    private final int p50Millis;
+    private final int p90Millis;
+    private final int p99Millis;
+    private final int p999Millis;
+    private final int maxMillis;
+    private final int overflow;
+
+    /**
+     * Computes the statistics for an operation from its latency histogram
+     * @param count is the total number of requests of this operation
+     * @param histogram is the 1ms bucket latency histogram of this operation
+     * @param overflow is the number of requests slower than the histogram can hold
+     * @param runtimeSecs is the duration of the run in seconds
+     */
+    OperationStats(int count, int[] histogram, int overflow, double runtimeSecs) {
+      this.count = count;
+      this.overflow = overflow;
+      this.throughput = runtimeSecs > 0 ? count / runtimeSecs : 0;
+      long recorded = overflow;
+      long sum = 0;
+      int max = 0;
+      for (int i = 0; i < histogram.length; i++) {
+        recorded += histogram[i];
+        sum += (long) i * histogram[i];
+        if (histogram[i] != 0) {
+          max = i;
+        }
+      }
+      // overflowed requests are at least as slow as the histogram is long
+      sum += (long) histogram.length * overflow;
+      this.maxMillis = overflow > 0 ? histogram.length : max;
+      this.meanMillis = recorded > 0 ? (double) sum / recorded : 0;
+      this.p50Millis = percentile(histogram, recorded, 0.50);
+      this.p90Millis = percentile(histogram, recorded, 0.90);
+      this.p99Millis = percentile(histogram, recorded, 0.99);
+      this.p999Millis = percentile(histogram, recorded, 0.999);
+    }
+
+    /**
+     * Finds the latency bucket that the given percentile of recorded requests falls in
+     * @param histogram is the 1ms bucket latency histogram
+     * @param recorded is the total number of recorded requests (including overflow)
+     * @param fraction is the percentile to find as a fraction (e.g. 0.99)
+     * @return the latency in ms of the percentile, or the histogram length if it overflowed
+     */
+    private static int percentile(int[] histogram, long recorded, double fraction) {
+      if (recorded == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(recorded * fraction);
+      long seen = 0;
+      for (int i = 0; i < histogram.length; i++) {
+        seen += histogram[i];
+        if (seen >= rank) {
+          return i;
+        }
+      }
+      return histogram.length;
+    }
+  }
+}
@@ -1,19 +1,31 @@
 package client;
 
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import requestlog.RequestLog;
 
 public class SkierClientMultiThreaded {
 
   private final static int MAX_THREADS = 256;
+  private final static int MAX_IN_FLIGHT = 1024;
   private final static int MAX_LIFTS = 60;
   private final static int MIN_LIFTS = 5;
   private final static int MAX_SKIERS = 50000;
   private final static int DEF_LIFTS = 40;
   private final static int DEF_TIME = 15;
   private final static CountDownLatch doneBarrier = new CountDownLatch(1);
-  private static boolean doneFlag = false;
+  private static volatile boolean doneFlag = false;
+  // paces session steps when a target rate is given
+  private static volatile RatePacer pacer = new RatePacer(0);
+  // our record of every request attempt, for joining with the server's (see LatencyJoiner)
+  private static final RequestLog requestLog = new RequestLog(
+          "TRUE".equals(System.getProperty("CLIENT_REQUEST_LOG")),
+          Integer.getInteger("CLIENT_REQUEST_LOG_BUFFER", 65536),
+          new File(System.getProperty("CLIENT_REQUEST_LOG_DIR", "logs/client")),
+          Long.getLong("CLIENT_REQUEST_LOG_ROLL_MB", 64L) * 1024 * 1024);
   private static int lastNumPosts = 0;
   private static int lastNumGets = 0;
   private static int requestsTimerSecs = 0;
@@ -24,8 +36,10 @@ public class SkierClientMultiThreaded {
    * Entry point into our program that takes a set of command line arguments and sends
    * a large number of POST/GET requests to our server.
    * @param args is our command line arguments. It expects the arguments to be of form (in any order):
-   *            [-T desiredTestTime -t numThreads -s numSkiers -h hostname -p port -l numLifts].
-   *             testTime & numLifts are optional (defaults will be used)
+   *            [-T desiredTestTime -t numThreads -s numSkiers -h hostname -p port -l numLifts
+   *            -i inFlight]. testTime & numLifts are optional (defaults will be used). With -i
+   *            the AsyncLoadEngine is used instead of threads: numThreads HttpClients each keep
+   *            inFlight sessions in flight
    * @throws NumberFormatException if the number of threads, skiers, port, lifts, or runs
    *                               could not be converted to an integer
    */
@@ -33,6 +47,8 @@ public class SkierClientMultiThreaded {
     int numThreads = -1;
     int numSkiers = -1;
     int numLifts = DEF_LIFTS;
+    // 0 runs a thread per session, more runs the async engine
+    int inFlight = 0;
     // test time in minutes
     int testTime = DEF_TIME;
     // parse command line input
@@ -56,11 +72,83 @@ public class SkierClientMultiThreaded {
         case "-l":
           numLifts = Integer.parseInt(args[i+1]);
           break;
+        case "-i":
+          inFlight = Integer.parseInt(args[i+1]);
+          break;
       }
     }
     // error check & run
-    validateArgs(numThreads, numSkiers, numLifts, testTime);
-    runTests(numThreads, numSkiers, numLifts, testTime);
+    validateArgs(numThreads, numSkiers, numLifts, testTime, inFlight);
+    runTests(numThreads, 1, numSkiers, numLifts, TimeUnit.MINUTES.toSeconds(testTime), inFlight);
+  }
+
+  /**
+   * Runs our load test against the given server programmatically (e.g. from a benchmark harness)
+   * and returns a summary of the results. Can only be run once per JVM.
+   * @param host is the hostname of the server to send requests to
+   * @param serverPort is the port of the server to send requests to
+   * @param numThreads is the number of threads to launch
+   * @param numSkiers is the number of skiers each thread can use
+   * @param numLifts is the number of ski lifts each thread can use
+   * @param testTimeSecs is the total time (in seconds) the tests should run
+   * @return the report of the run's throughput and latency percentiles
+   * @throws InterruptedException if an error occurred while waiting for the run to finish
+   * @throws IllegalArgumentException if any of the arguments are outside of their valid ranges
+   */
+  public static RunReport run(String host, int serverPort, int numThreads, int numSkiers,
+                              int numLifts, int testTimeSecs) throws InterruptedException {
+    return run(host, serverPort, numThreads, numSkiers, numLifts, testTimeSecs, 0);
+  }
+
+  /**
+   * Runs our load test against the given server programmatically, with either threads or the
+   * AsyncLoadEngine, and returns a summary of the results. Can only be run once per JVM.
+   * @param host is the hostname of the server to send requests to
+   * @param serverPort is the port of the server to send requests to
+   * @param numThreads is the number of threads to launch, or of HttpClients if inFlight is set
+   * @param numSkiers is the number of skiers each thread can use
+   * @param numLifts is the number of ski lifts each thread can use
+   * @param testTimeSecs is the total time (in seconds) the tests should run
+   * @param inFlight is the number of sessions each async client keeps in flight, 0 for threads
+   * @return the report of the run's throughput and latency percentiles
+   * @throws InterruptedException if an error occurred while waiting for the run to finish
+   * @throws IllegalArgumentException if any of the arguments are outside of their valid ranges
+   */
+  public static RunReport run(String host, int serverPort, int numThreads, int numSkiers,
+                              int numLifts, int testTimeSecs, int inFlight)
+          throws InterruptedException {
+    return run(host, serverPort, numThreads, 1, numSkiers, numLifts, testTimeSecs, inFlight, 0);
+  }
+
+  /**
+   * Runs our share of a load test (e.g. as one of a LoadCoordinator's workers) against the given
+   * server, over a range of skier IDs and at up to a target rate, and returns a summary of the
+   * results. Can only be run once per JVM.
+   * @param host is the hostname of the server to send requests to
+   * @param serverPort is the port of the server to send requests to
+   * @param numThreads is the number of threads to launch, or of HttpClients if inFlight is set
+   * @param firstSkierID is the first of the skier IDs to send rides for
+   * @param numSkiers is the number of skier IDs (from firstSkierID on) to send rides for
+   * @param numLifts is the number of ski lifts each thread can use
+   * @param testTimeSecs is the total time (in seconds) the tests should run
+   * @param inFlight is the number of sessions each async client keeps in flight, 0 for threads
+   * @param targetRate is the most requests per second to send, 0 for as many as we can
+   * @return the report of the run's throughput and latency percentiles
+   * @throws InterruptedException if an error occurred while waiting for the run to finish
+   * @throws IllegalArgumentException if any of the arguments are outside of their valid ranges
+   */
+  public static RunReport run(String host, int serverPort, int numThreads, int firstSkierID,
+                              int numSkiers, int numLifts, int testTimeSecs, int inFlight,
+                              double targetRate) throws InterruptedException {
+    hostname = host;
+    port = serverPort;
+    validateArgs(numThreads, numSkiers, numLifts, testTimeSecs, inFlight);
+    if (firstSkierID < 1 || targetRate < 0) {
+      throw new IllegalArgumentException("Invalid first skier ID or target rate");
+    }
+    // each session step is a POST and a GET
+    pacer = new RatePacer(targetRate / 2);
+    return runTests(numThreads, firstSkierID, numSkiers, numLifts, testTimeSecs, inFlight);
   }
 
   /**
@@ -69,12 +157,13 @@ public class SkierClientMultiThreaded {
    * @param numSkiers is the total number of skiers for the tests to use
    * @param numLifts is the total number of lifts for the tests to use
    * @param testTime is the total amount of time (in minutes) for the tests to run
+   * @param inFlight is the number of sessions each async client keeps in flight, 0 for threads
    * @throws IllegalArgumentException if hostname is null, any of the integer values are
    *                                  less than 1 (or 5 for lifts), or if threads,
-   *                                  skiers, or lifts exceeds max values
+   *                                  skiers, lifts, or in-flight sessions exceeds max values
    */
-  private static void validateArgs(int numThreads, int numSkiers, int numLifts, int testTime)
-          throws IllegalArgumentException {
+  private static void validateArgs(int numThreads, int numSkiers, int numLifts, int testTime,
+                                   int inFlight) throws IllegalArgumentException {
     if (numThreads > MAX_THREADS || numThreads < 1) {
       throw new IllegalArgumentException("Too many or too few threads provided");
     } else if (numSkiers > MAX_SKIERS || numSkiers < 1) {
@@ -83,6 +172,8 @@ public class SkierClientMultiThreaded {
       throw new IllegalArgumentException("Too many or too few lifts provided");
     } else if (testTime < 1){
       throw new IllegalArgumentException("Time must be a positive integer");
+    } else if (inFlight > MAX_IN_FLIGHT || inFlight < 0) {
+      throw new IllegalArgumentException("Too many or too few in-flight sessions provided");
     } else if (hostname == null || port < 1) {
       throw new IllegalArgumentException("Invalid hostname or port");
     }
@@ -92,13 +183,16 @@ public class SkierClientMultiThreaded {
    * Starts our tests which launch a given number of threads that will launch POST and GET
    * requests against our server until the specified amount of time has elapsed.
    * @param numThreads is the number of threads to launch
+   * @param firstSkierID is the first of the skier IDs the threads use
    * @param numSkiers is the number of skiers each thread can use
    * @param numLifts is the number of ski lifts each thread can use
-   * @param testTime is the total time (in minutes) the tests should run
+   * @param testTimeSecs is the total time (in seconds) the tests should run
+   * @param inFlight is the number of sessions each async client keeps in flight, 0 for threads
+   * @return the report of the run's throughput and latency percentiles
    * @throws InterruptedException if an error occurred while waiting on the countdown latch
    */
-  private static void runTests(int numThreads, int numSkiers, int numLifts, long testTime)
-          throws InterruptedException {
+  private static RunReport runTests(int numThreads, int firstSkierID, int numSkiers, int numLifts,
+                                    long testTimeSecs, int inFlight) throws InterruptedException {
     long startTime = System.currentTimeMillis();
     // set up our timer that will flip the done flag & our periodic request printout
     Runnable doneSwitch = () -> { doneFlag = true; doneBarrier.countDown(); };
@@ -113,11 +207,18 @@ public class SkierClientMultiThreaded {
     ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(2);
     timer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
 
-    // launch our threads
-    SkierClientThread[] phaseThreads = launchPhase(numThreads, numSkiers, numLifts,
-            1, 420);
+    // launch our threads (or async sessions)
+    SkierClientThread[] phaseThreads = new SkierClientThread[0];
+    CompletableFuture<Void> sessions = CompletableFuture.completedFuture(null);
+    if (inFlight > 0) {
+      System.out.println("Starting " + numThreads * inFlight + " async sessions...");
+      sessions = new AsyncLoadEngine(hostname, port, numThreads, inFlight, firstSkierID,
+              numSkiers, numLifts, 1, 420).start();
+    } else {
+      phaseThreads = launchPhase(numThreads, firstSkierID, numSkiers, numLifts, 1, 420);
+    }
     // start our test timer & reqs/sec printout
-    timer.schedule(doneSwitch, testTime, TimeUnit.MINUTES);
+    timer.schedule(doneSwitch, testTimeSecs, TimeUnit.SECONDS);
     timer.scheduleAtFixedRate(requestsMade,5, 5, TimeUnit.SECONDS);
 
     // wait for test time to finish
@@ -126,10 +227,13 @@ public class SkierClientMultiThreaded {
     for (SkierClientThread tid : phaseThreads) {
       tid.join();
     }
+    sessions.join();
+    requestLog.close();
     long endTime = System.currentTimeMillis();
     // print our final stats (runtime in seconds)
     printStats(startTime, endTime);
     timer.shutdown();
+    return new RunReport(hostname, port, numThreads, inFlight, endTime - startTime);
   }
 
   /**
@@ -147,7 +251,7 @@ public class SkierClientMultiThreaded {
     System.out.println("Success: " + SkierClientThread.getSuccessCount());
     System.out.println("Fail: " + SkierClientThread.getFailureCount());
     System.out.println("Total Requests/second GET: " + SkierClientThread.getTotalGets() / runtime);
-    System.out.println("Total Requests/second POST:" + SkierClientThread.getTotalGets() / runtime);
+    System.out.println("Total Requests/second POST:" + SkierClientThread.getTotalPosts() / runtime);
     System.out.println("Total Run Time: " + runtime + " seconds");
     System.out.println("Total requests/second: " + (totalReqs / runtime) + "\n---");
     printHistogram("POST", SkierClientThread.getPostHistogram(),
@@ -181,18 +285,19 @@ public class SkierClientMultiThreaded {
    * Launches a series of threads that will process a series of POST/GET requests against our
    * remote server for load testing.
    * @param numThreads is the total number of threads this phase will spawn
+   * @param firstSkierID is the first of the skier IDs this phase splits between its threads
    * @param startTime is the minimum time of the ski day this phase sends requests for
    * @param endTime is the maximum time of the ski day this phase sends requests for
    * @return an array of the thread objects this phase spawned so they can be joined
    */
-  private static SkierClientThread[] launchPhase(int numThreads, int numSkiers, int numLifts,
-                                                 int startTime, int endTime) {
+  private static SkierClientThread[] launchPhase(int numThreads, int firstSkierID, int numSkiers,
+                                                 int numLifts, int startTime, int endTime) {
     SkierClientThread[] tids = new SkierClientThread[numThreads];
     System.out.println("Starting threads...");
 
     for (int i = 0; i < numThreads; i++) {
       // The first and last Skier ID each thread would be handling
-      int startSkierID = i * (numSkiers / numThreads) + 1;
+      int startSkierID = i * (numSkiers / numThreads) + firstSkierID;
       int endSkierID = startSkierID + (numSkiers / numThreads);
       SkierClientThread sct = new SkierClientThread(hostname, port, startSkierID, endSkierID,
               startTime, endTime, numLifts);
@@ -209,4 +314,20 @@ public class SkierClientMultiThreaded {
   public static boolean isDone() {
     return doneFlag;
   }
+
+  /**
+   * Reserves the start of a client session step (a POST and a GET) under our target rate
+   * @return how long (in ns) the caller should wait before starting, 0 to start right away
+   */
+  static long reserveSessionStep() {
+    return pacer.reserve();
+  }
+
+  /**
+   * Simple getter for the log our threads and sessions record their requests in
+   * @return the client's request log (disabled unless CLIENT_REQUEST_LOG is TRUE)
+   */
+  static RequestLog getRequestLog() {
+    return requestLog;
+  }
 }
@@ -2,14 +2,21 @@ package client;
 
 import com.google.gson.Gson;
 import org.apache.log4j.Logger;
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
 import java.util.Base64;
-import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
+import requestlog.Endpoint;
+import requestlog.RequestIds;
+import requestlog.RequestLog;
+import servlethelpers.JsonCodecs;
 import servlethelpers.LiftRideInput;
 import servlethelpers.LiftRideList;
 
@@ -28,14 +35,23 @@ public class SkierClientThread extends Thread {
   private final int numLifts;
   private final HttpClient client;
   private final String app_path = "/A3_war";
-  private final Gson gson = new Gson();
+  private final Gson gson = JsonCodecs.gson();
   private static int FAILURE_COUNT = 0;
   private static int SUCCESS_COUNT = 0;
   private static int TOTAL_GET = 0;
   private static int TOTAL_POST = 0;
-  private static final int[] POST_HISTOGRAM = new int[500];
-  private static final int[] GET_HISTOGRAM = new int[500];
+  // 1ms buckets, anything slower than the histogram length is counted as overflow
+  private static final int HISTOGRAM_SIZE = 5000;
+  private static final int[] POST_HISTOGRAM = new int[HISTOGRAM_SIZE];
+  private static final int[] GET_HISTOGRAM = new int[HISTOGRAM_SIZE];
   private static int POST_OVERFLOW = 0;
+  // cap on how long a Retry-After header can make us wait
+  private static final long MAX_RETRY_AFTER_SECS = 30;
+  // how long a POST may take before we retry it under the same Idempotency-Key
+  static final Duration POST_TIMEOUT = Duration.ofSeconds(2);
+  static final int MAX_POST_ATTEMPTS = 3;
+  // encoded once rather than on every POST
+  static final String AUTH_HEADER = basicAuth("admin", "admin");
   private static int GET_OVERFLOW = 0;
   private static final Logger log = Logger.getLogger(SkierClientThread.class);
 
@@ -72,10 +88,19 @@ public class SkierClientThread extends Thread {
   public void run() {
     // our threads run until main thread switches the done flag
     while (!SkierClientMultiThreaded.isDone()) {
+      long waitNanos = SkierClientMultiThreaded.reserveSessionStep();
+      if (waitNanos > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
       int resortID = 1;
       int skierID = getRandomNum(firstSkierID, lastSkierID);
-      int time = getRandomNum(liftStartTime, liftEndTime);
-      int liftId = getRandomNum(1, numLifts);
+      int time = getRandomNum(liftStartTime, liftEndTime + 1);
+      int liftId = getRandomNum(1, numLifts + 1);
 
       // json formatted data
       String requestBody = gson.toJson(
@@ -89,36 +114,60 @@ public class SkierClientThread extends Thread {
 
   /**
    * Helper method that handles issuing the POST request to the servlet and logging the response.
+   * A POST that times out or loses its connection is retried (up to MAX_POST_ATTEMPTS in all)
+   * under the same Idempotency-Key, so the server writes its ride at most once.
    * @param jsonPostBody is the JSON formatted LiftRideInput that will be created in the database
    * @return the integer ID of the Lift Ride that was created in our database or -1 if it failed
    */
   private int sendPostRequest(String jsonPostBody) {
     long startTime = System.currentTimeMillis();
-    String uriBuilt = "http://" + hostname + app_path + "/liftrides";
+    String uriBuilt = "http://" + hostname + ":" + port + app_path + "/liftrides";
     URI uri = URI.create(uriBuilt);
     int rideID = -1;
+    HttpRequest.Builder builder = HttpRequest.newBuilder()
+            .POST(HttpRequest.BodyPublishers.ofString(jsonPostBody))
+            .uri(uri)
+            .timeout(POST_TIMEOUT)
+            .setHeader("Content-Type", "application/json")
+            .setHeader("Authorization", AUTH_HEADER)
+            .setHeader("Idempotency-Key", UUID.randomUUID().toString());
+    RequestLog requestLog = SkierClientMultiThreaded.getRequestLog();
 
-    try {
-      HttpRequest request = HttpRequest.newBuilder()
-              .POST(HttpRequest.BodyPublishers.ofString(jsonPostBody))
-              .uri(uri)
-              .setHeader("Content-Type", "application/json")
-              .setHeader("Authorization", basicAuth("admin", "admin"))
+    for (int attempt = 1; attempt <= MAX_POST_ATTEMPTS; attempt++) {
+      // each attempt gets its own ID, so it joins with the server's record of it
+      long requestId = RequestIds.newId();
+      HttpRequest request = builder.copy()
+              .setHeader(RequestIds.HEADER, RequestIds.format(requestId))
               .build();
-      HttpResponse<String> response = client.send(request,
-              HttpResponse.BodyHandlers.ofString());
+      long attemptStart = requestLog.start();
+      try {
+        HttpResponse<String> response = client.send(request,
+                HttpResponse.BodyHandlers.ofString());
+        requestLog.record(Endpoint.LIFTRIDES_POST, response.statusCode(), attemptStart,
+                requestId);
 
-      if (response.statusCode() == 201) {
-        incSuccess();
-        // pull out the lift ride ID that was returned
-        rideID = gson.fromJson(response.body(), LiftRideList.class).getLastRideId();
-      } else {
+        if (response.statusCode() == 201) {
+          incSuccess();
+          // pull out the lift ride ID that was returned
+          rideID = gson.fromJson(response.body(), LiftRideList.class).getLastRideId();
+        } else {
+          incFail();
+          log.debug("POST: " + response.body());
+          honorRetryAfter(response);
+        }
+        break;
+      } catch (IOException ex) {
+        requestLog.record(Endpoint.LIFTRIDES_POST, 0, attemptStart, requestId);
+        // timed out or lost the connection, the server may still have written the ride
+        if (attempt == MAX_POST_ATTEMPTS) {
+          incFail();
+        }
+        log.debug("POST attempt " + attempt + ": " + ex.getMessage());
+      } catch (Exception ex) {
         incFail();
-        log.debug("POST: " + response.body());
+        log.debug("POST: " + ex.getMessage());
+        break;
       }
-    } catch (Exception ex) {
-      incFail();
-      log.debug("POST: " + ex.getMessage());
     }
     updateHistogram("POST", (int) (System.currentTimeMillis() - startTime));
     incPost();
@@ -138,20 +187,27 @@ public class SkierClientThread extends Thread {
       log.debug("GET: ride ID less than 1");
       return;
     } else {
+      RequestLog requestLog = SkierClientMultiThreaded.getRequestLog();
+      long requestId = RequestIds.newId();
+      long requestStart = requestLog.start();
       try {
         HttpRequest request = HttpRequest.newBuilder()
                 .GET()
                 .uri(uri)
                 .setHeader("Content-Type", "application/json")
+                .setHeader(RequestIds.HEADER, RequestIds.format(requestId))
                 .build();
         HttpResponse<String> response = client.send(request,
                 HttpResponse.BodyHandlers.ofString());
+        requestLog.record(Endpoint.LIFTRIDES_GET, response.statusCode(), requestStart,
+                requestId);
 
         if (response.statusCode() == 200) {
           incSuccess();
         } else {
           incFail();
           log.debug("GET: " + response.body());
+          honorRetryAfter(response);
         }
       } catch (Exception ex) {
         incFail();
@@ -162,6 +218,45 @@ public class SkierClientThread extends Thread {
     incGet();
   }
 
+  /**
+   * Backs off for the time given by a response's Retry-After header (in seconds) when the server
+   * has shed our request (503) or rate limited us (429), so we don't keep hammering it
+   * @param response is the HTTP response our request received
+   */
+  private void honorRetryAfter(HttpResponse<?> response) {
+    long waitSecs = retryAfterSecs(response);
+    if (waitSecs < 0) {
+      return;
+    }
+    try {
+      Thread.sleep(TimeUnit.SECONDS.toMillis(waitSecs));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Gets how long to back off after a response, going by its Retry-After header (in seconds)
+   * when the server has shed our request (503) or rate limited us (429)
+   * @param response is the HTTP response our request received
+   * @return the seconds to wait (at most MAX_RETRY_AFTER_SECS), or -1 if we need not wait
+   */
+  static long retryAfterSecs(HttpResponse<?> response) {
+    if (response.statusCode() != 503 && response.statusCode() != 429) {
+      return -1;
+    }
+    long waitSecs = 1;
+    String retryAfter = response.headers().firstValue("Retry-After").orElse(null);
+    if (retryAfter != null) {
+      try {
+        waitSecs = Math.min(MAX_RETRY_AFTER_SECS, Math.max(0, Long.parseLong(retryAfter.trim())));
+      } catch (NumberFormatException e) {
+        // HTTP-date form isn't sent by our servlets, fall back to the default
+      }
+    }
+    return waitSecs;
+  }
+
   /**
    * Simple formatter for our POST method that handles correctly encoding the HTTP basic
    * authorization for use in the Authorization header
@@ -169,26 +264,26 @@ public class SkierClientThread extends Thread {
    * @param password is the String password to be encoded
    * @return the Base64 encoded String of the username and password
    */
-  private String basicAuth(String username, String password) {
+  static String basicAuth(String username, String password) {
     return "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes());
   }
 
   /**
    * Updates our GET and POST histograms by incrementing the bucket that the given time sits in.
-   * Assumes that the histogram holds 10ms buckets.
+   * Assumes that the histogram holds 1ms buckets.
    * @param operation is the String representing the type of operation (GET or POST)
    * @param time is the integer time it took the request to process
    */
-  synchronized private void updateHistogram(String operation, int time) {
+  synchronized static void updateHistogram(String operation, int time) {
     if (operation.equals("POST")) {
-      if (time < 5000) {
-        POST_HISTOGRAM[time/10]++;
+      if (time < HISTOGRAM_SIZE) {
+        POST_HISTOGRAM[time]++;
       } else {
         POST_OVERFLOW++;
       }
     } else {
-      if (time < 5000) {
-        GET_HISTOGRAM[time/10]++;
+      if (time < HISTOGRAM_SIZE) {
+        GET_HISTOGRAM[time]++;
       } else {
         GET_OVERFLOW++;
       }
@@ -197,19 +292,19 @@ public class SkierClientThread extends Thread {
 
   /**
    * Simply selects a random integer value between a given lower and upper bound
-   * @param lower is the integer lower bound
-   * @param upper is the integer upper bound
+   * @param lower is the integer (inclusive) lower bound
+   * @param upper is the integer (exclusive) upper bound
    * @return an integer value between the given lower and upper bounds
    */
-  private int getRandomNum(int lower, int upper) {
-    return new Random().nextInt(upper - lower) + upper;
+  static int getRandomNum(int lower, int upper) {
+    return ThreadLocalRandom.current().nextInt(lower, upper);
   }
 
   /**
    * Increments our global failure counter indicating the number of failed requests
    * (GET & POST combined)
    */
-  synchronized private void incFail() {
+  synchronized static void incFail() {
     FAILURE_COUNT++;
   }
 
@@ -217,21 +312,21 @@ public class SkierClientThread extends Thread {
    * Increments our global success counter indicating the number of successful requests
    * (GET & POST combined)
    */
-  synchronized private void incSuccess() {
+  synchronized static void incSuccess() {
     SUCCESS_COUNT++;
   }
 
   /**
    * Increments our global counter holding the total number of GET requests issued
    */
-  synchronized private void incGet() {
+  synchronized static void incGet() {
     TOTAL_GET++;
   }
 
   /**
    * Increments our global counter holding the total number of POST requests issued
    */
-  synchronized private void incPost() {
+  synchronized static void incPost() {
     TOTAL_POST++;
   }
 
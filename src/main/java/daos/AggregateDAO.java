@@ -0,0 +1,307 @@
+package daos;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import javax.sql.DataSource;
+
+/**
+ * Our database access object that handles interacting with the precomputed aggregate tables of
+ * the Upic DB. The liftverticals table holds the vertical of each lift, while the skierdaytotals
+ * and lifthourcounts tables hold the checkpointed per-skier day totals and per-lift hourly ride
+ * counts maintained by RideAggregates. Checkpoints add deltas to the stored values, so several
+ * servers may checkpoint into the same tables. Days are stored as days since 1970-01-01 (UTC),
+ * so the same day of different years is never merged.
+ */
+public class AggregateDAO {
+  /**
+   * Number of hours tracked per lift per day
+   */
+  public static final int HOURS_PER_DAY = 24;
+  /**
+   * Highest resort or lift ID a lift-day key can hold
+   */
+  public static final int MAX_KEYED_ID = (1 << 24) - 1;
+  private final DataSource dataSource;
+
+  public AggregateDAO() {
+    // aggregates are read back right after being checkpointed, so always use the primary
+    this(DBCPDataSource.getDataSource());
+  }
+
+  /**
+   * Constructs a DAO that reads and writes through the given data source instead of our shared
+   * connection pool (e.g. an embedded database for benchmarks)
+   * @param dataSource is the data source holding the aggregate tables
+   */
+  public AggregateDAO(DataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  /**
+   * Packs a skier and day into the single key RideAggregates and this DAO use for skier totals
+   * @param skierID is the integer ID of the skier
+   * @param dayID is the day, in days since 1970-01-01 (UTC)
+   * @return the packed skier-day key
+   */
+  public static long skierDayKey(int skierID, int dayID) {
+    return ((long) dayID << 32) | (skierID & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Packs a resort, day and lift into the single key RideAggregates and this DAO use for lift
+   * counts. Resort and lift IDs must be at most MAX_KEYED_ID, and days below 2^16 (until 2149).
+   * @param resortID is the integer ID of the resort
+   * @param dayID is the day, in days since 1970-01-01 (UTC)
+   * @param liftID is the integer ID of the lift
+   * @return the packed lift-day key
+   */
+  public static long liftDayKey(int resortID, int dayID, int liftID) {
+    return ((long) dayID << 48) | ((long) resortID << 24) | liftID;
+  }
+
+  /**
+   * Packs a ride count and a vertical total into a single value, rides in the high 32 bits
+   * @param rides is the number of rides
+   * @param vertical is the total vertical of those rides
+   * @return the packed totals
+   */
+  public static long packTotals(int rides, int vertical) {
+    return ((long) rides << 32) | (vertical & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Ensures our connection and our prepared statement have been properly closed
+   * @param conn is our connection to the database/datasource
+   * @param prepStatement is the SQL query we have used to query our database
+   */
+  private void closeAll(Connection conn,  PreparedStatement prepStatement) {
+    try {
+      if (conn != null) {
+        conn.close();
+      }
+      if (prepStatement != null) {
+        prepStatement.close();
+      }
+    } catch (SQLException se) {
+      se.printStackTrace();
+    }
+  }
+
+  /**
+   * Gets the vertical of every lift we have one recorded for
+   * @return a map from (resortID << 32 | liftID) to the lift's vertical
+   */
+  public Map<Long, Integer> getLiftVerticals() {
+    Connection conn = null;
+    PreparedStatement prepStatement = null;
+    Map<Long, Integer> verticals = new HashMap<>();
+    String query = "SELECT resortID, liftID, vertical FROM liftverticals";
+    try {
+      conn = dataSource.getConnection();
+      prepStatement = conn.prepareStatement(query);
+      ResultSet queryResult = prepStatement.executeQuery();
+      while (queryResult.next()) {
+        verticals.put(((long) queryResult.getInt("resortID") << 32) | queryResult.getInt("liftID"),
+                queryResult.getInt("vertical"));
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    } finally {
+      closeAll(conn, prepStatement);
+    }
+    return verticals;
+  }
+
+  /**
+   * Gets the checkpointed totals of every skier for the given day
+   * @param dayID is the day, in days since 1970-01-01 (UTC)
+   * @return a map from skier-day key to packed totals (see packTotals)
+   */
+  public Map<Long, Long> getSkierDayTotals(int dayID) {
+    Connection conn = null;
+    PreparedStatement prepStatement = null;
+    Map<Long, Long> totals = new HashMap<>();
+    String query = "SELECT skierID, rides, vertical FROM skierdaytotals WHERE dayID=?";
+    try {
+      conn = dataSource.getConnection();
+      prepStatement = conn.prepareStatement(query);
+      prepStatement.setInt(1, dayID);
+      ResultSet queryResult = prepStatement.executeQuery();
+      while (queryResult.next()) {
+        totals.put(skierDayKey(queryResult.getInt("skierID"), dayID),
+                packTotals(queryResult.getInt("rides"), queryResult.getInt("vertical")));
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    } finally {
+      closeAll(conn, prepStatement);
+    }
+    return totals;
+  }
+
+  /**
+   * Gets the checkpointed totals of a single skier for a single day
+   * @param skierID is the integer ID of the skier
+   * @param dayID is the day, in days since 1970-01-01 (UTC)
+   * @return the packed totals (see packTotals), 0 if the skier has none that day
+   */
+  public long getSkierDayTotal(int skierID, int dayID) {
+    Connection conn = null;
+    PreparedStatement prepStatement = null;
+    long totals = 0;
+    String query = "SELECT rides, vertical FROM skierdaytotals WHERE skierID=? AND dayID=?";
+    try {
+      conn = dataSource.getConnection();
+      prepStatement = conn.prepareStatement(query);
+      prepStatement.setInt(1, skierID);
+      prepStatement.setInt(2, dayID);
+      ResultSet queryResult = prepStatement.executeQuery();
+      if (queryResult.next()) {
+        totals = packTotals(queryResult.getInt("rides"), queryResult.getInt("vertical"));
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    } finally {
+      closeAll(conn, prepStatement);
+    }
+    return totals;
+  }
+
+  /**
+   * Gets the checkpointed hourly ride counts of every lift for the given day
+   * @param dayID is the day, in days since 1970-01-01 (UTC)
+   * @return a map from lift-day key to the lift's ride count in each hour
+   */
+  public Map<Long, int[]> getLiftHourCounts(int dayID) {
+    Connection conn = null;
+    PreparedStatement prepStatement = null;
+    Map<Long, int[]> counts = new HashMap<>();
+    String query = "SELECT resortID, liftID, hourID, rides FROM lifthourcounts WHERE dayID=?";
+    try {
+      conn = dataSource.getConnection();
+      prepStatement = conn.prepareStatement(query);
+      prepStatement.setInt(1, dayID);
+      ResultSet queryResult = prepStatement.executeQuery();
+      while (queryResult.next()) {
+        long key = liftDayKey(queryResult.getInt("resortID"), dayID, queryResult.getInt("liftID"));
+        counts.computeIfAbsent(key, k -> new int[HOURS_PER_DAY])[queryResult.getInt("hourID")] =
+                queryResult.getInt("rides");
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    } finally {
+      closeAll(conn, prepStatement);
+    }
+    return counts;
+  }
+
+  /**
+   * Gets the checkpointed hourly ride counts of a single lift for a single day
+   * @param resortID is the integer ID of the resort
+   * @param dayID is the day, in days since 1970-01-01 (UTC)
+   * @param liftID is the integer ID of the lift
+   * @return the lift's ride count in each hour, all 0 if it has none that day
+   */
+  public int[] getLiftHourCounts(int resortID, int dayID, int liftID) {
+    Connection conn = null;
+    PreparedStatement prepStatement = null;
+    int[] counts = new int[HOURS_PER_DAY];
+    String query = "SELECT hourID, rides FROM lifthourcounts "
+            + "WHERE resortID=? AND dayID=? AND liftID=?";
+    try {
+      conn = dataSource.getConnection();
+      prepStatement = conn.prepareStatement(query);
+      prepStatement.setInt(1, resortID);
+      prepStatement.setInt(2, dayID);
+      prepStatement.setInt(3, liftID);
+      ResultSet queryResult = prepStatement.executeQuery();
+      while (queryResult.next()) {
+        counts[queryResult.getInt("hourID")] = queryResult.getInt("rides");
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    } finally {
+      closeAll(conn, prepStatement);
+    }
+    return counts;
+  }
+
+  /**
+   * Adds the given deltas to our checkpointed aggregates in a single transaction, so either all
+   * of them are applied or none are
+   * @param skierDeltas is a map from skier-day key to packed totals to add
+   * @param liftDeltas is a map from lift-day key to the ride count to add in each hour
+   * @return true if every delta was applied, false otherwise
+   */
+  public boolean addDeltas(Map<Long, Long> skierDeltas, Map<Long, int[]> liftDeltas) {
+    Connection conn = null;
+    PreparedStatement skierStatement = null;
+    PreparedStatement liftStatement = null;
+    String skierUpsert = "INSERT INTO skierdaytotals (skierID, dayID, rides, vertical) "
+            + "VALUES (?,?,?,?) ON DUPLICATE KEY UPDATE rides = rides + VALUES(rides), "
+            + "vertical = vertical + VALUES(vertical)";
+    String liftUpsert = "INSERT INTO lifthourcounts (resortID, dayID, liftID, hourID, rides) "
+            + "VALUES (?,?,?,?,?) ON DUPLICATE KEY UPDATE rides = rides + VALUES(rides)";
+    boolean success = false;
+    try {
+      conn = dataSource.getConnection();
+      conn.setAutoCommit(false);
+      skierStatement = conn.prepareStatement(skierUpsert);
+      for (Map.Entry<Long, Long> delta : skierDeltas.entrySet()) {
+        skierStatement.setInt(1, (int) (long) delta.getKey());
+        skierStatement.setInt(2, (int) (delta.getKey() >>> 32));
+        skierStatement.setInt(3, (int) (delta.getValue() >>> 32));
+        skierStatement.setInt(4, (int) (long) delta.getValue());
+        skierStatement.addBatch();
+      }
+      skierStatement.executeBatch();
+      liftStatement = conn.prepareStatement(liftUpsert);
+      for (Map.Entry<Long, int[]> delta : liftDeltas.entrySet()) {
+        long key = delta.getKey();
+        int[] hours = delta.getValue();
+        for (int hour = 0; hour < hours.length; hour++) {
+          if (hours[hour] != 0) {
+            liftStatement.setInt(1, (int) ((key >>> 24) & 0xFFFFFF));
+            liftStatement.setInt(2, (int) (key >>> 48));
+            liftStatement.setInt(3, (int) (key & 0xFFFFFF));
+            liftStatement.setInt(4, hour);
+            liftStatement.setInt(5, hours[hour]);
+            liftStatement.addBatch();
+          }
+        }
+      }
+      liftStatement.executeBatch();
+      conn.commit();
+      success = true;
+    } catch (SQLException e) {
+      e.printStackTrace();
+      try {
+        if (conn != null) {
+          conn.rollback();
+        }
+      } catch (SQLException re) {
+        re.printStackTrace();
+      }
+    } finally {
+      try {
+        if (conn != null) {
+          conn.setAutoCommit(true);
+        }
+        if (skierStatement != null) {
+          skierStatement.close();
+        }
+        if (liftStatement != null) {
+          liftStatement.close();
+        }
+      } catch (SQLException se) {
+        se.printStackTrace();
+      }
+      closeAll(conn, null);
+    }
+    return success;
+  }
+}
@@ -1,47 +1,108 @@
 package daos;
 
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.sql.DataSource;
 import org.apache.commons.dbcp2.*;
 
 /**
  * Our database connection pool which handles our DAO connections to the Upic RDS database.
  * This code is heavily based on our Lab 6 from class: https://piazza.com/class/ktdhhr8hkmg2x6?cid=90
+ * If any DB_FAULT_* system property is set, our DAOs are handed the pool wrapped in a
+ * FaultInjectingDataSource instead of the pool itself. Read replicas of this database may be
+ * listed in DB_REPLICA_URLS. Every pool we create (this one, and any for shards or replicas) is
+ * kept by name so it can be monitored and tuned.
  */
 public class DBCPDataSource {
+  // every pool created so far by name, filled in by createPool (so declared before it is called)
+  private static final Map<String, BasicDataSource> POOLS = new ConcurrentHashMap<>();
   private static BasicDataSource dataSource;
+  private static DataSource daoDataSource;
+  private static ReplicaSet replicaSet;
   private static final String HOST_NAME = System.getProperty("MySQL_IP_ADDRESS");
   private static final String PORT = System.getProperty("MySQL_PORT");
   private static final String DATABASE = "upic";
   private static final String USERNAME = System.getProperty("DB_USERNAME");
   private static final String PASSWORD = System.getProperty("DB_PASSWORD");
+  // optional full JDBC URL (e.g. an embedded database) used instead of the MySQL host & port
+  private static final String URL_OVERRIDE = System.getProperty("DB_URL");
 
   static {
     // https://dev.mysql.com/doc/connector-j/8.0/en/connector-j-reference-jdbc-url-format.html
-    dataSource = new BasicDataSource();
     try {
       Class.forName("com.mysql.cj.jdbc.Driver");
     } catch (ClassNotFoundException e) {
       System.out.println("Failure finding JDBC driver");
     }
-    String url = String.format("jdbc:mysql://%s:%s/%s?serverTimezone=UTC", HOST_NAME, PORT, DATABASE);
+    // each connection caches its parsed statements, so those prepared by warm-up stay prepared
+    String url = URL_OVERRIDE != null ? URL_OVERRIDE
+            : String.format("jdbc:mysql://%s:%s/%s?serverTimezone=UTC&cachePrepStmts=true",
+                    HOST_NAME, PORT, DATABASE);
+    dataSource = createPool("main", url);
+    // optionally inject latency and failures for pool/timeout studies
+    daoDataSource = FaultInjectingDataSource.fromSystemProperties(dataSource);
+    replicaSet = ReplicaSet.fromUrls("main", daoDataSource,
+            System.getProperty("DB_REPLICA_URLS"));
+  }
+
+  /**
+   * Creates a connection pool to the database at the given URL with our standard pool settings.
+   * Used for our main pool and for any additional databases (e.g. shards or replicas).
+   * @param name is the name the pool is kept under (e.g. shard0), replacing any pool of that name
+   * @param url is the JDBC URL of the database
+   * @return the new connection pool
+   */
+  public static BasicDataSource createPool(String name, String url) {
+    BasicDataSource pool = new BasicDataSource();
     // set up basic connection pool login
-    dataSource.setUrl(url);
-    dataSource.setUsername(USERNAME);
-    dataSource.setPassword(PASSWORD);
+    pool.setUrl(url);
+    pool.setUsername(USERNAME);
+    pool.setPassword(PASSWORD);
     // set up initial and max number of allowed DB connections
-    dataSource.setInitialSize(10);
-    dataSource.setMaxTotal(60);
+    pool.setInitialSize(10);
+    pool.setMaxTotal(Integer.getInteger("DB_POOL_MAX_TOTAL", 60));
+    // how long a borrow waits for a free connection before failing (-1 waits forever)
+    pool.setMaxWaitMillis(Long.getLong("DB_POOL_MAX_WAIT_MS", -1L));
     // set up connection pool to find and recover unclosed DB connections
-    dataSource.setTimeBetweenEvictionRunsMillis(300);
-    dataSource.setRemoveAbandonedOnBorrow(true);
-    dataSource.setRemoveAbandonedTimeout(15);
-    dataSource.setRemoveAbandonedOnMaintenance(true);
+    pool.setTimeBetweenEvictionRunsMillis(300);
+    pool.setRemoveAbandonedOnBorrow(true);
+    pool.setRemoveAbandonedTimeout(Integer.getInteger("DB_POOL_ABANDONED_TIMEOUT", 15));
+    pool.setRemoveAbandonedOnMaintenance(true);
+    pool.setLogAbandoned(Boolean.getBoolean("DB_POOL_LOG_ABANDONED"));
+    POOLS.put(name, pool);
+    return pool;
   }
 
   /**
-   * Simple getter to fetch our underlying data source for our DAOs to use
+   * Simple getter to fetch the data source for our DAOs to use
    * @return the data source connection to our database
    */
-  public static BasicDataSource getDataSource() {
+  public static DataSource getDataSource() {
+    return daoDataSource;
+  }
+
+  /**
+   * Simple getter to fetch our database together with its read replicas
+   * @return the replica set whose primary is our data source
+   */
+  public static ReplicaSet getReplicaSet() {
+    return replicaSet;
+  }
+
+  /**
+   * Simple getter to fetch our underlying connection pool, e.g. to inspect or tune it
+   * @return the connection pool to our database
+   */
+  public static BasicDataSource getPool() {
     return dataSource;
   }
+
+  /**
+   * Gets every connection pool created so far, e.g. to inspect or tune them all
+   * @return the pools by name (main, shardN, and e.g. shardN-replicaM for replicas)
+   */
+  public static Map<String, BasicDataSource> getPools() {
+    return new TreeMap<>(POOLS);
+  }
 }
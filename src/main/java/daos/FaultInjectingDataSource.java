@@ -0,0 +1,232 @@
+package daos;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * A DataSource wrapper that injects latency, failures, and stalls into borrowing a connection,
+ * executing statements, and committing. It wraps our connection pool, so slow executes hold their
+ * pooled connection exactly as a degraded MySQL would, letting us reproduce pool starvation,
+ * abandoned connection removal, and tail latency amplification locally.
+ * See FaultProfile for the spec format of each operation's faults.
+ */
+public class FaultInjectingDataSource implements DataSource {
+  private final DataSource delegate;
+  private final FaultProfile borrow;
+  private final FaultProfile execute;
+  private final FaultProfile commit;
+
+  /**
+   * Wraps the given data source with the given fault profiles. Any profile may be null to leave
+   * that operation untouched.
+   * @param delegate is the real data source (normally our connection pool)
+   * @param borrow is the profile applied before each connection is borrowed
+   * @param execute is the profile applied before each statement executes
+   * @param commit is the profile applied before each commit
+   */
+  public FaultInjectingDataSource(DataSource delegate, FaultProfile borrow, FaultProfile execute,
+                                  FaultProfile commit) {
+    this.delegate = delegate;
+    this.borrow = borrow;
+    this.execute = execute;
+    this.commit = commit;
+  }
+
+  /**
+   * Builds a wrapper from the DB_FAULT_BORROW, DB_FAULT_EXECUTE, and DB_FAULT_COMMIT system
+   * properties, or returns the data source unchanged if none of them are set
+   * @param delegate is the real data source (normally our connection pool)
+   * @return the wrapped data source, or the given data source if no faults are configured
+   */
+  public static DataSource fromSystemProperties(DataSource delegate) {
+    FaultProfile borrow = profileFor("borrow", "DB_FAULT_BORROW");
+    FaultProfile execute = profileFor("execute", "DB_FAULT_EXECUTE");
+    FaultProfile commit = profileFor("commit", "DB_FAULT_COMMIT");
+    if (borrow == null && execute == null && commit == null) {
+      return delegate;
+    }
+    return new FaultInjectingDataSource(delegate, borrow, execute, commit);
+  }
+
+  /**
+   * Parses the fault profile held by a system property
+   * @param operation is the name of the operation the profile applies to
+   * @param property is the name of the system property holding the spec
+   * @return the parsed profile or null if the property is not set
+   */
+  private static FaultProfile profileFor(String operation, String property) {
+    String spec = System.getProperty(property);
+    return spec == null || spec.isEmpty() ? null : new FaultProfile(operation, spec);
+  }
+
+  /**
+   * Applies a fault profile if one is configured
+   * @param profile is the profile to apply or null
+   * @throws SQLException if the profile injected a failure
+   */
+  private static void inject(FaultProfile profile) throws SQLException {
+    if (profile != null) {
+      profile.apply();
+    }
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    inject(borrow);
+    return wrap(delegate.getConnection());
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    inject(borrow);
+    return wrap(delegate.getConnection(username, password));
+  }
+
+  /**
+   * Wraps a borrowed connection so its commits and the statements it creates are injected
+   * @param conn is the borrowed connection
+   * @return a proxy of the connection
+   */
+  private Connection wrap(Connection conn) {
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class<?>[]{Connection.class}, new ConnectionHandler(conn));
+  }
+
+  /**
+   * Invokes a method on the proxied object, rethrowing the exception it threw rather than the
+   * reflective wrapper
+   * @param target is the proxied object
+   * @param method is the method to invoke
+   * @param args is the method's arguments
+   * @return the method's return value
+   * @throws Throwable whatever the method itself threw
+   */
+  private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Intercepts commit and the creation of statements on a borrowed connection
+   */
+  private class ConnectionHandler implements InvocationHandler {
+    private final Connection conn;
+
+    ConnectionHandler(Connection conn) {
+      this.conn = conn;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if (name.equals("commit")) {
+        inject(commit);
+      }
+      Object result = FaultInjectingDataSource.invoke(conn, method, args);
+      if (result instanceof Statement && execute != null) {
+        // covers Statement, PreparedStatement and CallableStatement
+        Class<?> type = method.getReturnType();
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new StatementHandler(result, (Connection) proxy));
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Intercepts the execute methods of a statement created by a borrowed connection
+   */
+  private class StatementHandler implements InvocationHandler {
+    private final Object statement;
+    private final Connection conn;
+
+    StatementHandler(Object statement, Connection conn) {
+      this.statement = statement;
+      this.conn = conn;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getName().startsWith("execute")) {
+        inject(execute);
+      } else if (method.getName().equals("getConnection")) {
+        return conn;
+      }
+      return FaultInjectingDataSource.invoke(statement, method, args);
+    }
+  }
+
+  /**
+   * Simple getter for our connection borrow fault profile
+   * @return the profile applied to borrowing connections, or null if none is configured
+   */
+  public FaultProfile getBorrowProfile() {
+    return borrow;
+  }
+
+  /**
+   * Simple getter for our statement execution fault profile
+   * @return the profile applied to executing statements, or null if none is configured
+   */
+  public FaultProfile getExecuteProfile() {
+    return execute;
+  }
+
+  /**
+   * Simple getter for our commit fault profile
+   * @return the profile applied to commits, or null if none is configured
+   */
+  public FaultProfile getCommitProfile() {
+    return commit;
+  }
+
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    return delegate.getLogWriter();
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter out) throws SQLException {
+    delegate.setLogWriter(out);
+  }
+
+  @Override
+  public void setLoginTimeout(int seconds) throws SQLException {
+    delegate.setLoginTimeout(seconds);
+  }
+
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    return delegate.getLoginTimeout();
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    return delegate.getParentLogger();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) {
+      return iface.cast(this);
+    }
+    return delegate.unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return iface.isInstance(this) || delegate.isWrapperFor(iface);
+  }
+}
@@ -0,0 +1,140 @@
+package daos;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Describes the latency, failures, and stalls injected into one kind of database operation
+ * (borrow, execute, or commit) by our FaultInjectingDataSource. Profiles are parsed from a comma
+ * separated spec where every part is optional, e.g. "exp:10,fail:0.01,stall:0.001:20000":
+ *   fixed:MS            - always wait MS milliseconds
+ *   uniform:MIN:MAX     - wait uniformly between MIN and MAX milliseconds
+ *   exp:MEAN            - exponentially distributed wait with the given mean
+ *   lognormal:MEDIAN:SIGMA - log-normally distributed wait (long tail for larger SIGMA)
+ *   fail:P              - fail the operation with probability P
+ *   stall:P:MS          - additionally hang for MS milliseconds with probability P
+ */
+public class FaultProfile {
+  private enum Distribution { NONE, FIXED, UNIFORM, EXP, LOGNORMAL }
+
+  private final String operation;
+  private Distribution distribution = Distribution.NONE;
+  private double param1;
+  private double param2;
+  private double failRate;
+  private double stallRate;
+  private long stallMillis;
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong stalls = new AtomicLong();
+
+  /**
+   * Parses the given spec into a profile for the named operation
+   * @param operation is the name of the operation this profile applies to (used in errors)
+   * @param spec is the comma separated profile spec described above
+   * @throws IllegalArgumentException if any part of the spec is malformed
+   */
+  public FaultProfile(String operation, String spec) throws IllegalArgumentException {
+    this.operation = operation;
+    for (String part : spec.split(",")) {
+      String[] fields = part.trim().split(":");
+      try {
+        switch (fields[0]) {
+          case "fixed":
+            distribution = Distribution.FIXED;
+            param1 = Double.parseDouble(fields[1]);
+            break;
+          case "uniform":
+            distribution = Distribution.UNIFORM;
+            param1 = Double.parseDouble(fields[1]);
+            param2 = Double.parseDouble(fields[2]);
+            break;
+          case "exp":
+            distribution = Distribution.EXP;
+            param1 = Double.parseDouble(fields[1]);
+            break;
+          case "lognormal":
+            distribution = Distribution.LOGNORMAL;
+            param1 = Math.log(Double.parseDouble(fields[1]));
+            param2 = Double.parseDouble(fields[2]);
+            break;
+          case "fail":
+            failRate = Double.parseDouble(fields[1]);
+            break;
+          case "stall":
+            stallRate = Double.parseDouble(fields[1]);
+            stallMillis = Long.parseLong(fields[2]);
+            break;
+          case "":
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown fault '" + fields[0] + "' for " + operation);
+        }
+      } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+        throw new IllegalArgumentException("Malformed fault '" + part + "' for " + operation);
+      }
+    }
+  }
+
+  /**
+   * Applies this profile to the calling thread: sleeps for a sampled latency, possibly stalls,
+   * and possibly fails
+   * @throws SQLException if this call was chosen to fail or the thread was interrupted
+   */
+  public void apply() throws SQLException {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long delay = sampleMillis(random);
+    if (stallRate > 0 && random.nextDouble() < stallRate) {
+      stalls.incrementAndGet();
+      delay += stallMillis;
+    }
+    if (delay > 0) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted during injected " + operation + " latency", e);
+      }
+    }
+    if (failRate > 0 && random.nextDouble() < failRate) {
+      failures.incrementAndGet();
+      throw new SQLException("Injected " + operation + " failure", "08006");
+    }
+  }
+
+  /**
+   * Samples a latency from this profile's distribution
+   * @param random is the random number generator of the calling thread
+   * @return the sampled latency in milliseconds
+   */
+  private long sampleMillis(ThreadLocalRandom random) {
+    switch (distribution) {
+      case FIXED:
+        return (long) param1;
+      case UNIFORM:
+        return (long) (param1 + random.nextDouble() * (param2 - param1));
+      case EXP:
+        return (long) (-param1 * Math.log(1 - random.nextDouble()));
+      case LOGNORMAL:
+        return (long) Math.exp(param1 + param2 * random.nextGaussian());
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Simple getter for how many failures this profile has injected
+   * @return the number of failures this profile has injected
+   */
+  public long getFailures() {
+    return failures.get();
+  }
+
+  /**
+   * Simple getter for how many stalls this profile has injected
+   * @return the number of stalls this profile has injected
+   */
+  public long getStalls() {
+    return stalls.get();
+  }
+}
@@ -1,7 +1,11 @@
 package daos;
 
 import java.sql.*;
-import org.apache.commons.dbcp2.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntConsumer;
+import javax.sql.DataSource;
 import servlethelpers.LiftRide;
 import servlethelpers.LiftRideInput;
 import servlethelpers.LiftRideList;
@@ -9,13 +13,67 @@ import servlethelpers.LiftRideList;
 /**
  * Our database access object that handles interacting with the liftrides table of the Upic DB.
  * The liftrides table holds information captured when a skier uses their RFID swipe to
- * take a ski lift
+ * take a ski lift. The table may be sharded by skierID (see ShardRouter): skier-scoped queries
+ * go to one shard while getAllLiftRides gathers from every shard in parallel.
+ * Reads go to the shard's read replicas (if any), except a skier's reads within
+ * DB_REPLICA_STALENESS_MS of their last write, which go to the primary so they see that write.
+ * Last writes are only tracked per JVM, so read-your-writes holds only for reads served by the
+ * node that took the write.
  */
 public class LiftRideDAO {
-  private static BasicDataSource dataSource;
+  // skiers whose reads use the primary; only this JVM's writes are tracked, so a read served by
+  // another node may still hit a stale replica
+  private static final RecentWrites RECENT_WRITES =
+          RecentWrites.scheduleSweeps(Long.getLong("DB_REPLICA_STALENESS_MS", 1000L));
+  /**
+   * Returned by createKeyedLiftRide when a ride was already written under the idempotency key
+   */
+  public static final int KEY_TAKEN = 0;
+  // the statements behind our hottest requests, prepared on each connection by warmUp
+  private static final String SKIER_RIDES_QUERY = "SELECT * FROM liftrides WHERE skierID = ?";
+  private static final String RIDE_QUERY = "SELECT skierID, resortID, tID, liftID FROM liftrides " +
+          "WHERE rideID = ?";
+  private static final String RIDE_INSERT = "INSERT INTO liftrides (skierID, resortID, tID, " +
+          "liftID) VALUES (?,?,?,?)";
+  private static final String[] HOT_STATEMENTS = {SKIER_RIDES_QUERY, RIDE_QUERY, RIDE_INSERT};
+  // rows fetched per round trip when streaming rows from databases that honour a fetch size
+  private static final int EXPORT_FETCH_SIZE = 1000;
+  private final ShardRouter router;
+
+  /**
+   * Callback receiving each row of the liftrides table streamed out by streamShardRides
+   */
+  public interface RideRowHandler {
+    /**
+     * Handles one lift ride
+     * @param rideID is the ride's global rideID
+     * @param skierID is the ID of the skier who rode
+     * @param resortID is the ID of the resort ridden at
+     * @param time is the ride's time of day (tID)
+     * @param liftID is the ID of the lift ridden
+     */
+    void onRide(int rideID, int skierID, int resortID, int time, int liftID);
+  }
 
   public LiftRideDAO() {
-    dataSource = DBCPDataSource.getDataSource();
+    this(ShardRouter.getDefault());
+  }
+
+  /**
+   * Constructs a DAO that reads and writes through the given data source instead of our shared
+   * connection pool (e.g. an embedded database for benchmarks)
+   * @param dataSource is the data source holding the liftrides table
+   */
+  public LiftRideDAO(DataSource dataSource) {
+    this(new ShardRouter(Collections.singletonList(dataSource)));
+  }
+
+  /**
+   * Constructs a DAO that reads and writes through the shards of the given router
+   * @param router is the router over the shards holding the liftrides table
+   */
+  public LiftRideDAO(ShardRouter router) {
+    this.router = router;
   }
 
   /**
@@ -36,6 +94,97 @@ public class LiftRideDAO {
     }
   }
 
+  /**
+   * Opens the given number of connections to each shard at once and prepares our hottest
+   * statements on each, so the first requests after startup neither wait on new connections nor
+   * prepare those statements cold. The connections are then returned to their pools.
+   * @param connections is the number of connections to open per shard, which should not exceed
+   *                    the number of idle connections a pool keeps
+   * @return the number of connections warmed
+   */
+  public int warmUp(int connections) {
+    int warmed = 0;
+    for (int shard = 0; shard < router.getNumShards(); shard++) {
+      List<Connection> held = new ArrayList<>();
+      try {
+        for (int i = 0; i < connections; i++) {
+          Connection conn = router.getShard(shard).getConnection();
+          held.add(conn);
+          for (String sql : HOT_STATEMENTS) {
+            conn.prepareStatement(sql).close();
+          }
+        }
+      } catch (SQLException e) {
+        e.printStackTrace();
+      } finally {
+        warmed += held.size();
+        for (Connection conn : held) {
+          try {
+            conn.close();
+          } catch (SQLException se) {
+            se.printStackTrace();
+          }
+        }
+      }
+    }
+    return warmed;
+  }
+
+  /**
+   * Maps every remaining row of a liftrides query result from one shard into LiftRides,
+   * converting the shard's rideIDs into global rideIDs
+   * @param queryResult is the result of a query selecting all liftrides columns
+   * @param shard is the index of the shard the result came from
+   * @return the mapped LiftRides in result order
+   * @throws SQLException if a column could not be read from the result
+   */
+  List<LiftRide> mapRides(ResultSet queryResult, int shard) throws SQLException {
+    List<LiftRide> rides = new ArrayList<>();
+    while (queryResult.next()) {
+      rides.add(new LiftRide(router.toGlobalRideID(queryResult.getInt("rideID"), shard),
+              queryResult.getInt("skierID"),
+              queryResult.getInt("resortID"),
+              queryResult.getInt("liftID"),
+              queryResult.getInt("tID")));
+    }
+    return rides;
+  }
+
+  /**
+   * Merges per-shard lists of rides, each already ordered by rideID, into one list ordered
+   * by rideID. RideIDs are unique across shards, so the merged rides are added without
+   * LiftRideList's per-ride duplicate check.
+   * @param shardRides is the ordered rides of each shard
+   * @param rideList is the list the merged rides are added to
+   */
+  private static void mergeOrdered(List<List<LiftRide>> shardRides, LiftRideList rideList) {
+    if (shardRides.size() == 1) {
+      rideList.addDistinctRides(shardRides.get(0));
+      return;
+    }
+    int total = 0;
+    for (List<LiftRide> rides : shardRides) {
+      total += rides.size();
+    }
+    List<LiftRide> merged = new ArrayList<>(total);
+    int[] next = new int[shardRides.size()];
+    while (true) {
+      int minShard = -1;
+      for (int i = 0; i < next.length; i++) {
+        List<LiftRide> rides = shardRides.get(i);
+        if (next[i] < rides.size() && (minShard < 0 || rides.get(next[i]).getLiftRideId()
+                < shardRides.get(minShard).get(next[minShard]).getLiftRideId())) {
+          minShard = i;
+        }
+      }
+      if (minShard < 0) {
+        rideList.addDistinctRides(merged);
+        return;
+      }
+      merged.add(shardRides.get(minShard).get(next[minShard]++));
+    }
+  }
+
   /**
    * Takes a skierID and returns a LiftRideList of all lift rides for that skier ID
    * @param skierID an integer ID for the skier
@@ -44,23 +193,20 @@ public class LiftRideDAO {
   public LiftRideList getSkierRides(int skierID) {
     Connection conn = null;
     PreparedStatement prepStatement = null;
-    String query = "SELECT * FROM liftrides WHERE skierID = ?";
+    String query = SKIER_RIDES_QUERY;
+    int shard = router.shardForSkier(skierID);
     // this will be updated to new list, otherwise indicates no data found
     LiftRideList rideList = new LiftRideList();
+    // a skier who just wrote must see that write, which replicas may not have yet
+    DataSource dataSource = RECENT_WRITES.isRecent(skierID) ? router.getShard(shard)
+            : router.getReadShard(shard);
     try {
       conn = dataSource.getConnection();
       prepStatement = conn.prepareStatement(query);
       prepStatement.setInt(1, skierID);
       ResultSet queryResult = prepStatement.executeQuery();
-      if (queryResult.next()) {
-        do {
-          rideList.addRide(new LiftRide(queryResult.getInt("rideID"),
-                  queryResult.getInt("skierID"),
-                  queryResult.getInt("resortID"),
-                  queryResult.getInt("liftID"),
-                  queryResult.getInt("tID")));
-        } while (queryResult.next());
-      }
+      // rideID is the primary key, so the rows are already distinct
+      rideList.addDistinctRides(mapRides(queryResult, shard));
     } catch (SQLException e) {
       e.printStackTrace();
     } finally {
@@ -70,52 +216,248 @@ public class LiftRideDAO {
   }
 
   /**
-   * Gets all lift rides from our database and returns them as a LiftRideList
+   * Gets all lift rides from our database and returns them as a LiftRideList. Every shard is
+   * queried in parallel and the results are merged in rideID order.
    * @return a LiftRideList of all lift rides for all skiers
    */
   public LiftRideList getAllLiftRides() {
+    List<List<LiftRide>> shardRides = router.scatter(this::getShardRides);
+    LiftRideList rideList = new LiftRideList();
+    mergeOrdered(shardRides, rideList);
+    return rideList;
+  }
+
+  /**
+   * Gets the rides on a lift within a range of lift times and below a rideID, for the part of a
+   * RideIndex query older than the index holds (read from replicas if there are any). Every
+   * shard is queried in parallel, through the liftrides table's (resortID, liftID, tID) index.
+   * @param resortID is the integer ID of the resort
+   * @param liftID is the integer ID of the lift
+   * @param from is the earliest lift time to include
+   * @param to is the latest lift time to include
+   * @param beforeRideID is the global rideID the rides must be below
+   * @return the matching rides, unordered, without those of any shard whose query failed
+   */
+  public List<LiftRide> getLiftRides(int resortID, int liftID, int from, int to,
+                                     int beforeRideID) {
+    List<LiftRide> rides = new ArrayList<>();
+    for (List<LiftRide> shardRides : router.scatter(shard -> getShardLiftRides(shard, resortID,
+            liftID, from, to, beforeRideID))) {
+      rides.addAll(shardRides);
+    }
+    return rides;
+  }
+
+  /**
+   * Gets one shard's part of getLiftRides
+   * @param shard is the index of the shard to query
+   * @param resortID is the integer ID of the resort
+   * @param liftID is the integer ID of the lift
+   * @param from is the earliest lift time to include
+   * @param to is the latest lift time to include
+   * @param beforeRideID is the global rideID the rides must be below
+   * @return the shard's matching rides, or an empty list if the query failed
+   */
+  private List<LiftRide> getShardLiftRides(int shard, int resortID, int liftID, int from, int to,
+                                           int beforeRideID) {
     Connection conn = null;
     PreparedStatement prepStatement = null;
-    String query = "SELECT * FROM liftrides";
-    // this will be updated to new list, otherwise indicates no data found
-    LiftRideList rideList = new LiftRideList();
+    String query = "SELECT rideID, skierID, resortID, tID, liftID FROM liftrides " +
+            "WHERE resortID = ? AND liftID = ? AND tID BETWEEN ? AND ? AND rideID < ?";
+    int numShards = router.getNumShards();
+    // the shard's global rideIDs (local * N + shard) below beforeRideID
+    int beforeLocalID = (int) Math.floorDiv((long) beforeRideID - shard + numShards - 1,
+            numShards);
+    List<LiftRide> rides = new ArrayList<>();
     try {
-      conn = dataSource.getConnection();
+      conn = router.getReadShard(shard).getConnection();
       prepStatement = conn.prepareStatement(query);
+      prepStatement.setInt(1, resortID);
+      prepStatement.setInt(2, liftID);
+      prepStatement.setInt(3, from);
+      prepStatement.setInt(4, to);
+      prepStatement.setInt(5, beforeLocalID);
+      rides = mapRides(prepStatement.executeQuery(), shard);
+    } catch (SQLException e) {
+      e.printStackTrace();
+    } finally {
+      closeAll(conn, prepStatement);
+    }
+    return rides;
+  }
+
+  /**
+   * Streams the local rideIDs a shard's primary holds above the given rideID to a handler, in
+   * ascending order and without holding them in memory, so in-memory structures can catch up
+   * incrementally on rides written by any server
+   * @param shard is the index of the shard to query
+   * @param afterLocalID is the local rideID to start after (0 for all rides)
+   * @param handler receives each local rideID
+   * @return the highest local rideID read (afterLocalID if there were none), or -1 if the query
+   *         failed
+   */
+  public int streamShardRideIds(int shard, int afterLocalID, IntConsumer handler) {
+    Connection conn = null;
+    PreparedStatement prepStatement = null;
+    String query = "SELECT rideID FROM liftrides WHERE rideID > ? ORDER BY rideID";
+    int highest = -1;
+    try {
+      conn = router.getShard(shard).getConnection();
+      prepStatement = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+              ResultSet.CONCUR_READ_ONLY);
+      setStreaming(conn, prepStatement);
+      prepStatement.setInt(1, afterLocalID);
       ResultSet queryResult = prepStatement.executeQuery();
-      if (queryResult.next()) {
-        do {
-          rideList.addRide(new LiftRide(queryResult.getInt("rideID"),
-                  queryResult.getInt("skierID"),
-                  queryResult.getInt("resortID"),
-                  queryResult.getInt("liftID"),
-                  queryResult.getInt("tID")));
-        } while (queryResult.next());
+      int last = afterLocalID;
+      while (queryResult.next()) {
+        last = queryResult.getInt(1);
+        handler.accept(last);
       }
+      highest = last;
     } catch (SQLException e) {
       e.printStackTrace();
     } finally {
       closeAll(conn, prepStatement);
     }
-    return rideList;
+    return highest;
+  }
+
+  /**
+   * Makes a forward only, read only statement stream its rows rather than read them all into
+   * memory. MySQL's Connector/J ignores a positive fetch size (it reads the whole result unless
+   * useCursorFetch is set), so on MySQL rows are streamed one at a time with its Integer.MIN_VALUE
+   * fetch size, which holds the connection until the whole result has been read.
+   * @param conn is the connection the statement was prepared on
+   * @param statement is the statement to stream the rows of
+   * @throws SQLException if the connection or statement has been closed
+   */
+  private static void setStreaming(Connection conn, PreparedStatement statement)
+          throws SQLException {
+    statement.setFetchSize(conn.getMetaData().getURL().startsWith("jdbc:mysql:")
+            ? Integer.MIN_VALUE : EXPORT_FETCH_SIZE);
   }
 
   /**
-   * Takes a specific integer ride ID and returns a Lift Ride object representing that ride
+   * Gets the highest local rideID a shard holds (read from a replica if it has any)
+   * @param shard is the index of the shard to query
+   * @return the shard's highest local rideID, 0 if it has no rides, or -1 if the query failed
+   */
+  public int getMaxLocalRideId(int shard) {
+    Connection conn = null;
+    PreparedStatement prepStatement = null;
+    String query = "SELECT MAX(rideID) FROM liftrides";
+    int maxID = -1;
+    try {
+      conn = router.getReadShard(shard).getConnection();
+      prepStatement = conn.prepareStatement(query);
+      ResultSet queryResult = prepStatement.executeQuery();
+      maxID = queryResult.next() ? queryResult.getInt(1) : 0;
+    } catch (SQLException e) {
+      e.printStackTrace();
+    } finally {
+      closeAll(conn, prepStatement);
+    }
+    return maxID;
+  }
+
+  /**
+   * Streams a range of a shard's lift rides (read from a replica if it has any) to a handler in
+   * rideID order, without holding them in memory. Ranges are read by primary key, so each is a
+   * short index range scan rather than a long scan of the whole table.
+   * @param shard is the index of the shard to read
+   * @param fromLocalID is the first local rideID of the range
+   * @param toLocalID is the local rideID the range ends before
+   * @param handler receives each ride, with its global rideID
+   * @return true if the whole range was read, false if the query failed
+   */
+  public boolean streamShardRides(int shard, int fromLocalID, int toLocalID,
+                                  RideRowHandler handler) {
+    Connection conn = null;
+    PreparedStatement prepStatement = null;
+    String query = "SELECT rideID, skierID, resortID, tID, liftID FROM liftrides " +
+            "WHERE rideID >= ? AND rideID < ? ORDER BY rideID";
+    boolean success = false;
+    try {
+      conn = router.getReadShard(shard).getConnection();
+      prepStatement = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+              ResultSet.CONCUR_READ_ONLY);
+      setStreaming(conn, prepStatement);
+      prepStatement.setInt(1, fromLocalID);
+      prepStatement.setInt(2, toLocalID);
+      ResultSet queryResult = prepStatement.executeQuery();
+      while (queryResult.next()) {
+        handler.onRide(router.toGlobalRideID(queryResult.getInt(1), shard),
+                queryResult.getInt(2), queryResult.getInt(3), queryResult.getInt(4),
+                queryResult.getInt(5));
+      }
+      success = true;
+    } catch (SQLException e) {
+      e.printStackTrace();
+    } finally {
+      closeAll(conn, prepStatement);
+    }
+    return success;
+  }
+
+  /**
+   * Gets all lift rides held by a single shard (read from a replica if it has any), ordered
+   * by rideID
+   * @param shard is the index of the shard to query
+   * @return the shard's lift rides, or an empty list if the query failed
+   */
+  private List<LiftRide> getShardRides(int shard) {
+    Connection conn = null;
+    PreparedStatement prepStatement = null;
+    String query = "SELECT * FROM liftrides ORDER BY rideID";
+    // this will be updated to new list, otherwise indicates no data found
+    List<LiftRide> rides = new ArrayList<>();
+    try {
+      conn = router.getReadShard(shard).getConnection();
+      prepStatement = conn.prepareStatement(query);
+      ResultSet queryResult = prepStatement.executeQuery();
+      rides = mapRides(queryResult, shard);
+    } catch (SQLException e) {
+      e.printStackTrace();
+    } finally {
+      closeAll(conn, prepStatement);
+    }
+    return rides;
+  }
+
+  /**
+   * Takes a specific integer ride ID and returns a Lift Ride object representing that ride.
+   * The ride is read from a replica if there are any, falling back to the primary when the
+   * replica doesn't have it (yet).
    * @param rideID is the integer ID of the lift ride to be returned
    * @return a Lift Ride object representing the given rideID or null if not found
    */
   public LiftRide getLiftRide(int rideID) {
+    int shard = router.shardForRide(rideID);
+    DataSource readSource = router.getReadShard(shard);
+    LiftRide ride = queryLiftRide(readSource, rideID);
+    DataSource primary = router.getShard(shard);
+    if (ride == null && readSource != primary) {
+      ride = queryLiftRide(primary, rideID);
+    }
+    return ride;
+  }
+
+  /**
+   * Queries the given shard data source for a specific ride
+   * @param dataSource is the data source of the shard holding the ride
+   * @param rideID is the integer (global) ID of the lift ride to be returned
+   * @return a Lift Ride object representing the given rideID or null if not found
+   */
+  private LiftRide queryLiftRide(DataSource dataSource, int rideID) {
     Connection conn = null;
     PreparedStatement prepStatement = null;
-    String query = "SELECT skierID, resortID, tID, liftID FROM liftrides " +
-            "WHERE rideID = ?";
+    String query = RIDE_QUERY;
     // this will be updated to a new LiftRide, otherwise indicates no data found
     LiftRide ride = null;
     try {
       conn = dataSource.getConnection();
       prepStatement = conn.prepareStatement(query);
-      prepStatement.setInt(1, rideID);
+      prepStatement.setInt(1, router.toLocalRideID(rideID));
       ResultSet queryResult = prepStatement.executeQuery();
       if (queryResult.next()) {
         ride = new LiftRide(rideID, queryResult.getInt("skierID"),
@@ -132,7 +474,8 @@ public class LiftRideDAO {
   }
 
   /**
-   * Takes a set of parameters and returns the matching LiftRideId
+   * Takes a set of parameters and returns the matching LiftRideId. Always reads the primary since
+   * it is used right after a write.
    * @param skier is the integer ID of the client
    * @param resort is the integer ID of the resort
    * @param time is the integer ID of the time
@@ -145,10 +488,11 @@ public class LiftRideDAO {
     String query = "SELECT rideID FROM liftrides " +
             "WHERE skierID = ? AND resortID = ? AND tID = ? AND liftID = ? " +
             "ORDER BY rideID DESC";
+    int shard = router.shardForSkier(skier);
     // this will be updated to correct ID, otherwise indicates no data found
     int id = -1;
     try {
-      conn = dataSource.getConnection();
+      conn = router.getShard(shard).getConnection();
       prepStatement = conn.prepareStatement(query);
       prepStatement.setInt(1, skier);
       prepStatement.setInt(2, resort);
@@ -156,7 +500,7 @@ public class LiftRideDAO {
       prepStatement.setInt(4, liftID);
       ResultSet queryResult = prepStatement.executeQuery();
       if (queryResult.next()) {
-        id = queryResult.getInt("rideID");
+        id = router.toGlobalRideID(queryResult.getInt("rideID"), shard);
       }
     } catch (SQLException e) {
       e.printStackTrace();
@@ -168,32 +512,210 @@ public class LiftRideDAO {
 
   /**
    * Takes a filled LiftRideInput object and adds the values as a new row to our liftrides table
+   * on the skier's shard. The row's rideID is taken from the insert's generated keys in the same
+   * transaction, so a ride is only committed if its rideID is known.
    * @param newLiftRide is the Lift Ride object holding the data to be added
-   * @return true if the row was successfully inserted, false otherwise
+   * @return the global rideID of the new ride, or -1 if the write failed (and nothing was written)
    */
-  public boolean createLiftRide(LiftRideInput newLiftRide) {
+  public int createLiftRide(LiftRideInput newLiftRide) {
     Connection conn = null;
     PreparedStatement prepStatement = null;
-    String insert = "INSERT INTO liftrides (skierID, resortID, tID, liftID) " +
-            "VALUES (?,?,?,?)";
-    // flag to indicate successful insertion
-    boolean success = false;
+    ResultSet generated = null;
+    String insert = RIDE_INSERT;
+    int shard = router.shardForSkier(newLiftRide.getSkierID());
+    int id = -1;
     try {
-      conn = dataSource.getConnection();
-      prepStatement = conn.prepareStatement(insert);
+      conn = router.getShard(shard).getConnection();
+      conn.setAutoCommit(false);
+      prepStatement = conn.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS);
       prepStatement.setInt(1, newLiftRide.getSkierID());
       prepStatement.setInt(2, newLiftRide.getResortID());
       prepStatement.setInt(3, newLiftRide.getTime());
       prepStatement.setInt(4, newLiftRide.getLiftID());
-
-      // execute insert SQL statement and set our flag
       prepStatement.executeUpdate();
-      success = true;
+      generated = prepStatement.getGeneratedKeys();
+      if (!generated.next()) {
+        throw new SQLException("No rideID generated");
+      }
+      int localID = generated.getInt(1);
+      if (localID > router.getMaxLocalRideID()) {
+        // roll back rather than commit a ride no global rideID can name
+        throw new SQLException("Local rideID " + localID + " of shard " + shard
+                + " is past the highest that fits a global rideID");
+      }
+      conn.commit();
+      id = router.toGlobalRideID(localID, shard);
+      if (router.hasReplicas()) {
+        RECENT_WRITES.record(newLiftRide.getSkierID());
+      }
     } catch (SQLException e) {
       e.printStackTrace();
+      rollback(conn);
     } finally {
+      try {
+        if (conn != null) {
+          conn.setAutoCommit(true);
+        }
+        if (generated != null) {
+          generated.close();
+        }
+      } catch (SQLException se) {
+        se.printStackTrace();
+      }
       closeAll(conn, prepStatement);
     }
-    return success;
+    return id;
+  }
+
+  /**
+   * Gets the lift ride written under a client's idempotency key for a skier. Keys are scoped
+   * per skier and live on that skier's shard, and are always read from the primary.
+   * @param key is the client's Idempotency-Key
+   * @param skierID is the integer ID of the skier the request was for
+   * @return the ride written under the key, or null if there is none (or the query failed)
+   */
+  public LiftRide getKeyedLiftRide(String key, int skierID) {
+    Connection conn = null;
+    PreparedStatement prepStatement = null;
+    String query = "SELECT r.rideID, r.skierID, r.resortID, r.tID, r.liftID " +
+            "FROM idempotencykeys k JOIN liftrides r ON r.rideID = k.rideID " +
+            "WHERE k.skierID = ? AND k.idemKey = ?";
+    int shard = router.shardForSkier(skierID);
+    // this will be updated to a new LiftRide, otherwise indicates no key found
+    LiftRide ride = null;
+    try {
+      conn = router.getShard(shard).getConnection();
+      prepStatement = conn.prepareStatement(query);
+      prepStatement.setInt(1, skierID);
+      prepStatement.setString(2, key);
+      ResultSet queryResult = prepStatement.executeQuery();
+      if (queryResult.next()) {
+        ride = new LiftRide(router.toGlobalRideID(queryResult.getInt("rideID"), shard),
+                queryResult.getInt("skierID"),
+                queryResult.getInt("resortID"),
+                queryResult.getInt("liftID"),
+                queryResult.getInt("tID"));
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    } finally {
+      closeAll(conn, prepStatement);
+    }
+    return ride;
+  }
+
+  /**
+   * Adds a new row to our liftrides table and records it under a client's idempotency key in
+   * one transaction on the skier's shard. Keys are scoped per skier, so the same key sent for
+   * two skiers writes a ride for each. If the key was already recorded for the skier (possibly
+   * by another server) the transaction is rolled back, so a ride is never written twice under
+   * one key.
+   * @param key is the client's Idempotency-Key
+   * @param newLiftRide is the Lift Ride object holding the data to be added
+   * @return the global rideID of the new ride, KEY_TAKEN if the key was already recorded, or -1
+   *         if the write failed
+   */
+  public int createKeyedLiftRide(String key, LiftRideInput newLiftRide) {
+    Connection conn = null;
+    PreparedStatement rideStatement = null;
+    PreparedStatement keyStatement = null;
+    ResultSet generated = null;
+    String insertRide = RIDE_INSERT;
+    String insertKey = "INSERT INTO idempotencykeys (skierID, idemKey, rideID, createdAt) " +
+            "VALUES (?,?,?,?)";
+    int shard = router.shardForSkier(newLiftRide.getSkierID());
+    int id = -1;
+    try {
+      conn = router.getShard(shard).getConnection();
+      conn.setAutoCommit(false);
+      rideStatement = conn.prepareStatement(insertRide, Statement.RETURN_GENERATED_KEYS);
+      rideStatement.setInt(1, newLiftRide.getSkierID());
+      rideStatement.setInt(2, newLiftRide.getResortID());
+      rideStatement.setInt(3, newLiftRide.getTime());
+      rideStatement.setInt(4, newLiftRide.getLiftID());
+      rideStatement.executeUpdate();
+      generated = rideStatement.getGeneratedKeys();
+      if (!generated.next()) {
+        throw new SQLException("No rideID generated");
+      }
+      int localID = generated.getInt(1);
+      if (localID > router.getMaxLocalRideID()) {
+        // roll back rather than commit a ride no global rideID can name
+        throw new SQLException("Local rideID " + localID + " of shard " + shard
+                + " is past the highest that fits a global rideID");
+      }
+      keyStatement = conn.prepareStatement(insertKey);
+      keyStatement.setInt(1, newLiftRide.getSkierID());
+      keyStatement.setString(2, key);
+      keyStatement.setInt(3, localID);
+      keyStatement.setLong(4, System.currentTimeMillis());
+      try {
+        keyStatement.executeUpdate();
+      } catch (SQLIntegrityConstraintViolationException e) {
+        // the key's unique index rejected us, someone else wrote its ride first
+        rollback(conn);
+        return KEY_TAKEN;
+      }
+      conn.commit();
+      id = router.toGlobalRideID(localID, shard);
+      if (router.hasReplicas()) {
+        RECENT_WRITES.record(newLiftRide.getSkierID());
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+      rollback(conn);
+    } finally {
+      try {
+        if (conn != null) {
+          conn.setAutoCommit(true);
+        }
+        if (generated != null) {
+          generated.close();
+        }
+        if (keyStatement != null) {
+          keyStatement.close();
+        }
+      } catch (SQLException se) {
+        se.printStackTrace();
+      }
+      closeAll(conn, rideStatement);
+    }
+    return id;
+  }
+
+  /**
+   * Rolls back a failed transaction, logging (rather than throwing) any failure to do so
+   * @param conn is the connection whose transaction failed, or null if none was opened
+   */
+  private void rollback(Connection conn) {
+    try {
+      if (conn != null) {
+        conn.rollback();
+      }
+    } catch (SQLException re) {
+      re.printStackTrace();
+    }
+  }
+
+  /**
+   * Deletes idempotency keys recorded before the given time from every shard
+   * @param expiredBefore is the time (in ms) before which keys have expired
+   */
+  public void deleteExpiredKeys(long expiredBefore) {
+    String delete = "DELETE FROM idempotencykeys WHERE createdAt < ?";
+    for (int shard = 0; shard < router.getNumShards(); shard++) {
+      Connection conn = null;
+      PreparedStatement prepStatement = null;
+      try {
+        conn = router.getShard(shard).getConnection();
+        prepStatement = conn.prepareStatement(delete);
+        prepStatement.setLong(1, expiredBefore);
+        prepStatement.executeUpdate();
+      } catch (SQLException e) {
+        e.printStackTrace();
+      } finally {
+        closeAll(conn, prepStatement);
+      }
+    }
   }
 }
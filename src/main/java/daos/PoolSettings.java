@@ -0,0 +1,137 @@
+package daos;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+
+/**
+ * Exposes a connection pool's sizes and timeouts (set at startup from the DB_POOL_* system
+ * properties) for tuning at runtime, together with how many connections are in use.
+ */
+public class PoolSettings implements PoolSettingsMXBean {
+  private final BasicDataSource pool;
+
+  /**
+   * Creates settings backed by the given pool
+   * @param pool is the connection pool to read and change
+   */
+  public PoolSettings(BasicDataSource pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * @return the most connections the pool may open
+   */
+  @Override
+  public int getMaxTotal() {
+    return pool.getMaxTotal();
+  }
+
+  /**
+   * Changes the most connections the pool may open
+   * @param maxTotal is the new limit, or -1 for no limit
+   */
+  @Override
+  public void setMaxTotal(int maxTotal) {
+    pool.setMaxTotal(maxTotal);
+  }
+
+  /**
+   * @return the most idle connections the pool keeps open
+   */
+  @Override
+  public int getMaxIdle() {
+    return pool.getMaxIdle();
+  }
+
+  /**
+   * Changes the most idle connections the pool keeps open
+   * @param maxIdle is the new limit, or -1 for no limit
+   */
+  @Override
+  public void setMaxIdle(int maxIdle) {
+    pool.setMaxIdle(maxIdle);
+  }
+
+  /**
+   * @return the fewest idle connections the pool tries to keep open
+   */
+  @Override
+  public int getMinIdle() {
+    return pool.getMinIdle();
+  }
+
+  /**
+   * Changes the fewest idle connections the pool tries to keep open
+   * @param minIdle is the new minimum
+   */
+  @Override
+  public void setMinIdle(int minIdle) {
+    pool.setMinIdle(minIdle);
+  }
+
+  /**
+   * @return how long (in ms) a borrow waits for a free connection, -1 to wait forever
+   */
+  @Override
+  public long getMaxWaitMillis() {
+    return pool.getMaxWaitMillis();
+  }
+
+  /**
+   * Changes how long a borrow waits for a free connection before failing
+   * @param maxWaitMillis is the new wait in ms, or -1 to wait forever
+   */
+  @Override
+  public void setMaxWaitMillis(long maxWaitMillis) {
+    pool.setMaxWaitMillis(maxWaitMillis);
+  }
+
+  /**
+   * @return how long (in seconds) a borrowed connection may go unused before it is abandoned
+   */
+  @Override
+  public int getRemoveAbandonedTimeout() {
+    return pool.getRemoveAbandonedTimeout();
+  }
+
+  /**
+   * Changes how long a borrowed connection may go unused before it is abandoned
+   * @param seconds is the new timeout in seconds
+   */
+  @Override
+  public void setRemoveAbandonedTimeout(int seconds) {
+    pool.setRemoveAbandonedTimeout(seconds);
+  }
+
+  /**
+   * @return true if the stack traces of code abandoning connections are logged
+   */
+  @Override
+  public boolean isLogAbandoned() {
+    return pool.getLogAbandoned();
+  }
+
+  /**
+   * Turns logging of code abandoning connections on or off
+   * @param logAbandoned is true to log their stack traces
+   */
+  @Override
+  public void setLogAbandoned(boolean logAbandoned) {
+    pool.setLogAbandoned(logAbandoned);
+  }
+
+  /**
+   * @return the number of connections currently borrowed
+   */
+  @Override
+  public int getNumActive() {
+    return pool.getNumActive();
+  }
+
+  /**
+   * @return the number of connections currently idle in the pool
+   */
+  @Override
+  public int getNumIdle() {
+    return pool.getNumIdle();
+  }
+}
@@ -0,0 +1,84 @@
+package daos;
+
+/**
+ * Runtime view of our connection pool's settings (see PoolSettings). Changes take effect on the
+ * live pool right away.
+ */
+public interface PoolSettingsMXBean {
+  /**
+   * @return the most connections the pool may open
+   */
+  int getMaxTotal();
+
+  /**
+   * Changes the most connections the pool may open, connections over a lowered limit are closed
+   * as they are returned
+   * @param maxTotal is the new limit, or -1 for no limit
+   */
+  void setMaxTotal(int maxTotal);
+
+  /**
+   * @return the most idle connections the pool keeps open
+   */
+  int getMaxIdle();
+
+  /**
+   * Changes the most idle connections the pool keeps open
+   * @param maxIdle is the new limit, or -1 for no limit
+   */
+  void setMaxIdle(int maxIdle);
+
+  /**
+   * @return the fewest idle connections the pool tries to keep open
+   */
+  int getMinIdle();
+
+  /**
+   * Changes the fewest idle connections the pool tries to keep open
+   * @param minIdle is the new minimum
+   */
+  void setMinIdle(int minIdle);
+
+  /**
+   * @return how long (in ms) a borrow waits for a free connection, -1 to wait forever
+   */
+  long getMaxWaitMillis();
+
+  /**
+   * Changes how long a borrow waits for a free connection before failing
+   * @param maxWaitMillis is the new wait in ms, or -1 to wait forever
+   */
+  void setMaxWaitMillis(long maxWaitMillis);
+
+  /**
+   * @return how long (in seconds) a borrowed connection may go unused before it is abandoned
+   */
+  int getRemoveAbandonedTimeout();
+
+  /**
+   * Changes how long a borrowed connection may go unused before it is abandoned
+   * @param seconds is the new timeout in seconds
+   */
+  void setRemoveAbandonedTimeout(int seconds);
+
+  /**
+   * @return true if the stack traces of code abandoning connections are logged
+   */
+  boolean isLogAbandoned();
+
+  /**
+   * Turns logging of code abandoning connections on or off
+   * @param logAbandoned is true to log their stack traces
+   */
+  void setLogAbandoned(boolean logAbandoned);
+
+  /**
+   * @return the number of connections currently borrowed
+   */
+  int getNumActive();
+
+  /**
+   * @return the number of connections currently idle in the pool
+   */
+  int getNumIdle();
+}
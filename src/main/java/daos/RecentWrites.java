@@ -0,0 +1,69 @@
+package daos;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers which skiers have written a lift ride within a staleness window, so their reads can
+ * go to the primary (read-your-writes) while replicas may still be catching up. Entries older than
+ * the window are swept out by a background thread, keeping the table bounded by the write rate.
+ * Writes are only remembered by the JVM that served them: a skier's read served by another node
+ * may still go to a replica that hasn't caught up with their write.
+ */
+public class RecentWrites {
+  private final long windowMillis;
+  private final ConcurrentHashMap<Integer, Long> lastWrite = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a tracker with the given staleness window (call scheduleSweeps to bound its size)
+   * @param windowMillis is how long (ms) after a write the skier's reads must use the primary
+   */
+  public RecentWrites(long windowMillis) {
+    this.windowMillis = windowMillis;
+  }
+
+  /**
+   * Creates a tracker whose stale entries are swept out on a daemon thread
+   * @param windowMillis is how long (ms) after a write the skier's reads must use the primary
+   * @return the new tracker
+   */
+  public static RecentWrites scheduleSweeps(long windowMillis) {
+    RecentWrites writes = new RecentWrites(windowMillis);
+    long period = Math.max(1000, Math.min(60000, windowMillis));
+    ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "recent-writes-sweep");
+      thread.setDaemon(true);
+      return thread;
+    });
+    sweeper.scheduleWithFixedDelay(writes::sweep, period, period, TimeUnit.MILLISECONDS);
+    return writes;
+  }
+
+  /**
+   * Records that the given skier has just written
+   * @param skierID is the ID of the skier who wrote
+   */
+  public void record(int skierID) {
+    lastWrite.put(skierID, System.currentTimeMillis());
+  }
+
+  /**
+   * Checks whether the given skier wrote within our staleness window
+   * @param skierID is the ID of the skier to check
+   * @return true if the skier's reads must use the primary, false otherwise
+   */
+  public boolean isRecent(int skierID) {
+    Long time = lastWrite.get(skierID);
+    return time != null && System.currentTimeMillis() - time < windowMillis;
+  }
+
+  /**
+   * Removes the entries of skiers whose last write is older than our staleness window
+   */
+  public void sweep() {
+    long now = System.currentTimeMillis();
+    lastWrite.values().removeIf(time -> now - time >= windowMillis);
+  }
+}
@@ -0,0 +1,111 @@
+package daos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.apache.commons.dbcp2.BasicDataSource;
+
+/**
+ * A primary database together with its read replicas. Writes (and reads that must see them) use
+ * the primary, while other reads are spread over the replicas either round-robin or to the
+ * replica whose pool has the fewest connections in use. With no replicas every read goes to the
+ * primary.
+ */
+public class ReplicaSet {
+  /**
+   * How reads are spread over the replicas
+   */
+  public enum Policy { ROUND_ROBIN, LEAST_LOADED }
+
+  private final DataSource primary;
+  private final DataSource[] replicas;
+  private final BasicDataSource[] replicaPools;
+  private final Policy policy;
+  private final AtomicInteger next = new AtomicInteger();
+
+  /**
+   * Creates a set with a primary and no replicas
+   * @param primary is the data source of the primary database
+   */
+  public ReplicaSet(DataSource primary) {
+    this(primary, new ArrayList<>(), Policy.ROUND_ROBIN);
+  }
+
+  /**
+   * Creates a set with a primary and the given replica pools
+   * @param primary is the data source of the primary database
+   * @param replicaPools is the connection pool of each replica
+   * @param policy is how reads are spread over the replicas
+   */
+  public ReplicaSet(DataSource primary, List<BasicDataSource> replicaPools, Policy policy) {
+    this.primary = primary;
+    this.replicaPools = replicaPools.toArray(new BasicDataSource[0]);
+    this.replicas = new DataSource[this.replicaPools.length];
+    for (int i = 0; i < replicas.length; i++) {
+      replicas[i] = FaultInjectingDataSource.fromSystemProperties(this.replicaPools[i]);
+    }
+    this.policy = policy;
+  }
+
+  /**
+   * Creates a set from a primary and a comma separated list of replica JDBC URLs, each given a
+   * pool with our standard settings. The policy is read from the DB_REPLICA_POLICY system
+   * property (ROUND_ROBIN by default).
+   * @param name is the name of the primary's pool, each replica's pool is named after it
+   *             (e.g. shard0-replica1)
+   * @param primary is the data source of the primary database
+   * @param replicaUrls is the comma separated replica URLs, or null/empty for no replicas
+   * @return the new replica set
+   * @throws IllegalArgumentException if DB_REPLICA_POLICY is not a valid policy
+   */
+  public static ReplicaSet fromUrls(String name, DataSource primary, String replicaUrls)
+          throws IllegalArgumentException {
+    List<BasicDataSource> pools = new ArrayList<>();
+    if (replicaUrls != null && !replicaUrls.trim().isEmpty()) {
+      for (String url : replicaUrls.split(",")) {
+        pools.add(DBCPDataSource.createPool(name + "-replica" + pools.size(), url.trim()));
+      }
+    }
+    Policy policy = Policy.valueOf(System.getProperty("DB_REPLICA_POLICY", "ROUND_ROBIN"));
+    return new ReplicaSet(primary, pools, policy);
+  }
+
+  /**
+   * Simple getter for the primary, which all writes and read-your-writes reads must use
+   * @return the data source of the primary database
+   */
+  public DataSource getPrimary() {
+    return primary;
+  }
+
+  /**
+   * Simple getter for whether this set has read replicas
+   * @return true if this set has any read replicas
+   */
+  public boolean hasReplicas() {
+    return replicas.length > 0;
+  }
+
+  /**
+   * Picks the data source a read (that may be slightly stale) should use
+   * @return a replica chosen by our policy, or the primary if there are no replicas
+   */
+  public DataSource forRead() {
+    if (replicas.length == 0) {
+      return primary;
+    } else if (replicas.length == 1) {
+      return replicas[0];
+    }
+    if (policy == Policy.LEAST_LOADED) {
+      int best = 0;
+      for (int i = 1; i < replicaPools.length; i++) {
+        if (replicaPools[i].getNumActive() < replicaPools[best].getNumActive()) {
+          best = i;
+        }
+      }
+      return replicas[best];
+    }
+    return replicas[Math.floorMod(next.getAndIncrement(), replicas.length)];
+  }
+}
@@ -1,11 +1,11 @@
 package daos;
 
-import org.apache.commons.dbcp2.BasicDataSource;
 import java.sql.Connection;
 import java.sql.Statement;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import javax.sql.DataSource;
 
 import servlethelpers.Resort;
 import servlethelpers.ResortList;
@@ -15,15 +15,26 @@ import servlethelpers.ResortList;
  * The resorts table holds information on our current active resorts.
  */
 public class ResortDAO {
-  private static BasicDataSource dataSource;
+  private final DataSource dataSource;
 
   public ResortDAO() {
-    dataSource = DBCPDataSource.getDataSource();
+    // resorts are only read here, so a replica (if there are any) will do
+    this(DBCPDataSource.getReplicaSet().forRead());
+  }
+
+  /**
+   * Constructs a DAO that reads through the given data source instead of our shared
+   * connection pool (e.g. an embedded database for benchmarks)
+   * @param dataSource is the data source holding the resorts table
+   */
+  public ResortDAO(DataSource dataSource) {
+    this.dataSource = dataSource;
   }
 
   /**
    * Queries our database and returns a ResortList object filled with the
    * current active resorts we have
+   * @return the resorts, or null if they could not be read
    */
   public ResortList getResortList() {
     Connection conn = null;
@@ -42,6 +53,8 @@ public class ResortDAO {
       }
     } catch (SQLException e) {
       e.printStackTrace();
+      // a partial or empty list would look like a real catalog, so report the failure
+      resorts = null;
     } finally {
       try {
         if (conn != null) {
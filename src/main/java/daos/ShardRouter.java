@@ -0,0 +1,251 @@
+package daos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+/**
+ * Routes the liftrides table across N databases (shards) by a hash of the skierID, so each
+ * skier's rides live on exactly one shard. Shards are configured with the DB_SHARD_URLS system
+ * property (a comma separated list of JDBC URLs, each given its own pool); without it there is a
+ * single shard, our DBCPDataSource. Each shard may have read replicas, listed in the
+ * DB_SHARD_{i}_REPLICA_URLS system property (DB_REPLICA_URLS when unsharded).
+ * Each shard keeps its own AUTO_INCREMENT rideIDs, which we make globally unique by encoding the
+ * shard into them: globalID = localID * N + shard. With one shard the IDs are unchanged, but N
+ * must not change once rides have been written. Global rideIDs are ints, so each shard may only
+ * hold local rideIDs up to getMaxLocalRideID (about 2^31 / N); past that, conversions fail
+ * rather than hand out negative or colliding IDs.
+ * Scatter queries run on a bounded pool of as many threads as the other shards' pools have
+ * connections (DB_POOL_MAX_TOTAL each), with as many queued queries again; past that, the
+ * calling thread queries the shard itself, so a burst of scatters slows its callers down
+ * instead of piling up threads that would only wait for connections.
+ */
+public class ShardRouter {
+  private final ReplicaSet[] shards;
+  private final int maxLocalRideID;
+  private final ExecutorService scatterPool;
+
+  /**
+   * Functional interface for a query run against a single shard
+   * @param <T> is the type of the query's result
+   */
+  public interface ShardQuery<T> {
+    /**
+     * Runs the query against one shard
+     * @param shard is the index of the shard being queried
+     * @return the result of the query on that shard
+     */
+    T query(int shard);
+  }
+
+  /**
+   * Creates a router over the given shards (without replicas), in shard index order
+   * @param shards is the data sources of each shard
+   * @throws IllegalArgumentException if no shards were given
+   */
+  public ShardRouter(List<DataSource> shards) throws IllegalArgumentException {
+    this(shards.stream().map(ReplicaSet::new).toArray(ReplicaSet[]::new));
+  }
+
+  /**
+   * Creates a router over the given shards and their replicas, in shard index order
+   * @param shards is the replica set of each shard
+   * @throws IllegalArgumentException if no shards were given
+   */
+  public ShardRouter(ReplicaSet[] shards) throws IllegalArgumentException {
+    if (shards.length == 0) {
+      throw new IllegalArgumentException("At least one shard is required");
+    }
+    this.shards = shards.clone();
+    this.maxLocalRideID = (Integer.MAX_VALUE - (shards.length - 1)) / shards.length;
+    this.scatterPool = shards.length == 1 ? null : scatterPool(shards.length - 1);
+  }
+
+  /**
+   * Builds the bounded pool scatter queries run on
+   * @param otherShards is the number of shards not queried by the calling thread
+   * @return the pool, with a thread per connection of the other shards' pools
+   */
+  private static ExecutorService scatterPool(int otherShards) {
+    int threads = otherShards * Math.max(1, Integer.getInteger("DB_POOL_MAX_TOTAL", 60));
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(threads), r -> {
+              Thread thread = new Thread(r, "shard-scatter");
+              thread.setDaemon(true);
+              return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  /**
+   * Gets the router built from our system properties, building it on first use
+   * @return the default shard router for our DAOs
+   */
+  public static ShardRouter getDefault() {
+    return DefaultHolder.ROUTER;
+  }
+
+  /**
+   * Lazily builds our default router the first time a DAO needs it
+   */
+  private static class DefaultHolder {
+    private static final ShardRouter ROUTER = fromSystemProperties();
+
+    /**
+     * Builds a router over the shards listed in DB_SHARD_URLS, or over DBCPDataSource alone
+     * @return the router over our configured shards
+     */
+    private static ShardRouter fromSystemProperties() {
+      String urls = System.getProperty("DB_SHARD_URLS");
+      if (urls == null || urls.trim().isEmpty()) {
+        return new ShardRouter(new ReplicaSet[]{DBCPDataSource.getReplicaSet()});
+      }
+      String[] shardUrls = urls.split(",");
+      ReplicaSet[] shards = new ReplicaSet[shardUrls.length];
+      for (int i = 0; i < shardUrls.length; i++) {
+        DataSource primary = FaultInjectingDataSource.fromSystemProperties(
+                DBCPDataSource.createPool("shard" + i, shardUrls[i].trim()));
+        shards[i] = ReplicaSet.fromUrls("shard" + i, primary,
+                System.getProperty("DB_SHARD_" + i + "_REPLICA_URLS"));
+      }
+      return new ShardRouter(shards);
+    }
+  }
+
+  /**
+   * Simple getter for the number of shards
+   * @return the number of shards this router routes across
+   */
+  public int getNumShards() {
+    return shards.length;
+  }
+
+  /**
+   * Simple getter for the primary data source of a shard, used for writes and for reads that
+   * must see them
+   * @param shard is the index of the shard
+   * @return the primary data source of that shard
+   */
+  public DataSource getShard(int shard) {
+    return shards[shard].getPrimary();
+  }
+
+  /**
+   * Picks the data source a possibly stale read of a shard should use
+   * @param shard is the index of the shard
+   * @return one of the shard's replicas, or its primary if it has none
+   */
+  public DataSource getReadShard(int shard) {
+    return shards[shard].forRead();
+  }
+
+  /**
+   * Simple getter for whether any of our shards has read replicas
+   * @return true if any shard has read replicas
+   */
+  public boolean hasReplicas() {
+    for (ReplicaSet shard : shards) {
+      if (shard.hasReplicas()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Finds the shard holding the given skier's rides. Skier IDs are mixed before hashing since
+   * they are assigned sequentially.
+   * @param skierID is the ID of the skier
+   * @return the index of the skier's shard
+   */
+  public int shardForSkier(int skierID) {
+    int h = skierID;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return Math.floorMod(h, shards.length);
+  }
+
+  /**
+   * Converts a shard's local (AUTO_INCREMENT) rideID into its globally unique rideID
+   * @param localRideID is the rideID within the shard
+   * @param shard is the index of the shard holding the ride
+   * @return the global rideID
+   * @throws IllegalStateException if the local rideID is past getMaxLocalRideID, so its global
+   *                               rideID would overflow
+   */
+  public int toGlobalRideID(int localRideID, int shard) throws IllegalStateException {
+    if (localRideID > maxLocalRideID) {
+      throw new IllegalStateException("Local rideID " + localRideID + " of shard " + shard
+              + " is past the highest that fits a global rideID (" + maxLocalRideID + ")");
+    }
+    return localRideID * shards.length + shard;
+  }
+
+  /**
+   * Simple getter for the highest local rideID a shard may hold
+   * @return the highest local rideID whose global rideID fits an int
+   */
+  public int getMaxLocalRideID() {
+    return maxLocalRideID;
+  }
+
+  /**
+   * Finds the shard holding a ride from its global rideID
+   * @param rideID is the global rideID
+   * @return the index of the shard holding the ride
+   */
+  public int shardForRide(int rideID) {
+    return Math.floorMod(rideID, shards.length);
+  }
+
+  /**
+   * Converts a global rideID into the rideID within its shard
+   * @param rideID is the global rideID
+   * @return the rideID within the shard holding the ride
+   */
+  public int toLocalRideID(int rideID) {
+    return Math.floorDiv(rideID, shards.length);
+  }
+
+  /**
+   * Runs a query against every shard in parallel and gathers the results
+   * @param query is the query to run on each shard
+   * @param <T> is the type of the query's result
+   * @return the results of each shard, in shard index order
+   */
+  public <T> List<T> scatter(ShardQuery<T> query) {
+    List<T> results = new ArrayList<>(shards.length);
+    if (scatterPool == null) {
+      results.add(query.query(0));
+      return results;
+    }
+    List<Future<T>> futures = new ArrayList<>(shards.length - 1);
+    for (int i = 1; i < shards.length; i++) {
+      final int shard = i;
+      futures.add(scatterPool.submit(() -> query.query(shard)));
+    }
+    // the calling thread takes the first shard itself
+    results.add(query.query(0));
+    for (Future<T> future : futures) {
+      try {
+        results.add(future.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted gathering shard results", e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Shard query failed", e.getCause());
+      }
+    }
+    return results;
+  }
+}
@@ -0,0 +1,17 @@
+package export;
+
+/**
+ * The columns of a liftrides export, in the order they are stored in each row group
+ */
+public enum Column {
+  /** the global rideID, delta encoded */
+  RIDE_ID,
+  /** the skierID, varint encoded */
+  SKIER_ID,
+  /** the resortID, dictionary encoded */
+  RESORT_ID,
+  /** the time of day (tID), delta encoded */
+  TIME,
+  /** the liftID, dictionary encoded */
+  LIFT_ID
+}
@@ -0,0 +1,57 @@
+package export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+
+/**
+ * Exports columnar liftrides files (see LiftRideExporter) to CSV on stdout, one row per ride:
+ * rideID,skierID,resortID,tID,liftID
+ */
+public class ColumnarDecoder {
+
+  /**
+   * Entry point of our decoder.
+   * @param args is the paths of the files to export, in order
+   * @throws IOException if a file could not be read or is not a columnar liftrides file
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.err.println("Usage: ColumnarDecoder liftrides-....lrc ...");
+      System.exit(1);
+    }
+    Writer csv = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+            65536);
+    csv.write("rideID,skierID,resortID,tID,liftID\n");
+    StringBuilder row = new StringBuilder();
+    for (String path : args) {
+      try (ColumnarReader reader = new ColumnarReader(path)) {
+        reader.scan(Integer.MIN_VALUE, Integer.MAX_VALUE, EnumSet.allOf(Column.class), batch -> {
+          int[] rideIDs = batch.getColumn(Column.RIDE_ID);
+          int[] skierIDs = batch.getColumn(Column.SKIER_ID);
+          int[] resortIDs = batch.getColumn(Column.RESORT_ID);
+          int[] times = batch.getColumn(Column.TIME);
+          int[] liftIDs = batch.getColumn(Column.LIFT_ID);
+          try {
+            for (int i = 0; i < batch.size(); i++) {
+              row.setLength(0);
+              row.append(rideIDs[i]).append(',').append(skierIDs[i]).append(',')
+                      .append(resortIDs[i]).append(',').append(times[i]).append(',')
+                      .append(liftIDs[i]).append('\n');
+              csv.append(row);
+            }
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    }
+    csv.flush();
+  }
+}
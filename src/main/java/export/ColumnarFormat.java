@@ -0,0 +1,220 @@
+package export;
+
+import java.util.Arrays;
+
+/**
+ * The layout of our columnar liftrides files, and the encodings of their columns.
+ * A file is a header (MAGIC, VERSION), then row groups, then a footer indexing them, then the
+ * footer's offset and MAGIC again. Each row group holds its row count then one chunk per Column,
+ * each chunk its encoded length, deflated length and deflated bytes, so a reader can skip the
+ * columns it doesn't need without inflating them. The footer holds each group's offset, row
+ * count and lowest and highest rideID, so a reader can skip groups outside a rideID range.
+ * Integers are big-endian except within chunks, which use LEB128 varints: zigzag deltas from the
+ * previous row for rideID and tID, zigzag values for skierID, and for resortID and liftID a
+ * dictionary of the group's distinct values followed by each row's index into it (one byte each
+ * if the dictionary has at most 256 values).
+ */
+final class ColumnarFormat {
+  static final int MAGIC = 0x4C524331;
+  static final short VERSION = 1;
+  // bytes of a group's footer entry: offset, rows, lowest and highest rideID
+  static final int INDEX_ENTRY_BYTES = 20;
+  // bytes after the footer: its offset and MAGIC
+  static final int TRAILER_BYTES = 12;
+  private static final int BYTE_CODES = 256;
+
+  private ColumnarFormat() {
+  }
+
+  /**
+   * A growable buffer that column chunks are encoded into
+   */
+  static final class ByteSink {
+    private byte[] bytes = new byte[1 << 16];
+    private int size;
+
+    /**
+     * Empties the buffer for the next chunk
+     */
+    void reset() {
+      size = 0;
+    }
+
+    /**
+     * Appends a byte
+     * @param value is the byte to append (its low 8 bits)
+     */
+    void write(int value) {
+      if (size == bytes.length) {
+        bytes = Arrays.copyOf(bytes, size * 2);
+      }
+      bytes[size++] = (byte) value;
+    }
+
+    /**
+     * Appends an unsigned LEB128 varint
+     * @param value is the value to append, treated as unsigned
+     */
+    void writeVarint(int value) {
+      while ((value & ~0x7F) != 0) {
+        write((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      write(value);
+    }
+
+    /**
+     * Simple getter for the buffer's backing array
+     * @return the array holding the buffer's bytes
+     */
+    byte[] getBytes() {
+      return bytes;
+    }
+
+    /**
+     * Simple getter for the number of bytes in the buffer
+     * @return the buffer's size
+     */
+    int size() {
+      return size;
+    }
+  }
+
+  /**
+   * Zigzag encodes a value so small negative values make small varints
+   * @param value is the signed value
+   * @return the zigzag encoded value
+   */
+  private static int zigzag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  /**
+   * Reverses zigzag
+   * @param value is the zigzag encoded value
+   * @return the signed value
+   */
+  private static int unzigzag(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Encodes a column of a row group
+   * @param column is the column being encoded
+   * @param values is the column's values
+   * @param rows is the number of values to encode
+   * @param sink receives the encoded chunk
+   */
+  static void encode(Column column, int[] values, int rows, ByteSink sink) {
+    switch (column) {
+      case RIDE_ID:
+      case TIME:
+        int previous = 0;
+        for (int i = 0; i < rows; i++) {
+          sink.writeVarint(zigzag(values[i] - previous));
+          previous = values[i];
+        }
+        break;
+      case RESORT_ID:
+      case LIFT_ID:
+        encodeDictionary(values, rows, sink);
+        break;
+      default:
+        for (int i = 0; i < rows; i++) {
+          sink.writeVarint(zigzag(values[i]));
+        }
+    }
+  }
+
+  /**
+   * Dictionary encodes a column: its distinct values, then each row's index among them
+   * @param values is the column's values
+   * @param rows is the number of values to encode
+   * @param sink receives the encoded chunk
+   */
+  private static void encodeDictionary(int[] values, int rows, ByteSink sink) {
+    int[] dictionary = Arrays.copyOf(values, rows);
+    Arrays.sort(dictionary);
+    int distinct = 0;
+    for (int i = 0; i < rows; i++) {
+      if (i == 0 || dictionary[i] != dictionary[distinct - 1]) {
+        dictionary[distinct++] = dictionary[i];
+      }
+    }
+    sink.writeVarint(distinct);
+    for (int i = 0; i < distinct; i++) {
+      sink.writeVarint(zigzag(dictionary[i]));
+    }
+    for (int i = 0; i < rows; i++) {
+      int code = Arrays.binarySearch(dictionary, 0, distinct, values[i]);
+      if (distinct <= BYTE_CODES) {
+        sink.write(code);
+      } else {
+        sink.writeVarint(code);
+      }
+    }
+  }
+
+  /**
+   * Decodes a column chunk
+   * @param column is the column the chunk holds
+   * @param chunk holds the encoded chunk
+   * @param rows is the number of values the chunk holds
+   * @param values receives the column's values
+   */
+  static void decode(Column column, byte[] chunk, int rows, int[] values) {
+    int[] position = {0};
+    switch (column) {
+      case RIDE_ID:
+      case TIME:
+        int previous = 0;
+        for (int i = 0; i < rows; i++) {
+          previous += unzigzag(readVarint(chunk, position));
+          values[i] = previous;
+        }
+        break;
+      case RESORT_ID:
+      case LIFT_ID:
+        int distinct = readVarint(chunk, position);
+        int[] dictionary = new int[distinct];
+        for (int i = 0; i < distinct; i++) {
+          dictionary[i] = unzigzag(readVarint(chunk, position));
+        }
+        if (distinct <= BYTE_CODES) {
+          int start = position[0];
+          for (int i = 0; i < rows; i++) {
+            values[i] = dictionary[chunk[start + i] & 0xFF];
+          }
+        } else {
+          for (int i = 0; i < rows; i++) {
+            values[i] = dictionary[readVarint(chunk, position)];
+          }
+        }
+        break;
+      default:
+        for (int i = 0; i < rows; i++) {
+          values[i] = unzigzag(readVarint(chunk, position));
+        }
+    }
+  }
+
+  /**
+   * Reads an unsigned LEB128 varint
+   * @param bytes holds the varint
+   * @param position is the index to read from, advanced past the varint
+   * @return the varint's value
+   */
+  private static int readVarint(byte[] bytes, int[] position) {
+    int index = position[0];
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = bytes[index++];
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    position[0] = index;
+    return value;
+  }
+}
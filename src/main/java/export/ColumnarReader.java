@@ -0,0 +1,238 @@
+package export;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a columnar liftrides file (see ColumnarFormat). Scans read only the row groups that
+ * overlap the requested rideID range, and only the requested columns of those: the other
+ * columns' chunks are skipped without being read or inflated.
+ */
+public class ColumnarReader implements Closeable {
+  private final String path;
+  private final FileChannel channel;
+  private final long[] groupOffsets;
+  private final int[] groupRows;
+  private final int[] groupMinIds;
+  private final int[] groupMaxIds;
+  private long rowCount;
+  private final Inflater inflater = new Inflater();
+  private ByteBuffer compressed = ByteBuffer.allocate(1 << 16);
+  private byte[] encoded = new byte[1 << 16];
+
+  /**
+   * Opens a file and reads its footer
+   * @param path is the path of the file
+   * @throws IOException if the file could not be read or is not a columnar liftrides file
+   */
+  public ColumnarReader(String path) throws IOException {
+    this.path = path;
+    channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+    try {
+      long length = channel.size();
+      ByteBuffer header = read(0, 6);
+      if (length < 6 + ColumnarFormat.TRAILER_BYTES || header.getInt() != ColumnarFormat.MAGIC) {
+        throw new IOException(path + " is not a columnar liftrides file");
+      }
+      if (header.getShort() != ColumnarFormat.VERSION) {
+        throw new IOException(path + " has an unsupported version");
+      }
+      ByteBuffer trailer = read(length - ColumnarFormat.TRAILER_BYTES,
+              ColumnarFormat.TRAILER_BYTES);
+      long footerOffset = trailer.getLong();
+      if (trailer.getInt() != ColumnarFormat.MAGIC) {
+        throw new IOException(path + " is incomplete");
+      }
+      int groups = read(footerOffset, 4).getInt();
+      ByteBuffer footer = read(footerOffset + 4, groups * ColumnarFormat.INDEX_ENTRY_BYTES);
+      groupOffsets = new long[groups];
+      groupRows = new int[groups];
+      groupMinIds = new int[groups];
+      groupMaxIds = new int[groups];
+      for (int i = 0; i < groups; i++) {
+        groupOffsets[i] = footer.getLong();
+        groupRows[i] = footer.getInt();
+        groupMinIds[i] = footer.getInt();
+        groupMaxIds[i] = footer.getInt();
+        rowCount += groupRows[i];
+      }
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Simple getter for the number of rides in the file
+   * @return the number of rides
+   */
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Simple getter for the number of row groups in the file
+   * @return the number of row groups
+   */
+  public int getNumGroups() {
+    return groupRows.length;
+  }
+
+  /**
+   * Scans the rides in a rideID range, a row group at a time
+   * @param fromRideID is the first rideID to include
+   * @param toRideID is the rideID to stop before
+   * @param columns is the columns to read, the others are null in each batch
+   * @param visitor is given each batch of rides in the range, in file order
+   * @return the number of rides visited
+   * @throws IOException if the file could not be read or is corrupt
+   */
+  public long scan(int fromRideID, int toRideID, Set<Column> columns,
+          Consumer<RideBatch> visitor) throws IOException {
+    int[][] values = new int[Column.values().length][];
+    RideBatch batch = new RideBatch();
+    long visited = 0;
+    for (int group = 0; group < groupRows.length; group++) {
+      if (groupMaxIds[group] < fromRideID || groupMinIds[group] >= toRideID) {
+        continue;
+      }
+      int rows = groupRows[group];
+      boolean filter = groupMinIds[group] < fromRideID || groupMaxIds[group] >= toRideID;
+      long position = groupOffsets[group] + 4;
+      for (Column column : Column.values()) {
+        ByteBuffer lengths = read(position, 8);
+        int rawLength = lengths.getInt();
+        int compressedLength = lengths.getInt();
+        position += 8;
+        boolean wanted = columns.contains(column) || filter && column == Column.RIDE_ID;
+        if (wanted) {
+          int[] columnValues = values[column.ordinal()];
+          if (columnValues == null || columnValues.length < rows) {
+            columnValues = new int[rows];
+            values[column.ordinal()] = columnValues;
+          }
+          inflate(position, compressedLength, rawLength);
+          ColumnarFormat.decode(column, encoded, rows, columnValues);
+        }
+        position += compressedLength;
+      }
+      int size = filter ? keepRange(values, rows, fromRideID, toRideID) : rows;
+      for (Column column : Column.values()) {
+        batch.setColumn(column, columns.contains(column) ? values[column.ordinal()] : null);
+      }
+      batch.setSize(size);
+      visited += size;
+      if (size > 0) {
+        visitor.accept(batch);
+      }
+    }
+    return visited;
+  }
+
+  /**
+   * Moves the rows of a group that fall in a rideID range to its front
+   * @param values is the group's decoded columns, null for those not read
+   * @param rows is the number of rows in the group
+   * @param fromRideID is the first rideID to keep
+   * @param toRideID is the rideID to stop before
+   * @return the number of rows kept
+   */
+  private static int keepRange(int[][] values, int rows, int fromRideID, int toRideID) {
+    int[] rideIDs = values[Column.RIDE_ID.ordinal()];
+    int kept = 0;
+    for (int i = 0; i < rows; i++) {
+      if (rideIDs[i] >= fromRideID && rideIDs[i] < toRideID) {
+        for (int[] column : values) {
+          if (column != null) {
+            column[kept] = column[i];
+          }
+        }
+        kept++;
+      }
+    }
+    return kept;
+  }
+
+  /**
+   * Reads and inflates a column chunk into encoded
+   * @param position is the chunk's offset in the file
+   * @param compressedLength is the chunk's length in the file
+   * @param rawLength is the chunk's length once inflated
+   * @throws IOException if the chunk could not be read or is corrupt
+   */
+  private void inflate(long position, int compressedLength, int rawLength) throws IOException {
+    if (compressed.capacity() < compressedLength) {
+      compressed = ByteBuffer.allocate(compressedLength);
+    }
+    if (encoded.length < rawLength) {
+      encoded = new byte[rawLength];
+    }
+    compressed.clear().limit(compressedLength);
+    readFully(position, compressed);
+    inflater.reset();
+    inflater.setInput(compressed.array(), 0, compressedLength);
+    try {
+      int length = 0;
+      while (length < rawLength && !inflater.finished()) {
+        int inflated = inflater.inflate(encoded, length, rawLength - length);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        length += inflated;
+      }
+      if (length != rawLength) {
+        throw new IOException(path + " has a truncated column chunk");
+      }
+    } catch (DataFormatException e) {
+      throw new IOException(path + " has a corrupt column chunk", e);
+    }
+  }
+
+  /**
+   * Reads a section of the file
+   * @param position is the section's offset in the file
+   * @param length is the section's length
+   * @return a buffer holding the section, ready to get from
+   * @throws IOException if the section could not be read
+   */
+  private ByteBuffer read(long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    readFully(position, buffer);
+    return buffer.flip();
+  }
+
+  /**
+   * Fills a buffer from the file
+   * @param position is the offset in the file to read from
+   * @param buffer is the buffer to fill up to its limit
+   * @throws IOException if the file could not be read or ends first
+   */
+  private void readFully(long position, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException(path + " ends early");
+      }
+      position += read;
+    }
+  }
+
+  /**
+   * Closes the file
+   * @throws IOException if the file could not be closed
+   */
+  @Override
+  public void close() throws IOException {
+    inflater.end();
+    channel.close();
+  }
+}
@@ -0,0 +1,161 @@
+package export;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Writes lift rides to a columnar file (see ColumnarFormat), buffering a row group at a time.
+ * Rides should be added in rideID order, which keeps rideID deltas small and lets readers skip
+ * groups by rideID range.
+ */
+public class ColumnarWriter implements Closeable {
+  private final DataOutputStream out;
+  private final int rowsPerGroup;
+  private final int[][] columns = new int[Column.values().length][];
+  private int rows;
+  private long position;
+  private long rowCount;
+  private final ColumnarFormat.ByteSink encoded = new ColumnarFormat.ByteSink();
+  private byte[] deflated = new byte[1 << 16];
+  private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+  // the footer's entries, one per group
+  private long[] groupOffsets = new long[16];
+  private int[] groupRows = new int[16];
+  private int[] groupMinIds = new int[16];
+  private int[] groupMaxIds = new int[16];
+  private int groups;
+
+  /**
+   * Starts a file on the given stream
+   * @param stream is the stream to write the file to, closed with the writer
+   * @param rowsPerGroup is the number of rows per row group
+   * @throws IOException if the header could not be written
+   */
+  public ColumnarWriter(OutputStream stream, int rowsPerGroup) throws IOException {
+    this.out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+    this.rowsPerGroup = rowsPerGroup;
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = new int[rowsPerGroup];
+    }
+    out.writeInt(ColumnarFormat.MAGIC);
+    out.writeShort(ColumnarFormat.VERSION);
+    position = 6;
+  }
+
+  /**
+   * Adds a ride, writing out the current row group once it is full
+   * @param rideID is the ride's global rideID
+   * @param skierID is the ID of the skier who rode
+   * @param resortID is the ID of the resort ridden at
+   * @param time is the ride's time of day (tID)
+   * @param liftID is the ID of the lift ridden
+   * @throws IOException if a full row group could not be written
+   */
+  public void add(int rideID, int skierID, int resortID, int time, int liftID)
+          throws IOException {
+    columns[Column.RIDE_ID.ordinal()][rows] = rideID;
+    columns[Column.SKIER_ID.ordinal()][rows] = skierID;
+    columns[Column.RESORT_ID.ordinal()][rows] = resortID;
+    columns[Column.TIME.ordinal()][rows] = time;
+    columns[Column.LIFT_ID.ordinal()][rows] = liftID;
+    if (++rows == rowsPerGroup) {
+      writeGroup();
+    }
+  }
+
+  /**
+   * Writes out the buffered rows as a row group and adds it to the footer
+   * @throws IOException if the group could not be written
+   */
+  private void writeGroup() throws IOException {
+    if (groups == groupOffsets.length) {
+      groupOffsets = Arrays.copyOf(groupOffsets, groups * 2);
+      groupRows = Arrays.copyOf(groupRows, groups * 2);
+      groupMinIds = Arrays.copyOf(groupMinIds, groups * 2);
+      groupMaxIds = Arrays.copyOf(groupMaxIds, groups * 2);
+    }
+    int[] rideIDs = columns[Column.RIDE_ID.ordinal()];
+    int minID = Integer.MAX_VALUE;
+    int maxID = Integer.MIN_VALUE;
+    for (int i = 0; i < rows; i++) {
+      minID = Math.min(minID, rideIDs[i]);
+      maxID = Math.max(maxID, rideIDs[i]);
+    }
+    groupOffsets[groups] = position;
+    groupRows[groups] = rows;
+    groupMinIds[groups] = minID;
+    groupMaxIds[groups] = maxID;
+    groups++;
+
+    out.writeInt(rows);
+    position += 4;
+    for (Column column : Column.values()) {
+      encoded.reset();
+      ColumnarFormat.encode(column, columns[column.ordinal()], rows, encoded);
+      int length = deflate();
+      out.writeInt(encoded.size());
+      out.writeInt(length);
+      out.write(deflated, 0, length);
+      position += 8 + length;
+    }
+    rowCount += rows;
+    rows = 0;
+  }
+
+  /**
+   * Deflates the encoded chunk
+   * @return the number of deflated bytes, held in deflated
+   */
+  private int deflate() {
+    deflater.reset();
+    deflater.setInput(encoded.getBytes(), 0, encoded.size());
+    deflater.finish();
+    int length = 0;
+    while (!deflater.finished()) {
+      if (length == deflated.length) {
+        deflated = Arrays.copyOf(deflated, length * 2);
+      }
+      length += deflater.deflate(deflated, length, deflated.length - length);
+    }
+    return length;
+  }
+
+  /**
+   * Simple getter for the number of rides added so far
+   * @return the number of rides added
+   */
+  public long getRowCount() {
+    return rowCount + rows;
+  }
+
+  /**
+   * Writes out the last row group and the footer, and closes the stream
+   * @throws IOException if the file could not be completed
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (rows > 0) {
+        writeGroup();
+      }
+      long footerOffset = position;
+      out.writeInt(groups);
+      for (int i = 0; i < groups; i++) {
+        out.writeLong(groupOffsets[i]);
+        out.writeInt(groupRows[i]);
+        out.writeInt(groupMinIds[i]);
+        out.writeInt(groupMaxIds[i]);
+      }
+      out.writeLong(footerOffset);
+      out.writeInt(ColumnarFormat.MAGIC);
+    } finally {
+      deflater.end();
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package export;
+
+import daos.LiftRideDAO;
+import daos.ShardRouter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Exports a snapshot of the liftrides table to columnar files (see ColumnarWriter), one per
+ * rideID range of each shard, named liftrides-shard-firstLocalRideID.lrc. Ranges are read by
+ * primary key from the shards' replicas (if they have any) by a pool of threads, each streaming
+ * its range straight into its file, so memory use is bounded by the row group size whatever the
+ * table's size. Each range is a consistent read of its own, not the table as a whole: rides
+ * added during an export past a shard's highest rideID at its start are left out.
+ */
+public class LiftRideExporter {
+  private static final int DEF_THREADS = 4;
+  private static final int DEF_RANGE_RIDES = 1000000;
+  private static final int DEF_GROUP_ROWS = 65536;
+  // rows between checks of a throttled export's pace
+  private static final int PACE_ROWS = 1024;
+
+  /**
+   * Entry point of our exporter.
+   * @param args is our command line arguments, of form outDir [-j threads -r rangeRides
+   *             -g groupRows -m maxRowsPerSec]. threads is the number of ranges exported at once,
+   *             rangeRides the number of rideIDs per range (and file), groupRows the number of
+   *             rows per row group and maxRowsPerSec an optional cap on the export's total rate
+   *             to spare the replicas (0, the default, exports as fast as it can)
+   * @throws NumberFormatException if an option could not be converted to a number
+   * @throws InterruptedException if interrupted while waiting for the export
+   */
+  public static void main(String[] args) throws NumberFormatException, InterruptedException {
+    if (args.length == 0 || args.length % 2 == 0) {
+      System.err.println("Usage: LiftRideExporter outDir [-j threads -r rangeRides "
+              + "-g groupRows -m maxRowsPerSec]");
+      System.exit(1);
+    }
+    File outDir = new File(args[0]);
+    int threads = DEF_THREADS;
+    int rangeRides = DEF_RANGE_RIDES;
+    int groupRows = DEF_GROUP_ROWS;
+    long maxRowsPerSec = 0;
+    for (int i = 1; i < args.length; i += 2) {
+      switch (args[i]) {
+        case "-j":
+          threads = Integer.parseInt(args[i + 1]);
+          break;
+        case "-r":
+          rangeRides = Integer.parseInt(args[i + 1]);
+          break;
+        case "-g":
+          groupRows = Integer.parseInt(args[i + 1]);
+          break;
+        case "-m":
+          maxRowsPerSec = Long.parseLong(args[i + 1]);
+          break;
+        default:
+          System.err.println("Unknown option " + args[i]);
+          System.exit(1);
+      }
+    }
+    if (threads < 1 || rangeRides < 1 || groupRows < 1 || maxRowsPerSec < 0) {
+      System.err.println("threads, rangeRides and groupRows must be positive, "
+              + "maxRowsPerSec must not be negative");
+      System.exit(1);
+    }
+    if (!outDir.isDirectory() && !outDir.mkdirs()) {
+      System.err.println("Cannot create " + outDir);
+      System.exit(1);
+    }
+
+    ShardRouter router = ShardRouter.getDefault();
+    LiftRideDAO liftRideDAO = new LiftRideDAO(router);
+    long taskRowsPerSec = maxRowsPerSec == 0 ? 0 : Math.max(1, maxRowsPerSec / threads);
+    long start = System.nanoTime();
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<long[]>> parts = new ArrayList<>();
+    boolean failed = false;
+    for (int shard = 0; shard < router.getNumShards(); shard++) {
+      int maxLocalID = liftRideDAO.getMaxLocalRideId(shard);
+      if (maxLocalID < 0) {
+        System.err.println("Cannot read the rideIDs of shard " + shard);
+        failed = true;
+        continue;
+      }
+      // local rideIDs start at 1
+      for (long from = 1; from <= maxLocalID; from += rangeRides) {
+        int fromID = (int) from;
+        int toID = (int) Math.min(from + rangeRides, (long) maxLocalID + 1);
+        File file = new File(outDir, String.format("liftrides-%d-%010d.lrc", shard, fromID));
+        int rangeShard = shard;
+        int rows = groupRows;
+        parts.add(pool.submit(() -> exportRange(liftRideDAO, rangeShard, fromID, toID, file,
+                rows, taskRowsPerSec)));
+      }
+    }
+    pool.shutdown();
+
+    long rows = 0;
+    long bytes = 0;
+    int exported = 0;
+    for (Future<long[]> part : parts) {
+      try {
+        long[] result = part.get();
+        rows += result[0];
+        bytes += result[1];
+        exported++;
+      } catch (ExecutionException e) {
+        e.getCause().printStackTrace();
+        failed = true;
+      }
+    }
+    pool.awaitTermination(1, TimeUnit.MINUTES);
+    double secs = (System.nanoTime() - start) / 1e9;
+    System.out.println("Exported " + exported + " of " + parts.size() + " parts, " + rows
+            + " rides, " + bytes + " bytes to " + outDir);
+    System.out.printf("%.2f bytes per ride, %.1f secs, %.0f rides/s%n",
+            rows > 0 ? (double) bytes / rows : 0, secs, rows / secs);
+    if (failed) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Exports one rideID range of a shard to a file, written under a temporary name and renamed
+   * once complete, so a file with the final name is always whole
+   * @param liftRideDAO is the DAO to read the rides with
+   * @param shard is the index of the shard to read
+   * @param fromLocalID is the first local rideID of the range
+   * @param toLocalID is the local rideID the range ends before
+   * @param file is the file to write
+   * @param groupRows is the number of rows per row group
+   * @param maxRowsPerSec is the most rows per second to read, 0 for no limit
+   * @return the number of rides and of bytes exported
+   * @throws IOException if the range could not be read or the file written
+   */
+  private static long[] exportRange(LiftRideDAO liftRideDAO, int shard, int fromLocalID,
+          int toLocalID, File file, int groupRows, long maxRowsPerSec) throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    long start = System.nanoTime();
+    boolean read;
+    long rows;
+    try (ColumnarWriter writer = new ColumnarWriter(new FileOutputStream(tmp), groupRows)) {
+      long[] added = {0};
+      read = liftRideDAO.streamShardRides(shard, fromLocalID, toLocalID,
+          (rideID, skierID, resortID, time, liftID) -> {
+            try {
+              writer.add(rideID, skierID, resortID, time, liftID);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+            if (maxRowsPerSec > 0 && ++added[0] % PACE_ROWS == 0) {
+              long due = start + added[0] * 1000000000L / maxRowsPerSec;
+              long wait = due - System.nanoTime();
+              if (wait > 0) {
+                LockSupport.parkNanos(wait);
+              }
+            }
+          });
+      rows = writer.getRowCount();
+    } catch (UncheckedIOException e) {
+      tmp.delete();
+      throw e.getCause();
+    }
+    if (!read) {
+      tmp.delete();
+      throw new IOException("Cannot read rides " + fromLocalID + " to " + toLocalID
+              + " of shard " + shard);
+    }
+    if (!tmp.renameTo(file)) {
+      tmp.delete();
+      throw new IOException("Cannot rename " + tmp + " to " + file);
+    }
+    return new long[] {rows, file.length()};
+  }
+}
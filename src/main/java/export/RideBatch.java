@@ -0,0 +1,44 @@
+package export;
+
+/**
+ * A batch of lift rides handed to a scan, as one array per column. The arrays are reused by the
+ * next batch, so copy out anything that must outlive the visit.
+ */
+public final class RideBatch {
+  private final int[][] columns = new int[Column.values().length][];
+  private int size;
+
+  /**
+   * Simple getter for the number of rides in the batch
+   * @return the number of rides, which is also the number of valid entries in each column
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Simple getter for one of the batch's columns
+   * @param column is the column to get
+   * @return the column's values, or null if the scan did not read the column
+   */
+  public int[] getColumn(Column column) {
+    return columns[column.ordinal()];
+  }
+
+  /**
+   * Simple setter for the number of rides in the batch
+   * @param size is the number of rides
+   */
+  void setSize(int size) {
+    this.size = size;
+  }
+
+  /**
+   * Simple setter for one of the batch's columns
+   * @param column is the column to set
+   * @param values is the column's values, or null if the column is not read
+   */
+  void setColumn(Column column, int[] values) {
+    columns[column.ordinal()] = values;
+  }
+}
@@ -0,0 +1,84 @@
+package index;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free Bloom filter over integer keys: mightContain never returns false for a key that
+ * was added, and returns true for a key that was not added with roughly the configured false
+ * positive rate as long as no more than the expected number of keys are added.
+ */
+public class BloomFilter {
+  private final AtomicLongArray bits;
+  private final long numBits;
+  private final int numHashes;
+
+  /**
+   * Creates an empty filter sized for the given number of keys and false positive rate
+   * @param expectedKeys is the number of keys the filter is sized for
+   * @param falsePositiveRate is the target false positive rate (between 0 and 1)
+   * @throws IllegalArgumentException if either argument is out of range
+   */
+  public BloomFilter(long expectedKeys, double falsePositiveRate) throws IllegalArgumentException {
+    if (expectedKeys < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+      throw new IllegalArgumentException("Invalid Bloom filter size or false positive rate");
+    }
+    long optimalBits = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate)
+            / (Math.log(2) * Math.log(2)));
+    int words = (int) Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64);
+    this.bits = new AtomicLongArray(words);
+    this.numBits = (long) words * 64;
+    this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedKeys * Math.log(2)));
+  }
+
+  /**
+   * Mixes a key into a well distributed 64 bit hash (murmur3 finalizer)
+   * @param key is the key to hash
+   * @return the 64 bit hash of the key
+   */
+  private static long hash(int key) {
+    long h = key;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * Adds a key to this filter
+   * @param key is the key to add
+   */
+  public void add(int key) {
+    long h = hash(key);
+    long h1 = h & 0xFFFFFFFFL;
+    long h2 = h >>> 32;
+    for (int i = 0; i < numHashes; i++) {
+      long bit = Math.floorMod(h1 + i * h2, numBits);
+      int word = (int) (bit >>> 6);
+      long mask = 1L << bit;
+      long current = bits.get(word);
+      while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+        current = bits.get(word);
+      }
+    }
+  }
+
+  /**
+   * Checks whether a key may have been added to this filter
+   * @param key is the key to check
+   * @return false if the key was definitely never added, true if it may have been
+   */
+  public boolean mightContain(int key) {
+    long h = hash(key);
+    long h1 = h & 0xFFFFFFFFL;
+    long h2 = h >>> 32;
+    for (int i = 0; i < numHashes; i++) {
+      long bit = Math.floorMod(h1 + i * h2, numBits);
+      if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,190 @@
+package index;
+
+import daos.LiftRideDAO;
+import daos.ShardRouter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import servlethelpers.LiftRide;
+import servlets.LiftRideListener;
+
+/**
+ * A fast existence check for rideIDs so GETs of rides that cannot exist are answered without a
+ * database query. RideIDs below 1 never exist. Otherwise each shard has a covered bound: every
+ * ride up to it is known to be in our BloomFilter, so a filter miss at or below the bound is a
+ * guaranteed miss, while IDs above it must still be checked in the database.
+ * By default other servers may also be writing, so the filter catches up from each shard's
+ * primary every RIDE_FILTER_REFRESH_MS (1000 by default). Concurrent inserts commit out of rideID
+ * order (ride 100 may commit after ride 101 was read), so each refresh re-reads the rideIDs
+ * above the shard's bound, and the bound only moves up to the highest rideID seen at least
+ * RIDE_FILTER_COMMIT_LAG_MS (10000 by default) ago: inserts in flight get that long to commit
+ * before a rideID still missing below the bound is taken to be rolled back. A refresh never
+ * re-reads more than RIDE_FILTER_COMMIT_LAG_IDS (10000 by default) rideIDs below the highest
+ * seen, so the whole table read at startup isn't read again while the bound catches up. An
+ * insert taking longer than the lag to commit, or committing further than that many rideIDs
+ * behind, is only found by the server that wrote it until it restarts.
+ * With RIDE_FILTER_SINGLE_WRITER=TRUE this server is known to see every insert, so the bound is
+ * simply the highest rideID it has loaded or written, and IDs above it are rejected outright.
+ * The filter is sized by RIDE_FILTER_EXPECTED (10,000,000 rides by default) and
+ * RIDE_FILTER_FPP (0.01 by default); past the expected count its false positive rate degrades,
+ * which only costs database queries.
+ */
+public class RideIdFilter implements LiftRideListener {
+  private final ShardRouter router;
+  private final LiftRideDAO dao;
+  private final boolean singleWriter;
+  private final BloomFilter filter;
+  // per shard, local rideIDs up to this are all in our filter
+  private final AtomicIntegerArray covered;
+  // per shard, the highest local rideID read from the database (refreshes only)
+  private final int[] lastSeen;
+  private final long commitLagMillis;
+  private final int commitLagIds;
+  // per shard, {time (ms), lastSeen} as of each refresh within the commit lag
+  private final List<ArrayDeque<long[]>> seenAt;
+
+  /**
+   * Creates a filter over every ride currently in the router's shards
+   * @param router is the router over the shards holding the liftrides table
+   * @param expectedRides is the number of rides the filter is sized for
+   * @param falsePositiveRate is the filter's target false positive rate
+   * @param singleWriter is whether this server sees every insert into the liftrides table
+   * @param commitLagMillis is how long (in ms) an insert may take to commit before a rideID
+   *                        still missing is taken to be rolled back
+   * @param commitLagIds is how many rideIDs below the highest seen a refresh re-reads at most
+   */
+  public RideIdFilter(ShardRouter router, long expectedRides, double falsePositiveRate,
+                      boolean singleWriter, long commitLagMillis, int commitLagIds) {
+    this.router = router;
+    this.dao = new LiftRideDAO(router);
+    this.singleWriter = singleWriter;
+    this.filter = new BloomFilter(expectedRides, falsePositiveRate);
+    this.covered = new AtomicIntegerArray(router.getNumShards());
+    this.lastSeen = new int[router.getNumShards()];
+    this.commitLagMillis = commitLagMillis;
+    this.commitLagIds = commitLagIds;
+    this.seenAt = new ArrayList<>();
+    for (int shard = 0; shard < router.getNumShards(); shard++) {
+      seenAt.add(new ArrayDeque<>());
+    }
+    refresh();
+    if (singleWriter) {
+      for (int shard = 0; shard < lastSeen.length; shard++) {
+        covered.set(shard, lastSeen[shard]);
+      }
+    }
+  }
+
+  /**
+   * Gets our shared filter, building it and (unless single writer) starting its refreshes on
+   * first use
+   * @return the filter our servlets update and read
+   */
+  public static RideIdFilter getInstance() {
+    return InstanceHolder.INSTANCE;
+  }
+
+  /**
+   * Lazily builds our shared filter the first time a servlet needs it
+   */
+  private static class InstanceHolder {
+    private static final RideIdFilter INSTANCE = create();
+
+    /**
+     * Builds our shared filter from our system properties and schedules its refreshes
+     * @return the shared filter
+     */
+    private static RideIdFilter create() {
+      boolean singleWriter = System.getProperty("RIDE_FILTER_SINGLE_WRITER", "FALSE")
+              .equals("TRUE");
+      RideIdFilter filter = new RideIdFilter(ShardRouter.getDefault(),
+              Long.getLong("RIDE_FILTER_EXPECTED", 10000000L),
+              Double.parseDouble(System.getProperty("RIDE_FILTER_FPP", "0.01")), singleWriter,
+              Long.getLong("RIDE_FILTER_COMMIT_LAG_MS", 10000L),
+              Integer.getInteger("RIDE_FILTER_COMMIT_LAG_IDS", 10000));
+      if (!singleWriter) {
+        long period = Long.getLong("RIDE_FILTER_REFRESH_MS", 1000L);
+        ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+          Thread thread = new Thread(r, "ride-filter-refresh");
+          thread.setDaemon(true);
+          return thread;
+        });
+        refresher.scheduleWithFixedDelay(filter::refresh, period, period, TimeUnit.MILLISECONDS);
+      }
+      return filter;
+    }
+  }
+
+  /**
+   * Adds the rides written to each shard above its covered bound (but at most commitLagIds below
+   * the highest rideID seen), including any that committed late, then raises each shard's
+   * covered bound to the highest rideID seen at least our commit lag ago
+   */
+  synchronized void refresh() {
+    long now = System.currentTimeMillis();
+    for (int shard = 0; shard < lastSeen.length; shard++) {
+      int fromLocalID = Math.max(covered.get(shard), lastSeen[shard] - commitLagIds);
+      int currentShard = shard;
+      int highest = dao.streamShardRideIds(shard, Math.max(0, fromLocalID),
+              localID -> filter.add(router.toGlobalRideID(localID, currentShard)));
+      lastSeen[shard] = Math.max(lastSeen[shard], highest);
+      if (!singleWriter) {
+        ArrayDeque<long[]> history = seenAt.get(shard);
+        history.add(new long[]{now, lastSeen[shard]});
+        long bound = -1;
+        while (!history.isEmpty() && history.peek()[0] <= now - commitLagMillis) {
+          bound = history.poll()[1];
+        }
+        if (bound >= 0) {
+          raiseCovered(shard, (int) bound);
+        }
+      }
+    }
+  }
+
+  /**
+   * Raises a shard's covered bound if it is currently lower
+   * @param shard is the index of the shard
+   * @param localID is the local rideID the bound should be at least
+   */
+  private void raiseCovered(int shard, int localID) {
+    int current = covered.get(shard);
+    while (localID > current && !covered.compareAndSet(shard, current, localID)) {
+      current = covered.get(shard);
+    }
+  }
+
+  /**
+   * Adds a newly ingested ride's ID to our filter
+   * @param ride is the newly written lift ride
+   */
+  @Override
+  public void onLiftRideCreated(LiftRide ride) {
+    int rideID = ride.getLiftRideId();
+    filter.add(rideID);
+    if (singleWriter) {
+      raiseCovered(router.shardForRide(rideID), router.toLocalRideID(rideID));
+    }
+  }
+
+  /**
+   * Checks whether a ride may exist
+   * @param rideID is the global rideID to check
+   * @return false if the ride definitely does not exist, true if it must be looked up
+   */
+  public boolean mightExist(int rideID) {
+    if (rideID < 1) {
+      return false;
+    }
+    int shard = router.shardForRide(rideID);
+    if (router.toLocalRideID(rideID) > covered.get(shard)) {
+      // beyond what we know of: in single writer mode it cannot exist yet
+      return !singleWriter;
+    }
+    return filter.mightContain(rideID);
+  }
+}
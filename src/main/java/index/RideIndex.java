@@ -0,0 +1,242 @@
+package index;
+
+import daos.LiftRideDAO;
+import daos.ShardRouter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import servlethelpers.LiftRide;
+import servlethelpers.LiftRideList;
+import servlets.LiftRideListener;
+
+/**
+ * An in-memory secondary index of lift rides by resort and lift, each ordered by lift time, so
+ * "rides at resort R on lift L between times a and b" is a range scan in O(log n + k) rather than
+ * a scan of the liftrides table. Each lift's rides are kept as (time, rideID) pairs packed into
+ * one long key (boxed by the skip list) mapped to the skierID, not as LiftRide objects.
+ * The index holds at most RIDE_INDEX_MAX_RIDES rides (2000000 by default): the newest rides, by
+ * rideID. At startup it loads that many of the newest rides, and once it grows past the bound
+ * its oldest rides are evicted in the background. Either way it covers every ride from some
+ * rideID (its floor) up, and the part of a query below its floor falls back to the database.
+ * The shared index is kept up to date as this server ingests rides; rides ingested by other
+ * servers after it was loaded are not in it.
+ */
+public class RideIndex implements LiftRideListener {
+  // share of the bound an eviction brings the index back down to
+  private static final double EVICT_TO = 0.9;
+  private static final ExecutorService EVICTOR = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "ride-index-evict");
+    thread.setDaemon(true);
+    return thread;
+  });
+  // (resortID << 32 | liftID) -> (time << 32 | rideID) -> skierID
+  private final ConcurrentHashMap<Long, ConcurrentSkipListMap<Long, Integer>> lifts =
+          new ConcurrentHashMap<>();
+  private final LiftRideDAO dao;
+  private final int maxRides;
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicInteger highestRideID = new AtomicInteger();
+  private final AtomicBoolean evicting = new AtomicBoolean();
+  // every ride from this rideID up is in the index, 0 if every ride is
+  private volatile int floor;
+
+  /**
+   * Creates an empty index
+   * @param dao is the DAO queries below the index's floor fall back to
+   * @param maxRides is the most rides held at once
+   */
+  public RideIndex(LiftRideDAO dao, int maxRides) {
+    this.dao = dao;
+    this.maxRides = maxRides;
+  }
+
+  /**
+   * Gets our shared index, loading it from the database on first use
+   * @return the index our servlets update and read
+   */
+  public static RideIndex getInstance() {
+    return InstanceHolder.INSTANCE;
+  }
+
+  /**
+   * Lazily builds our shared index the first time a servlet needs it
+   */
+  private static class InstanceHolder {
+    private static final RideIndex INSTANCE = load();
+
+    /**
+     * Builds an index over the newest rides currently in our database, streaming them in so
+     * only the index itself is held in memory
+     * @return the loaded index
+     */
+    private static RideIndex load() {
+      ShardRouter router = ShardRouter.getDefault();
+      LiftRideDAO dao = new LiftRideDAO(router);
+      RideIndex index = new RideIndex(dao, Integer.getInteger("RIDE_INDEX_MAX_RIDES", 2000000));
+      int perShard = Math.max(1, index.maxRides / router.getNumShards());
+      int floor = 0;
+      for (int shard = 0; shard < router.getNumShards(); shard++) {
+        int maxLocalID = dao.getMaxLocalRideId(shard);
+        int fromLocalID = Math.max(1, maxLocalID - perShard + 1);
+        if (maxLocalID < 0 || !dao.streamShardRides(shard, fromLocalID, maxLocalID + 1,
+                index::add)) {
+          // this shard's rides weren't loaded, so leave them all to the database
+          floor = Integer.MAX_VALUE;
+        } else if (fromLocalID > 1) {
+          floor = Math.max(floor, router.toGlobalRideID(fromLocalID, shard));
+        }
+      }
+      index.floor = floor;
+      return index;
+    }
+  }
+
+  /**
+   * Packs a ride's time and ID into its (unique) key within its lift, ordering by time first
+   * @param time is the lift time
+   * @param rideID is the integer ID of the ride
+   * @return the ride's key
+   */
+  private static long rideKey(int time, int rideID) {
+    return ((long) time << 32) | (rideID & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Adds a ride to this index, unless it is below the index's floor (the database answers for
+   * those). Adding the same ride again has no effect.
+   * @param rideID is the integer ID of the ride
+   * @param skierID is the integer ID of the skier who rode
+   * @param resortID is the integer ID of the resort
+   * @param time is the lift time
+   * @param liftID is the integer ID of the lift
+   */
+  public void add(int rideID, int skierID, int resortID, int time, int liftID) {
+    if (rideID < floor) {
+      return;
+    }
+    long liftKey = ((long) resortID << 32) | (liftID & 0xFFFFFFFFL);
+    if (lifts.computeIfAbsent(liftKey, k -> new ConcurrentSkipListMap<>())
+            .putIfAbsent(rideKey(time, rideID), skierID) != null) {
+      return;
+    }
+    highestRideID.accumulateAndGet(rideID, Math::max);
+    if (size.incrementAndGet() > maxRides && evicting.compareAndSet(false, true)) {
+      EVICTOR.execute(this::evict);
+    }
+  }
+
+  /**
+   * Adds a newly ingested lift ride to this index
+   * @param ride is the newly written lift ride
+   */
+  @Override
+  public void onLiftRideCreated(LiftRide ride) {
+    add(ride.getLiftRideId(), ride.getSkier(), ride.getResort(), ride.getTime(),
+            ride.getLiftID());
+  }
+
+  /**
+   * Evicts the oldest rides until the index is back under its bound, raising its floor first
+   * so queries go to the database for the rides being evicted
+   */
+  private void evict() {
+    try {
+      while (size.get() > maxRides) {
+        int low = floor;
+        int high = highestRideID.get();
+        // rideIDs are roughly dense, so drop the matching share of the rideID range
+        double share = 1 - EVICT_TO * maxRides / size.get();
+        long dropped = Math.max(1, (long) ((high - (long) low) * share));
+        int newFloor = (int) Math.min(high, low + dropped);
+        if (newFloor <= low) {
+          return;
+        }
+        floor = newFloor;
+        for (ConcurrentSkipListMap<Long, Integer> rides : lifts.values()) {
+          for (Long key : rides.keySet()) {
+            if ((int) (long) key < newFloor && rides.remove(key) != null) {
+              size.decrementAndGet();
+            }
+          }
+        }
+      }
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+  /**
+   * Simple getter for the number of rides held
+   * @return the number of rides in the index
+   */
+  public int size() {
+    return size.get();
+  }
+
+  /**
+   * Finds the rides on a lift within a range of lift times, from the database for any rides
+   * below the index's floor
+   * @param resortID is the integer ID of the resort
+   * @param liftID is the integer ID of the lift
+   * @param from is the earliest lift time to include
+   * @param to is the latest lift time to include
+   * @return the matching rides, ordered by time then rideID
+   */
+  public LiftRideList getRides(int resortID, int liftID, int from, int to) {
+    return getRides(resortID, liftID, from, to, true);
+  }
+
+  /**
+   * Finds the rides on a lift within a range of lift times if it can do so without the database,
+   * or if it is allowed to query the database for any rides below the index's floor (e.g. once
+   * the caller holds a concurrency permit)
+   * @param resortID is the integer ID of the resort
+   * @param liftID is the integer ID of the lift
+   * @param from is the earliest lift time to include
+   * @param to is the latest lift time to include
+   * @param useDatabase is whether the database may be queried
+   * @return the matching rides, ordered by time then rideID, or null if the database would have
+   *         to be queried and useDatabase is false
+   */
+  public LiftRideList getRides(int resortID, int liftID, int from, int to, boolean useDatabase) {
+    LiftRideList rideList = new LiftRideList();
+    if (from > to) {
+      return rideList;
+    }
+    int covered = floor;
+    if (covered > 0 && !useDatabase) {
+      return null;
+    }
+    List<LiftRide> rides = new ArrayList<>();
+    ConcurrentSkipListMap<Long, Integer> lift =
+            lifts.get(((long) resortID << 32) | (liftID & 0xFFFFFFFFL));
+    if (lift != null) {
+      for (Map.Entry<Long, Integer> entry
+              : lift.subMap(rideKey(from, 0), true, rideKey(to, -1), true).entrySet()) {
+        long key = entry.getKey();
+        int rideID = (int) key;
+        // rides being evicted are left to the database
+        if (rideID >= covered) {
+          rides.add(new LiftRide(rideID, entry.getValue(), resortID, liftID, (int) (key >>> 32)));
+        }
+      }
+    }
+    if (covered > 0) {
+      List<LiftRide> older = dao.getLiftRides(resortID, liftID, from, to, covered);
+      if (!older.isEmpty()) {
+        rides.addAll(older);
+        rides.sort(Comparator.comparingInt(LiftRide::getTime)
+                .thenComparingInt(LiftRide::getLiftRideId));
+      }
+    }
+    rideList.addDistinctRides(rides);
+    return rideList;
+  }
+}
@@ -0,0 +1,56 @@
+package requestlog;
+
+/**
+ * The endpoints our request log records, stored in each record by code. Codes are written to
+ * log files, so existing ones must never change; add new endpoints with new codes.
+ */
+public enum Endpoint {
+  LIFTRIDES_GET(1, "GET /liftrides"),
+  LIFTRIDES_POST(2, "POST /liftrides"),
+  RESORTS_GET(3, "GET /resorts"),
+  RESORTS_POST(4, "POST /resorts"),
+  SKIERS_GET(5, "GET /skiers");
+
+  private final short code;
+  private final String label;
+
+  /**
+   * Creates an endpoint
+   * @param code is the endpoint's code in log records
+   * @param label is the endpoint's method and path, as exported
+   */
+  Endpoint(int code, String label) {
+    this.code = (short) code;
+    this.label = label;
+  }
+
+  /**
+   * Simple getter for the endpoint's code in log records
+   * @return the endpoint's code
+   */
+  public short getCode() {
+    return code;
+  }
+
+  /**
+   * Simple getter for the endpoint's method and path
+   * @return the endpoint's label, e.g. "GET /liftrides"
+   */
+  public String getLabel() {
+    return label;
+  }
+
+  /**
+   * Finds the endpoint with a code
+   * @param code is the code read from a log record
+   * @return the endpoint, or null if the code is unknown
+   */
+  public static Endpoint fromCode(short code) {
+    for (Endpoint endpoint : values()) {
+      if (endpoint.code == code) {
+        return endpoint;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,233 @@
+package requestlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Joins a load client's RequestLog files with a server's by request ID, and breaks each joined
+ * request's client-measured latency down into network and queueing (client latency less server
+ * latency), servlet (server latency less database time) and database time, with mean and
+ * p50/p90/p99/p99.9 summaries of each per endpoint. Clients record each attempt (e.g. a retried
+ * POST) under its own ID, so client and server records join one to one.
+ */
+public class LatencyJoiner {
+  private static final double[] PERCENTILES = {0.50, 0.90, 0.99, 0.999};
+  private static final String[] COMPONENTS = {"total", "network+queueing", "servlet", "database"};
+  // the server's records, in an open addressing table keyed by request ID
+  private long[] ids = new long[1 << 16];
+  private int[] latencies = new int[ids.length];
+  private int[] dbTimes = new int[ids.length];
+  private short[] endpoints = new short[ids.length];
+  private int size;
+
+  /**
+   * Entry point of our joiner.
+   * @param args is our command line arguments, [clientLogDir serverLogDir], the folders holding
+   *             the client's and the server's RequestLog files
+   * @throws IOException if a log file could not be read
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: LatencyJoiner clientLogDir serverLogDir");
+      System.exit(1);
+    }
+    LatencyJoiner joiner = new LatencyJoiner();
+    for (String path : logFiles(args[1])) {
+      joiner.addServerLog(path);
+    }
+    // samples of each component of each endpoint, indexed by endpoint code
+    Samples[][] samples = new Samples[Endpoint.values().length + 1][COMPONENTS.length];
+    long clientRecords = 0;
+    long joined = 0;
+    for (String path : logFiles(args[0])) {
+      try (RequestLogReader reader = new RequestLogReader(path)) {
+        while (reader.next()) {
+          clientRecords++;
+          if (reader.getRequestId() == 0 || reader.getEndpoint() < 0
+                  || reader.getEndpoint() >= samples.length) {
+            continue;
+          }
+          int index = joiner.find(reader.getRequestId());
+          if (joiner.ids[index] == 0 || joiner.endpoints[index] != reader.getEndpoint()) {
+            continue;
+          }
+          joined++;
+          Samples[] endpoint = samples[reader.getEndpoint()];
+          if (endpoint[0] == null) {
+            for (int i = 0; i < COMPONENTS.length; i++) {
+              endpoint[i] = new Samples();
+            }
+          }
+          int client = reader.getLatencyMicros();
+          int server = joiner.latencies[index];
+          int db = joiner.dbTimes[index];
+          endpoint[0].add(client);
+          endpoint[1].add(client - server);
+          endpoint[2].add(server - db);
+          endpoint[3].add(db);
+        }
+      }
+    }
+    System.out.println("Joined " + joined + " of " + clientRecords + " client requests with "
+            + joiner.size + " server requests");
+    for (Endpoint endpoint : Endpoint.values()) {
+      Samples[] components = samples[endpoint.getCode()];
+      if (components[0] == null) {
+        continue;
+      }
+      System.out.println();
+      System.out.printf("%-18s %10s %10s %10s %10s %10s  (us)%n", endpoint.getLabel(), "mean",
+              "p50", "p90", "p99", "p99.9");
+      for (int i = 0; i < COMPONENTS.length; i++) {
+        Samples component = components[i];
+        component.sort();
+        System.out.printf("  %-16s %10.1f", COMPONENTS[i], component.mean());
+        for (double fraction : PERCENTILES) {
+          System.out.printf(" %10d", component.percentile(fraction));
+        }
+        System.out.println();
+      }
+    }
+  }
+
+  /**
+   * Lists the RequestLog files in a folder in the order they were written
+   * @param dir is the folder's path
+   * @return the paths of its files
+   * @throws IOException if the folder could not be listed
+   */
+  private static String[] logFiles(String dir) throws IOException {
+    File[] files = new File(dir).listFiles((d, name) -> name.endsWith(".bin.gz"));
+    if (files == null) {
+      throw new IOException("Cannot list " + dir);
+    }
+    String[] paths = new String[files.length];
+    for (int i = 0; i < files.length; i++) {
+      paths[i] = files[i].getPath();
+    }
+    Arrays.sort(paths);
+    return paths;
+  }
+
+  /**
+   * Adds a server log file's records (with request IDs) to our table
+   * @param path is the path of the file
+   * @throws IOException if the file could not be read
+   */
+  private void addServerLog(String path) throws IOException {
+    try (RequestLogReader reader = new RequestLogReader(path)) {
+      while (reader.next()) {
+        if (reader.getRequestId() == 0) {
+          continue;
+        }
+        if (2 * (size + 1) > ids.length) {
+          grow();
+        }
+        put(reader.getRequestId(), reader.getLatencyMicros(), reader.getDbMicros(),
+                reader.getEndpoint());
+      }
+    }
+  }
+
+  /**
+   * Finds the slot of a request ID
+   * @param id is the non-zero request ID
+   * @return the index of its slot, or of the empty slot it would go in
+   */
+  private int find(long id) {
+    int mask = ids.length - 1;
+    // spread the ID's bits, IDs from other clients may be anything
+    int index = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    while (ids[index] != 0 && ids[index] != id) {
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  /**
+   * Stores a server record, replacing any earlier one with the same ID
+   * @param id is the request's non-zero ID
+   * @param latency is the server's latency in us
+   * @param dbTime is the server's database time in us
+   * @param endpoint is the endpoint code
+   */
+  private void put(long id, int latency, int dbTime, short endpoint) {
+    int index = find(id);
+    if (ids[index] == 0) {
+      ids[index] = id;
+      size++;
+    }
+    latencies[index] = latency;
+    dbTimes[index] = dbTime;
+    endpoints[index] = endpoint;
+  }
+
+  /**
+   * Doubles our table, rehashing its records
+   */
+  private void grow() {
+    long[] oldIds = ids;
+    int[] oldLatencies = latencies;
+    int[] oldDbTimes = dbTimes;
+    short[] oldEndpoints = endpoints;
+    ids = new long[oldIds.length * 2];
+    latencies = new int[ids.length];
+    dbTimes = new int[ids.length];
+    endpoints = new short[ids.length];
+    size = 0;
+    for (int i = 0; i < oldIds.length; i++) {
+      if (oldIds[i] != 0) {
+        put(oldIds[i], oldLatencies[i], oldDbTimes[i], oldEndpoints[i]);
+      }
+    }
+  }
+
+  /**
+   * A growable list of one latency component's samples (in us)
+   */
+  private static class Samples {
+    private int[] values = new int[1024];
+    private int size;
+    private long sum;
+
+    /**
+     * Adds a sample
+     * @param value is the sample in us
+     */
+    private void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+      sum += value;
+    }
+
+    /**
+     * Sorts our samples, ready for percentile
+     */
+    private void sort() {
+      Arrays.sort(values, 0, size);
+    }
+
+    /**
+     * Simple getter for the mean of our samples
+     * @return the mean in us
+     */
+    private double mean() {
+      return size > 0 ? (double) sum / size : 0;
+    }
+
+    /**
+     * Finds the sample that the given percentile of samples fall at or under, once sorted
+     * @param fraction is the percentile to find as a fraction (e.g. 0.99)
+     * @return the percentile in us
+     */
+    private int percentile(double fraction) {
+      if (size == 0) {
+        return 0;
+      }
+      return values[(int) Math.max(0, Math.ceil(size * fraction) - 1)];
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package requestlog;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Request IDs, sent by our clients in the X-Request-ID header and echoed by our servlets, so a
+ * request's client and server records can be joined. IDs are random 64-bit numbers written as
+ * 16 hex digits. IDs in any other form (from other clients) are recorded by a 64-bit hash.
+ */
+public class RequestIds {
+  /**
+   * The header carrying a request's ID
+   */
+  public static final String HEADER = "X-Request-ID";
+  // FNV-1a 64-bit parameters
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  /**
+   * Creates a new (random, non-zero) request ID
+   * @return the ID
+   */
+  public static long newId() {
+    long id;
+    do {
+      id = ThreadLocalRandom.current().nextLong();
+    } while (id == 0);
+    return id;
+  }
+
+  /**
+   * Formats an ID for the X-Request-ID header
+   * @param id is the request ID
+   * @return the ID as 16 lower case hex digits
+   */
+  public static String format(long id) {
+    String hex = Long.toHexString(id);
+    return hex.length() == 16 ? hex : "0000000000000000".substring(hex.length()) + hex;
+  }
+
+  /**
+   * Parses an X-Request-ID header value
+   * @param header is the header's value
+   * @return the ID it holds if it is 1 to 16 hex digits, otherwise a hash of it
+   */
+  public static long parse(String header) {
+    int length = header.length();
+    if (length > 0 && length <= 16) {
+      long id = 0;
+      int i = 0;
+      for (; i < length; i++) {
+        int digit = Character.digit(header.charAt(i), 16);
+        if (digit < 0) {
+          break;
+        }
+        id = id << 4 | digit;
+      }
+      if (i == length) {
+        return id;
+      }
+    }
+    long hash = FNV_OFFSET;
+    for (int i = 0; i < length; i++) {
+      hash = (hash ^ header.charAt(i)) * FNV_PRIME;
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,314 @@
+package requestlog;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A structured request log cheap enough to leave on. Request threads write a fixed-size record
+ * (end time, request ID, endpoint, status, latency and database time in microseconds) into a
+ * preallocated lock-free ring buffer: a slot is claimed with a CAS and published with an ordered
+ * write, so recording takes no locks, allocates nothing and never blocks. When the ring is full
+ * (the writer has fallen behind) records are dropped and counted rather than slowing requests
+ * down. A background "request-log" thread drains the ring into gzipped binary files, starting a
+ * new file after every rollBytes of records. RequestLogDecoder exports the files to CSV and
+ * LatencyJoiner joins a client's and a server's files by request ID.
+ * The servlets' shared log is enabled by setting REQUEST_LOG to TRUE, and written to
+ * REQUEST_LOG_DIR ("logs" by default) rolling every REQUEST_LOG_ROLL_MB (64 by default);
+ * REQUEST_LOG_BUFFER sets its ring's size in records.
+ */
+public class RequestLog {
+  /**
+   * Magic number at the start of every log file, "RQLG"
+   */
+  static final int MAGIC = 0x52514C47;
+  /**
+   * Version of the record format, written after the magic number
+   */
+  static final short VERSION = 2;
+  /**
+   * Bytes per record: end time (8), request ID (8), latency (4), database time (4), endpoint (2),
+   * status (2)
+   */
+  static final short RECORD_BYTES = 28;
+  private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+  private final boolean enabled;
+  private final int mask;
+  private final long[] endTimes;
+  private final long[] requestIds;
+  private final int[] latencies;
+  private final int[] dbTimes;
+  private final short[] endpoints;
+  private final short[] statuses;
+  // the sequence number + 1 of the record each slot holds once it is fully written
+  private final AtomicLongArray published;
+  private final AtomicLong claimed = new AtomicLong();
+  // records before this have been written out, so their slots are free
+  private volatile long drained;
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder written = new LongAdder();
+  // database time (in ns) of the request running on each thread
+  private final ThreadLocal<long[]> dbNanos = ThreadLocal.withInitial(() -> new long[1]);
+  private final File dir;
+  private final long rollBytes;
+  private final String filePrefix;
+  private volatile boolean closed;
+  private final Thread writer;
+  private DataOutputStream out;
+  private long fileBytes;
+  private int fileIndex;
+
+  /**
+   * Creates a request log, starting its writer if it's enabled
+   * @param enabled is whether requests are recorded at all
+   * @param capacity is the number of records the ring holds, rounded up to a power of two
+   * @param dir is the directory log files are written to
+   * @param rollBytes is the number of (uncompressed) record bytes after which a new file starts
+   */
+  public RequestLog(boolean enabled, int capacity, File dir, long rollBytes) {
+    this.enabled = enabled;
+    int size = enabled ? Integer.highestOneBit(Math.max(2, capacity - 1)) << 1 : 1;
+    this.mask = size - 1;
+    this.endTimes = new long[size];
+    this.requestIds = new long[size];
+    this.latencies = new int[size];
+    this.dbTimes = new int[size];
+    this.endpoints = new short[size];
+    this.statuses = new short[size];
+    this.published = new AtomicLongArray(size);
+    this.dir = dir;
+    this.rollBytes = rollBytes;
+    this.filePrefix = "requests-" + LocalDateTime.now(ZoneOffset.UTC)
+            .format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+    if (enabled) {
+      writer = new Thread(this::drainLoop, "request-log");
+      writer.setDaemon(true);
+      writer.start();
+    } else {
+      writer = null;
+    }
+  }
+
+  /**
+   * Gets our shared request log, starting its writer on first use if it's enabled
+   * @return the log our servlets record requests in
+   */
+  public static RequestLog getInstance() {
+    return InstanceHolder.INSTANCE;
+  }
+
+  /**
+   * Lazily builds our shared request log the first time a servlet needs it
+   */
+  private static class InstanceHolder {
+    private static final RequestLog INSTANCE = new RequestLog(
+            "TRUE".equals(System.getProperty("REQUEST_LOG")),
+            Integer.getInteger("REQUEST_LOG_BUFFER", 65536),
+            new File(System.getProperty("REQUEST_LOG_DIR", "logs")),
+            Long.getLong("REQUEST_LOG_ROLL_MB", 64L) * 1024 * 1024);
+  }
+
+  /**
+   * Marks the start of a request on the calling thread
+   * @return the start time (in ns) to pass to record
+   */
+  public long start() {
+    if (!enabled) {
+      return 0;
+    }
+    dbNanos.get()[0] = 0;
+    return System.nanoTime();
+  }
+
+  /**
+   * Adds time spent in the database to the request running on the calling thread
+   * @param nanos is the time (in ns) spent in the database
+   */
+  public void addDbTime(long nanos) {
+    if (enabled) {
+      dbNanos.get()[0] += nanos;
+    }
+  }
+
+  /**
+   * Records a finished request, or drops it if the ring is full
+   * @param endpoint is the endpoint that handled the request
+   * @param status is the HTTP status code of the response
+   * @param startNanos is the start time returned by start
+   * @param requestId is the request's ID (see RequestIds), 0 if it has none
+   */
+  public void record(Endpoint endpoint, int status, long startNanos, long requestId) {
+    if (!enabled || closed) {
+      return;
+    }
+    long latencyNanos = System.nanoTime() - startNanos;
+    long seq;
+    do {
+      seq = claimed.get();
+      if (seq - drained > mask) {
+        dropped.increment();
+        return;
+      }
+    } while (!claimed.compareAndSet(seq, seq + 1));
+    int slot = (int) seq & mask;
+    endTimes[slot] = System.currentTimeMillis();
+    requestIds[slot] = requestId;
+    latencies[slot] = toMicros(latencyNanos);
+    dbTimes[slot] = toMicros(dbNanos.get()[0]);
+    endpoints[slot] = endpoint.getCode();
+    statuses[slot] = (short) status;
+    // publishes the fields above to the writer
+    published.lazySet(slot, seq + 1);
+    if (seq - drained == mask >> 1) {
+      // half full, wake the writer early rather than drop the rest of a burst
+      LockSupport.unpark(writer);
+    }
+  }
+
+  /**
+   * Converts a duration to whole microseconds, capped to fit a record
+   * @param nanos is the duration in ns
+   * @return the duration in us
+   */
+  private static int toMicros(long nanos) {
+    return (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMicros(nanos));
+  }
+
+  /**
+   * Stops recording and waits (briefly) for the writer to write out the ring and close its file
+   */
+  public void close() {
+    closed = true;
+    if (writer != null) {
+      LockSupport.unpark(writer);
+      try {
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Simple getter for whether requests are recorded
+   * @return true if the log is enabled, false otherwise
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Simple getter for the number of records dropped because the ring was full
+   * @return the number of dropped records
+   */
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  /**
+   * Simple getter for the number of records written to log files
+   * @return the number of written records
+   */
+  public long getWritten() {
+    return written.sum();
+  }
+
+  /**
+   * Our writer thread's loop: drains the ring every DRAIN_INTERVAL until closed, then drains it
+   * one last time and closes the current file
+   */
+  private void drainLoop() {
+    while (!closed) {
+      drain();
+      LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+    }
+    drain();
+    closeFile();
+  }
+
+  /**
+   * Writes every published record out, in order, freeing their slots. If a file can't be written
+   * its records are dropped so request threads never wait on a failing disk.
+   */
+  private void drain() {
+    long seq = drained;
+    int count = 0;
+    while (published.get((int) seq & mask) == seq + 1) {
+      int slot = (int) seq & mask;
+      try {
+        if (out == null || fileBytes >= rollBytes) {
+          roll();
+        }
+        out.writeLong(endTimes[slot]);
+        out.writeLong(requestIds[slot]);
+        out.writeInt(latencies[slot]);
+        out.writeInt(dbTimes[slot]);
+        out.writeShort(endpoints[slot]);
+        out.writeShort(statuses[slot]);
+        fileBytes += RECORD_BYTES;
+        written.increment();
+        count++;
+      } catch (IOException e) {
+        e.printStackTrace();
+        closeFile();
+        dropped.increment();
+      }
+      seq++;
+      if ((seq & 1023) == 0) {
+        // free slots in batches, so producers aren't reading a line we write every record
+        drained = seq;
+      }
+    }
+    drained = seq;
+    if (count > 0 && out != null) {
+      try {
+        // a sync flush, so a file being written can already be decoded
+        out.flush();
+      } catch (IOException e) {
+        e.printStackTrace();
+        closeFile();
+      }
+    }
+  }
+
+  /**
+   * Closes the current log file (if any) and starts the next one
+   * @throws IOException if the new file could not be created
+   */
+  private void roll() throws IOException {
+    closeFile();
+    dir.mkdirs();
+    File file = new File(dir, String.format("%s-%03d.bin.gz", filePrefix, fileIndex++));
+    out = new DataOutputStream(new BufferedOutputStream(
+            new GZIPOutputStream(new FileOutputStream(file), 65536, true), 65536));
+    out.writeInt(MAGIC);
+    out.writeShort(VERSION);
+    out.writeShort(RECORD_BYTES);
+    fileBytes = 0;
+  }
+
+  /**
+   * Closes the current log file, if any
+   */
+  private void closeFile() {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      out = null;
+    }
+  }
+}
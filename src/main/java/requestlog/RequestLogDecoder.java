@@ -0,0 +1,61 @@
+package requestlog;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Exports RequestLog files to CSV on stdout, one row per request:
+ * end_time_ms,request_id,endpoint,status,latency_us,db_us. A file still being written is
+ * exported up to its last complete record.
+ */
+public class RequestLogDecoder {
+
+  /**
+   * Entry point of our decoder.
+   * @param args is the paths of the log files to export, in order
+   * @throws IOException if a file could not be read or is not a request log
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.err.println("Usage: RequestLogDecoder requests-....bin.gz ...");
+      System.exit(1);
+    }
+    Writer csv = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+            65536);
+    csv.write("end_time_ms,request_id,endpoint,status,latency_us,db_us\n");
+    for (String path : args) {
+      decode(path, csv);
+    }
+    csv.flush();
+  }
+
+  /**
+   * Exports one log file
+   * @param path is the path of the file
+   * @param csv receives the file's rows
+   * @throws IOException if the file could not be read or is not a request log
+   */
+  private static void decode(String path, Writer csv) throws IOException {
+    try (RequestLogReader reader = new RequestLogReader(path)) {
+      StringBuilder row = new StringBuilder();
+      while (reader.next()) {
+        Endpoint endpoint = Endpoint.fromCode(reader.getEndpoint());
+        row.setLength(0);
+        row.append(reader.getEndTime()).append(',');
+        if (reader.getRequestId() != 0) {
+          row.append(RequestIds.format(reader.getRequestId()));
+        }
+        row.append(',')
+                .append(endpoint != null ? endpoint.getLabel() : "unknown " + reader.getEndpoint())
+                .append(',')
+                .append(reader.getStatus()).append(',')
+                .append(reader.getLatencyMicros()).append(',')
+                .append(reader.getDbMicros()).append('\n');
+        csv.append(row);
+      }
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package requestlog;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the records of a RequestLog file one at a time. Reads files of every record version
+ * (version 1 records have no request ID), and a file still being written up to its last
+ * complete record.
+ */
+class RequestLogReader implements Closeable {
+  private final DataInputStream in;
+  private final short version;
+  private long endTime;
+  private long requestId;
+  private int latencyMicros;
+  private int dbMicros;
+  private short endpoint;
+  private short status;
+
+  /**
+   * Opens a log file and checks its header
+   * @param path is the path of the file
+   * @throws IOException if the file could not be read or is not a request log
+   */
+  RequestLogReader(String path) throws IOException {
+    in = new DataInputStream(new BufferedInputStream(
+            new GZIPInputStream(new FileInputStream(path), 65536), 65536));
+    try {
+      if (in.readInt() != RequestLog.MAGIC) {
+        throw new IOException(path + " is not a request log");
+      }
+      version = in.readShort();
+      short recordBytes = in.readShort();
+      if (!(version == 1 && recordBytes == 20)
+              && !(version == RequestLog.VERSION && recordBytes == RequestLog.RECORD_BYTES)) {
+        throw new IOException(path + " has unsupported record version " + version);
+      }
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Reads the next record
+   * @return true if a record was read, false at the end of the file
+   * @throws IOException if the file could not be read
+   */
+  boolean next() throws IOException {
+    try {
+      endTime = in.readLong();
+      requestId = version == 1 ? 0 : in.readLong();
+      latencyMicros = in.readInt();
+      dbMicros = in.readInt();
+      endpoint = in.readShort();
+      status = in.readShort();
+      return true;
+    } catch (EOFException e) {
+      // end of the file, or of what has been flushed of one still being written
+      return false;
+    }
+  }
+
+  /**
+   * Simple getter for the record's end time
+   * @return the time (in ms since the epoch) the request finished
+   */
+  long getEndTime() {
+    return endTime;
+  }
+
+  /**
+   * Simple getter for the record's request ID
+   * @return the request's ID, 0 if it had none
+   */
+  long getRequestId() {
+    return requestId;
+  }
+
+  /**
+   * Simple getter for the record's latency
+   * @return the request's latency in us
+   */
+  int getLatencyMicros() {
+    return latencyMicros;
+  }
+
+  /**
+   * Simple getter for the record's database time
+   * @return the time (in us) the request spent in the database
+   */
+  int getDbMicros() {
+    return dbMicros;
+  }
+
+  /**
+   * Simple getter for the record's endpoint code
+   * @return the endpoint code (see Endpoint)
+   */
+  short getEndpoint() {
+    return endpoint;
+  }
+
+  /**
+   * Simple getter for the record's status
+   * @return the HTTP status code of the response, 0 if there was none
+   */
+  short getStatus() {
+    return status;
+  }
+
+  /**
+   * Closes the file
+   * @throws IOException if the file could not be closed
+   */
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
@@ -0,0 +1,608 @@
+package servlethelpers;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hand-written streaming JSON codecs for all of our servlethelpers types. Each type gets a
+ * TypeAdapter registered on a single shared Gson instance so that neither our servlets nor our
+ * client fall back to Gson's reflective serialization. The JSON produced is identical to the
+ * reflective form (same field names and order) so the Swagger API spec is unchanged.
+ */
+public final class JsonCodecs {
+  private static final Gson GSON = new GsonBuilder()
+          .registerTypeAdapter(LiftRide.class, new LiftRideAdapter())
+          .registerTypeAdapter(LiftRideInput.class, new LiftRideInputAdapter())
+          .registerTypeAdapter(LiftRideList.class, new LiftRideListAdapter())
+          .registerTypeAdapter(Message.class, new MessageAdapter())
+          .registerTypeAdapter(Resort.class, new ResortAdapter())
+          .registerTypeAdapter(ResortList.class, new ResortListAdapter())
+          .registerTypeAdapter(SeasonList.class, new SeasonListAdapter())
+          .registerTypeAdapter(SkierDayTotal.class, new SkierDayTotalAdapter())
+          .registerTypeAdapter(LiftHourCounts.class, new LiftHourCountsAdapter())
+          .registerTypeAdapter(ResortStats.class, new ResortStatsAdapter())
+          .create();
+  // our servlets only ever send a small, fixed set of messages so these are serialized once
+  private static final ConcurrentHashMap<String, String> MESSAGE_BODIES = new ConcurrentHashMap<>();
+
+  private JsonCodecs() {
+  }
+
+  /**
+   * Simple getter for our shared, thread-safe Gson instance with all codecs registered
+   * @return the Gson instance our servlets and client should use
+   */
+  public static Gson gson() {
+    return GSON;
+  }
+
+  /**
+   * Returns the pre-serialized JSON body of a Message holding the given text. Bodies are built on
+   * first use and cached, so this should only be called with our fixed (literal) messages.
+   * @param msg is the String message to be wrapped as a Message response body
+   * @return the JSON formatted Message body for the given text
+   */
+  public static String message(String msg) {
+    return MESSAGE_BODIES.computeIfAbsent(msg, m -> GSON.toJson(new Message(m)));
+  }
+
+  /**
+   * Reads an integer field value, treating JSON nulls the way reflective Gson does (left as 0)
+   * @param in is the JsonReader positioned at the field value
+   * @return the integer field value or 0 if the value was null
+   * @throws IOException if the value could not be read as an integer
+   */
+  private static int readInt(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return 0;
+    }
+    return in.nextInt();
+  }
+
+  /**
+   * Reads a String field value, treating JSON nulls as a null String
+   * @param in is the JsonReader positioned at the field value
+   * @return the String field value or null if the value was null
+   * @throws IOException if the value could not be read as a String
+   */
+  private static String readString(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return in.nextString();
+  }
+
+  /**
+   * Codec for LiftRide: {"liftRideId","url","skier","resort","lift","time"}
+   */
+  static final class LiftRideAdapter extends TypeAdapter<LiftRide> {
+    @Override
+    public void write(JsonWriter out, LiftRide ride) throws IOException {
+      if (ride == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("liftRideId").value(ride.getLiftRideId());
+      out.name("url").value(ride.getURL());
+      out.name("skier").value(ride.getSkier());
+      out.name("resort").value(ride.getResort());
+      out.name("lift").value(ride.getLiftID());
+      out.name("time").value(ride.getTime());
+      out.endObject();
+    }
+
+    @Override
+    public LiftRide read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      int id = 0, skier = 0, resort = 0, lift = 0, time = 0;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "liftRideId":
+            id = readInt(in);
+            break;
+          case "skier":
+            skier = readInt(in);
+            break;
+          case "resort":
+            resort = readInt(in);
+            break;
+          case "lift":
+            lift = readInt(in);
+            break;
+          case "time":
+            time = readInt(in);
+            break;
+          default:
+            // url is derived from the ride ID, anything else is ignored
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return new LiftRide(id, skier, resort, lift, time);
+    }
+  }
+
+  /**
+   * Codec for LiftRideInput: {"skier","resort","lift","time"}
+   */
+  static final class LiftRideInputAdapter extends TypeAdapter<LiftRideInput> {
+    @Override
+    public void write(JsonWriter out, LiftRideInput input) throws IOException {
+      if (input == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("skier").value(input.getSkierID());
+      out.name("resort").value(input.getResortID());
+      out.name("lift").value(input.getLiftID());
+      out.name("time").value(input.getTime());
+      out.endObject();
+    }
+
+    @Override
+    public LiftRideInput read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      int skier = 0, resort = 0, lift = 0, time = 0;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "skier":
+            skier = readInt(in);
+            break;
+          case "resort":
+            resort = readInt(in);
+            break;
+          case "lift":
+            lift = readInt(in);
+            break;
+          case "time":
+            time = readInt(in);
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return new LiftRideInput(skier, resort, lift, time);
+    }
+  }
+
+  /**
+   * Codec for LiftRideList: {"rides":[LiftRide...]}
+   */
+  static final class LiftRideListAdapter extends TypeAdapter<LiftRideList> {
+    private final LiftRideAdapter rideAdapter = new LiftRideAdapter();
+
+    @Override
+    public void write(JsonWriter out, LiftRideList list) throws IOException {
+      if (list == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("rides").beginArray();
+      for (int i = 0; i < list.rides.size(); i++) {
+        rideAdapter.write(out, list.rides.get(i));
+      }
+      out.endArray();
+      out.endObject();
+    }
+
+    @Override
+    public LiftRideList read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      LiftRideList list = new LiftRideList();
+      in.beginObject();
+      while (in.hasNext()) {
+        if (in.nextName().equals("rides") && in.peek() == JsonToken.BEGIN_ARRAY) {
+          in.beginArray();
+          while (in.hasNext()) {
+            LiftRide ride = rideAdapter.read(in);
+            if (ride != null) {
+              list.rides.add(ride);
+            }
+          }
+          in.endArray();
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      return list;
+    }
+  }
+
+  /**
+   * Codec for Message: {"message"}
+   */
+  static final class MessageAdapter extends TypeAdapter<Message> {
+    @Override
+    public void write(JsonWriter out, Message msg) throws IOException {
+      if (msg == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("message").value(msg.getMessage());
+      out.endObject();
+    }
+
+    @Override
+    public Message read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      String msg = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        if (in.nextName().equals("message")) {
+          msg = readString(in);
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      return new Message(msg);
+    }
+  }
+
+  /**
+   * Codec for Resort: {"resortName","resortID"}
+   */
+  static final class ResortAdapter extends TypeAdapter<Resort> {
+    @Override
+    public void write(JsonWriter out, Resort resort) throws IOException {
+      if (resort == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("resortName").value(resort.getResortName());
+      out.name("resortID").value(resort.getResortID());
+      out.endObject();
+    }
+
+    @Override
+    public Resort read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      String name = null;
+      int id = 0;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "resortName":
+            name = readString(in);
+            break;
+          case "resortID":
+            id = readInt(in);
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return new Resort(name, id);
+    }
+  }
+
+  /**
+   * Codec for ResortList: {"resorts":[Resort...]}
+   */
+  static final class ResortListAdapter extends TypeAdapter<ResortList> {
+    private final ResortAdapter resortAdapter = new ResortAdapter();
+
+    @Override
+    public void write(JsonWriter out, ResortList list) throws IOException {
+      if (list == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("resorts").beginArray();
+      for (int i = 0; i < list.resorts.size(); i++) {
+        resortAdapter.write(out, list.resorts.get(i));
+      }
+      out.endArray();
+      out.endObject();
+    }
+
+    @Override
+    public ResortList read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      ResortList list = new ResortList();
+      in.beginObject();
+      while (in.hasNext()) {
+        if (in.nextName().equals("resorts") && in.peek() == JsonToken.BEGIN_ARRAY) {
+          in.beginArray();
+          while (in.hasNext()) {
+            Resort resort = resortAdapter.read(in);
+            if (resort != null) {
+              list.resorts.add(resort);
+            }
+          }
+          in.endArray();
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      return list;
+    }
+  }
+
+  /**
+   * Codec for SeasonList: {"seasons":[String...]}
+   */
+  static final class SeasonListAdapter extends TypeAdapter<SeasonList> {
+    @Override
+    public void write(JsonWriter out, SeasonList list) throws IOException {
+      if (list == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("seasons").beginArray();
+      for (int i = 0; i < list.seasons.size(); i++) {
+        out.value(list.seasons.get(i));
+      }
+      out.endArray();
+      out.endObject();
+    }
+
+    @Override
+    public SeasonList read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      SeasonList list = new SeasonList();
+      in.beginObject();
+      while (in.hasNext()) {
+        if (in.nextName().equals("seasons") && in.peek() == JsonToken.BEGIN_ARRAY) {
+          in.beginArray();
+          while (in.hasNext()) {
+            list.seasons.add(readString(in));
+          }
+          in.endArray();
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      return list;
+    }
+  }
+
+  /**
+   * Codec for SkierDayTotal: {"skierID","dayID","rides","vertical"}
+   */
+  static final class SkierDayTotalAdapter extends TypeAdapter<SkierDayTotal> {
+    @Override
+    public void write(JsonWriter out, SkierDayTotal total) throws IOException {
+      if (total == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("skierID").value(total.getSkierID());
+      out.name("dayID").value(total.getDayID());
+      out.name("rides").value(total.getRides());
+      out.name("vertical").value(total.getVertical());
+      out.endObject();
+    }
+
+    @Override
+    public SkierDayTotal read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      int skier = 0, day = 0, rides = 0, vertical = 0;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "skierID":
+            skier = readInt(in);
+            break;
+          case "dayID":
+            day = readInt(in);
+            break;
+          case "rides":
+            rides = readInt(in);
+            break;
+          case "vertical":
+            vertical = readInt(in);
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return new SkierDayTotal(skier, day, rides, vertical);
+    }
+  }
+
+  /**
+   * Codec for LiftHourCounts: {"resortID","dayID","liftID","hourlyRides":[int...]}
+   */
+  static final class LiftHourCountsAdapter extends TypeAdapter<LiftHourCounts> {
+    @Override
+    public void write(JsonWriter out, LiftHourCounts counts) throws IOException {
+      if (counts == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("resortID").value(counts.getResortID());
+      out.name("dayID").value(counts.getDayID());
+      out.name("liftID").value(counts.getLiftID());
+      out.name("hourlyRides").beginArray();
+      for (int rides : counts.hourlyRides) {
+        out.value(rides);
+      }
+      out.endArray();
+      out.endObject();
+    }
+
+    @Override
+    public LiftHourCounts read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      int resort = 0, day = 0, lift = 0;
+      int[] hourly = new int[0];
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "resortID":
+            resort = readInt(in);
+            break;
+          case "dayID":
+            day = readInt(in);
+            break;
+          case "liftID":
+            lift = readInt(in);
+            break;
+          case "hourlyRides":
+            ArrayList<Integer> values = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+              values.add(readInt(in));
+            }
+            in.endArray();
+            hourly = values.stream().mapToInt(Integer::intValue).toArray();
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return new LiftHourCounts(resort, day, lift, hourly);
+    }
+  }
+
+  /**
+   * Codec for ResortStats: {"resortID","dayID","uniqueSkiers","windowMinutes",
+   * "topLifts":[{"liftID","rides"}...],"skierSketch","liftSketch"}, the sketches only when present
+   */
+  static final class ResortStatsAdapter extends TypeAdapter<ResortStats> {
+    @Override
+    public void write(JsonWriter out, ResortStats stats) throws IOException {
+      if (stats == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("resortID").value(stats.getResortID());
+      out.name("dayID").value(stats.getDayID());
+      out.name("uniqueSkiers").value(stats.getUniqueSkiers());
+      out.name("windowMinutes").value(stats.getWindowMinutes());
+      out.name("topLifts").beginArray();
+      for (int i = 0; i < stats.topLifts.size(); i++) {
+        LiftCount lift = stats.topLifts.get(i);
+        out.beginObject();
+        out.name("liftID").value(lift.getLiftID());
+        out.name("rides").value(lift.getRides());
+        out.endObject();
+      }
+      out.endArray();
+      if (stats.getSkierSketch() != null) {
+        out.name("skierSketch").value(stats.getSkierSketch());
+      }
+      if (stats.getLiftSketch() != null) {
+        out.name("liftSketch").value(stats.getLiftSketch());
+      }
+      out.endObject();
+    }
+
+    @Override
+    public ResortStats read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      int resort = 0, day = 0, window = 0;
+      long unique = 0;
+      String skierSketch = null, liftSketch = null;
+      ArrayList<LiftCount> topLifts = new ArrayList<>();
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "resortID":
+            resort = readInt(in);
+            break;
+          case "dayID":
+            day = readInt(in);
+            break;
+          case "uniqueSkiers":
+            unique = in.nextLong();
+            break;
+          case "windowMinutes":
+            window = readInt(in);
+            break;
+          case "topLifts":
+            in.beginArray();
+            while (in.hasNext()) {
+              int lift = 0;
+              long rides = 0;
+              in.beginObject();
+              while (in.hasNext()) {
+                String name = in.nextName();
+                if (name.equals("liftID")) {
+                  lift = readInt(in);
+                } else if (name.equals("rides")) {
+                  rides = in.nextLong();
+                } else {
+                  in.skipValue();
+                }
+              }
+              in.endObject();
+              topLifts.add(new LiftCount(lift, rides));
+            }
+            in.endArray();
+            break;
+          case "skierSketch":
+            skierSketch = readString(in);
+            break;
+          case "liftSketch":
+            liftSketch = readString(in);
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return new ResortStats(resort, day, unique, window, topLifts, skierSketch, liftSketch);
+    }
+  }
+}
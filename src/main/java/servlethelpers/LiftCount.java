@@ -0,0 +1,36 @@
+package servlethelpers;
+
+/**
+ * Mostly a wrapper class for proper JSON display value of a lift together with the (estimated)
+ * number of rides it carried.
+ */
+public class LiftCount {
+  private final int liftID;
+  private final long rides;
+
+  /**
+   * Constructs this object to hold the given lift's ride count
+   * @param liftID is the integer ID of the lift
+   * @param rides is the number of rides the lift carried
+   */
+  public LiftCount(int liftID, long rides) {
+    this.liftID = liftID;
+    this.rides = rides;
+  }
+
+  /**
+   * Simple getter that returns the lift ID held by this object
+   * @return an integer lift ID
+   */
+  public int getLiftID() {
+    return liftID;
+  }
+
+  /**
+   * Simple getter that returns the number of rides held by this object
+   * @return the number of rides
+   */
+  public long getRides() {
+    return rides;
+  }
+}
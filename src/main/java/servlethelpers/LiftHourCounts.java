@@ -0,0 +1,59 @@
+package servlethelpers;
+
+/**
+ * Mostly a wrapper class for proper JSON display value of how many rides a single lift at a
+ * resort carried during each hour of a day. Index 0 of the counts is the first hour the lifts
+ * are open (lift times 1-60).
+ */
+public class LiftHourCounts {
+  private final int resortID;
+  private final int dayID;
+  private final int liftID;
+  final int[] hourlyRides;
+
+  /**
+   * Constructs this object to hold the given lift's hourly ride counts
+   * @param resortID is the integer ID of the resort the lift belongs to
+   * @param dayID is the day of the year (1-366) the counts are for
+   * @param liftID is the integer ID of the lift
+   * @param hourlyRides is the number of rides the lift carried during each hour
+   */
+  public LiftHourCounts(int resortID, int dayID, int liftID, int[] hourlyRides) {
+    this.resortID = resortID;
+    this.dayID = dayID;
+    this.liftID = liftID;
+    this.hourlyRides = hourlyRides;
+  }
+
+  /**
+   * Simple getter that returns the resort ID held by this object
+   * @return an integer resort ID
+   */
+  public int getResortID() {
+    return resortID;
+  }
+
+  /**
+   * Simple getter that returns the day held by this object
+   * @return an integer day of the year
+   */
+  public int getDayID() {
+    return dayID;
+  }
+
+  /**
+   * Simple getter that returns the lift ID held by this object
+   * @return an integer lift ID
+   */
+  public int getLiftID() {
+    return liftID;
+  }
+
+  /**
+   * Simply returns a copy of the hourly ride counts held by this object
+   * @return the number of rides during each hour
+   */
+  public int[] getHourlyRides() {
+    return hourlyRides.clone();
+  }
+}
@@ -1,6 +1,7 @@
 package servlethelpers;
 
 import java.util.ArrayList;
+import java.util.Collection;
 
 /**
  * Helper object for our servlets.LiftRideServlet which allows for proper JSON display conforming to our
@@ -40,6 +41,15 @@ public class LiftRideList {
     return true;
   }
 
+  /**
+   * Adds rides already known to have distinct IDs (e.g. read from an index keyed by ride), in
+   * order, skipping the duplicate check addRide does for each ride
+   * @param newRides is the distinct, non-null LiftRides to be added to this list
+   */
+  public void addDistinctRides(Collection<LiftRide> newRides) {
+    rides.addAll(newRides);
+  }
+
   /**
    * Simply gets the most recent ride ID added to this list.
    * @return the integer ride ID of the last ride in the underlying list or -1 if empty list
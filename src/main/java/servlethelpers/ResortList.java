@@ -7,7 +7,7 @@ import java.util.ArrayList;
  * Swagger API spec
  */
 public class ResortList {
-  private ArrayList<Resort> resorts;
+  ArrayList<Resort> resorts;
 
   /**
    * Simple constructor that initializes our underlying ArrayList
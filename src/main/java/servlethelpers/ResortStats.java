@@ -0,0 +1,97 @@
+package servlethelpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mostly a wrapper class for proper JSON display value of a resort's approximate statistics:
+ * distinct skiers on a day and the busiest lifts over a recent window. When requested it also
+ * carries the serialized (Base64) sketches behind those numbers, so stats from several servers
+ * can be merged.
+ */
+public class ResortStats {
+  private final int resortID;
+  private final int dayID;
+  private final long uniqueSkiers;
+  private final int windowMinutes;
+  final ArrayList<LiftCount> topLifts;
+  private final String skierSketch;
+  private final String liftSketch;
+
+  /**
+   * Constructs this object to hold the given resort's statistics
+   * @param resortID is the integer ID of the resort
+   * @param dayID is the day of the year the unique skier count is for
+   * @param uniqueSkiers is the estimated number of distinct skiers that day
+   * @param windowMinutes is the length (in minutes) of the window the top lifts cover
+   * @param topLifts is the busiest lifts of the window, busiest first
+   * @param skierSketch is the Base64 unique skier sketch, or null if not requested
+   * @param liftSketch is the Base64 lift ride sketch, or null if not requested
+   */
+  public ResortStats(int resortID, int dayID, long uniqueSkiers, int windowMinutes,
+                     List<LiftCount> topLifts, String skierSketch, String liftSketch) {
+    this.resortID = resortID;
+    this.dayID = dayID;
+    this.uniqueSkiers = uniqueSkiers;
+    this.windowMinutes = windowMinutes;
+    this.topLifts = new ArrayList<>(topLifts);
+    this.skierSketch = skierSketch;
+    this.liftSketch = liftSketch;
+  }
+
+  /**
+   * Simple getter that returns the resort ID held by this object
+   * @return an integer resort ID
+   */
+  public int getResortID() {
+    return resortID;
+  }
+
+  /**
+   * Simple getter that returns the day held by this object
+   * @return an integer day of the year
+   */
+  public int getDayID() {
+    return dayID;
+  }
+
+  /**
+   * Simple getter that returns the estimated unique skiers held by this object
+   * @return the estimated number of distinct skiers
+   */
+  public long getUniqueSkiers() {
+    return uniqueSkiers;
+  }
+
+  /**
+   * Simple getter that returns the top lifts window held by this object
+   * @return the window length in minutes
+   */
+  public int getWindowMinutes() {
+    return windowMinutes;
+  }
+
+  /**
+   * Simply returns a copy of the top lifts held by this object
+   * @return the busiest lifts, busiest first
+   */
+  public List<LiftCount> getTopLifts() {
+    return new ArrayList<>(topLifts);
+  }
+
+  /**
+   * Simple getter that returns the unique skier sketch held by this object
+   * @return the Base64 sketch or null if it was not included
+   */
+  public String getSkierSketch() {
+    return skierSketch;
+  }
+
+  /**
+   * Simple getter that returns the lift ride sketch held by this object
+   * @return the Base64 sketch or null if it was not included
+   */
+  public String getLiftSketch() {
+    return liftSketch;
+  }
+}
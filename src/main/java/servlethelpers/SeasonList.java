@@ -7,7 +7,7 @@ import java.util.ArrayList;
  * Swagger API spec
  */
 public class SeasonList {
-  private ArrayList<String> seasons;
+  ArrayList<String> seasons;
 
   /**
    * Simple constructor that initializes our underlying ArrayList
@@ -0,0 +1,58 @@
+package servlethelpers;
+
+/**
+ * Mostly a wrapper class for proper JSON display value of a skier's totals for a single day:
+ * how many lift rides they took and the total vertical those rides covered.
+ */
+public class SkierDayTotal {
+  private final int skierID;
+  private final int dayID;
+  private final int rides;
+  private final int vertical;
+
+  /**
+   * Constructs this object to hold the given skier's totals for the given day
+   * @param skierID is the integer ID of the skier
+   * @param dayID is the day of the year (1-366) the totals are for
+   * @param rides is the number of lift rides the skier took that day
+   * @param vertical is the total vertical of those lift rides
+   */
+  public SkierDayTotal(int skierID, int dayID, int rides, int vertical) {
+    this.skierID = skierID;
+    this.dayID = dayID;
+    this.rides = rides;
+    this.vertical = vertical;
+  }
+
+  /**
+   * Simple getter that returns the skier ID held by this object
+   * @return an integer skier ID
+   */
+  public int getSkierID() {
+    return skierID;
+  }
+
+  /**
+   * Simple getter that returns the day held by this object
+   * @return an integer day of the year
+   */
+  public int getDayID() {
+    return dayID;
+  }
+
+  /**
+   * Simple getter that returns the number of rides held by this object
+   * @return an integer number of lift rides
+   */
+  public int getRides() {
+    return rides;
+  }
+
+  /**
+   * Simple getter that returns the total vertical held by this object
+   * @return an integer total vertical
+   */
+  public int getVertical() {
+    return vertical;
+  }
+}
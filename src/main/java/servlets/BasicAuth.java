@@ -0,0 +1,41 @@
+package servlets;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Our HTTP Basic authentication, checked by hand against the POST_USR and POST_PWD system
+ * properties (Tomcat's own authentication isn't configured, so getRemoteUser is always null).
+ * Shared by LiftRideServlet, which requires it for POSTs, and RateLimitFilter, which keys
+ * authenticated clients by their user.
+ * Method heavily inspired by:
+ * https://stackoverflow.com/questions/16000517/how-to-get-password-from-http-basic-authentication
+ */
+class BasicAuth {
+
+  /**
+   * Finds the user an Authorization header authenticates
+   * @param authHdr is the HTTP request's full authorization header, or null if it had none
+   * @return the user name if the header holds valid Basic credentials, null otherwise
+   */
+  static String userOf(String authHdr) {
+    // Only use basic authentication
+    if (authHdr == null || !authHdr.toLowerCase().startsWith("basic")) {
+      return null;
+    }
+    String decoded;
+    try {
+      decoded = new String(Base64.getDecoder().decode(authHdr.substring("Basic".length()).trim()),
+              StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      // not valid Base64
+      return null;
+    }
+    String[] credentials = decoded.split(":", 2);
+    if (credentials.length == 2 && credentials[0].equals(System.getProperty("POST_USR"))
+            && credentials[1].equals(System.getProperty("POST_PWD"))) {
+      return credentials[0];
+    }
+    return null;
+  }
+}
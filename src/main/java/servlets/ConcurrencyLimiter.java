@@ -0,0 +1,260 @@
+package servlets;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An adaptive concurrency limiter shared by our servlets and placed in front of our DAO calls.
+ * The limit follows a gradient algorithm: it compares a fast moving average of request latency
+ * against a slow (long term) average, shrinking the limit when latency climbs (e.g. MySQL slows
+ * down) and growing it again while latency is stable. Requests over the limit are rejected
+ * immediately instead of queueing on Tomcat threads and pooled connections.
+ * Writes (POST ingest) may use the whole limit while reads (GET) may only use a share of it, so
+ * reads are shed first under overload.
+ * Configured with the LIMITER_* system properties, e.g. -DLIMITER_ENABLED=FALSE to turn it off,
+ * and retunable at runtime over JMX.
+ */
+public class ConcurrencyLimiter implements ConcurrencyLimiterMXBean {
+  private static final ConcurrencyLimiter INSTANCE = new ConcurrencyLimiter(
+          !"FALSE".equals(System.getProperty("LIMITER_ENABLED")),
+          Integer.getInteger("LIMITER_INITIAL", 60),
+          Integer.getInteger("LIMITER_MIN", 8),
+          Integer.getInteger("LIMITER_MAX", 240),
+          Double.parseDouble(System.getProperty("LIMITER_READ_SHARE", "0.8")),
+          Integer.getInteger("LIMITER_RETRY_AFTER", 1));
+  // how far short term latency may exceed long term latency before the limit shrinks
+  private static final double TOLERANCE = 1.5;
+  // weight of each new limit estimate against the current limit
+  private static final double SMOOTHING = 0.2;
+  // number of samples the long term latency average spans
+  private static final int LONG_WINDOW = 600;
+  // number of samples the short term latency average spans
+  private static final int SHORT_WINDOW = 10;
+
+  private volatile boolean enabled;
+  private volatile int minLimit;
+  private volatile int maxLimit;
+  private volatile double readShare;
+  private final String retryAfterSecs;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong rejected = new AtomicLong();
+  // guards our latency averages; releases that find it held skip their sample instead of waiting
+  private final ReentrantLock sampleLock = new ReentrantLock();
+  private volatile double limit;
+  private double shortRtt;
+  private double longRtt;
+
+  /**
+   * Creates a limiter with the given settings
+   * @param enabled is false to admit every request (the limit is still tracked)
+   * @param initialLimit is the concurrency limit to start from
+   * @param minLimit is the lowest the limit may shrink to
+   * @param maxLimit is the highest the limit may grow to
+   * @param readShare is the fraction of the limit that reads may use
+   * @param retryAfterSecs is the Retry-After value (seconds) sent with rejections
+   */
+  public ConcurrencyLimiter(boolean enabled, int initialLimit, int minLimit, int maxLimit,
+                            double readShare, int retryAfterSecs) {
+    this.enabled = enabled;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.readShare = readShare;
+    this.retryAfterSecs = Integer.toString(retryAfterSecs);
+    this.limit = initialLimit;
+  }
+
+  /**
+   * Simple getter for the limiter shared by our servlets
+   * @return the shared limiter
+   */
+  public static ConcurrencyLimiter getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Attempts to admit a request under the current limit
+   * @param isWrite is true for writes (POST), which may use the whole limit, false for reads
+   * @return the start time (System.nanoTime) to later pass to release, or -1 if rejected
+   */
+  public long tryAcquire(boolean isWrite) {
+    double allowed = isWrite ? limit : Math.max(1, limit * readShare);
+    while (true) {
+      int current = inFlight.get();
+      if (enabled && current >= allowed) {
+        rejected.incrementAndGet();
+        return -1;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        return System.nanoTime();
+      }
+    }
+  }
+
+  /**
+   * Releases an admitted request and feeds its latency into the limit
+   * @param startNanos is the value returned by tryAcquire for this request
+   */
+  public void release(long startNanos) {
+    int current = inFlight.getAndDecrement();
+    onSample(System.nanoTime() - startNanos, current);
+  }
+
+  /**
+   * Updates our latency averages and recomputes the limit from a completed request, unless
+   * another release is already doing so (the sample is then dropped, so releases never block)
+   * @param rttNanos is the latency of the completed request
+   * @param inFlightAtEnd is the number of requests in flight when it completed
+   */
+  private void onSample(long rttNanos, int inFlightAtEnd) {
+    if (!sampleLock.tryLock()) {
+      return;
+    }
+    try {
+      updateLimit(rttNanos, inFlightAtEnd);
+    } finally {
+      sampleLock.unlock();
+    }
+  }
+
+  /**
+   * Updates our latency averages and recomputes the limit, called holding sampleLock
+   * @param rttNanos is the latency of the completed request
+   * @param inFlightAtEnd is the number of requests in flight when it completed
+   */
+  private void updateLimit(long rttNanos, int inFlightAtEnd) {
+    if (longRtt == 0) {
+      longRtt = rttNanos;
+      shortRtt = rttNanos;
+      return;
+    }
+    shortRtt += (rttNanos - shortRtt) / SHORT_WINDOW;
+    longRtt += (rttNanos - longRtt) / LONG_WINDOW;
+    // let the baseline recover quickly after a sustained slow period has ended
+    if (longRtt / shortRtt > 2) {
+      longRtt *= 0.95;
+    }
+    double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+    double queueSize = Math.sqrt(limit);
+    double newLimit = limit * gradient + queueSize;
+    // don't grow the limit while we're nowhere near using it
+    if (newLimit > limit && inFlightAtEnd < limit / 2) {
+      return;
+    }
+    newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+    limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+  }
+
+  /**
+   * Simple getter for the Retry-After header value sent with rejected requests
+   * @return the number of seconds clients should wait as a String
+   */
+  @Override
+  public String getRetryAfterSecs() {
+    return retryAfterSecs;
+  }
+
+  /**
+   * @return true if requests over the limit are rejected, false if every request is admitted
+   */
+  @Override
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Turns rejection of requests over the limit on or off (the limit is tracked either way)
+   * @param enabled is false to admit every request
+   */
+  @Override
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * @return the lowest the limit may shrink to
+   */
+  @Override
+  public int getMinLimit() {
+    return minLimit;
+  }
+
+  /**
+   * Changes the lowest the limit may shrink to, applied from the next completed request
+   * @param minLimit is the new floor, at least 1 and at most the ceiling
+   * @throws IllegalArgumentException if minLimit is out of range
+   */
+  @Override
+  public synchronized void setMinLimit(int minLimit) throws IllegalArgumentException {
+    if (minLimit < 1 || minLimit > maxLimit) {
+      throw new IllegalArgumentException("minLimit must be between 1 and " + maxLimit);
+    }
+    this.minLimit = minLimit;
+  }
+
+  /**
+   * @return the highest the limit may grow to
+   */
+  @Override
+  public int getMaxLimit() {
+    return maxLimit;
+  }
+
+  /**
+   * Changes the highest the limit may grow to, applied from the next completed request
+   * @param maxLimit is the new ceiling, at least the floor
+   * @throws IllegalArgumentException if maxLimit is out of range
+   */
+  @Override
+  public synchronized void setMaxLimit(int maxLimit) throws IllegalArgumentException {
+    if (maxLimit < minLimit) {
+      throw new IllegalArgumentException("maxLimit must be at least " + minLimit);
+    }
+    this.maxLimit = maxLimit;
+  }
+
+  /**
+   * @return the fraction of the limit that reads may use
+   */
+  @Override
+  public double getReadShare() {
+    return readShare;
+  }
+
+  /**
+   * Changes the fraction of the limit that reads may use
+   * @param readShare is the new fraction, above 0 and at most 1
+   * @throws IllegalArgumentException if readShare is out of range
+   */
+  @Override
+  public void setReadShare(double readShare) throws IllegalArgumentException {
+    if (!(readShare > 0 && readShare <= 1)) {
+      throw new IllegalArgumentException("readShare must be above 0 and at most 1");
+    }
+    this.readShare = readShare;
+  }
+
+  /**
+   * @return the current concurrency limit
+   */
+  @Override
+  public int getLimit() {
+    return (int) limit;
+  }
+
+  /**
+   * @return the number of requests currently admitted
+   */
+  @Override
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return the total number of requests rejected so far
+   */
+  @Override
+  public long getRejected() {
+    return rejected.get();
+  }
+}
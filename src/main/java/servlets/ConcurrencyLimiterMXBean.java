@@ -0,0 +1,73 @@
+package servlets;
+
+/**
+ * Runtime view of our ConcurrencyLimiter's settings and what they are doing
+ */
+public interface ConcurrencyLimiterMXBean {
+  /**
+   * @return true if requests over the limit are rejected, false if every request is admitted
+   */
+  boolean isEnabled();
+
+  /**
+   * Turns rejection of requests over the limit on or off
+   * @param enabled is false to admit every request
+   */
+  void setEnabled(boolean enabled);
+
+  /**
+   * @return the lowest the limit may shrink to
+   */
+  int getMinLimit();
+
+  /**
+   * Changes the lowest the limit may shrink to
+   * @param minLimit is the new floor, at least 1 and at most the ceiling
+   * @throws IllegalArgumentException if minLimit is out of range
+   */
+  void setMinLimit(int minLimit) throws IllegalArgumentException;
+
+  /**
+   * @return the highest the limit may grow to
+   */
+  int getMaxLimit();
+
+  /**
+   * Changes the highest the limit may grow to
+   * @param maxLimit is the new ceiling, at least the floor
+   * @throws IllegalArgumentException if maxLimit is out of range
+   */
+  void setMaxLimit(int maxLimit) throws IllegalArgumentException;
+
+  /**
+   * @return the fraction of the limit that reads may use
+   */
+  double getReadShare();
+
+  /**
+   * Changes the fraction of the limit that reads may use
+   * @param readShare is the new fraction, above 0 and at most 1
+   * @throws IllegalArgumentException if readShare is out of range
+   */
+  void setReadShare(double readShare) throws IllegalArgumentException;
+
+  /**
+   * @return the Retry-After value (in seconds) sent with rejections
+   */
+  String getRetryAfterSecs();
+
+  /**
+   * @return the current concurrency limit
+   */
+  int getLimit();
+
+  /**
+   * @return the number of requests currently admitted
+   */
+  int getInFlight();
+
+  /**
+   * @return the total number of requests rejected so far
+   */
+  long getRejected();
+}
@@ -0,0 +1,33 @@
+package servlets;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import requestlog.RequestIds;
+
+/**
+ * Gives each request handled by our servlets an ID its client can correlate with: the client's
+ * own X-Request-ID if it sent one, otherwise a new one, echoed back in the response's
+ * X-Request-ID header either way.
+ */
+class Correlation {
+
+  /**
+   * Takes a request's ID and echoes it in the response. Must be called before the response is
+   * committed.
+   * @param request is the request received by the servlet
+   * @param response is the HTTP response that the servlet will return
+   * @return the request's ID, to record the request under
+   */
+  static long takeRequestId(HttpServletRequest request, HttpServletResponse response) {
+    String header = request.getHeader(RequestIds.HEADER);
+    long id;
+    if (header == null || header.isEmpty()) {
+      id = RequestIds.newId();
+      header = RequestIds.format(id);
+    } else {
+      id = RequestIds.parse(header);
+    }
+    response.setHeader(RequestIds.HEADER, header);
+    return id;
+  }
+}
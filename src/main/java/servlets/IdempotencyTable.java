@@ -0,0 +1,254 @@
+package servlets;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import daos.LiftRideDAO;
+import servlethelpers.LiftRide;
+
+/**
+ * Remembers the lift ride written for each client Idempotency-Key, so a POST retried after a
+ * timeout gets back the original ride instead of inserting a duplicate. A retry arriving while
+ * the original is still in flight waits for and shares its result. Keys are forgotten after
+ * IDEMPOTENCY_TTL_SECS (24 hours by default), and at most IDEMPOTENCY_MAX_KEYS (100000 by
+ * default) are held, oldest evicted first. The table only covers retries that reach the same
+ * server; with IDEMPOTENCY_SHARED set to TRUE keys are also recorded in the idempotencykeys table
+ * alongside the ride, so retries routed to any server are deduplicated. The bound and time to
+ * live can be changed at runtime over JMX.
+ */
+public class IdempotencyTable implements IdempotencyTableMXBean {
+  // the idempotencykeys table holds keys up to 64 characters
+  private static final int MAX_KEY_LENGTH = 64;
+  private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+  // entries in the order they were claimed, which is also the order they expire in
+  private final ConcurrentLinkedQueue<Entry> claimOrder = new ConcurrentLinkedQueue<>();
+  private volatile int maxKeys;
+  private volatile long ttlMillis;
+  private final boolean shared;
+
+  /**
+   * One claimed key and the result of the write made under it
+   */
+  private static class Entry {
+    private final String key;
+    private final CompletableFuture<LiftRide> result;
+    private final long claimedAt;
+
+    /**
+     * Creates an entry for a key claimed now
+     * @param key is the client's Idempotency-Key
+     * @param result is the future completed with the write's ride
+     * @param claimedAt is the time (in ms) the key was claimed
+     */
+    private Entry(String key, CompletableFuture<LiftRide> result, long claimedAt) {
+      this.key = key;
+      this.result = result;
+      this.claimedAt = claimedAt;
+    }
+  }
+
+  /**
+   * Creates an empty table
+   * @param maxKeys is the most keys remembered at once
+   * @param ttlMillis is how long (in ms) a key is remembered
+   * @param shared is whether keys are also recorded in the database
+   */
+  public IdempotencyTable(int maxKeys, long ttlMillis, boolean shared) {
+    this.maxKeys = maxKeys;
+    this.ttlMillis = ttlMillis;
+    this.shared = shared;
+  }
+
+  /**
+   * Gets our shared table, starting its expiry sweeps on first use
+   * @return the table our servlets deduplicate POSTs with
+   */
+  public static IdempotencyTable getInstance() {
+    return InstanceHolder.INSTANCE;
+  }
+
+  /**
+   * Lazily builds our shared table the first time a servlet needs it
+   */
+  private static class InstanceHolder {
+    private static final IdempotencyTable INSTANCE = create();
+
+    /**
+     * Builds our shared table from our system properties and schedules its expiry sweeps
+     * @return the shared table
+     */
+    private static IdempotencyTable create() {
+      IdempotencyTable table = new IdempotencyTable(
+              Integer.getInteger("IDEMPOTENCY_MAX_KEYS", 100000),
+              TimeUnit.SECONDS.toMillis(Long.getLong("IDEMPOTENCY_TTL_SECS", 86400L)),
+              "TRUE".equals(System.getProperty("IDEMPOTENCY_SHARED")));
+      long period = Math.max(1, Math.min(60, Long.getLong("IDEMPOTENCY_TTL_SECS", 86400L)));
+      ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "idempotency-sweep");
+        thread.setDaemon(true);
+        return thread;
+      });
+      sweeper.scheduleWithFixedDelay(table::sweep, period, period, TimeUnit.SECONDS);
+      return table;
+    }
+  }
+
+  /**
+   * Checks that a client's key is 1 to 64 printable ASCII characters
+   * @param key is the value of the Idempotency-Key header
+   * @return true if the key can be used, false otherwise
+   */
+  public static boolean isValidKey(String key) {
+    if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+      return false;
+    }
+    for (int i = 0; i < key.length(); i++) {
+      char c = key.charAt(i);
+      if (c < '!' || c > '~') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Simple getter for whether keys are also recorded in the database
+   * @return true if retries to other servers are deduplicated too, false otherwise
+   */
+  @Override
+  public boolean isShared() {
+    return shared;
+  }
+
+  /**
+   * Claims a key for a new write, unless it was already claimed
+   * @param key is the client's Idempotency-Key
+   * @param result is the future the caller will complete with its write's ride
+   * @return null if the caller now owns the key, otherwise the result of the write already made
+   *         (or in flight) under it, which is completed with null if that write failed
+   */
+  public CompletableFuture<LiftRide> claim(String key, CompletableFuture<LiftRide> result) {
+    long now = System.currentTimeMillis();
+    Entry entry = new Entry(key, result, now);
+    Entry existing = entries.putIfAbsent(key, entry);
+    while (existing != null && now - existing.claimedAt >= ttlMillis) {
+      // expired but not yet swept, replace it
+      if (entries.replace(key, existing, entry)) {
+        existing = null;
+      } else {
+        existing = entries.putIfAbsent(key, entry);
+      }
+    }
+    if (existing != null) {
+      return existing.result;
+    }
+    claimOrder.add(entry);
+    // evict the oldest keys over our bound
+    while (entries.size() > maxKeys) {
+      Entry oldest = claimOrder.poll();
+      if (oldest == null) {
+        break;
+      }
+      entries.remove(oldest.key, oldest);
+    }
+    return null;
+  }
+
+  /**
+   * Completes the write made under a claimed key. A failed write gives the key up so the
+   * client's retry makes a fresh attempt.
+   * @param key is the client's Idempotency-Key
+   * @param result is the future passed to claim
+   * @param ride is the ride written under the key, or null if the write failed
+   */
+  public void complete(String key, CompletableFuture<LiftRide> result, LiftRide ride) {
+    if (ride == null) {
+      Entry entry = entries.get(key);
+      if (entry != null && entry.result == result) {
+        entries.remove(key, entry);
+      }
+    }
+    result.complete(ride);
+  }
+
+  /**
+   * Forgets every key older than our time to live, in memory and (if shared) in the database
+   */
+  private void sweep() {
+    long expiredBefore = System.currentTimeMillis() - ttlMillis;
+    Entry oldest;
+    while ((oldest = claimOrder.peek()) != null && oldest.claimedAt < expiredBefore) {
+      claimOrder.poll();
+      entries.remove(oldest.key, oldest);
+    }
+    // failed writes leave their entries in the claim order, drop them once they're gone
+    if (claimOrder.size() > 2 * entries.size() + maxKeys) {
+      claimOrder.removeIf(entry -> entries.get(entry.key) != entry);
+    }
+    if (shared) {
+      new LiftRideDAO().deleteExpiredKeys(expiredBefore);
+    }
+  }
+
+  /**
+   * @return the number of keys currently remembered
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return the number of keys currently remembered
+   */
+  @Override
+  public int getKeys() {
+    return size();
+  }
+
+  /**
+   * @return the most keys remembered at once
+   */
+  @Override
+  public int getMaxKeys() {
+    return maxKeys;
+  }
+
+  /**
+   * Changes the most keys remembered at once, a lowered bound evicts the oldest keys on the next
+   * claim
+   * @param maxKeys is the new bound, at least 1
+   * @throws IllegalArgumentException if maxKeys is below 1
+   */
+  @Override
+  public void setMaxKeys(int maxKeys) throws IllegalArgumentException {
+    if (maxKeys < 1) {
+      throw new IllegalArgumentException("maxKeys must be at least 1");
+    }
+    this.maxKeys = maxKeys;
+  }
+
+  /**
+   * @return how long (in seconds) a key is remembered
+   */
+  @Override
+  public long getTtlSecs() {
+    return TimeUnit.MILLISECONDS.toSeconds(ttlMillis);
+  }
+
+  /**
+   * Changes how long a key is remembered, applied to claims right away and to sweeps from the
+   * next one (sweeps keep the period they were scheduled with at startup)
+   * @param ttlSecs is the new time to live in seconds, at least 1
+   * @throws IllegalArgumentException if ttlSecs is below 1
+   */
+  @Override
+  public void setTtlSecs(long ttlSecs) throws IllegalArgumentException {
+    if (ttlSecs < 1) {
+      throw new IllegalArgumentException("ttlSecs must be at least 1");
+    }
+    this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSecs);
+  }
+}
@@ -0,0 +1,40 @@
+package servlets;
+
+/**
+ * Runtime view of our IdempotencyTable's bounds and how full it is
+ */
+public interface IdempotencyTableMXBean {
+  /**
+   * @return the number of keys currently remembered
+   */
+  int getKeys();
+
+  /**
+   * @return the most keys remembered at once
+   */
+  int getMaxKeys();
+
+  /**
+   * Changes the most keys remembered at once
+   * @param maxKeys is the new bound, at least 1
+   * @throws IllegalArgumentException if maxKeys is below 1
+   */
+  void setMaxKeys(int maxKeys) throws IllegalArgumentException;
+
+  /**
+   * @return how long (in seconds) a key is remembered
+   */
+  long getTtlSecs();
+
+  /**
+   * Changes how long a key is remembered
+   * @param ttlSecs is the new time to live in seconds, at least 1
+   * @throws IllegalArgumentException if ttlSecs is below 1
+   */
+  void setTtlSecs(long ttlSecs) throws IllegalArgumentException;
+
+  /**
+   * @return true if keys are also recorded in the database, set at startup by IDEMPOTENCY_SHARED
+   */
+  boolean isShared();
+}
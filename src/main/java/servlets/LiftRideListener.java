@@ -0,0 +1,16 @@
+package servlets;
+
+import servlethelpers.LiftRide;
+
+/**
+ * Callback for anything that must be kept up to date as lift rides are ingested. Listeners are
+ * called on the request thread once a ride has been written to the database, so they must be
+ * thread-safe and cheap; any RuntimeException they throw is logged and does not fail the POST.
+ */
+public interface LiftRideListener {
+  /**
+   * Called after a new lift ride has been successfully written
+   * @param ride is the newly written lift ride, including its rideID
+   */
+  void onLiftRideCreated(LiftRide ride);
+}
@@ -8,24 +8,70 @@ import javax.servlet.annotation.WebServlet;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
-import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import aggregates.ResortSketches;
+import aggregates.RideAggregates;
+import daos.AggregateDAO;
 import daos.LiftRideDAO;
+import index.RideIdFilter;
+import index.RideIndex;
+import requestlog.Endpoint;
+import requestlog.RequestLog;
 import servlethelpers.*;
+import stream.RideEventBus;
 
 /**
  * Our LiftRides servlet that will respond to URLs matching the /liftrides or /liftrides/* pattern.
  * It pulls properties (System.getProperty) from the catalina.properties file in the Tomcat conf folder.
  */
 @WebServlet(name = "LiftRideServlet", urlPatterns = {"/liftrides/*", "/liftrides"},
+            loadOnStartup = 1,
             initParams = {@WebInitParam(name = "log4j-properties",
                                         value = "WEB-INF/log4j.properties")})
 public class LiftRideServlet extends HttpServlet {
   static Logger log;
   private Gson gson;
-  private boolean activeLog;
+  private LogSettings logSettings;
+  private ConcurrencyLimiter limiter;
+  private final List<LiftRideListener> listeners = new CopyOnWriteArrayList<>();
+  // coalesced read keys: the kind of read in the high bits, its ID in the low bits
+  private static final long RIDE_READ = 1L << 32;
+  private static final long SKIER_READ = 2L << 32;
+  private static final long ALL_READ = 3L << 32;
+  private final SingleFlight<SharedResponse> reads = new SingleFlight<>();
+  private final PathRouter routes = new PathRouter().route("/{rideID}", this::getRide);
+  // HttpServletResponse has no constant for 422
+  private static final int SC_UNPROCESSABLE_ENTITY = 422;
+  private IdempotencyTable idempotency;
+  private RequestLog requestLog;
+
+  /**
+   * A fully serialized GET response, shared by every request coalesced onto the same read
+   */
+  private static final class SharedResponse {
+    private final int status;
+    private final byte[] body;
+
+    /**
+     * Creates a shared response
+     * @param status is the HTTP status code of the response
+     * @param body is the serialized response body
+     */
+    private SharedResponse(int status, byte[] body) {
+      this.status = status;
+      this.body = body;
+    }
+  }
 
   /**
    * Initialization method called upon servlet startup that initializes the servlet fields.
@@ -34,27 +80,66 @@ public class LiftRideServlet extends HttpServlet {
   public void init() throws ServletException {
     PropertyConfigurator.configure("log4j.properties");
     log = Logger.getLogger(LiftRideServlet.class);
-    gson = new Gson();
-    activeLog = System.getProperty("SERVER_LOG").equals("TRUE");
+    gson = JsonCodecs.gson();
+    logSettings = LogSettings.getInstance();
+    limiter = ConcurrencyLimiter.getInstance();
+    idempotency = IdempotencyTable.getInstance();
+    requestLog = RequestLog.getInstance();
+    listeners.add(RideAggregates.getInstance());
+    listeners.add(ResortSketches.getInstance());
+    listeners.add(RideIndex.getInstance());
+    listeners.add(RideIdFilter.getInstance());
+    listeners.add(RideEventBus.getInstance());
+    listeners.add(this::forgetReads);
+    // after forgetReads, so a request seeing the new version can't join an older read
+    listeners.add(ResourceVersions.getInstance());
+    Tunables.register();
+  }
+
+  /**
+   * Called upon servlet shutdown, checkpoints our aggregates so no counted rides are lost, writes
+   * out our request log and unregisters our tuning MXBeans
+   */
+  @Override
+  public void destroy() {
+    Tunables.unregister();
+    RideAggregates.getInstance().checkpoint();
+    RequestLog.getInstance().close();
   }
 
   /**
-   * Internal helper function to determine if the given URL is of superficial valid form for
-   * further processing.
-   * @param parts is the various parts of the URL normally separated by "/"
-   * @return true if the URL is of a valid form, false otherwise
+   * Passes a newly written lift ride to each of our listeners. A failing listener is logged and
+   * skipped so it cannot fail the write or starve the other listeners.
+   * @param ride is the newly written lift ride
    */
-  private boolean isValid(String[] parts) {
-    // this is path pattern: /liftrides/{id}
-    if (parts.length == 2) {
+  private void notifyListeners(LiftRide ride) {
+    for (LiftRideListener listener : listeners) {
       try {
-        int testID = Integer.parseInt(parts[1]);
-      } catch (NumberFormatException e) {
-        return false;
+        listener.onLiftRideCreated(ride);
+      } catch (RuntimeException e) {
+        log.error("Lift ride listener failed", e);
       }
-      return true;
     }
-    return false;
+  }
+
+  /**
+   * Helper method for doGet that returns a specific lift ride, answering IDs our RideIdFilter
+   * rules out with a 404 without asking the database
+   * @param request is the GET request received by the servlet
+   * @param response is the HTTP response that this servlet will return
+   * @param params is the routed path's parameters, the rideID
+   * @throws IOException if there was an issue writing to the response to be returned
+   */
+  private void getRide(HttpServletRequest request, HttpServletResponse response, int[] params)
+          throws IOException {
+    int rideID = params[0];
+    if (!RideIdFilter.getInstance().mightExist(rideID)) {
+      // guaranteed miss, no need to ask the database
+      writeMessage(response, HttpServletResponse.SC_NOT_FOUND, "LiftRideId not found");
+    } else {
+      // return a specific lift ride
+      queryRide(rideID, response);
+    }
   }
 
   /**
@@ -67,60 +152,245 @@ public class LiftRideServlet extends HttpServlet {
    */
   private void writeMessage(HttpServletResponse response, int code, String msg) throws IOException {
     response.setStatus(code);
-    Message err = new Message(msg);
-    String jsonErr = gson.toJson(err);
-    response.getWriter().write(jsonErr);
+    response.getWriter().write(JsonCodecs.message(msg));
+  }
+
+  /**
+   * Helper function for doGet and doPost that rejects a request our concurrency limiter did not
+   * admit with a 503 and a Retry-After header
+   * @param response is the HttpServletResponse whose return code and body we are writing
+   * @throws IOException if there is an issue writing to the response body
+   */
+  private void writeOverloaded(HttpServletResponse response) throws IOException {
+    response.setHeader("Retry-After", limiter.getRetryAfterSecs());
+    writeMessage(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+            "Server overloaded, retry later");
+  }
+
+  /**
+   * Listener that stops new reads from joining in-flight reads of a ride's skier (and of all
+   * rides) once the ride is written, so a skier's GET after their POST always sees it
+   * @param ride is the newly written lift ride
+   */
+  private void forgetReads(LiftRide ride) {
+    reads.forget(SKIER_READ | ride.getSkier());
+    reads.forget(ALL_READ);
+    reads.forget(RIDE_READ | (ride.getLiftRideId() & 0xFFFFFFFFL));
+  }
+
+  /**
+   * Serializes a GET response body once so it can be shared by coalesced requests
+   * @param status is the HTTP status code of the response
+   * @param body is the object to serialize as JSON
+   * @param type is the type of the body
+   * @return the shared response
+   */
+  private SharedResponse serialize(int status, Object body, Type type) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (Writer writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) {
+      gson.toJson(body, type, writer);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return new SharedResponse(status, bytes.toByteArray());
+  }
+
+  /**
+   * Creates a shared response holding one of our fixed messages
+   * @param status is the HTTP status code of the response
+   * @param msg is the message for the response body
+   * @return the shared response
+   */
+  private static SharedResponse sharedMessage(int status, String msg) {
+    return new SharedResponse(status, JsonCodecs.message(msg).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Writes a (possibly shared) serialized response to this request's response
+   * @param response is the HTTP response that the servlet will return
+   * @param shared is the serialized response
+   * @param etag is the ETag to send with a successful response, or null for none
+   * @throws IOException if there was an issue writing to the response to be returned
+   */
+  private void writeShared(HttpServletResponse response, SharedResponse shared, String etag)
+          throws IOException {
+    if (shared.status == HttpServletResponse.SC_SERVICE_UNAVAILABLE) {
+      response.setHeader("Retry-After", limiter.getRetryAfterSecs());
+    } else if (shared.status == HttpServletResponse.SC_OK && etag != null) {
+      response.setHeader("ETag", etag);
+    }
+    response.setStatus(shared.status);
+    response.setContentLength(shared.body.length);
+    response.getOutputStream().write(shared.body);
   }
 
   /**
    * Helper method for doGet that handles querying the database for a list of lift rides for
-   * either a specific skier identified by their ID or all skiers
+   * either a specific skier identified by their ID or all skiers. Concurrent identical queries
+   * share one database call and one serialized response, and (when ride ETags are issued) a
+   * client whose If-None-Match holds the current ETag gets a 304 without any query.
    * @param skierID is the ID of the skier whose lift rides we are querying for or null if
    *                the query is for all skiers
+   * @param request is the GET request received by the servlet
    * @param response is the HTTP response that the servlet will return
    * @throws IOException if there was an issue writing to the response to be returned
    */
-  private void querySkierRides(String skierID, HttpServletResponse response) throws IOException {
-    LiftRideDAO liftDAO = new LiftRideDAO();
-    LiftRideList rides;
+  private void querySkierRides(String skierID, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+    ResourceVersions versions = ResourceVersions.getInstance();
     // get all lift rides
     if (skierID == null) {
-      rides = liftDAO.getAllLiftRides();
-    } else { // get lift rides for a specific skier ID
-      int parsedID;
-      try {
-        parsedID = Integer.parseInt(skierID);
-      } catch (NumberFormatException e) {
-        writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "Skier ID invalid format");
+      String etag = versions.allRidesETag();
+      if (!notModified(request, response, etag)) {
+        writeShared(response, reads.execute(ALL_READ, () -> loadSkierRides(null)), etag);
+      }
+      return;
+    }
+    // get lift rides for a specific skier ID
+    int parsedID;
+    try {
+      parsedID = Integer.parseInt(skierID);
+    } catch (NumberFormatException e) {
+      writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "Skier ID invalid format");
+      return;
+    }
+    String etag = versions.skierETag(parsedID);
+    if (!notModified(request, response, etag)) {
+      writeShared(response, reads.execute(SKIER_READ | (parsedID & 0xFFFFFFFFL),
+              () -> loadSkierRides(parsedID)), etag);
+    }
+  }
+
+  /**
+   * Helper function for querySkierRides that answers a conditional GET with a 304 (and no
+   * body) if the client's copy is current
+   * @param request is the GET request received by the servlet
+   * @param response is the HTTP response that this servlet will return
+   * @param etag is the rides' current ETag, taken before they are read, or null if they have none
+   * @return true if a 304 was sent and nothing more should be written, false otherwise
+   */
+  private boolean notModified(HttpServletRequest request, HttpServletResponse response,
+                              String etag) {
+    if (ResourceVersions.matches(request.getHeader("If-None-Match"), etag)) {
+      response.setHeader("ETag", etag);
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Queries the database (through our concurrency limiter) for a skier's or all lift rides
+   * @param skierID is the ID of the skier whose lift rides we are querying for or null if
+   *                the query is for all skiers
+   * @return the serialized response
+   */
+  private SharedResponse loadSkierRides(Integer skierID) {
+    long permit = limiter.tryAcquire(false);
+    if (permit < 0) {
+      return sharedMessage(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+              "Server overloaded, retry later");
+    }
+    try {
+      LiftRideDAO liftDAO = new LiftRideDAO();
+      long dbStart = System.nanoTime();
+      LiftRideList rides = skierID == null ? liftDAO.getAllLiftRides()
+              : liftDAO.getSkierRides(skierID);
+      requestLog.addDbTime(System.nanoTime() - dbStart);
+      return serialize(HttpServletResponse.SC_OK, rides, LiftRideList.class);
+    } finally {
+      limiter.release(permit);
+    }
+  }
+
+  /**
+   * Helper method for doGet that handles a ride range query (/liftrides?resort=&lift=&from=&to=),
+   * answered from our in-memory RideIndex. Resort and lift are required, from and to are optional
+   * inclusive lift time bounds. A query reaching below what the index holds also reads the
+   * database, so it needs a permit from our concurrency limiter.
+   * @param request is the GET request holding the query parameters
+   * @param response is the HTTP response that the servlet will return
+   * @throws IOException if there was an issue writing to the response to be returned
+   */
+  private void queryRideRange(HttpServletRequest request, HttpServletResponse response)
+          throws IOException {
+    String from = request.getParameter("from");
+    String to = request.getParameter("to");
+    int resortID, liftID, fromTime, toTime;
+    try {
+      resortID = Integer.parseInt(request.getParameter("resort"));
+      liftID = Integer.parseInt(request.getParameter("lift"));
+      fromTime = from == null ? 1 : Integer.parseInt(from);
+      toTime = to == null ? Integer.MAX_VALUE : Integer.parseInt(to);
+    } catch (NumberFormatException e) {
+      writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "Range query invalid format");
+      return;
+    }
+    if (resortID < 1 || liftID < 1) {
+      writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "Range query invalid format");
+      return;
+    }
+    RideIndex index = RideIndex.getInstance();
+    LiftRideList rides = index.getRides(resortID, liftID, fromTime, toTime, false);
+    if (rides == null) {
+      long permit = limiter.tryAcquire(false);
+      if (permit < 0) {
+        writeOverloaded(response);
         return;
       }
-      rides = liftDAO.getSkierRides(parsedID);
+      try {
+        long dbStart = System.nanoTime();
+        rides = index.getRides(resortID, liftID, fromTime, toTime, true);
+        requestLog.addDbTime(System.nanoTime() - dbStart);
+      } finally {
+        limiter.release(permit);
+      }
     }
     response.setStatus(HttpServletResponse.SC_OK);
-    response.getWriter().write(gson.toJson(rides));
+    gson.toJson(rides, LiftRideList.class, response.getWriter());
   }
 
   /**
    * Helper method for doGet that handles querying the database for the requested rideID
-   * and setting up the returned response
+   * and setting up the returned response. Concurrent requests for the same ride share one
+   * database call and one serialized response.
    * @param rideID is the integer ID of the lift ride to be queried for
    * @param response is the HTTP response that the servlet will return
    * @throws IOException if there was an issue writing to the response to be returned
    */
   private void queryRide(int rideID, HttpServletResponse response) throws IOException {
-    LiftRideDAO liftDAO = new LiftRideDAO();
-    LiftRide ride = liftDAO.getLiftRide(rideID);
-    if (ride == null) {
-      writeMessage(response, HttpServletResponse.SC_NOT_FOUND, "LiftRideId not found");
-    } else {
-      response.setStatus(HttpServletResponse.SC_OK);
-      response.getWriter().write(gson.toJson(ride));
+    writeShared(response, reads.execute(RIDE_READ | (rideID & 0xFFFFFFFFL),
+            () -> loadRide(rideID)), null);
+  }
+
+  /**
+   * Queries the database (through our concurrency limiter) for a specific ride
+   * @param rideID is the integer ID of the lift ride to be queried for
+   * @return the serialized response
+   */
+  private SharedResponse loadRide(int rideID) {
+    long permit = limiter.tryAcquire(false);
+    if (permit < 0) {
+      return sharedMessage(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+              "Server overloaded, retry later");
+    }
+    try {
+      long dbStart = System.nanoTime();
+      LiftRide ride = new LiftRideDAO().getLiftRide(rideID);
+      requestLog.addDbTime(System.nanoTime() - dbStart);
+      if (ride == null) {
+        return sharedMessage(HttpServletResponse.SC_NOT_FOUND, "LiftRideId not found");
+      }
+      return serialize(HttpServletResponse.SC_OK, ride, LiftRide.class);
+    } finally {
+      limiter.release(permit);
     }
   }
 
   /**
    * This handles the GET requests sent to our servlet. Request responses are either a list
-   * of lift rides for a particular resort+skier (via HTTP query) or a particular lift ride.
+   * of lift rides for a particular resort+skier (via HTTP query), a list of lift rides on a
+   * resort's lift within a time range (via HTTP query), or a particular lift ride.
    * @param request  is the GET request received by the servlet
    * @param response is the HTTP response that this servlet will return
    * @throws IOException if there was an issue writing to the response to be returned
@@ -129,6 +399,8 @@ public class LiftRideServlet extends HttpServlet {
   protected void doGet(HttpServletRequest request, HttpServletResponse response)
           throws ServletException, IOException {
     long startTime = System.currentTimeMillis();
+    long requestStart = requestLog.start();
+    long requestId = Correlation.takeRequestId(request, response);
     response.setContentType("application/json");
     response.setCharacterEncoding("UTF-8");
     String path = request.getPathInfo();
@@ -136,75 +408,179 @@ public class LiftRideServlet extends HttpServlet {
     // corresponds to /liftrides endpoint
     if (path == null || path.isEmpty()) {
       String queriedSkier = request.getParameter("skier");
-      querySkierRides(queriedSkier, response);
-    } else { // /liftrides/{id} endpoint
-      // split our path into parts to validate and process
-      String[] parts = path.split("/");
-      // first ensure basic validity
-      if (!isValid(parts)) {
-        writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "URL or ID invalid format");
+      // range queries are served from memory, and take a permit only if they reach the database
+      if (request.getParameter("resort") != null || request.getParameter("lift") != null
+              || request.getParameter("from") != null || request.getParameter("to") != null) {
+        queryRideRange(request, response);
       } else {
-        // return a specific lift ride
-        queryRide(Integer.parseInt(parts[1]), response);
+        querySkierRides(queriedSkier, request, response);
       }
+    } else if (!routes.dispatch(path, request, response)) { // /liftrides/{id} endpoint
+      writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "URL or ID invalid format");
     }
-    // always log our latency at the end if configured
-    if (activeLog) {
-      logLatency(startTime, "GET");
+    // always log our latency at the end if configured, except for warm-up's synthetic requests
+    if (!WarmupListener.isSynthetic(request)) {
+      if (logSettings.isServerLog()) {
+        logLatency(startTime, "GET");
+      }
+      requestLog.record(Endpoint.LIFTRIDES_GET, response.getStatus(), requestStart, requestId);
     }
   }
 
   /**
    * Handles parsing an authorization HTTP header from our doPost method to ensure that the user is
    * authenticated prior to any updates being performed
-   * Method heavily inspired by:
-   * https://stackoverflow.com/questions/16000517/how-to-get-password-from-http-basic-authentication
    * @param authHdr is the HTTP request's full authorization header
    * @return true if the header contains valid authentication, false otherwise
    */
   private boolean authenticate(String authHdr) {
-    // Only use basic authentication
-    if (authHdr != null && authHdr.toLowerCase().startsWith("basic")) {
-      String rawCredentials = authHdr.substring("Basic".length()).trim();
-      String decoded = new String(Base64.getDecoder().decode(rawCredentials), StandardCharsets.UTF_8);
-      String[] credentials = decoded.split(":", 2);
-      return credentials[0].equals(System.getProperty("POST_USR"))
-              && credentials[1].equals(System.getProperty("POST_PWD"));
-    }
-    return false;
+    return BasicAuth.userOf(authHdr) != null;
   }
 
   /**
    * Helper method for doPost which handles attempting to insert the new LiftRideInput object
-   * into our database
+   * into our database, answering the request if it failed. The caller answers a successful
+   * write (with writeCreated) once it has recorded the new ride.
    * @param ride is the LiftRideInput containing the information to insert into the DB
    * @param response is the HttpServletResponse that will be returned at the end of doPost
+   * @return the newly written lift ride, or null if the write failed (and nothing was written)
    * @throws IOException if there was an error while writing to the response
    */
-  private void databaseWrite(LiftRideInput ride, HttpServletResponse response) throws IOException {
-      LiftRideDAO liftDAO = new LiftRideDAO();
-      int skier = ride.getSkierID();
-      int resort = ride.getResortID();
-      int time = ride.getTime();
-      int lift = ride.getLiftID();
-      // ensure the write succeeded
-      if (liftDAO.createLiftRide(ride)) {
-        // rideID is auto-generated, so look it up
-        int id = liftDAO.getLiftRideId(skier, resort, time, lift);
-        // make sure we found ID
-        if (id < 0) {
-          writeMessage(response, HttpServletResponse.SC_CONFLICT, "Failed writing to server");
-        } else {
-          // set up return list
-          LiftRideList returnList = new LiftRideList();
-          returnList.addRide(new LiftRide(id, skier, resort, time, lift));
-          // add return list to response body
-          response.getWriter().write(gson.toJson(returnList));
-          response.setStatus(HttpServletResponse.SC_CREATED);
-        }
+  private LiftRide databaseWrite(LiftRideInput ride, HttpServletResponse response)
+          throws IOException {
+    LiftRideDAO liftDAO = new LiftRideDAO();
+    long dbStart = System.nanoTime();
+    // the rideID comes from the insert itself, so a written ride is never left unnamed
+    int id = liftDAO.createLiftRide(ride);
+    requestLog.addDbTime(System.nanoTime() - dbStart);
+    if (id < 0) {
+      writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "Failed writing to server");
+      return null;
+    }
+    LiftRide created = new LiftRide(id, ride.getSkierID(), ride.getResortID(), ride.getLiftID(),
+            ride.getTime());
+    notifyListeners(created);
+    return created;
+  }
+
+  /**
+   * Helper method for idempotentWrite which inserts the new LiftRideInput object into our
+   * database under the client's idempotency key, unless another server already wrote a ride
+   * under that key, in which case that ride is replayed
+   * @param key is the client's Idempotency-Key
+   * @param ride is the LiftRideInput containing the information to insert into the DB
+   * @param response is the HttpServletResponse that will be returned at the end of doPost
+   * @return the ride written under the key, or null if the write failed
+   * @throws IOException if there was an error while writing to the response
+   */
+  private LiftRide keyedDatabaseWrite(String key, LiftRideInput ride, HttpServletResponse response)
+          throws IOException {
+    LiftRideDAO liftDAO = new LiftRideDAO();
+    long dbStart = System.nanoTime();
+    LiftRide original = liftDAO.getKeyedLiftRide(key, ride.getSkierID());
+    int id = original == null ? liftDAO.createKeyedLiftRide(key, ride) : -1;
+    if (id == LiftRideDAO.KEY_TAKEN) {
+      // another server won the race for this key
+      original = liftDAO.getKeyedLiftRide(key, ride.getSkierID());
+    }
+    requestLog.addDbTime(System.nanoTime() - dbStart);
+    if (id > 0) {
+      LiftRide created = new LiftRide(id, ride.getSkierID(), ride.getResortID(),
+              ride.getLiftID(), ride.getTime());
+      notifyListeners(created);
+      writeCreated(response, created);
+      return created;
+    }
+    if (original == null) {
+      writeMessage(response, HttpServletResponse.SC_CONFLICT, "Failed writing to server");
+    } else {
+      writeReplay(response, original, ride);
+    }
+    return original;
+  }
+
+  /**
+   * Helper method for doPost which writes a ride at most once per client Idempotency-Key and
+   * skier. The first request with a key writes the ride; retries with the key get the same ride
+   * back (waiting for the first request if it is still in flight) without another insert.
+   * @param key is the client's Idempotency-Key
+   * @param ride is the LiftRideInput containing the information to insert into the DB
+   * @param response is the HttpServletResponse that will be returned at the end of doPost
+   * @throws IOException if there was an error while writing to the response
+   */
+  private void idempotentWrite(String key, LiftRideInput ride, HttpServletResponse response)
+          throws IOException {
+    // keys are scoped per skier, as they are in the idempotencykeys table (one skier's shard)
+    String skierKey = ride.getSkierID() + "/" + key;
+    CompletableFuture<LiftRide> result = new CompletableFuture<>();
+    CompletableFuture<LiftRide> earlier;
+    while ((earlier = idempotency.claim(skierKey, result)) != null) {
+      LiftRide original = earlier.join();
+      if (original != null) {
+        writeReplay(response, original, ride);
+        return;
+      }
+      // the earlier write failed and gave the key up, so try it ourselves
+    }
+    LiftRide written = null;
+    try {
+      // ingest gets the whole concurrency limit, reads are shed before it
+      long permit = limiter.tryAcquire(true);
+      if (permit < 0) {
+        writeOverloaded(response);
       } else {
-        writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "Failed writing to server");
+        try {
+          if (idempotency.isShared()) {
+            written = keyedDatabaseWrite(key, ride, response);
+          } else {
+            // the key stays claimed by the written ride even if answering the client fails
+            written = databaseWrite(ride, response);
+            if (written != null) {
+              writeCreated(response, written);
+            }
+          }
+        } finally {
+          limiter.release(permit);
+        }
       }
+    } finally {
+      idempotency.complete(skierKey, result, written);
+    }
+  }
+
+  /**
+   * Helper method that writes a newly created lift ride to the response with a 201
+   * @param response is the HttpServletResponse whose return code and body we are writing
+   * @param created is the newly written lift ride
+   * @throws IOException if there is an issue writing to the response body
+   */
+  private void writeCreated(HttpServletResponse response, LiftRide created) throws IOException {
+    // set up return list
+    LiftRideList returnList = new LiftRideList();
+    returnList.addRide(created);
+    // add return list to response body
+    response.setStatus(HttpServletResponse.SC_CREATED);
+    gson.toJson(returnList, LiftRideList.class, response.getWriter());
+  }
+
+  /**
+   * Helper method that answers a retried POST with the ride its Idempotency-Key already wrote,
+   * as if it had just been created. A key reused for a different ride is rejected with a 422.
+   * @param response is the HttpServletResponse whose return code and body we are writing
+   * @param original is the ride written under the request's key
+   * @param ride is the LiftRideInput of the retried request
+   * @throws IOException if there is an issue writing to the response body
+   */
+  private void writeReplay(HttpServletResponse response, LiftRide original, LiftRideInput ride)
+          throws IOException {
+    if (original.getSkier() != ride.getSkierID() || original.getResort() != ride.getResortID()
+            || original.getLiftID() != ride.getLiftID() || original.getTime() != ride.getTime()) {
+      writeMessage(response, SC_UNPROCESSABLE_ENTITY,
+              "Idempotency-Key was already used for a different lift ride");
+    } else {
+      response.setHeader("Idempotent-Replayed", "true");
+      writeCreated(response, original);
+    }
   }
 
   /**
@@ -218,40 +594,65 @@ public class LiftRideServlet extends HttpServlet {
   protected void doPost(HttpServletRequest request, HttpServletResponse response)
           throws ServletException, IOException {
     long startTime = System.currentTimeMillis();
+    long requestStart = requestLog.start();
+    long requestId = Correlation.takeRequestId(request, response);
     response.setContentType("application/json");
     response.setCharacterEncoding("UTF-8");
     String path = request.getPathInfo();
+    // optional, lets clients retry a POST without writing its ride twice
+    String key = request.getHeader("Idempotency-Key");
     // must be /liftrides for POST
     if (path != null) {
       writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "URL or ID invalid format");
     } else if (!authenticate(request.getHeader("Authorization"))) { // POSTs must authenticate
       writeMessage(response, HttpServletResponse.SC_UNAUTHORIZED, "Could not authenticate user");
+    } else if (key != null && !IdempotencyTable.isValidKey(key)) {
+      writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid Idempotency-Key");
     } else {
       // parse our request body for lift ride info
       LiftRideInput body = gson.fromJson(request.getReader(), LiftRideInput.class);
-      // only positive integers allowed
+      // only positive integers allowed, resorts and lifts within what our aggregates can key
       if (body == null || body.getLiftID() < 1 || body.getTime() < 1 || body.getResortID() < 1
-              || body.getSkierID() < 1) {
+              || body.getSkierID() < 1 || body.getResortID() > AggregateDAO.MAX_KEYED_ID
+              || body.getLiftID() > AggregateDAO.MAX_KEYED_ID) {
         writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid request body");
-      } else { // attempt to update DB
-        databaseWrite(body, response);
+      } else if (key != null) {
+        idempotentWrite(key, body, response);
+      } else {
+        // ingest gets the whole concurrency limit, reads are shed before it
+        long permit = limiter.tryAcquire(true);
+        if (permit < 0) {
+          writeOverloaded(response);
+        } else { // attempt to update DB
+          try {
+            LiftRide created = databaseWrite(body, response);
+            if (created != null) {
+              writeCreated(response, created);
+            }
+          } finally {
+            limiter.release(permit);
+          }
+        }
       }
     }
-    // always log our latency at the end if configured
-    if (activeLog) {
-      logLatency(startTime, "POST");
+    // always log our latency at the end if configured, except for warm-up's synthetic requests
+    if (!WarmupListener.isSynthetic(request)) {
+      if (logSettings.isServerLog()) {
+        logLatency(startTime, "POST");
+      }
+      requestLog.record(Endpoint.LIFTRIDES_POST, response.getStatus(), requestStart, requestId);
     }
   }
 
   /**
    * Updates our log with the total time (in milliseconds) it took for a particular method to
-   * finish the request
+   * finish the request and the time it finished, e.g. "POST 12 1700000000000"
    * @param startTime is the time (in ms) the method began executing
    * @param operation is the type of operation performed by the servlet (i.e. GET or POST)
    */
   private void logLatency(long startTime, String operation) {
     long endTime = System.currentTimeMillis();
     long responseTime = endTime - startTime;
-    log.info(operation + " " + responseTime);
+    log.info(operation + " " + responseTime + " " + endTime);
   }
 }
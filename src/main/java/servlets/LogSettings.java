@@ -0,0 +1,96 @@
+package servlets;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import requestlog.RequestLog;
+
+/**
+ * Our servlets' logging switches, read on every request so they can be flipped at runtime: the
+ * per-request latency lines of the server log (SERVER_LOG at startup) and log4j's root level,
+ * along with how much the binary request log has written and dropped.
+ */
+public class LogSettings implements LogSettingsMXBean {
+  private static final LogSettings INSTANCE =
+          new LogSettings("TRUE".equals(System.getProperty("SERVER_LOG")));
+  private volatile boolean serverLog;
+
+  /**
+   * Creates our logging switches
+   * @param serverLog is true to log each request's latency
+   */
+  private LogSettings(boolean serverLog) {
+    this.serverLog = serverLog;
+  }
+
+  /**
+   * Simple getter for the switches shared by our servlets
+   * @return the shared logging switches
+   */
+  public static LogSettings getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @return true if our servlets log each request's latency to the server log
+   */
+  @Override
+  public boolean isServerLog() {
+    return serverLog;
+  }
+
+  /**
+   * Turns the per-request server log lines on or off
+   * @param serverLog is true to log each request's latency
+   */
+  @Override
+  public void setServerLog(boolean serverLog) {
+    this.serverLog = serverLog;
+  }
+
+  /**
+   * @return the level of log4j's root logger, e.g. "INFO"
+   */
+  @Override
+  public String getRootLevel() {
+    Level level = Logger.getRootLogger().getLevel();
+    return level != null ? level.toString() : null;
+  }
+
+  /**
+   * Changes the level of log4j's root logger
+   * @param level is the name of the new level, e.g. "DEBUG" or "OFF"
+   * @throws IllegalArgumentException if level is not a log4j level
+   */
+  @Override
+  public void setRootLevel(String level) throws IllegalArgumentException {
+    Level parsed = Level.toLevel(level, null);
+    if (parsed == null) {
+      throw new IllegalArgumentException("Unknown log level " + level);
+    }
+    Logger.getRootLogger().setLevel(parsed);
+  }
+
+  /**
+   * @return true if the binary request log is recording, set at startup by REQUEST_LOG
+   */
+  @Override
+  public boolean isRequestLogEnabled() {
+    return RequestLog.getInstance().isEnabled();
+  }
+
+  /**
+   * @return the number of records written to request log files
+   */
+  @Override
+  public long getRequestLogWritten() {
+    return RequestLog.getInstance().getWritten();
+  }
+
+  /**
+   * @return the number of records the request log dropped because its ring was full
+   */
+  @Override
+  public long getRequestLogDropped() {
+    return RequestLog.getInstance().getDropped();
+  }
+}
@@ -0,0 +1,44 @@
+package servlets;
+
+/**
+ * Runtime view of our servlets' logging (see LogSettings)
+ */
+public interface LogSettingsMXBean {
+  /**
+   * @return true if our servlets log each request's latency to the server log
+   */
+  boolean isServerLog();
+
+  /**
+   * Turns the per-request server log lines on or off
+   * @param serverLog is true to log each request's latency
+   */
+  void setServerLog(boolean serverLog);
+
+  /**
+   * @return the level of log4j's root logger, e.g. "INFO"
+   */
+  String getRootLevel();
+
+  /**
+   * Changes the level of log4j's root logger
+   * @param level is the name of the new level, e.g. "DEBUG" or "OFF"
+   * @throws IllegalArgumentException if level is not a log4j level
+   */
+  void setRootLevel(String level) throws IllegalArgumentException;
+
+  /**
+   * @return true if the binary request log is recording, set at startup by REQUEST_LOG
+   */
+  boolean isRequestLogEnabled();
+
+  /**
+   * @return the number of records written to request log files
+   */
+  long getRequestLogWritten();
+
+  /**
+   * @return the number of records the request log dropped because its ring was full
+   */
+  long getRequestLogDropped();
+}
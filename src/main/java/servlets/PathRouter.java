@@ -0,0 +1,188 @@
+package servlets;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Routes a servlet's path info (e.g. "/12/seasons") to the handler of the first matching path
+ * template (e.g. "/{id}/seasons"). Paths are matched by scanning their characters in place and
+ * integer parameters are parsed as they are scanned, so routing a request creates no substrings,
+ * arrays or boxed values. As with String.split, trailing slashes are ignored.
+ */
+public class PathRouter {
+  // the parameters of the route being handled on each thread, valid only during its handler
+  private final ThreadLocal<int[]> threadParams;
+  private final List<String[]> templates = new ArrayList<>();
+  private final List<Handler> handlers = new ArrayList<>();
+  private int maxParams;
+
+  /**
+   * Handles a request whose path matched a route
+   */
+  @FunctionalInterface
+  public interface Handler {
+    /**
+     * Handles a routed request
+     * @param request is the request received by the servlet
+     * @param response is the HTTP response that the servlet will return
+     * @param params is the template's integer parameters in order, only valid during this call
+     * @throws IOException if there was an issue writing to the response
+     */
+    void handle(HttpServletRequest request, HttpServletResponse response, int[] params)
+            throws IOException;
+  }
+
+  /**
+   * Creates a router with no routes
+   */
+  public PathRouter() {
+    threadParams = ThreadLocal.withInitial(() -> new int[maxParams]);
+  }
+
+  /**
+   * Adds a route, matched after the routes added before it. Routes must all be added before the
+   * router is first used.
+   * @param template is the path template, "/" separated literals and {name} integer parameters
+   * @param handler is the handler of requests matching the template
+   * @return this router
+   * @throws IllegalArgumentException if the template does not start with "/" or has an empty
+   *         segment
+   */
+  public PathRouter route(String template, Handler handler) throws IllegalArgumentException {
+    if (!template.startsWith("/")) {
+      throw new IllegalArgumentException("Path template must start with /: " + template);
+    }
+    String[] segments = template.substring(1).split("/", -1);
+    int params = 0;
+    for (int i = 0; i < segments.length; i++) {
+      if (segments[i].isEmpty()) {
+        throw new IllegalArgumentException("Empty segment in path template: " + template);
+      }
+      if (segments[i].startsWith("{") && segments[i].endsWith("}")) {
+        // null marks an integer parameter
+        segments[i] = null;
+        params++;
+      }
+    }
+    templates.add(segments);
+    handlers.add(handler);
+    maxParams = Math.max(maxParams, params);
+    return this;
+  }
+
+  /**
+   * Finds the first route matching a path and parses its parameters
+   * @param path is the path info of the request (which starts with "/")
+   * @param params receives the route's integer parameters in order
+   * @return the index of the matching route (in the order added), or -1 if none matched
+   */
+  public int match(String path, int[] params) {
+    for (int i = 0; i < templates.size(); i++) {
+      if (matches(templates.get(i), path, params)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Calls the handler of the first route matching a path
+   * @param path is the path info of the request, or null if it has none
+   * @param request is the request received by the servlet
+   * @param response is the HTTP response that the servlet will return
+   * @return true if a route matched and handled the request, false otherwise
+   * @throws IOException if there was an issue writing to the response
+   */
+  public boolean dispatch(String path, HttpServletRequest request, HttpServletResponse response)
+          throws IOException {
+    if (path == null) {
+      return false;
+    }
+    int[] params = threadParams.get();
+    int route = match(path, params);
+    if (route < 0) {
+      return false;
+    }
+    handlers.get(route).handle(request, response, params);
+    return true;
+  }
+
+  /**
+   * Matches a path against one template
+   * @param segments is the template's segments, null for each integer parameter
+   * @param path is the path to match
+   * @param params receives the template's integer parameters in order
+   * @return true if the path matched, false otherwise
+   */
+  private static boolean matches(String[] segments, String path, int[] params) {
+    int pos = 0;
+    int length = path.length();
+    int param = 0;
+    for (String segment : segments) {
+      if (pos >= length || path.charAt(pos) != '/') {
+        return false;
+      }
+      pos++;
+      if (segment != null) {
+        if (!path.regionMatches(pos, segment, 0, segment.length())) {
+          return false;
+        }
+        pos += segment.length();
+      } else {
+        pos = parseInt(path, pos, params, param++);
+        if (pos < 0) {
+          return false;
+        }
+      }
+      if (pos < length && path.charAt(pos) != '/') {
+        return false;
+      }
+    }
+    // ignore trailing slashes, as String.split did
+    while (pos < length) {
+      if (path.charAt(pos++) != '/') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parses an optionally signed integer segment of a path the way Integer.parseInt does
+   * @param path is the path holding the segment
+   * @param pos is the index the segment starts at
+   * @param params receives the parsed value
+   * @param param is the index in params to store the value at
+   * @return the index just past the segment, or -1 if it is not an int
+   */
+  private static int parseInt(String path, int pos, int[] params, int param) {
+    int length = path.length();
+    boolean negative = false;
+    if (pos < length && (path.charAt(pos) == '-' || path.charAt(pos) == '+')) {
+      negative = path.charAt(pos) == '-';
+      pos++;
+    }
+    int start = pos;
+    // accumulate negatively so Integer.MIN_VALUE fits
+    long value = 0;
+    while (pos < length && path.charAt(pos) != '/') {
+      char c = path.charAt(pos);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      value = value * 10 - (c - '0');
+      if (value < Integer.MIN_VALUE) {
+        return -1;
+      }
+      pos++;
+    }
+    if (pos == start || (!negative && value == Integer.MIN_VALUE)) {
+      return -1;
+    }
+    params[param] = (int) (negative ? value : -value);
+    return pos;
+  }
+}
@@ -0,0 +1,96 @@
+package servlets;
+
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import requestlog.Endpoint;
+import servlethelpers.JsonCodecs;
+
+/**
+ * Our rate limiting filter in front of the /liftrides, /resorts and /skiers servlets, which
+ * answers clients over their RateLimiter rates with a 429 and a Retry-After header before they
+ * reach a servlet. Clients are keyed by the user of valid Basic credentials (checked the same way
+ * LiftRideServlet checks them), or else by address: the remote address, or the first address in
+ * the RATE_LIMIT_CLIENT_HEADER header (e.g. X-Forwarded-For) when set, for servers behind a
+ * proxy that sets it. Requests aren't limited until warm-up has
+ * finished, so our own warm-up traffic is never throttled.
+ */
+@WebFilter(filterName = "RateLimitFilter", asyncSupported = true,
+           urlPatterns = {"/liftrides", "/liftrides/*", "/resorts", "/resorts/*", "/skiers/*"})
+public class RateLimitFilter extends HttpFilter {
+  private static final String CLIENT_HEADER = System.getProperty("RATE_LIMIT_CLIENT_HEADER");
+  // HttpServletResponse has no constant for 429
+  private static final int SC_TOO_MANY_REQUESTS = 429;
+  private static final long NANOS_PER_SEC = 1000000000L;
+
+  /**
+   * Passes a request on to its servlet, or rejects it if its client is over its rate
+   * @param request is the request received
+   * @param response is the HTTP response that will be returned
+   * @param chain is the rest of the request's filters and its servlet
+   * @throws IOException if there was an issue reading the request or writing the response
+   * @throws ServletException if the servlet failed
+   */
+  @Override
+  protected void doFilter(HttpServletRequest request, HttpServletResponse response,
+                          FilterChain chain) throws IOException, ServletException {
+    Endpoint endpoint = WarmupListener.isReady() ? endpointOf(request) : null;
+    long waitNanos = endpoint == null ? 0
+            : RateLimiter.getInstance().tryAcquire(clientOf(request), endpoint);
+    if (waitNanos == 0) {
+      chain.doFilter(request, response);
+      return;
+    }
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    response.setStatus(SC_TOO_MANY_REQUESTS);
+    response.setHeader("Retry-After",
+            Long.toString((waitNanos + NANOS_PER_SEC - 1) / NANOS_PER_SEC));
+    response.getWriter().write(JsonCodecs.message("Too many requests, retry later"));
+  }
+
+  /**
+   * Finds the endpoint a request is for
+   * @param request is the request received
+   * @return the endpoint, or null if it isn't one of our limited endpoints
+   */
+  private static Endpoint endpointOf(HttpServletRequest request) {
+    boolean isGet = "GET".equals(request.getMethod());
+    boolean isPost = "POST".equals(request.getMethod());
+    switch (request.getServletPath()) {
+      case "/liftrides":
+        return isGet ? Endpoint.LIFTRIDES_GET : isPost ? Endpoint.LIFTRIDES_POST : null;
+      case "/resorts":
+        return isGet ? Endpoint.RESORTS_GET : isPost ? Endpoint.RESORTS_POST : null;
+      case "/skiers":
+        return isGet ? Endpoint.SKIERS_GET : null;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Finds the key of the client that sent a request
+   * @param request is the request received
+   * @return the client's user name (prefixed, so it can't clash with an address) if it sent
+   *         valid Basic credentials, otherwise its address
+   */
+  private static String clientOf(HttpServletRequest request) {
+    String user = BasicAuth.userOf(request.getHeader("Authorization"));
+    if (user != null) {
+      return "user:" + user;
+    }
+    if (CLIENT_HEADER != null) {
+      String forwarded = request.getHeader(CLIENT_HEADER);
+      if (forwarded != null && !forwarded.isEmpty()) {
+        int comma = forwarded.indexOf(',');
+        return (comma < 0 ? forwarded : forwarded.substring(0, comma)).trim();
+      }
+    }
+    return request.getRemoteAddr();
+  }
+}
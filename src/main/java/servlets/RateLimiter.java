@@ -0,0 +1,323 @@
+package servlets;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import requestlog.Endpoint;
+
+/**
+ * Per-client rate limits, so one runaway caller (a misbehaving gate controller, a load test)
+ * can't take over our servlets. Each client (authenticated user or address) has a token bucket
+ * per endpoint, kept as a single time stamp (the generic cell rate algorithm): a request takes a
+ * token by moving its bucket's time stamp forward with a compare-and-set, so the hot path takes
+ * no locks and clients never contend with each other. There is no shared bucket, so a client
+ * over its rate is throttled on its own without eating into any other client's (or resort's)
+ * share. At most RATE_LIMIT_MAX_CLIENTS (100000 by default) clients are tracked; full buckets
+ * are swept away (a full bucket is the same as a new one), and when the bound is reached the
+ * oldest clients are evicted, giving clients still using their buckets a second chance.
+ * Configured with the RATE_LIMIT_* system properties: RATE_LIMIT_PER_SEC (100) and
+ * RATE_LIMIT_BURST (200) for every endpoint, overridden per endpoint by e.g.
+ * RATE_LIMIT_LIFTRIDES_POST_PER_SEC and RATE_LIMIT_LIFTRIDES_POST_BURST. Off unless
+ * RATE_LIMIT_ENABLED is TRUE, and retunable at runtime over JMX.
+ */
+public class RateLimiter implements RateLimiterMXBean {
+  private static final Endpoint[] ENDPOINTS = Endpoint.values();
+  // most tracked clients passed over (still using their buckets) per eviction
+  private static final int SECOND_CHANCES = 16;
+  private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+  // buckets in the order they were created (or last given a second chance)
+  private final ConcurrentLinkedQueue<Bucket> age = new ConcurrentLinkedQueue<>();
+  // our time origin, so buckets' time stamps start out at 0 (full)
+  private final long origin = System.nanoTime();
+  private final AtomicLong rejected = new AtomicLong();
+  private volatile boolean enabled;
+  private volatile int maxClients;
+  private volatile Limit[] limits = new Limit[ENDPOINTS.length];
+
+  /**
+   * An endpoint's rate and burst, with their GCRA equivalents
+   */
+  private static final class Limit {
+    private final double perSec;
+    private final int burst;
+    // time between tokens, 0 for no limit
+    private final long intervalNanos;
+    // how far ahead of now a bucket's time stamp may run, i.e. burst tokens
+    private final long toleranceNanos;
+
+    /**
+     * Creates a limit
+     * @param perSec is the sustained requests per second allowed, 0 for no limit
+     * @param burst is the most requests allowed at once after a quiet period
+     */
+    private Limit(double perSec, int burst) {
+      this.perSec = perSec;
+      this.burst = burst;
+      this.intervalNanos = perSec > 0 ? Math.max(1, (long) (1e9 / perSec)) : 0;
+      this.toleranceNanos = intervalNanos * burst;
+    }
+  }
+
+  /**
+   * One client's buckets, one time stamp per endpoint: the time (in ns since our origin) at
+   * which the bucket will be full again
+   */
+  private static final class Bucket {
+    private final String client;
+    private final AtomicLongArray fullAt = new AtomicLongArray(ENDPOINTS.length);
+
+    /**
+     * Creates a client's (full) buckets
+     * @param client is the client's key
+     */
+    private Bucket(String client) {
+      this.client = client;
+    }
+
+    /**
+     * Checks whether every bucket is full, so forgetting the client loses nothing
+     * @param now is the current time in ns since our origin
+     * @return true if the client has no tokens outstanding, false otherwise
+     */
+    private boolean isFull(long now) {
+      for (int i = 0; i < ENDPOINTS.length; i++) {
+        if (fullAt.get(i) > now) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Creates a limiter with the same limit for every endpoint
+   * @param enabled is false to admit every request
+   * @param perSec is the sustained requests per second allowed, 0 for no limit
+   * @param burst is the most requests allowed at once after a quiet period
+   * @param maxClients is the most clients tracked at once
+   */
+  public RateLimiter(boolean enabled, double perSec, int burst, int maxClients) {
+    this.enabled = enabled;
+    this.maxClients = maxClients;
+    for (Endpoint endpoint : ENDPOINTS) {
+      limits[endpoint.ordinal()] = new Limit(perSec, burst);
+    }
+  }
+
+  /**
+   * Gets our shared limiter, starting its sweeps on first use
+   * @return the limiter our filter admits requests with
+   */
+  public static RateLimiter getInstance() {
+    return InstanceHolder.INSTANCE;
+  }
+
+  /**
+   * Lazily builds our shared limiter the first time a request needs it
+   */
+  private static class InstanceHolder {
+    private static final RateLimiter INSTANCE = create();
+
+    /**
+     * Builds our shared limiter from our system properties and schedules its sweeps
+     * @return the shared limiter
+     */
+    private static RateLimiter create() {
+      double perSec = Double.parseDouble(System.getProperty("RATE_LIMIT_PER_SEC", "100"));
+      int burst = Integer.getInteger("RATE_LIMIT_BURST", 200);
+      RateLimiter limiter = new RateLimiter(
+              "TRUE".equals(System.getProperty("RATE_LIMIT_ENABLED")), perSec, burst,
+              Integer.getInteger("RATE_LIMIT_MAX_CLIENTS", 100000));
+      for (Endpoint endpoint : ENDPOINTS) {
+        String prefix = "RATE_LIMIT_" + endpoint.name();
+        String endpointPerSec = System.getProperty(prefix + "_PER_SEC");
+        limiter.setLimit(endpoint.name(),
+                endpointPerSec != null ? Double.parseDouble(endpointPerSec) : perSec,
+                Integer.getInteger(prefix + "_BURST", burst));
+      }
+      ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "rate-limit-sweep");
+        thread.setDaemon(true);
+        return thread;
+      });
+      long period = Long.getLong("RATE_LIMIT_SWEEP_SECS", 10L);
+      sweeper.scheduleWithFixedDelay(limiter::sweep, period, period, TimeUnit.SECONDS);
+      return limiter;
+    }
+  }
+
+  /**
+   * Takes a token from a client's bucket for an endpoint
+   * @param client is the client's key, e.g. its user name or address
+   * @param endpoint is the endpoint requested
+   * @return 0 if the request is admitted, otherwise how long (in ns) until the client's next
+   *         token, for its Retry-After
+   */
+  public long tryAcquire(String client, Endpoint endpoint) {
+    Limit limit = limits[endpoint.ordinal()];
+    if (!enabled || limit.intervalNanos == 0) {
+      return 0;
+    }
+    Bucket bucket = buckets.get(client);
+    if (bucket == null) {
+      bucket = track(client);
+    }
+    int index = endpoint.ordinal();
+    while (true) {
+      long fullAt = bucket.fullAt.get(index);
+      long now = System.nanoTime() - origin;
+      long newFullAt = Math.max(fullAt, now) + limit.intervalNanos;
+      long ahead = newFullAt - now;
+      if (ahead > limit.toleranceNanos) {
+        rejected.incrementAndGet();
+        return ahead - limit.toleranceNanos;
+      }
+      if (bucket.fullAt.compareAndSet(index, fullAt, newFullAt)) {
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * Starts tracking a client, evicting the oldest clients over our bound
+   * @param client is the client's key
+   * @return the client's buckets
+   */
+  private Bucket track(String client) {
+    Bucket bucket = new Bucket(client);
+    Bucket existing = buckets.putIfAbsent(client, bucket);
+    if (existing != null) {
+      return existing;
+    }
+    age.add(bucket);
+    long now = System.nanoTime() - origin;
+    int passedOver = 0;
+    while (buckets.size() > maxClients) {
+      Bucket oldest = age.poll();
+      if (oldest == null) {
+        break;
+      }
+      if (buckets.get(oldest.client) != oldest) {
+        // already swept
+        continue;
+      }
+      if (!oldest.isFull(now) && passedOver++ < SECOND_CHANCES) {
+        age.add(oldest);
+        continue;
+      }
+      buckets.remove(oldest.client, oldest);
+    }
+    return bucket;
+  }
+
+  /**
+   * Forgets every client whose buckets are all full again
+   */
+  private void sweep() {
+    long now = System.nanoTime() - origin;
+    Iterator<Bucket> oldestFirst = age.iterator();
+    while (oldestFirst.hasNext()) {
+      Bucket bucket = oldestFirst.next();
+      if (buckets.get(bucket.client) != bucket) {
+        oldestFirst.remove();
+      } else if (bucket.isFull(now)) {
+        oldestFirst.remove();
+        buckets.remove(bucket.client, bucket);
+      }
+    }
+  }
+
+  /**
+   * @return true if clients over their rates are rejected, false if every request is admitted
+   */
+  @Override
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Turns rate limiting on or off
+   * @param enabled is false to admit every request
+   */
+  @Override
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * @return each endpoint's limit, e.g. "POST /liftrides 100.0/s burst 200"
+   */
+  @Override
+  public String[] getLimits() {
+    Limit[] current = limits;
+    String[] described = new String[ENDPOINTS.length];
+    for (Endpoint endpoint : ENDPOINTS) {
+      Limit limit = current[endpoint.ordinal()];
+      described[endpoint.ordinal()] = endpoint.getLabel() + (limit.intervalNanos == 0
+              ? " unlimited" : " " + limit.perSec + "/s burst " + limit.burst);
+    }
+    return described;
+  }
+
+  /**
+   * Changes an endpoint's limit for every client, applied from the next request
+   * @param endpoint is the endpoint's name, e.g. LIFTRIDES_POST
+   * @param perSec is the sustained requests per second allowed, 0 for no limit
+   * @param burst is the most requests allowed at once after a quiet period, at least 1
+   * @throws IllegalArgumentException if the endpoint is unknown or the limit is out of range
+   */
+  @Override
+  public synchronized void setLimit(String endpoint, double perSec, int burst)
+          throws IllegalArgumentException {
+    Endpoint changed = Endpoint.valueOf(endpoint);
+    if (!(perSec >= 0) || burst < 1) {
+      throw new IllegalArgumentException("perSec must not be negative, burst must be at least 1");
+    }
+    Limit[] updated = limits.clone();
+    updated[changed.ordinal()] = new Limit(perSec, burst);
+    limits = updated;
+  }
+
+  /**
+   * @return the number of clients currently tracked
+   */
+  @Override
+  public int getClients() {
+    return buckets.size();
+  }
+
+  /**
+   * @return the most clients tracked at once
+   */
+  @Override
+  public int getMaxClients() {
+    return maxClients;
+  }
+
+  /**
+   * Changes the most clients tracked at once, a lowered bound evicts the oldest clients when the
+   * next new client arrives
+   * @param maxClients is the new bound, at least 1
+   * @throws IllegalArgumentException if maxClients is below 1
+   */
+  @Override
+  public void setMaxClients(int maxClients) throws IllegalArgumentException {
+    if (maxClients < 1) {
+      throw new IllegalArgumentException("maxClients must be at least 1");
+    }
+    this.maxClients = maxClients;
+  }
+
+  /**
+   * @return the total number of requests rejected so far
+   */
+  @Override
+  public long getRejected() {
+    return rejected.get();
+  }
+}
@@ -0,0 +1,53 @@
+package servlets;
+
+/**
+ * Runtime view of our RateLimiter's settings and what they are doing
+ */
+public interface RateLimiterMXBean {
+  /**
+   * @return true if clients over their rates are rejected, false if every request is admitted
+   */
+  boolean isEnabled();
+
+  /**
+   * Turns rate limiting on or off
+   * @param enabled is false to admit every request
+   */
+  void setEnabled(boolean enabled);
+
+  /**
+   * @return each endpoint's limit, e.g. "POST /liftrides 100.0/s burst 200"
+   */
+  String[] getLimits();
+
+  /**
+   * Changes an endpoint's limit for every client
+   * @param endpoint is the endpoint's name, e.g. LIFTRIDES_POST
+   * @param perSec is the sustained requests per second allowed, 0 for no limit
+   * @param burst is the most requests allowed at once after a quiet period, at least 1
+   * @throws IllegalArgumentException if the endpoint is unknown or the limit is out of range
+   */
+  void setLimit(String endpoint, double perSec, int burst) throws IllegalArgumentException;
+
+  /**
+   * @return the number of clients currently tracked
+   */
+  int getClients();
+
+  /**
+   * @return the most clients tracked at once
+   */
+  int getMaxClients();
+
+  /**
+   * Changes the most clients tracked at once
+   * @param maxClients is the new bound, at least 1
+   * @throws IllegalArgumentException if maxClients is below 1
+   */
+  void setMaxClients(int maxClients) throws IllegalArgumentException;
+
+  /**
+   * @return the total number of requests rejected so far
+   */
+  long getRejected();
+}
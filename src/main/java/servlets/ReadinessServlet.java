@@ -0,0 +1,38 @@
+package servlets;
+
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import servlethelpers.JsonCodecs;
+
+/**
+ * Our readiness servlet that responds to /ready, for load balancers to hold a freshly deployed
+ * server out of service until WarmupListener has warmed it up.
+ */
+@WebServlet(name = "ReadinessServlet", urlPatterns = {"/ready"}, loadOnStartup = 1)
+public class ReadinessServlet extends HttpServlet {
+
+  /**
+   * Answers a readiness check with a 200 once warm-up has finished, a 503 until then
+   * @param request is the GET request received by the servlet
+   * @param response is the HTTP response that this servlet will return
+   * @throws IOException if there was an issue writing to the response to be returned
+   */
+  @Override
+  protected void doGet(HttpServletRequest request, HttpServletResponse response)
+          throws IOException {
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader("Cache-Control", "no-store");
+    if (WarmupListener.isReady()) {
+      response.setStatus(HttpServletResponse.SC_OK);
+      response.getWriter().write(JsonCodecs.message("Ready"));
+    } else {
+      response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      response.setHeader("Retry-After", "1");
+      response.getWriter().write(JsonCodecs.message("Warming up"));
+    }
+  }
+}
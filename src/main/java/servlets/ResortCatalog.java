@@ -0,0 +1,140 @@
+package servlets;
+
+import com.google.gson.Gson;
+import daos.ResortDAO;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import servlethelpers.JsonCodecs;
+import servlethelpers.ResortList;
+
+/**
+ * Our resort catalog, cached in memory with its serialized JSON body and reloaded from the
+ * resorts table at most every RESORT_CATALOG_RELOAD_SECS (60 by default). A reload is done by
+ * one request while the others keep using the current catalog, and the catalog's version only
+ * changes when a reload actually finds different resorts. A reload that cannot read the table
+ * keeps the current catalog and is retried after RESORT_CATALOG_RETRY_SECS (1 by default); until
+ * the catalog has loaded once there is none, and every request tries to load it.
+ */
+public class ResortCatalog {
+  private static final ResortCatalog INSTANCE = new ResortCatalog(
+          Long.getLong("RESORT_CATALOG_RELOAD_SECS", 60L) * 1000,
+          Long.getLong("RESORT_CATALOG_RETRY_SECS", 1L) * 1000);
+  private final long reloadMillis;
+  private final long retryMillis;
+  private final ReentrantLock reloading = new ReentrantLock();
+  private final Gson gson = JsonCodecs.gson();
+  private volatile Snapshot snapshot;
+
+  /**
+   * One loaded version of the catalog
+   */
+  public static final class Snapshot {
+    private final long version;
+    private final long loadedAt;
+    private final ResortList resorts;
+    private final byte[] body;
+
+    /**
+     * Creates a snapshot
+     * @param version is the version of the catalog
+     * @param loadedAt is when (ms since the epoch) the catalog was loaded
+     * @param resorts is the loaded resorts
+     * @param body is the serialized JSON of the resorts
+     */
+    private Snapshot(long version, long loadedAt, ResortList resorts, byte[] body) {
+      this.version = version;
+      this.loadedAt = loadedAt;
+      this.resorts = resorts;
+      this.body = body;
+    }
+
+    /**
+     * Simple getter for the version of this snapshot
+     * @return the catalog version
+     */
+    public long getVersion() {
+      return version;
+    }
+
+    /**
+     * Simple getter for the resorts of this snapshot, which must not be modified
+     * @return the resorts
+     */
+    public ResortList getResorts() {
+      return resorts;
+    }
+
+    /**
+     * Simple getter for the serialized JSON of this snapshot's resorts, which must not be modified
+     * @return the UTF-8 JSON body
+     */
+    public byte[] getBody() {
+      return body;
+    }
+  }
+
+  /**
+   * Creates an empty catalog, loaded on first use
+   * @param reloadMillis is how long (ms) a loaded catalog is used before reloading it
+   * @param retryMillis is how long (ms) after a failed reload it is tried again
+   */
+  ResortCatalog(long reloadMillis, long retryMillis) {
+    this.reloadMillis = reloadMillis;
+    this.retryMillis = Math.min(retryMillis, reloadMillis);
+  }
+
+  /**
+   * Gets our shared resort catalog
+   * @return the catalog our servlets read
+   */
+  public static ResortCatalog getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Gets the current catalog, loading it if it never has been and reloading it if it is due
+   * @return the current catalog snapshot, or null if it has never been loaded successfully
+   */
+  public Snapshot get() {
+    Snapshot current = snapshot;
+    if (current == null) {
+      reloading.lock();
+    } else if (System.currentTimeMillis() - current.loadedAt < reloadMillis
+            || !reloading.tryLock()) {
+      // fresh enough, or another request is already reloading it
+      return current;
+    }
+    try {
+      current = snapshot;
+      if (current == null || System.currentTimeMillis() - current.loadedAt >= reloadMillis) {
+        current = reload(current);
+        snapshot = current;
+      }
+      return current;
+    } finally {
+      reloading.unlock();
+    }
+  }
+
+  /**
+   * Loads the resorts table, keeping the previous version if nothing changed. If the table can't
+   * be read the previous snapshot is kept, marked as due for a reload after retryMillis.
+   * @param previous is the current snapshot or null if there is none
+   * @return the newly loaded snapshot, or null if there is none and the load failed
+   */
+  private Snapshot reload(Snapshot previous) {
+    ResortList resorts = new ResortDAO().getResortList();
+    if (resorts == null) {
+      return previous == null ? null : new Snapshot(previous.version,
+              System.currentTimeMillis() - reloadMillis + retryMillis, previous.resorts,
+              previous.body);
+    }
+    byte[] body = gson.toJson(resorts, ResortList.class).getBytes(StandardCharsets.UTF_8);
+    long version = previous == null ? 1 : previous.version;
+    if (previous != null && !Arrays.equals(previous.body, body)) {
+      version++;
+    }
+    return new Snapshot(version, System.currentTimeMillis(), resorts, body);
+  }
+}
@@ -1,45 +1,153 @@
 package servlets;
 
 import com.google.gson.Gson;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.stream.Collectors;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.*;
 import javax.servlet.ServletException;
 
+import aggregates.ResortSketches;
+import aggregates.RideAggregates;
 import daos.ResortDAO;
+import requestlog.Endpoint;
+import requestlog.RequestLog;
 import servlethelpers.*;
+import stream.RideEventBus;
 
 /**
  * Our Resort servlet that will respond to URLs matching the /resorts/* pattern
  */
-@WebServlet(name = "ResortServlet", urlPatterns = {"/resorts", "/resorts/*"})
+@WebServlet(name = "ResortServlet", urlPatterns = {"/resorts", "/resorts/*"},
+            asyncSupported = true, loadOnStartup = 1)
 public class ResortServlet extends HttpServlet {
-  private final Gson gson = new Gson();
+  private final Gson gson = JsonCodecs.gson();
+  // 2021 is the only valid season of every resort
+  private static final byte[] SEASONS_BODY = seasonsBody();
 
   /**
-   * Internal helper function to determine if the given URL is of superficial valid form for
-   * further processing.
-   * @param parts is the various parts of the URL normally separated by "/"
-   * @return true if the URL is of a valid form, false otherwise
+   * Serializes the season list every resort returns
+   * @return the UTF-8 JSON body of our seasons response
    */
-  private boolean isValid(String[] parts) {
-    // this is our /resorts/{resortID}/seasons path pattern
-    if (parts.length == 3) {
-      if (!parts[0].equals("") || !parts[2].equals("seasons")) {
-        return false;
-      }
-      // resortID must be an integer to match API
-      try {
-        int id = Integer.parseInt(parts[1]);
-      } catch (NumberFormatException e) {
-        return false;
-      }
-      return true;
+  private static byte[] seasonsBody() {
+    SeasonList validSeasons = new SeasonList();
+    validSeasons.addSeason("2021");
+    return JsonCodecs.gson().toJson(validSeasons, SeasonList.class)
+            .getBytes(StandardCharsets.UTF_8);
+  }
+
+  private final PathRouter getRoutes = new PathRouter()
+          .route("/{resortID}/seasons", this::getSeasons)
+          .route("/{resortID}/days/{dayID}/lifts/{liftID}", this::getLiftHours)
+          .route("/{resortID}/stats", this::getStats)
+          .route("/{resortID}/liftrides/stream", this::watchRides);
+  private final PathRouter postRoutes = new PathRouter()
+          .route("/{resortID}/seasons", this::addSeason);
+  // parseYear results for bodies that aren't {"year":"YYYY"} and for years that aren't digits
+  private static final int INVALID_BODY = -1;
+  private static final int INVALID_YEAR = -2;
+
+  /**
+   * Helper method for doGet that returns the seasons of a resort, the only valid one being 2021
+   * @param request is the GET request received by the servlet
+   * @param response is the HTTP response that this servlet will return
+   * @param params is the routed path's parameters, the resortID
+   * @throws IOException if there was an issue writing to the response to be returned
+   */
+  private void getSeasons(HttpServletRequest request, HttpServletResponse response, int[] params)
+          throws IOException {
+    int id = params[0];
+    ResortCatalog.Snapshot catalog = catalogOrUnavailable(response);
+    if (catalog == null) {
+      return;
+    } else if (!catalog.getResorts().resortExists(id)) {
+      writeMessage(response, HttpServletResponse.SC_NOT_FOUND, "Resort not found");
+      return;
+    }
+    // otherwise we've found our resort and return the only valid season of 2021
+    if (!notModified(request, response, ResourceVersions.getInstance()
+            .catalogETag(catalog.getVersion(), "seasons" + id))) {
+      response.setStatus(HttpServletResponse.SC_OK);
+      response.setContentLength(SEASONS_BODY.length);
+      response.getOutputStream().write(SEASONS_BODY);
     }
-    // return false if the path given is some other pattern
-    return false;
+  }
+
+  /**
+   * Helper method for doGet that returns the hourly ride counts of one of a resort's lifts on a
+   * day of the year
+   * @param request is the GET request received by the servlet
+   * @param response is the HTTP response that this servlet will return
+   * @param params is the routed path's parameters, the resortID, dayID and liftID
+   * @throws IOException if there was an issue writing to the response to be returned
+   */
+  private void getLiftHours(HttpServletRequest request, HttpServletResponse response,
+                            int[] params) throws IOException {
+    int resortID = params[0];
+    int dayID = params[1];
+    int liftID = params[2];
+    if (resortID < 1 || dayID < 1 || dayID > 366 || liftID < 1) {
+      writeInvalid(response);
+      return;
+    }
+    LiftHourCounts counts = RideAggregates.getInstance().getLiftHourCounts(resortID, dayID, liftID);
+    response.setStatus(HttpServletResponse.SC_OK);
+    gson.toJson(counts, LiftHourCounts.class, response.getWriter());
+  }
+
+  /**
+   * Helper method for doGet that turns the request into a Server-Sent Events stream of a resort's
+   * new lift rides
+   * @param request is the GET request received by the servlet
+   * @param response is the HTTP response that this servlet will return
+   * @param params is the routed path's parameters, the resortID
+   * @throws IOException if there was an issue writing to the response to be returned
+   */
+  private void watchRides(HttpServletRequest request, HttpServletResponse response, int[] params)
+          throws IOException {
+    if (params[0] < 1) {
+      writeInvalid(response);
+    } else {
+      RideEventBus.getInstance().subscribe(request, response, params[0]);
+    }
+  }
+
+  /**
+   * Helper method for doGet that returns a resort's approximate statistics. The optional query
+   * parameters are day (day of the year, today by default), top (number of busiest lifts, 10 by
+   * default) and sketches (true to include the mergeable sketches).
+   * @param request is the GET request received by the servlet
+   * @param response is the HTTP response that this servlet will return
+   * @param params is the routed path's parameters, the resortID
+   * @throws IOException if there was an issue writing to the response to be returned
+   */
+  private void getStats(HttpServletRequest request, HttpServletResponse response, int[] params)
+          throws IOException {
+    int resortID = params[0];
+    if (resortID < 1) {
+      writeInvalid(response);
+      return;
+    }
+    int dayID;
+    int top;
+    try {
+      String day = request.getParameter("day");
+      String topParam = request.getParameter("top");
+      dayID = day == null ? RideAggregates.today() : Integer.parseInt(day);
+      top = topParam == null ? 10 : Integer.parseInt(topParam);
+    } catch (NumberFormatException e) {
+      dayID = -1;
+      top = -1;
+    }
+    if (dayID < 1 || dayID > 366 || top < 1 || top > ResortSketches.maxTop()) {
+      writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid stats parameters");
+      return;
+    }
+    boolean withSketches = "true".equals(request.getParameter("sketches"));
+    ResortStats stats = ResortSketches.getInstance().getStats(resortID, dayID, top, withSketches);
+    response.setStatus(HttpServletResponse.SC_OK);
+    gson.toJson(stats, ResortStats.class, response.getWriter());
   }
 
   /**
@@ -52,14 +160,62 @@ public class ResortServlet extends HttpServlet {
    */
   private void writeMessage(HttpServletResponse response, int code, String msg) throws IOException {
     response.setStatus(code);
-    Message err = new Message(msg);
-    String jsonErr = gson.toJson(err);
-    response.getWriter().write(jsonErr);
+    response.getWriter().write(JsonCodecs.message(msg));
+  }
+
+  /**
+   * Helper function for our doGet and doPost that rejects a request whose URL is not of a valid
+   * form with a 400
+   * @param response is the HttpServletResponse whose return code and body we are writing
+   * @throws IOException if there is an issue writing to the response body
+   */
+  private void writeInvalid(HttpServletResponse response) throws IOException {
+    writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "URL or Resort ID invalid");
+  }
+
+  /**
+   * Helper function that gets our resort catalog, or rejects the request with a 503 if it has
+   * never been loaded (the database can't be read)
+   * @param response is the HttpServletResponse written to if there is no catalog
+   * @return the current catalog, or null if the request was rejected
+   * @throws IOException if there is an issue writing to the response body
+   */
+  private ResortCatalog.Snapshot catalogOrUnavailable(HttpServletResponse response)
+          throws IOException {
+    ResortCatalog.Snapshot catalog = ResortCatalog.getInstance().get();
+    if (catalog == null) {
+      response.setHeader("Retry-After", "1");
+      writeMessage(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+              "Resort catalog unavailable");
+    }
+    return catalog;
+  }
+
+  /**
+   * Helper function for our doGet that answers a conditional GET: it sets the resource's ETag
+   * and, if the client's copy is current, a 304 with no body
+   * @param request is the GET request received by the servlet
+   * @param response is the HTTP response that this servlet will return
+   * @param etag is the resource's current ETag
+   * @return true if a 304 was sent and nothing more should be written, false otherwise
+   */
+  private boolean notModified(HttpServletRequest request, HttpServletResponse response,
+                              String etag) {
+    response.setHeader("ETag", etag);
+    if (ResourceVersions.matches(request.getHeader("If-None-Match"), etag)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return true;
+    }
+    return false;
   }
 
   /**
    * This handles the GET requests sent to our servlet. The only valid GET requests are to
-   * get the list of resorts or to get the seasons of a specific resort identified by its unique ID.
+   * get the list of resorts, to get the seasons of a specific resort identified by its unique ID,
+   * to get the hourly ride counts of one of a resort's lifts on a given day, to get a resort's
+   * approximate statistics, or to watch a resort's new lift rides as a Server-Sent Events
+   * stream. The resort list and seasons come from our cached ResortCatalog and carry ETags, so a
+   * client with a current copy gets a 304.
    * @param request is the GET request received by the servlet
    * @param response is the HTTP response that this servlet will return
    * @throws IOException if there was an issue writing to the response to be returned
@@ -67,58 +223,109 @@ public class ResortServlet extends HttpServlet {
   @Override
   protected void doGet(HttpServletRequest request, HttpServletResponse response)
           throws ServletException, IOException {
+    long requestStart = RequestLog.getInstance().start();
+    long requestId = Correlation.takeRequestId(request, response);
     response.setContentType("application/json");
     response.setCharacterEncoding("UTF-8");
 
-    // our resorts
-    ResortList resorts = new ResortDAO().getResortList();
-    SeasonList validSeasons = new SeasonList();
-    validSeasons.addSeason("2021");
-
     String path = request.getPathInfo();
     // this means that the /resorts endpoint given
     // return list of resorts
     if (path == null) {
-      response.setStatus(HttpServletResponse.SC_OK);
-      response.getWriter().write(gson.toJson(resorts));
-      return;
+      ResortCatalog.Snapshot catalog = catalogOrUnavailable(response);
+      if (catalog != null && !notModified(request, response, ResourceVersions.getInstance()
+              .catalogETag(catalog.getVersion(), "resorts"))) {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentLength(catalog.getBody().length);
+        response.getOutputStream().write(catalog.getBody());
+      }
+    } else if (!getRoutes.dispatch(path, request, response)) {
+      writeInvalid(response);
     }
+    if (!WarmupListener.isSynthetic(request)) {
+      RequestLog.getInstance().record(Endpoint.RESORTS_GET, response.getStatus(), requestStart,
+              requestId);
+    }
+  }
 
-    // split our path into parts to validate and process
-    String[] parts = path.split("/");
-    // first ensure basic validity
-    if (!isValid(parts)) {
-      writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "URL or Resort ID invalid");
-      return;
+  /**
+   * Helper method for addSeason which parses a {"year":"YYYY"} request body by scanning it one
+   * character at a time, ignoring whitespace between tokens
+   * @param body is the reader over the request body
+   * @return the year, INVALID_BODY if the body is not of this form, or INVALID_YEAR if the year
+   *         is not 4 digits
+   * @throws IOException if the body could not be read
+   */
+  private static int parseYear(Reader body) throws IOException {
+    if (nextToken(body) != '{' || nextToken(body) != '"') {
+      return INVALID_BODY;
+    }
+    for (int i = 0; i < "year".length(); i++) {
+      if (body.read() != "year".charAt(i)) {
+        return INVALID_BODY;
+      }
+    }
+    if (body.read() != '"' || nextToken(body) != ':' || nextToken(body) != '"') {
+      return INVALID_BODY;
     }
-     int id = Integer.parseInt(parts[1]);
-     if (!resorts.resortExists(id)) {
-       writeMessage(response, HttpServletResponse.SC_NOT_FOUND, "Resort not found");
-       return;
-     }
-     // otherwise we've found our resort and return the only valid season of 2021
-     response.setStatus(HttpServletResponse.SC_OK);
-     response.getWriter().write(gson.toJson(validSeasons));
+    int year = 0;
+    boolean digits = true;
+    for (int i = 0; i < 4; i++) {
+      int c = body.read();
+      if (c < 0 || c == '"') {
+        return INVALID_BODY;
+      }
+      digits &= c >= '0' && c <= '9';
+      year = year * 10 + (c - '0');
+    }
+    if (body.read() != '"' || nextToken(body) != '}' || nextToken(body) != -1) {
+      return INVALID_BODY;
+    }
+    return digits ? year : INVALID_YEAR;
   }
 
   /**
-   * Helper method for doPost which takes the request body and parses it under the assumption it is
-   * JSON formatted.
-   * @param request is the original HTTP request received
-   * @return the JSON request body split into its key/value pair(s) as a String array
+   * Reads the next character of a request body that isn't whitespace
+   * @param body is the reader over the request body
+   * @return the character, or -1 at the end of the body
+   * @throws IOException if the body could not be read
    */
-  private String[] parseRequestBody(HttpServletRequest request) {
-    try {
-      // get the body and read it into a string
-      BufferedReader body = request.getReader();
-      String lines = body.lines().collect(Collectors.joining());
-      lines = lines.replace(" ", "");
-      // make parsing a little easier
-      lines = lines.replace("{", "");
-      lines = lines.replace("}", "");
-      return lines.split(":");
-    } catch (IOException e) {
-      return null;
+  private static int nextToken(Reader body) throws IOException {
+    int c;
+    do {
+      c = body.read();
+    } while (c == ' ' || c == '\t' || c == '\r' || c == '\n');
+    return c;
+  }
+
+  /**
+   * Helper method for doPost which adds a new season to a resort, which must exist
+   * @param request is the POST request received by the servlet
+   * @param response is the HTTP response that this servlet will return
+   * @param params is the routed path's parameters, the resortID
+   * @throws IOException if there was an issue writing to the response to be returned
+   */
+  private void addSeason(HttpServletRequest request, HttpServletResponse response, int[] params)
+          throws IOException {
+    int id = params[0];
+    int year = parseYear(request.getReader());
+    // must be "year" followed by a valid 4 character year
+    if (year == INVALID_BODY) {
+      writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid request body");
+      return;
+    } else if (year == INVALID_YEAR) {
+      // year provided must be a valid 4 digit int
+      writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "Year in invalid format");
+      return;
+    }
+    ResortCatalog.Snapshot catalog = catalogOrUnavailable(response);
+    if (catalog == null) {
+      return;
+    } else if (!catalog.getResorts().resortExists(id)) {
+      writeMessage(response, HttpServletResponse.SC_NOT_FOUND, "Resort not found");
+    } else {
+      // would be writing this year out to database, but not needed for Assignment 3
+      response.setStatus(HttpServletResponse.SC_CREATED);
     }
   }
 
@@ -133,49 +340,20 @@ public class ResortServlet extends HttpServlet {
   @Override
   protected void doPost(HttpServletRequest request, HttpServletResponse response)
           throws ServletException, IOException {
+    long requestStart = RequestLog.getInstance().start();
+    long requestId = Correlation.takeRequestId(request, response);
     response.setContentType("application/json");
     response.setCharacterEncoding("UTF-8");
     String path = request.getPathInfo();
     // must have a full path
     if (path == null || path.isEmpty()) {
       writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "URL missing");
-      return;
-    }
-    // split our path into parts to validate and process
-    String[] parts = path.split("/");
-
-    // first ensure basic validity
-    if (!isValid(parts)) {
-      writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "URL or Resort ID invalid");
-      return;
+    } else if (!postRoutes.dispatch(path, request, response)) {
+      writeInvalid(response);
     }
-
-    // our resorts
-    ResortList resorts = new ResortDAO().getResortList();
-    SeasonList validSeasons = new SeasonList();
-    validSeasons.addSeason("2021");
-
-    String[] field = parseRequestBody(request);
-    // must be "year" followed by a valid 4 character year
-    if (field == null || !field[0].equals("\"year\"") || field[1].length() != 6) {
-      writeMessage(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid request body");
-      return;
-    }
-
-    // make sure we are safe to cast values to numbers
-    try {
-      int id = Integer.parseInt(parts[1]);
-      int year = Integer.parseInt(field[1].replace("\"", ""));
-      if (!resorts.resortExists(id)) {
-        writeMessage(response, HttpServletResponse.SC_NOT_FOUND, "Resort not found");
-        return;
-      }
-      // would be writing this year out to database, but not needed for Assignment 3
-      response.setStatus(HttpServletResponse.SC_CREATED);
-    // year provided must be convertible to a valid 4 digit int
-    } catch (NumberFormatException e) {
-      writeMessage(response, HttpServletResponse.SC_BAD_REQUEST,
-              "Year in invalid format");
+    if (!WarmupListener.isSynthetic(request)) {
+      RequestLog.getInstance().record(Endpoint.RESORTS_POST, response.getStatus(), requestStart,
+              requestId);
     }
   }
 }
@@ -0,0 +1,127 @@
+package servlets;
+
+import daos.ShardRouter;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import servlethelpers.LiftRide;
+
+/**
+ * Cheap version counters behind our ETags. Each skier's rides are versioned by one of a fixed
+ * number of striped counters (skiers sharing a stripe just revalidate a little more often) and the
+ * whole liftrides table by a single counter, all bumped as rides are written. ETags also carry a
+ * random per-process epoch so a restarted server never reuses an old ETag.
+ * Ride counters only see writes made through this server, so a ride written through another
+ * server would leave them stale. Skier and liftrides ETags are therefore only issued with
+ * ETAG_SINGLE_WRITER=TRUE, when this server is known to make every write, and only when the
+ * shards have no read replicas: rides are read from replicas, and a lagging replica's rides
+ * would otherwise go out under the ETag of a write it hasn't seen yet, and be answered with 304s
+ * until the next write. Otherwise those resources have no ETag and are always read. Catalog ETags
+ * come from the resorts table itself, so they are always issued.
+ */
+public class ResourceVersions implements LiftRideListener {
+  private static final int SKIER_STRIPES = 1 << 16;
+  private static final ResourceVersions INSTANCE = new ResourceVersions(
+          System.getProperty("ETAG_SINGLE_WRITER", "FALSE").equalsIgnoreCase("TRUE")
+                  && !ShardRouter.getDefault().hasReplicas());
+  private final String epoch = Long.toHexString(new SecureRandom().nextLong());
+  private final AtomicLongArray skierVersions = new AtomicLongArray(SKIER_STRIPES);
+  private final AtomicLong allVersion = new AtomicLong();
+  private final boolean singleWriter;
+
+  /**
+   * Creates our version counters
+   * @param singleWriter is whether this server makes every write and every ride is read from a
+   *                     primary, so ride ETags can be issued
+   */
+  private ResourceVersions(boolean singleWriter) {
+    this.singleWriter = singleWriter;
+  }
+
+  /**
+   * Gets our shared version counters
+   * @return the version counters our servlets update and read
+   */
+  public static ResourceVersions getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Finds the counter stripe versioning a skier's rides
+   * @param skierID is the integer ID of the skier
+   * @return the index of the skier's stripe
+   */
+  private static int stripe(int skierID) {
+    int h = skierID * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & (SKIER_STRIPES - 1);
+  }
+
+  /**
+   * Bumps the versions of a newly written ride's skier and of the whole table
+   * @param ride is the newly written lift ride
+   */
+  @Override
+  public void onLiftRideCreated(LiftRide ride) {
+    skierVersions.incrementAndGet(stripe(ride.getSkier()));
+    allVersion.incrementAndGet();
+  }
+
+  /**
+   * Builds the strong ETag of a skier's rides at their current version. It must be taken before
+   * the rides are read, so a write racing with the read leaves the ETag behind the data.
+   * @param skierID is the integer ID of the skier
+   * @return the quoted ETag, or null if this server doesn't see every write or rides are read
+   *         from replicas
+   */
+  public String skierETag(int skierID) {
+    if (!singleWriter) {
+      return null;
+    }
+    return "\"" + epoch + "-s" + skierID + "-" + skierVersions.get(stripe(skierID)) + "\"";
+  }
+
+  /**
+   * Builds the strong ETag of the whole liftrides table at its current version
+   * @return the quoted ETag, or null if this server doesn't see every write or rides are read
+   *         from replicas
+   */
+  public String allRidesETag() {
+    if (!singleWriter) {
+      return null;
+    }
+    return "\"" + epoch + "-a" + allVersion.get() + "\"";
+  }
+
+  /**
+   * Builds the strong ETag of a resort catalog version
+   * @param version is the version of the catalog
+   * @param resource names which of the catalog's representations the ETag is for
+   * @return the quoted ETag
+   */
+  public String catalogETag(long version, String resource) {
+    return "\"" + epoch + "-c" + version + "-" + resource + "\"";
+  }
+
+  /**
+   * Checks a request's If-None-Match header against a resource's current ETag
+   * @param ifNoneMatch is the request's If-None-Match header, or null if it had none
+   * @param etag is the resource's current (quoted) ETag, or null if it has none
+   * @return true if the client's copy is current and a 304 should be returned
+   */
+  public static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null || etag == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      // If-None-Match uses weak comparison
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
+      if (candidate.equals("*") || candidate.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
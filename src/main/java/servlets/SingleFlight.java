@@ -0,0 +1,55 @@
+package servlets;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical calls: while a call for a key is in flight, other callers with
+ * the same key wait for and share its result instead of making their own. Nothing is kept once
+ * the call finishes, so unlike a cache a result is never older than the calls waiting on it.
+ * @param <V> is the type of the calls' result
+ */
+public class SingleFlight<V> {
+  private final ConcurrentHashMap<Long, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * Runs the loader for the given key, or waits for and returns the result of the call already
+   * in flight for that key
+   * @param key is the key identifying identical calls
+   * @param loader is the call to make if none is in flight
+   * @return the result of the (possibly shared) call
+   * @throws RuntimeException if the (possibly shared) call threw it
+   */
+  public V execute(long key, Supplier<V> loader) throws RuntimeException {
+    CompletableFuture<V> call = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, call);
+    if (existing != null) {
+      try {
+        return existing.join();
+      } catch (CompletionException e) {
+        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+      }
+    }
+    try {
+      V result = loader.get();
+      call.complete(result);
+      return result;
+    } catch (RuntimeException | Error e) {
+      call.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, call);
+    }
+  }
+
+  /**
+   * Stops new callers from joining the call in flight for a key (e.g. because its data just
+   * changed), so they make a fresh call instead. Callers already waiting still share it.
+   * @param key is the key identifying identical calls
+   */
+  public void forget(long key) {
+    inFlight.remove(key);
+  }
+}
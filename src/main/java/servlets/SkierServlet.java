@@ -0,0 +1,77 @@
+package servlets;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.*;
+
+import aggregates.RideAggregates;
+import requestlog.Endpoint;
+import requestlog.RequestLog;
+import servlethelpers.*;
+
+/**
+ * Our Skier servlet that will respond to URLs matching the /skiers/* pattern. Its answers come
+ * from the in-memory RideAggregates rather than a scan of the skier's lift rides.
+ */
+@WebServlet(name = "SkierServlet", urlPatterns = {"/skiers/*"}, loadOnStartup = 1)
+public class SkierServlet extends HttpServlet {
+  private final Gson gson = JsonCodecs.gson();
+
+  private final PathRouter routes = new PathRouter()
+          .route("/{skierID}/days/{dayID}", this::getDayTotal);
+
+  /**
+   * Helper method for doGet that returns a skier's ride count and total vertical on a day
+   * @param request is the GET request received by the servlet
+   * @param response is the HTTP response that this servlet will return
+   * @param params is the routed path's parameters, the skierID and dayID
+   * @throws IOException if there was an issue writing to the response to be returned
+   */
+  private void getDayTotal(HttpServletRequest request, HttpServletResponse response,
+                           int[] params) throws IOException {
+    int skierID = params[0];
+    int dayID = params[1];
+    if (skierID < 1 || dayID < 1 || dayID > 366) {
+      writeInvalid(response);
+      return;
+    }
+    SkierDayTotal total = RideAggregates.getInstance().getSkierDayTotal(skierID, dayID);
+    response.setStatus(HttpServletResponse.SC_OK);
+    gson.toJson(total, SkierDayTotal.class, response.getWriter());
+  }
+
+  /**
+   * Helper function that rejects a request whose URL is not of a valid form with a 400
+   * @param response is the HttpServletResponse whose return code and body we are writing
+   * @throws IOException if there is an issue writing to the response body
+   */
+  private void writeInvalid(HttpServletResponse response) throws IOException {
+    response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+    response.getWriter().write(JsonCodecs.message("URL or ID invalid format"));
+  }
+
+  /**
+   * This handles the GET requests sent to our servlet. The only valid GET request is for a
+   * skier's ride count and total vertical on a given day of the year.
+   * @param request is the GET request received by the servlet
+   * @param response is the HTTP response that this servlet will return
+   * @throws IOException if there was an issue writing to the response to be returned
+   */
+  @Override
+  protected void doGet(HttpServletRequest request, HttpServletResponse response)
+          throws ServletException, IOException {
+    long requestStart = RequestLog.getInstance().start();
+    long requestId = Correlation.takeRequestId(request, response);
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    if (!routes.dispatch(request.getPathInfo(), request, response)) {
+      writeInvalid(response);
+    }
+    if (!WarmupListener.isSynthetic(request)) {
+      RequestLog.getInstance().record(Endpoint.SKIERS_GET, response.getStatus(), requestStart,
+              requestId);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package servlets;
+
+import aggregates.RideAggregates;
+import daos.DBCPDataSource;
+import daos.PoolSettings;
+import daos.ShardRouter;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.commons.dbcp2.BasicDataSource;
+import stream.RideEventBus;
+
+/**
+ * Registers the MXBeans through which our performance settings (set at startup from system
+ * properties) can be changed on a running server, e.g. from JConsole or VisualVM, under the
+ * "upic" domain. Each also reports what its settings are currently doing, such as the pool's
+ * borrowed connections or the limiter's rejections, so they can be tuned under live load.
+ */
+class Tunables {
+  private static final String DOMAIN = "upic";
+  private static final String[] TYPES = {"Logging", "ConcurrencyLimiter", "IdempotencyTable",
+          "RideEventBus", "RideAggregates", "RateLimiter"};
+
+  /**
+   * Registers our MXBeans with the platform MBean server, skipping any already registered: one
+   * per connection pool (upic:type=ConnectionPool,name=shard0 etc.) and one of each of TYPES. A
+   * bean that can't be created or registered is reported and skipped, it never fails servlet
+   * startup.
+   */
+  static synchronized void register() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    Supplier<?>[] beans = {LogSettings::getInstance, ConcurrencyLimiter::getInstance,
+            IdempotencyTable::getInstance, RideEventBus::getInstance, RideAggregates::getInstance,
+            RateLimiter::getInstance};
+    for (int i = 0; i < TYPES.length; i++) {
+      register(server, DOMAIN + ":type=" + TYPES[i], beans[i]);
+    }
+    try {
+      // the shard and replica pools are created along with our default router
+      ShardRouter.getDefault();
+    } catch (RuntimeException | LinkageError e) {
+      e.printStackTrace();
+    }
+    for (Map.Entry<String, BasicDataSource> pool : DBCPDataSource.getPools().entrySet()) {
+      register(server, DOMAIN + ":type=ConnectionPool,name=" + pool.getKey(),
+              () -> new PoolSettings(pool.getValue()));
+    }
+  }
+
+  /**
+   * Creates and registers one MXBean unless a bean is already registered under its name
+   * @param server is the MBean server to register with
+   * @param name is the bean's object name, e.g. upic:type=Logging
+   * @param bean creates (or gets) the bean
+   */
+  private static void register(MBeanServer server, String name, Supplier<?> bean) {
+    try {
+      ObjectName objectName = new ObjectName(name);
+      if (!server.isRegistered(objectName)) {
+        server.registerMBean(bean.get(), objectName);
+      }
+    } catch (JMException | RuntimeException | LinkageError e) {
+      // e.g. an invalid system property fails a lazily built singleton's initializer
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Unregisters our MXBeans, so an undeployed webapp's classes aren't held by the MBean server
+   */
+  static synchronized void unregister() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      for (ObjectName name : server.queryNames(new ObjectName(DOMAIN + ":*"), null)) {
+        try {
+          server.unregisterMBean(name);
+        } catch (JMException e) {
+          e.printStackTrace();
+        }
+      }
+    } catch (JMException e) {
+      e.printStackTrace();
+    }
+  }
+}
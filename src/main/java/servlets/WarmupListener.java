@@ -0,0 +1,215 @@
+package servlets;
+
+import daos.DBCPDataSource;
+import daos.LiftRideDAO;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.log4j.Logger;
+
+/**
+ * Warms a freshly deployed server up before it reports ready on /ready, so its first minute of
+ * traffic isn't served by cold code. On a background thread it opens the pool's connections and
+ * prepares our hottest statements on each (WARMUP_CONNECTIONS, as many as the pool keeps idle by
+ * default), then sends WARMUP_REQUESTS (2000 by default, 0 for none) synthetic requests over
+ * loopback through Tomcat and our servlets so the JIT compiles their request, Gson and JDBC paths.
+ * Synthetic POSTs carry an invalid body so nothing is written, and every synthetic request carries
+ * a per-process secret in its X-Warmup header so our servlets leave it out of the server and
+ * request logs. The server's port is found from Tomcat's connector MBean unless WARMUP_PORT is
+ * set, and warm-up gives up on requests after WARMUP_MAX_SECS (60 by default). The server reports
+ * ready even if warm-up fails, so warm-up can never hold it out of service.
+ */
+@WebListener
+public class WarmupListener implements ServletContextListener {
+  private static final Logger log = Logger.getLogger(WarmupListener.class);
+  private static final String WARMUP_HEADER = "X-Warmup";
+  // a random secret rather than a flag, so clients can't keep their requests out of our logs
+  private static final String WARMUP_TOKEN = Long.toHexString(new SecureRandom().nextLong());
+  private static volatile boolean ready;
+  private Thread warmer;
+
+  /**
+   * Starts warming up once our webapp is deployed
+   * @param event is the event of our webapp's ServletContext being initialized
+   */
+  @Override
+  public void contextInitialized(ServletContextEvent event) {
+    String contextPath = event.getServletContext().getContextPath();
+    warmer = new Thread(() -> warmUp(contextPath), "warmup");
+    warmer.setDaemon(true);
+    warmer.start();
+  }
+
+  /**
+   * Stops any warm-up still running when our webapp is undeployed
+   * @param event is the event of our webapp's ServletContext being destroyed
+   */
+  @Override
+  public void contextDestroyed(ServletContextEvent event) {
+    ready = false;
+    warmer.interrupt();
+  }
+
+  /**
+   * Simple getter for whether warm-up has finished
+   * @return true if the server is ready for traffic, false if it is still warming up
+   */
+  static boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Checks whether a request is one of warm-up's synthetic requests
+   * @param request is the request received by a servlet
+   * @return true if it carries our warm-up header and secret
+   */
+  static boolean isSynthetic(HttpServletRequest request) {
+    return WARMUP_TOKEN.equals(request.getHeader(WARMUP_HEADER));
+  }
+
+  /**
+   * Our warm-up thread's body: warms the pool, then our request paths, then reports ready
+   * @param contextPath is our webapp's context path, e.g. "/A3_war"
+   */
+  private static void warmUp(String contextPath) {
+    long startTime = System.currentTimeMillis();
+    try {
+      int connections = new LiftRideDAO().warmUp(warmConnections());
+      int requests = sendSyntheticRequests(contextPath);
+      log.info("Warmed up " + connections + " connections and " + requests + " requests in "
+              + (System.currentTimeMillis() - startTime) + " ms");
+    } catch (InterruptedException e) {
+      // undeployed while warming up
+      return;
+    } catch (RuntimeException e) {
+      e.printStackTrace();
+    }
+    ready = true;
+  }
+
+  /**
+   * Works out how many connections to warm per pool: WARMUP_CONNECTIONS, but no more than the
+   * pool keeps idle, as any more would be closed again as soon as they are returned
+   * @return the number of connections to warm
+   */
+  private static int warmConnections() {
+    BasicDataSource pool = DBCPDataSource.getPool();
+    int idle = pool.getMaxIdle() >= 0 ? pool.getMaxIdle() : pool.getMaxTotal();
+    if (pool.getMaxTotal() >= 0) {
+      idle = Math.min(idle, pool.getMaxTotal());
+    }
+    return Math.min(Integer.getInteger("WARMUP_CONNECTIONS", idle), idle);
+  }
+
+  /**
+   * Sends our synthetic requests, cycling through our hot GETs and an invalid POST
+   * @param contextPath is our webapp's context path
+   * @return the number of requests sent
+   * @throws InterruptedException if we were undeployed while sending
+   */
+  private static int sendSyntheticRequests(String contextPath) throws InterruptedException {
+    int count = Integer.getInteger("WARMUP_REQUESTS", 2000);
+    if (count <= 0) {
+      return 0;
+    }
+    long deadline = System.nanoTime()
+            + TimeUnit.SECONDS.toNanos(Long.getLong("WARMUP_MAX_SECS", 60L));
+    int port = findPort(deadline);
+    if (port < 0) {
+      log.warn("Warm-up found no HTTP connector, skipping synthetic requests");
+      return 0;
+    }
+    String base = "http://localhost:" + port + contextPath;
+    String credentials = System.getProperty("POST_USR") + ":" + System.getProperty("POST_PWD");
+    HttpRequest[] requests = {
+        get(base + "/resorts"),
+        get(base + "/resorts/1/seasons"),
+        get(base + "/resorts/1/days/1/lifts/1"),
+        get(base + "/resorts/1/stats"),
+        get(base + "/skiers/1/days/1"),
+        get(base + "/liftrides/1"),
+        // authenticated, parsed and then rejected for its skierID, so it writes nothing
+        HttpRequest.newBuilder(URI.create(base + "/liftrides"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"skierID\":0,\"resortID\":1,\"liftID\":1,\"time\":1}"))
+                .timeout(Duration.ofSeconds(5))
+                .setHeader("Content-Type", "application/json")
+                .setHeader(WARMUP_HEADER, WARMUP_TOKEN)
+                .setHeader("Authorization", "Basic " + Base64.getEncoder().encodeToString(
+                        credentials.getBytes(StandardCharsets.UTF_8)))
+                .build()
+    };
+    HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    int sent = 0;
+    while (sent < count && System.nanoTime() < deadline) {
+      try {
+        client.send(requests[sent % requests.length], HttpResponse.BodyHandlers.discarding());
+      } catch (IOException e) {
+        log.warn("Warm-up request failed, stopping synthetic requests: " + e.getMessage());
+        break;
+      }
+      sent++;
+    }
+    return sent;
+  }
+
+  /**
+   * Builds a synthetic GET, tagged as warm-up's
+   * @param uri is the URI to GET
+   * @return the request
+   */
+  private static HttpRequest get(String uri) {
+    return HttpRequest.newBuilder(URI.create(uri)).GET().timeout(Duration.ofSeconds(5))
+            .setHeader(WARMUP_HEADER, WARMUP_TOKEN).build();
+  }
+
+  /**
+   * Finds the port our server takes HTTP requests on, waiting for Tomcat to start its connector
+   * @param deadline is the System.nanoTime after which to give up
+   * @return WARMUP_PORT if set, otherwise the local port of Tomcat's HTTP connector, or -1 if
+   *         none was started by the deadline
+   * @throws InterruptedException if we were undeployed while waiting
+   */
+  private static int findPort(long deadline) throws InterruptedException {
+    Integer configured = Integer.getInteger("WARMUP_PORT");
+    if (configured != null) {
+      return configured;
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    while (System.nanoTime() < deadline) {
+      try {
+        // Tomcat registers its connectors as Catalina:type=Connector,... (Tomcat:... embedded)
+        for (ObjectName name : server.queryNames(new ObjectName("*:type=Connector,*"), null)) {
+          Object scheme = server.getAttribute(name, "scheme");
+          Object protocol = server.getAttribute(name, "protocol");
+          Object localPort = server.getAttribute(name, "localPort");
+          if ("http".equals(scheme) && !String.valueOf(protocol).contains("AJP")
+                  && localPort instanceof Integer && (Integer) localPort > 0) {
+            return (Integer) localPort;
+          }
+        }
+      } catch (JMException e) {
+        e.printStackTrace();
+        return -1;
+      }
+      Thread.sleep(100);
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,243 @@
+package stream;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import servlethelpers.JsonCodecs;
+import servlethelpers.LiftRide;
+import servlets.LiftRideListener;
+
+/**
+ * An in-process fan-out bus that pushes each ingested lift ride to every Server-Sent Events
+ * client watching its resort, so dashboards see new rides without polling the database. Each
+ * ride is serialized once and queued to each watcher's bounded buffer (SSE_BUFFER_EVENTS, 256 by
+ * default), with SSE_SLOW_POLICY deciding what a full buffer does (DROP_OLDEST by default,
+ * DROP_NEWEST or DISCONNECT). At most SSE_MAX_SUBSCRIBERS (10000 by default) watchers are
+ * accepted, and every SSE_HEARTBEAT_SECS (15 by default) each is sent a comment so idle
+ * connections stay open and dead ones are noticed. Watchers only see rides posted to this server.
+ * The limits and policy can be changed at runtime over JMX, and apply to watchers that connect
+ * after the change.
+ */
+public class RideEventBus implements LiftRideListener, RideEventBusMXBean {
+  /**
+   * What to do with an event for a watcher whose buffer is full
+   */
+  public enum SlowPolicy { DROP_OLDEST, DROP_NEWEST, DISCONNECT }
+
+  private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+  private final ConcurrentHashMap<Integer, Set<SseSubscriber>> watchers = new ConcurrentHashMap<>();
+  private final AtomicInteger numSubscribers = new AtomicInteger();
+  private volatile int maxSubscribers;
+  private volatile int bufferEvents;
+  private volatile SlowPolicy policy;
+  private final Gson gson = JsonCodecs.gson();
+
+  /**
+   * Creates an empty bus
+   * @param maxSubscribers is the most watchers accepted at once
+   * @param bufferEvents is the most events buffered per watcher
+   * @param policy is what a watcher's full buffer does with a new event
+   */
+  public RideEventBus(int maxSubscribers, int bufferEvents, SlowPolicy policy) {
+    this.maxSubscribers = maxSubscribers;
+    this.bufferEvents = bufferEvents;
+    this.policy = policy;
+  }
+
+  /**
+   * Gets our shared bus, starting its heartbeats on first use
+   * @return the bus our servlets publish to and subscribe with
+   * @throws IllegalArgumentException if SSE_SLOW_POLICY is not a valid policy
+   */
+  public static RideEventBus getInstance() throws IllegalArgumentException {
+    return InstanceHolder.INSTANCE;
+  }
+
+  /**
+   * Lazily builds our shared bus the first time a servlet needs it
+   */
+  private static class InstanceHolder {
+    private static final RideEventBus INSTANCE = create();
+
+    /**
+     * Builds our shared bus from our system properties and schedules its heartbeats
+     * @return the shared bus
+     */
+    private static RideEventBus create() {
+      RideEventBus bus = new RideEventBus(Integer.getInteger("SSE_MAX_SUBSCRIBERS", 10000),
+              Integer.getInteger("SSE_BUFFER_EVENTS", 256),
+              SlowPolicy.valueOf(System.getProperty("SSE_SLOW_POLICY", "DROP_OLDEST")));
+      long period = Long.getLong("SSE_HEARTBEAT_SECS", 15L);
+      ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "sse-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+      });
+      heartbeats.scheduleWithFixedDelay(bus::heartbeat, period, period, TimeUnit.SECONDS);
+      return bus;
+    }
+  }
+
+  /**
+   * Turns a request into a watcher of a resort's lift rides, leaving the request open in async
+   * mode. If we already have as many watchers as we accept, the request is answered with a 503.
+   * @param request is the GET request to turn into a watcher
+   * @param response is the HTTP response that will carry the event stream
+   * @param resortID is the integer ID of the resort to watch
+   * @throws IOException if the response could not be written
+   */
+  public void subscribe(HttpServletRequest request, HttpServletResponse response, int resortID)
+          throws IOException {
+    if (numSubscribers.incrementAndGet() > maxSubscribers) {
+      numSubscribers.decrementAndGet();
+      response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      response.getWriter().write(JsonCodecs.message("Too many watchers, retry later"));
+      return;
+    }
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType("text/event-stream");
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader("Cache-Control", "no-cache");
+    AsyncContext context = request.startAsync();
+    // watchers stay connected until they (or a failed write) end the stream
+    context.setTimeout(0);
+    SseSubscriber subscriber = new SseSubscriber(this, resortID, context, bufferEvents, policy);
+    // publishers write to the subscriber (isReady) as soon as it is in watchers, which is only
+    // allowed once its write listener is set
+    subscriber.start();
+    watchers.computeIfAbsent(resortID, k -> ConcurrentHashMap.newKeySet()).add(subscriber);
+    if (subscriber.isClosed()) {
+      // it ended before it was registered, so its own unsubscribe found nothing to remove
+      unsubscribe(subscriber);
+    }
+    // open the stream right away so clients know they are connected
+    subscriber.offer(HEARTBEAT);
+  }
+
+  /**
+   * Removes a watcher, called once when its stream ends
+   * @param subscriber is the watcher to remove
+   */
+  void unsubscribe(SseSubscriber subscriber) {
+    Set<SseSubscriber> resortWatchers = watchers.get(subscriber.getResortID());
+    if (resortWatchers != null && resortWatchers.remove(subscriber)) {
+      numSubscribers.decrementAndGet();
+    }
+  }
+
+  /**
+   * @return the number of connected watchers
+   */
+  @Override
+  public int getNumSubscribers() {
+    return numSubscribers.get();
+  }
+
+  /**
+   * @return the number of events the connected watchers have missed because their buffers were
+   *         full
+   */
+  @Override
+  public long getDroppedEvents() {
+    long dropped = 0;
+    for (Set<SseSubscriber> resortWatchers : watchers.values()) {
+      for (SseSubscriber subscriber : resortWatchers) {
+        dropped += subscriber.getDropped();
+      }
+    }
+    return dropped;
+  }
+
+  /**
+   * @return the most watchers accepted at once
+   */
+  @Override
+  public int getMaxSubscribers() {
+    return maxSubscribers;
+  }
+
+  /**
+   * Changes the most watchers accepted at once, watchers over a lowered limit stay connected
+   * @param maxSubscribers is the new limit
+   */
+  @Override
+  public void setMaxSubscribers(int maxSubscribers) {
+    this.maxSubscribers = maxSubscribers;
+  }
+
+  /**
+   * @return the most events buffered per watcher
+   */
+  @Override
+  public int getBufferEvents() {
+    return bufferEvents;
+  }
+
+  /**
+   * Changes the most events buffered per watcher, for watchers that connect from now on
+   * @param bufferEvents is the new buffer size, at least 1
+   * @throws IllegalArgumentException if bufferEvents is below 1
+   */
+  @Override
+  public void setBufferEvents(int bufferEvents) throws IllegalArgumentException {
+    if (bufferEvents < 1) {
+      throw new IllegalArgumentException("bufferEvents must be at least 1");
+    }
+    this.bufferEvents = bufferEvents;
+  }
+
+  /**
+   * @return what a watcher's full buffer does with a new event
+   */
+  @Override
+  public SlowPolicy getSlowPolicy() {
+    return policy;
+  }
+
+  /**
+   * Changes what a full buffer does with a new event, for watchers that connect from now on
+   * @param policy is the new policy
+   */
+  @Override
+  public void setSlowPolicy(SlowPolicy policy) {
+    this.policy = policy;
+  }
+
+  /**
+   * Pushes a newly ingested ride to every watcher of its resort
+   * @param ride is the newly written lift ride
+   */
+  @Override
+  public void onLiftRideCreated(LiftRide ride) {
+    Set<SseSubscriber> resortWatchers = watchers.get(ride.getResort());
+    if (resortWatchers == null || resortWatchers.isEmpty()) {
+      return;
+    }
+    String event = "id: " + ride.getLiftRideId() + "\nevent: liftride\ndata: "
+            + gson.toJson(ride, LiftRide.class) + "\n\n";
+    byte[] bytes = event.getBytes(StandardCharsets.UTF_8);
+    for (SseSubscriber subscriber : resortWatchers) {
+      subscriber.offer(bytes);
+    }
+  }
+
+  /**
+   * Sends every watcher a comment line
+   */
+  private void heartbeat() {
+    for (Set<SseSubscriber> resortWatchers : watchers.values()) {
+      for (SseSubscriber subscriber : resortWatchers) {
+        subscriber.offer(HEARTBEAT);
+      }
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package stream;
+
+/**
+ * Runtime view of our RideEventBus's limits and its watchers
+ */
+public interface RideEventBusMXBean {
+  /**
+   * @return the number of connected watchers
+   */
+  int getNumSubscribers();
+
+  /**
+   * @return the number of events the connected watchers have missed because their buffers were
+   *         full
+   */
+  long getDroppedEvents();
+
+  /**
+   * @return the most watchers accepted at once
+   */
+  int getMaxSubscribers();
+
+  /**
+   * Changes the most watchers accepted at once
+   * @param maxSubscribers is the new limit
+   */
+  void setMaxSubscribers(int maxSubscribers);
+
+  /**
+   * @return the most events buffered per watcher
+   */
+  int getBufferEvents();
+
+  /**
+   * Changes the most events buffered per watcher, for watchers that connect from now on
+   * @param bufferEvents is the new buffer size, at least 1
+   * @throws IllegalArgumentException if bufferEvents is below 1
+   */
+  void setBufferEvents(int bufferEvents) throws IllegalArgumentException;
+
+  /**
+   * @return what a watcher's full buffer does with a new event
+   */
+  RideEventBus.SlowPolicy getSlowPolicy();
+
+  /**
+   * Changes what a full buffer does with a new event, for watchers that connect from now on
+   * @param policy is the new policy
+   */
+  void setSlowPolicy(RideEventBus.SlowPolicy policy);
+}
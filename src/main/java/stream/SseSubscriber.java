@@ -0,0 +1,191 @@
+package stream;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * One connected Server-Sent Events client. Events are queued in a bounded buffer and written with
+ * non-blocking servlet I/O by whichever thread has them ready (the publishing POST, or the
+ * container once the socket can take more), so a watcher holds no thread while idle. When the
+ * buffer is full the slow-consumer policy either drops the oldest or newest event, or
+ * disconnects the client.
+ */
+class SseSubscriber implements WriteListener, AsyncListener {
+  private final RideEventBus bus;
+  private final int resortID;
+  private final AsyncContext context;
+  private final ServletOutputStream out;
+  private final int capacity;
+  private final RideEventBus.SlowPolicy policy;
+  private final ArrayDeque<byte[]> buffer;
+  private long dropped;
+  private boolean closed;
+
+  /**
+   * Creates a subscriber over a started async request
+   * @param bus is the bus this subscriber is registered with
+   * @param resortID is the integer ID of the resort being watched
+   * @param context is the async context of the watching request
+   * @param capacity is the maximum number of events buffered for this client
+   * @param policy is what to do when the buffer is full
+   * @throws IOException if the response's output stream could not be opened
+   */
+  SseSubscriber(RideEventBus bus, int resortID, AsyncContext context, int capacity,
+                RideEventBus.SlowPolicy policy) throws IOException {
+    this.bus = bus;
+    this.resortID = resortID;
+    this.context = context;
+    this.out = context.getResponse().getOutputStream();
+    this.capacity = capacity;
+    this.policy = policy;
+    this.buffer = new ArrayDeque<>(Math.min(capacity, 64));
+  }
+
+  /**
+   * Simple getter for the resort this subscriber watches
+   * @return the integer resort ID
+   */
+  int getResortID() {
+    return resortID;
+  }
+
+  /**
+   * Starts writing to the client once the container allows non-blocking writes
+   */
+  void start() {
+    context.addListener(this);
+    out.setWriteListener(this);
+  }
+
+  /**
+   * Queues an event for this client and writes as much as the socket will take
+   * @param event is the fully formatted SSE event
+   */
+  void offer(byte[] event) {
+    boolean disconnect = false;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      if (buffer.size() >= capacity) {
+        dropped++;
+        if (policy == RideEventBus.SlowPolicy.DROP_NEWEST) {
+          return;
+        } else if (policy == RideEventBus.SlowPolicy.DROP_OLDEST) {
+          buffer.pollFirst();
+          buffer.addLast(event);
+        } else {
+          disconnect = true;
+        }
+      } else {
+        buffer.addLast(event);
+      }
+    }
+    if (disconnect) {
+      close();
+    } else {
+      drain();
+    }
+  }
+
+  /**
+   * Writes buffered events while the socket can take them without blocking. If it can't, the
+   * container calls onWritePossible once it can.
+   */
+  private void drain() {
+    boolean failed = false;
+    synchronized (this) {
+      try {
+        while (!closed && out.isReady()) {
+          byte[] event = buffer.pollFirst();
+          if (event == null) {
+            out.flush();
+            break;
+          }
+          out.write(event);
+        }
+      } catch (IOException | IllegalStateException e) {
+        failed = true;
+      }
+    }
+    if (failed) {
+      close();
+    }
+  }
+
+  /**
+   * Called by the container once the socket can take more
+   */
+  @Override
+  public void onWritePossible() {
+    drain();
+  }
+
+  /**
+   * Called by the container when a non-blocking write failed
+   * @param t is the cause of the failure
+   */
+  @Override
+  public void onError(Throwable t) {
+    close();
+  }
+
+  /**
+   * Checks whether this subscriber's stream has ended
+   * @return true if it has been closed
+   */
+  synchronized boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Simple getter for the number of events this client has missed
+   * @return the number of dropped events
+   */
+  synchronized long getDropped() {
+    return dropped;
+  }
+
+  /**
+   * Unregisters this subscriber and ends its response, at most once
+   */
+  void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      buffer.clear();
+    }
+    bus.unsubscribe(this);
+    try {
+      context.complete();
+    } catch (IllegalStateException e) {
+      // the container already completed or timed out the request
+    }
+  }
+
+  @Override
+  public void onComplete(AsyncEvent event) {
+    close();
+  }
+
+  @Override
+  public void onTimeout(AsyncEvent event) {
+    close();
+  }
+
+  @Override
+  public void onError(AsyncEvent event) {
+    close();
+  }
+
+  @Override
+  public void onStartAsync(AsyncEvent event) {
+  }
+}